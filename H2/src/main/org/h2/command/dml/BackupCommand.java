@@ -20,6 +20,7 @@ import org.h2.engine.SessionLocal;
 import org.h2.expression.Expression;
 import org.h2.message.DbException;
 import org.h2.mvstore.MVStore;
+import org.h2.mvstore.SegmentedFileStore;
 import org.h2.mvstore.db.Store;
 import org.h2.result.ResultInterface;
 import org.h2.store.FileLister;
@@ -79,6 +80,9 @@ public class BackupCommand extends Prepared {
                             try {
                                 InputStream in = store.getInputStream();
                                 backupFile(out, base, n, in);
+                                for (String segment : SegmentedFileStore.getSegmentFileNames(n)) {
+                                    backupFile(out, base, segment, FileUtils.newInputStream(segment));
+                                }
                             } finally {
                                 s.setReuseSpace(before);
                             }
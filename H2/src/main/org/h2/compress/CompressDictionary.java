@@ -0,0 +1,231 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.compress;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.StringTokenizer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.h2.api.ErrorCode;
+import org.h2.mvstore.DataUtils;
+
+/**
+ * Deflate with a preset dictionary, for small blocks of similar data (such as
+ * the pages of one store). Small blocks compress badly on their own, because
+ * each block has to repeat the common byte sequences once before it can refer
+ * to them; with a dictionary that contains these sequences, the first
+ * occurrence can already be a back-reference.
+ * <p>
+ * A dictionary is trained from sample data using
+ * {@link #train(Collection, int)}. Data must be expanded with the same
+ * dictionary it was compressed with. Without a dictionary, this is plain
+ * Deflate.
+ * <p>
+ * This algorithm supports the option "l" or "level" (see CompressDeflate);
+ * the default is 9 (best compression).
+ */
+public final class CompressDictionary implements Compressor {
+
+    /**
+     * The maximum useful dictionary size (the Deflate window).
+     */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * The length of the byte sequences counted when training.
+     */
+    private static final int KMER = 8;
+
+    /**
+     * The length of the segments that are copied to the dictionary.
+     */
+    private static final int SEGMENT = 64;
+
+    private int level = Deflater.BEST_COMPRESSION;
+    private byte[] dictionary;
+
+    public CompressDictionary() {
+        // no dictionary
+    }
+
+    public CompressDictionary(byte[] dictionary) {
+        setDictionary(dictionary);
+    }
+
+    /**
+     * Set the dictionary.
+     *
+     * @param dictionary the dictionary, or null
+     */
+    public void setDictionary(byte[] dictionary) {
+        DataUtils.checkArgument(dictionary == null || dictionary.length <= MAX_DICTIONARY_SIZE,
+                "Dictionary too large: {0}", dictionary == null ? 0 : dictionary.length);
+        this.dictionary = dictionary;
+    }
+
+    public byte[] getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public int getAlgorithm() {
+        return Compressor.DICTIONARY;
+    }
+
+    @Override
+    public void setOptions(String options) {
+        if (options == null) {
+            return;
+        }
+        try {
+            StringTokenizer tokenizer = new StringTokenizer(options);
+            while (tokenizer.hasMoreElements()) {
+                String option = tokenizer.nextToken();
+                if ("level".equals(option) || "l".equals(option)) {
+                    level = Integer.parseInt(tokenizer.nextToken());
+                    new Deflater(level).end();
+                }
+            }
+        } catch (Exception e) {
+            throw DataUtils.newMVStoreException(ErrorCode.UNSUPPORTED_COMPRESSION_OPTIONS_1, options);
+        }
+    }
+
+    @Override
+    public int compress(byte[] in, int inPos, int inLen, byte[] out, int outPos) {
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(in, inPos, inLen);
+            deflater.finish();
+            int compressed = deflater.deflate(out, outPos, out.length - outPos);
+            if (!deflater.finished()) {
+                throw DataUtils.newMVStoreException(ErrorCode.COMPRESSION_ERROR, "Output buffer too small");
+            }
+            return outPos + compressed;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void expand(byte[] in, int inPos, int inLen, byte[] out, int outPos, int outLen) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in, inPos, inLen);
+            int len = inflater.inflate(out, outPos, outLen);
+            if (len == 0 && inflater.needsDictionary()) {
+                if (dictionary == null) {
+                    throw new DataFormatException("Missing dictionary");
+                }
+                inflater.setDictionary(dictionary);
+                len = inflater.inflate(out, outPos, outLen);
+            }
+            if (len != outLen) {
+                throw new DataFormatException(len + " " + outLen);
+            }
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw DataUtils.newMVStoreException(ErrorCode.COMPRESSION_ERROR, e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Build a dictionary from sample data. Byte sequences that occur in many
+     * samples are preferred; the most common ones are placed at the end of
+     * the dictionary, where back-references are shortest.
+     *
+     * @param samples the samples (for example, serialized pages)
+     * @param maxSize the maximum dictionary size
+     * @return the dictionary (may be empty)
+     */
+    public static byte[] train(Collection<byte[]> samples, int maxSize) {
+        maxSize = Math.min(maxSize, MAX_DICTIONARY_SIZE);
+        // in how many samples each sequence occurs
+        HashMap<Long, Integer> frequency = new HashMap<>();
+        for (byte[] sample : samples) {
+            HashSet<Long> seen = new HashSet<>();
+            for (int i = 0; i + KMER <= sample.length; i++) {
+                Long kmer = readLong(sample, i);
+                if (seen.add(kmer)) {
+                    frequency.merge(kmer, 1, Integer::sum);
+                }
+            }
+        }
+        ArrayList<long[]> segments = new ArrayList<>();
+        int sampleIndex = 0;
+        for (byte[] sample : samples) {
+            for (int start = 0; start + KMER <= sample.length; start += SEGMENT / 2) {
+                long score = score(sample, start, frequency, null);
+                if (score > 0) {
+                    segments.add(new long[] { score, sampleIndex, start });
+                }
+            }
+            sampleIndex++;
+        }
+        segments.sort((a, b) -> Long.compare(b[0], a[0]));
+        byte[][] sampleArray = samples.toArray(new byte[0][]);
+        HashSet<Long> covered = new HashSet<>();
+        ArrayList<byte[]> selected = new ArrayList<>();
+        int size = 0;
+        for (long[] segment : segments) {
+            if (size >= maxSize) {
+                break;
+            }
+            byte[] sample = sampleArray[(int) segment[1]];
+            int start = (int) segment[2];
+            // sequences that are already in the dictionary do not count again
+            if (score(sample, start, frequency, covered) * 2 < segment[0]) {
+                continue;
+            }
+            int len = Math.min(Math.min(SEGMENT, sample.length - start), maxSize - size);
+            byte[] bytes = new byte[len];
+            System.arraycopy(sample, start, bytes, 0, len);
+            for (int i = 0; i + KMER <= len; i++) {
+                covered.add(readLong(bytes, i));
+            }
+            selected.add(bytes);
+            size += len;
+        }
+        byte[] dictionary = new byte[size];
+        int pos = size;
+        for (byte[] bytes : selected) {
+            pos -= bytes.length;
+            System.arraycopy(bytes, 0, dictionary, pos, bytes.length);
+        }
+        return dictionary;
+    }
+
+    private static long score(byte[] sample, int start, HashMap<Long, Integer> frequency, HashSet<Long> covered) {
+        long score = 0;
+        int end = Math.min(start + SEGMENT, sample.length);
+        for (int i = start; i + KMER <= end; i++) {
+            Long kmer = readLong(sample, i);
+            int f = frequency.get(kmer);
+            if (f > 1 && (covered == null || !covered.contains(kmer))) {
+                score += f;
+            }
+        }
+        return score;
+    }
+
+    private static long readLong(byte[] b, int pos) {
+        long x = 0;
+        for (int i = 0; i < KMER; i++) {
+            x = x << 8 | (b[pos + i] & 0xff);
+        }
+        return x;
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.compress;
+
+import java.util.Arrays;
+
+import org.h2.api.ErrorCode;
+import org.h2.mvstore.DataUtils;
+
+/**
+ * <p>
+ * This class implements the LZ4 block format (without frame). The output can
+ * be read by other LZ4 implementations when the uncompressed length is known.
+ * Compression is a little slower than LZF, expansion is faster.
+ * </p>
+ * <p>
+ * A block is a sequence of (token, literal length, literals, match offset,
+ * match length). The high 4 bits of the token are the literal length, the
+ * low 4 bits are the match length minus 4; the value 15 means more length
+ * bytes follow (each 255 means another byte follows). The offset is 2 bytes,
+ * little endian. The last sequence only has literals; the last 5 bytes are
+ * always literals, and the last match starts at least 12 bytes before the
+ * end.
+ * </p>
+ * <p>
+ * Each instance should be used by a single thread only when compressing;
+ * expanding is thread safe.
+ * </p>
+ */
+public final class CompressLZ4 implements Compressor {
+
+    private static final int HASH_LOG = 12;
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+
+    private int[] cachedHashTable;
+
+    @Override
+    public int getAlgorithm() {
+        return Compressor.LZ4;
+    }
+
+    @Override
+    public void setOptions(String options) {
+        // nothing to do
+    }
+
+    @Override
+    public int compress(byte[] in, int inPos, int inLen, byte[] out, int outPos) {
+        int end = inPos + inLen;
+        int anchor = inPos;
+        int op = outPos;
+        if (inLen > MF_LIMIT) {
+            int[] hashTable = cachedHashTable;
+            if (hashTable == null) {
+                hashTable = cachedHashTable = new int[1 << HASH_LOG];
+            }
+            Arrays.fill(hashTable, -1);
+            int mfLimit = end - MF_LIMIT;
+            int matchLimit = end - LAST_LITERALS;
+            int ip = inPos;
+            while (ip < mfLimit) {
+                int seq = readInt(in, ip);
+                int h = hash(seq);
+                int ref = hashTable[h];
+                hashTable[h] = ip;
+                if (ref < 0 || ip - ref > MAX_OFFSET || readInt(in, ref) != seq) {
+                    ip++;
+                    continue;
+                }
+                while (ip > anchor && ref > inPos && in[ip - 1] == in[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int len = MIN_MATCH;
+                while (ip + len < matchLimit && in[ip + len] == in[ref + len]) {
+                    len++;
+                }
+                op = writeSequence(in, anchor, ip - anchor, out, op, ip - ref, len);
+                ip += len;
+                anchor = ip;
+                if (ip < mfLimit) {
+                    hashTable[hash(readInt(in, ip - 2))] = ip - 2;
+                }
+            }
+        }
+        int literals = end - anchor;
+        op = writeToken(out, op, literals, 0);
+        System.arraycopy(in, anchor, out, op, literals);
+        return op + literals;
+    }
+
+    private static int writeSequence(byte[] in, int literalPos, int literals, byte[] out, int op, int offset,
+            int matchLen) {
+        op = writeToken(out, op, literals, matchLen - MIN_MATCH);
+        System.arraycopy(in, literalPos, out, op, literals);
+        op += literals;
+        out[op++] = (byte) offset;
+        out[op++] = (byte) (offset >>> 8);
+        if (matchLen - MIN_MATCH >= 15) {
+            op = writeLength(out, op, matchLen - MIN_MATCH - 15);
+        }
+        return op;
+    }
+
+    private static int writeToken(byte[] out, int op, int literals, int matchLen) {
+        out[op++] = (byte) (Math.min(literals, 15) << 4 | Math.min(matchLen, 15));
+        if (literals >= 15) {
+            op = writeLength(out, op, literals - 15);
+        }
+        return op;
+    }
+
+    private static int writeLength(byte[] out, int op, int len) {
+        while (len >= 255) {
+            out[op++] = (byte) 255;
+            len -= 255;
+        }
+        out[op++] = (byte) len;
+        return op;
+    }
+
+    private static int readInt(byte[] in, int pos) {
+        return (in[pos] & 0xff) | (in[pos + 1] & 0xff) << 8 | (in[pos + 2] & 0xff) << 16 | in[pos + 3] << 24;
+    }
+
+    private static int hash(int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    @Override
+    public void expand(byte[] in, int inPos, int inLen, byte[] out, int outPos, int outLen) {
+        int ip = inPos, inEnd = inPos + inLen;
+        int op = outPos;
+        try {
+            while (true) {
+                int token = in[ip++] & 0xff;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = in[ip++] & 0xff;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(in, ip, out, op, literals);
+                ip += literals;
+                op += literals;
+                if (ip >= inEnd) {
+                    break;
+                }
+                int offset = (in[ip++] & 0xff) | (in[ip++] & 0xff) << 8;
+                int len = token & 15;
+                if (len == 15) {
+                    int b;
+                    do {
+                        b = in[ip++] & 0xff;
+                        len += b;
+                    } while (b == 255);
+                }
+                len += MIN_MATCH;
+                int ref = op - offset;
+                if (offset == 0 || ref < outPos) {
+                    throw DataUtils.newMVStoreException(ErrorCode.COMPRESSION_ERROR, "Invalid offset {0}", offset);
+                }
+                if (offset >= len) {
+                    System.arraycopy(out, ref, out, op, len);
+                    op += len;
+                } else {
+                    // overlapping copy: repeats the last offset bytes
+                    for (int i = 0; i < len; i++) {
+                        out[op++] = out[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw DataUtils.newMVStoreException(ErrorCode.COMPRESSION_ERROR, "Corrupt LZ4 block", e);
+        }
+        if (op - outPos != outLen) {
+            throw DataUtils.newMVStoreException(ErrorCode.COMPRESSION_ERROR, "{0} {1}", op - outPos, outLen);
+        }
+    }
+
+}
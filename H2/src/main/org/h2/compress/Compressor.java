@@ -8,6 +8,7 @@ package org.h2.compress;
 
 /**
  * Each data compression algorithm must implement this interface.
+ * Algorithms are registered in the {@link CompressorRegistry}.
  */
 public interface Compressor {
 
@@ -26,6 +27,16 @@ public interface Compressor {
      */
     int DEFLATE = 2;
 
+    /**
+     * The LZ4 compression algorithm is used.
+     */
+    int LZ4 = 3;
+
+    /**
+     * The DEFLATE compression algorithm with a preset dictionary is used.
+     */
+    int DICTIONARY = 4;
+
     /**
      * Get the compression algorithm type.
      *
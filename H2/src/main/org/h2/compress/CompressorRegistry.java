@@ -0,0 +1,124 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.compress;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.h2.api.ErrorCode;
+import org.h2.mvstore.DataUtils;
+import org.h2.util.StringUtils;
+
+/**
+ * The registry of compression algorithms. Each algorithm has a name and an
+ * id; the id is stored with the compressed data (for example in each
+ * compressed MVStore page), so it must never change once data was written.
+ * Ids below 64 are reserved for built-in algorithms.
+ */
+public final class CompressorRegistry {
+
+    /**
+     * The largest algorithm id (ids are stored as one byte).
+     */
+    public static final int MAX_ALGORITHM = 255;
+
+    private static final int MIN_CUSTOM_ALGORITHM = 64;
+
+    private static final ConcurrentHashMap<Integer, Supplier<? extends Compressor>> FACTORIES =
+            new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+
+    static {
+        add(Compressor.NO, "NO", CompressNo::new);
+        add(Compressor.LZF, "LZF", CompressLZF::new);
+        add(Compressor.DEFLATE, "DEFLATE", CompressDeflate::new);
+        add(Compressor.LZ4, "LZ4", CompressLZ4::new);
+        add(Compressor.DICTIONARY, "DICTIONARY", CompressDictionary::new);
+    }
+
+    private CompressorRegistry() {
+        // utility class
+    }
+
+    /**
+     * Register a compression algorithm.
+     *
+     * @param algorithm the id (64 to 255)
+     * @param name the name (case insensitive)
+     * @param factory creates a new instance
+     * @throws IllegalArgumentException if the id is out of range, or the id
+     *             or the name is already registered
+     */
+    public static void register(int algorithm, String name, Supplier<? extends Compressor> factory) {
+        DataUtils.checkArgument(algorithm >= MIN_CUSTOM_ALGORITHM && algorithm <= MAX_ALGORITHM,
+                "Algorithm id {0} is out of range", algorithm);
+        add(algorithm, name, factory);
+    }
+
+    private static synchronized void add(int algorithm, String name, Supplier<? extends Compressor> factory) {
+        name = StringUtils.toUpperEnglish(name);
+        DataUtils.checkArgument(!FACTORIES.containsKey(algorithm) && !IDS.containsKey(name),
+                "Algorithm {0} ({1}) is already registered", name, algorithm);
+        FACTORIES.put(algorithm, factory);
+        IDS.put(name, algorithm);
+    }
+
+    /**
+     * Get the id of the algorithm with the given name.
+     *
+     * @param name the name (case insensitive)
+     * @return the id
+     * @throws org.h2.mvstore.MVStoreException if the algorithm is not
+     *             registered
+     */
+    public static int getAlgorithm(String name) {
+        Integer algorithm = IDS.get(StringUtils.toUpperEnglish(name));
+        if (algorithm == null) {
+            throw DataUtils.newMVStoreException(ErrorCode.UNSUPPORTED_COMPRESSION_ALGORITHM_1, name);
+        }
+        return algorithm;
+    }
+
+    /**
+     * Create a new instance of the algorithm with the given id.
+     *
+     * @param algorithm the id
+     * @return the new instance
+     * @throws org.h2.mvstore.MVStoreException if the algorithm is not
+     *             registered
+     */
+    public static Compressor getCompressor(int algorithm) {
+        Supplier<? extends Compressor> factory = FACTORIES.get(algorithm);
+        if (factory == null) {
+            throw DataUtils.newMVStoreException(ErrorCode.UNSUPPORTED_COMPRESSION_ALGORITHM_1,
+                    Integer.toString(algorithm));
+        }
+        return factory.get();
+    }
+
+    /**
+     * Create a new instance of an algorithm.
+     *
+     * @param algorithm the name, optionally followed by a space and the
+     *            options
+     * @return the new instance
+     * @throws org.h2.mvstore.MVStoreException if the algorithm is not
+     *             registered, or the options are invalid
+     */
+    public static Compressor getCompressor(String algorithm) {
+        String options = null;
+        int idx = algorithm.indexOf(' ');
+        if (idx > 0) {
+            options = algorithm.substring(idx + 1);
+            algorithm = algorithm.substring(0, idx);
+        }
+        Compressor compressor = getCompressor(getAlgorithm(algorithm));
+        compressor.setOptions(options);
+        return compressor;
+    }
+
+}
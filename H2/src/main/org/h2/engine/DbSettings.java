@@ -281,6 +281,14 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean compressData = get("COMPRESS", false);
 
+    /**
+     * Database setting <code>COMPRESS_ALGORITHM</code>
+     * (default: null).
+     * The compression algorithm if <code>COMPRESS</code> is enabled, for
+     * example LZF (the default), DEFLATE, LZ4 or DICTIONARY.
+     */
+    public final String compressAlgorithm = get("COMPRESS_ALGORITHM", null);
+
     /**
      * Database setting <code>IGNORE_CATALOGS</code>
      * (default: false).
@@ -11,6 +11,7 @@ import java.util.BitSet;
 import java.util.Comparator;
 import java.util.Map;
 
+import org.h2.store.fs.niomapped.MappedRegion;
 import org.h2.util.StringUtils;
 
 /**
@@ -379,6 +380,16 @@ public final class Chunk {
                 && isEvacuatable();
     }
 
+    /**
+     * Whether the live pages of this chunk may be moved to a new chunk, even
+     * if the chunk is fully occupied.
+     *
+     * @return true if movable
+     */
+    boolean isMovable() {
+        return isSaved() && isLive() && isEvacuatable();
+    }
+
     private boolean isEvacuatable() {
         return pinCount == 0;
     }
@@ -432,6 +443,37 @@ public final class Chunk {
         }
     }
 
+    /**
+     * Get a page of data from the mapped memory of the file, without copying.
+     *
+     * @param fileStore to use
+     * @param region the mapped memory of the file
+     * @param block the block of the chunk
+     * @param offset of the page data
+     * @param pos page pos
+     * @return the page data (only valid until the region is released), or
+     *         null if the page is not completely within the region
+     */
+    ByteBuffer sliceBufferForPage(FileStore fileStore, MappedRegion region, long block, int offset, long pos) {
+        assert isSaved() : this;
+        long filePos = block * MVStore.BLOCK_SIZE;
+        long maxPos = filePos + (long) len * MVStore.BLOCK_SIZE;
+        filePos += offset;
+        if (filePos < 0 || filePos + 4 > region.size()) {
+            return null;
+        }
+        int length = DataUtils.getPageMaxLength(pos);
+        if (length == DataUtils.PAGE_LARGE) {
+            // see readBufferForPage
+            length = region.getInt((int) filePos) + 4;
+        }
+        length = (int) Math.min(maxPos - filePos, length);
+        if (length < 0 || filePos + length > region.size()) {
+            return null;
+        }
+        return fileStore.slice(region, filePos, length);
+    }
+
     long[] readToC(FileStore fileStore) {
         assert isSaved() : this;
         assert tocPos > 0;
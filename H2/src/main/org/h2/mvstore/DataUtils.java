@@ -16,8 +16,10 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.h2.compress.Compressor;
 import org.h2.engine.Constants;
 import org.h2.jdbc.JdbcException;
+import org.h2.mvstore.type.DataType;
 import org.h2.util.StringUtils;
 
 /**
@@ -134,6 +136,12 @@ public final class DataUtils {
      */
     public static final int PAGE_COMPRESSED_HIGH = 2 + 4;
 
+    /**
+     * The bit mask for compressed pages that store the id of the compression
+     * algorithm in the first byte of the compressed data.
+     */
+    public static final int PAGE_COMPRESSED_CODEC = 2 + 16;
+
     /**
      * The bit mask for pages with page sequential number.
      */
@@ -194,6 +202,17 @@ public final class DataUtils {
      */
     public static final String META_MAP = "map.";
 
+    /**
+     * The initial size of the per thread buffer used to hash keys.
+     */
+    private static final int HASH_BUFFER_SIZE = 256;
+
+    /**
+     * The buffer used to hash keys, so that hashing does not allocate.
+     */
+    private static final ThreadLocal<WriteBuffer> HASH_BUFFER =
+            ThreadLocal.withInitial(() -> new WriteBuffer(HASH_BUFFER_SIZE));
+
     /**
      * Get the length of the variable size int.
      *
@@ -595,6 +614,23 @@ public final class DataUtils {
         return ((int) pos) & 1;
     }
 
+    /**
+     * Get the compression algorithm of a compressed page. For pages with the
+     * PAGE_COMPRESSED_CODEC bits, the algorithm id is read from the buffer.
+     *
+     * @param type the page type byte
+     * @param buff the buffer, positioned at the start of the compressed data
+     * @return the compression algorithm (see Compressor)
+     */
+    public static int getCompressAlgorithm(int type, ByteBuffer buff) {
+        if ((type & PAGE_COMPRESSED_CODEC) == PAGE_COMPRESSED_CODEC) {
+            return buff.get() & 0xff;
+        } else if ((type & PAGE_COMPRESSED_HIGH) == PAGE_COMPRESSED_HIGH) {
+            return Compressor.DEFLATE;
+        }
+        return Compressor.LZF;
+    }
+
     /**
      * Determines whether specified file position corresponds to a leaf page
      * @param pos the position
@@ -950,6 +986,38 @@ public final class DataUtils {
         return (s2 << 16) | s1;
     }
 
+    /**
+     * Calculate a 64-bit hash of the serialized form of a key. Unlike
+     * hashCode(), the result is the same in every JVM, and keys that are equal
+     * according to the data type have the same hash.
+     *
+     * @param <K> the key class
+     * @param keyType the key type
+     * @param key the key
+     * @return the hash
+     */
+    public static <K> long getHash(DataType<K> keyType, K key) {
+        WriteBuffer buff = HASH_BUFFER.get().clear();
+        keyType.write(buff, key);
+        ByteBuffer b = buff.getBuffer();
+        int len = b.position();
+        if (b.capacity() > HASH_BUFFER_SIZE) {
+            // a large key, don't keep the grown buffer
+            HASH_BUFFER.remove();
+        }
+        // FNV-1a, followed by the finalizer of MurmurHash3
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < len; i++) {
+            h = (h ^ (b.get(i) & 0xff)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
     /**
      * Throw an IllegalArgumentException if the argument is invalid.
      *
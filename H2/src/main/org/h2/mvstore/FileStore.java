@@ -16,6 +16,8 @@ import org.h2.mvstore.cache.FilePathCache;
 import org.h2.store.fs.FilePath;
 import org.h2.store.fs.encrypt.FileEncrypt;
 import org.h2.store.fs.encrypt.FilePathEncrypt;
+import org.h2.store.fs.niomapped.FileNioMapped;
+import org.h2.store.fs.niomapped.MappedRegion;
 
 /**
  * The default storage mechanism of the MVStore. This implementation persists
@@ -101,6 +103,32 @@ public class FileStore {
         return dst;
     }
 
+    /**
+     * Acquire the mapped memory of the file, to read without copying.
+     *
+     * @return the region, which must be released after use, or null if the
+     *         file is not memory mapped
+     */
+    public MappedRegion acquireMappedRegion() {
+        FileChannel f = file;
+        return f instanceof FileNioMapped ? ((FileNioMapped) f).acquireRegion() : null;
+    }
+
+    /**
+     * Read from the mapped memory of the file, without copying.
+     *
+     * @param region the acquired region
+     * @param pos the read position
+     * @param len the number of bytes to read
+     * @return the byte buffer, only valid until the region is released
+     */
+    ByteBuffer slice(MappedRegion region, long pos, int len) {
+        ByteBuffer buff = region.slice((int) pos, len);
+        readCount.incrementAndGet();
+        readBytes.addAndGet(len);
+        return buff;
+    }
+
     /**
      * Write to the file.
      *
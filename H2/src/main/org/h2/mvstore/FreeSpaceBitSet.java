@@ -203,6 +203,36 @@ public class FreeSpaceBitSet {
         set.clear(start, start + blocks);
     }
 
+    /**
+     * Temporarily mark all free blocks in the given area as used, so that
+     * they are not allocated.
+     *
+     * @param pos the position in bytes
+     * @param length the number of bytes
+     * @return the blocks that were free, relative to the start of the area
+     */
+    BitSet reserve(long pos, int length) {
+        int start = getBlock(pos);
+        int blocks = getBlockCount(length);
+        BitSet free = set.get(start, start + blocks);
+        free.flip(0, blocks);
+        set.set(start, start + blocks);
+        return free;
+    }
+
+    /**
+     * Mark the blocks that were reserved as free again.
+     *
+     * @param pos the position in bytes of the area
+     * @param reserved the blocks returned by {@link #reserve(long, int)}
+     */
+    void release(long pos, BitSet reserved) {
+        int start = getBlock(pos);
+        for (int i = reserved.nextSetBit(0); i >= 0; i = reserved.nextSetBit(i + 1)) {
+            set.clear(start + i);
+        }
+    }
+
     private long getPos(int block) {
         return (long) block * (long) blockSize;
     }
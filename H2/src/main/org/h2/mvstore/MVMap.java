@@ -505,6 +505,15 @@ public class MVMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V
         return closed;
     }
 
+    /**
+     * Called by the store before an explicit commit and before it is closed,
+     * without holding the store lock. A map that buffers writes outside of
+     * its tree can write them here, so that they are part of the commit.
+     */
+    protected void beforeCommit() {
+        // nothing to do
+    }
+
     /**
      * Remove a key-value pair, if the key exists.
      *
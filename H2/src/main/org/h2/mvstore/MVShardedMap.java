@@ -0,0 +1,370 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.h2.mvstore.type.DataType;
+
+/**
+ * A map that is hash partitioned over a number of MVMaps (shards), named
+ * {@code <name>.shard.<n>}. Each shard has its own root, so that concurrent
+ * updates of different keys rarely compete for the same root reference.
+ * <p>
+ * Ordered iteration merges the cursors of all shards. Each shard is iterated
+ * at the version that was current when the iteration started, but the shards
+ * are not read at the same version.
+ * <p>
+ * The number of shards is fixed when the map is created, because it decides
+ * in which shard a key is stored.
+ *
+ * @param <K> the key class
+ * @param <V> the value class
+ */
+public final class MVShardedMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    private static final String SHARD_INFIX = ".shard.";
+
+    private final DataType<K> keyType;
+    private final List<MVMap<K, V>> shards;
+
+    MVShardedMap(MVStore store, String name, int shardCount, MVMap.Builder<K, V> builder) {
+        int existing = 0;
+        String prefix = name + SHARD_INFIX;
+        for (String mapName : store.getMapNames()) {
+            if (mapName.startsWith(prefix) && mapName.substring(prefix.length()).matches("\\d+")) {
+                existing++;
+            }
+        }
+        DataUtils.checkArgument(existing == 0 || existing == shardCount,
+                "Map {0} has {1} shards, not {2}", name, existing, shardCount);
+        shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(store.openMap(prefix + i, builder));
+        }
+        keyType = shards.get(0).getKeyType();
+    }
+
+    /**
+     * Get the shard that stores the given key.
+     *
+     * @param key the key
+     * @return the shard
+     */
+    @SuppressWarnings("unchecked")
+    MVMap<K, V> getShard(Object key) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        long hash = DataUtils.getHash(keyType, (K) key);
+        return shards.get((int) ((hash & Long.MAX_VALUE) % shards.size()));
+    }
+
+    /**
+     * Get the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public V get(Object key) {
+        return getShard(key).get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getShard(key).containsKey(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return getShard(key).put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return getShard(key).remove(key);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return getShard(key).putIfAbsent(key, value);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return getShard(key).remove(key, value);
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        return getShard(key).replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        return getShard(key).replace(key, value);
+    }
+
+    /**
+     * Remove all entries.
+     */
+    @Override
+    public void clear() {
+        for (MVMap<K, V> shard : shards) {
+            shard.clear();
+        }
+    }
+
+    /**
+     * Get the number of entries, as a long.
+     *
+     * @return the number of entries
+     */
+    public long sizeAsLong() {
+        long size = 0;
+        for (MVMap<K, V> shard : shards) {
+            size += shard.sizeAsLong();
+        }
+        return size;
+    }
+
+    @Override
+    public int size() {
+        long size = sizeAsLong();
+        return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (MVMap<K, V> shard : shards) {
+            if (!shard.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the first key, or null if the map is empty.
+     *
+     * @return the first key, or null
+     */
+    public K firstKey() {
+        ShardedCursor<K, V> cursor = cursor(null);
+        return cursor.hasNext() ? cursor.next() : null;
+    }
+
+    /**
+     * Get the last key, or null if the map is empty.
+     *
+     * @return the last key, or null
+     */
+    public K lastKey() {
+        ShardedCursor<K, V> cursor = cursor(null, null, true);
+        return cursor.hasNext() ? cursor.next() : null;
+    }
+
+    /**
+     * Iterate over a number of keys in ascending order.
+     *
+     * @param from the first key to return
+     * @return the iterator
+     */
+    public Iterator<K> keyIterator(K from) {
+        return cursor(from);
+    }
+
+    /**
+     * Get a cursor to iterate over a number of keys and values in ascending
+     * order.
+     *
+     * @param from the first key to return
+     * @return the cursor
+     */
+    public ShardedCursor<K, V> cursor(K from) {
+        return cursor(from, null, false);
+    }
+
+    /**
+     * Get a cursor to iterate over a number of keys and values.
+     *
+     * @param from the first key to return
+     * @param to the last key to return
+     * @param reverse if true, iterate in reverse (descending) order
+     * @return the cursor
+     */
+    public ShardedCursor<K, V> cursor(K from, K to, boolean reverse) {
+        List<Cursor<K, V>> cursors = new ArrayList<>(shards.size());
+        for (MVMap<K, V> shard : shards) {
+            cursors.add(shard.cursor(from, to, reverse));
+        }
+        return new ShardedCursor<>(cursors, reverse ? keyType.reversed() : keyType);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                ShardedCursor<K, V> cursor = cursor(null);
+                return new Iterator<Map.Entry<K, V>>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return cursor.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+                        K key = cursor.next();
+                        return new SimpleImmutableEntry<>(key, cursor.getValue());
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return MVShardedMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * A cursor that merges the ordered cursors of all shards.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    public static final class ShardedCursor<K, V> implements Iterator<K> {
+
+        private final PriorityQueue<Cursor<K, V>> queue;
+        private K key;
+        private V value;
+
+        ShardedCursor(List<Cursor<K, V>> cursors, Comparator<? super K> comparator) {
+            queue = new PriorityQueue<>(cursors.size(), (a, b) -> comparator.compare(a.getKey(), b.getKey()));
+            for (Cursor<K, V> cursor : cursors) {
+                advance(cursor);
+            }
+        }
+
+        private void advance(Cursor<K, V> cursor) {
+            if (cursor.hasNext()) {
+                cursor.next();
+                queue.add(cursor);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public K next() {
+            Cursor<K, V> cursor = queue.poll();
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+            key = cursor.getKey();
+            value = cursor.getValue();
+            advance(cursor);
+            return key;
+        }
+
+        /**
+         * Get the last read key if there was one.
+         *
+         * @return the key or null
+         */
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * Get the last read value if there was one.
+         *
+         * @return the value or null
+         */
+        public V getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * A builder for this class.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    public static final class Builder<K, V> {
+
+        private final MVMap.Builder<K, V> mapBuilder = new MVMap.Builder<>();
+        private int shards = 16;
+
+        /**
+         * Set the key data type.
+         *
+         * @param keyType the key type
+         * @return this
+         */
+        public Builder<K, V> keyType(DataType<? super K> keyType) {
+            mapBuilder.keyType(keyType);
+            return this;
+        }
+
+        /**
+         * Set the value data type.
+         *
+         * @param valueType the value type
+         * @return this
+         */
+        public Builder<K, V> valueType(DataType<? super V> valueType) {
+            mapBuilder.valueType(valueType);
+            return this;
+        }
+
+        /**
+         * Set the number of shards. It must be the same every time the map
+         * is opened.
+         *
+         * @param shards the number of shards
+         * @return this
+         */
+        public Builder<K, V> shards(int shards) {
+            DataUtils.checkArgument(shards > 0, "Invalid number of shards {0}", shards);
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * Open or create the sharded map.
+         *
+         * @param store the store
+         * @param name the name of the map
+         * @return the map
+         */
+        public MVShardedMap<K, V> open(MVStore store, String name) {
+            return new MVShardedMap<>(store, name, shards, mapBuilder);
+        }
+    }
+
+}
@@ -41,12 +41,15 @@ import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.LongConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
-import org.h2.compress.CompressDeflate;
+import org.h2.compress.CompressDictionary;
 import org.h2.compress.CompressLZF;
 import org.h2.compress.Compressor;
+import org.h2.compress.CompressorRegistry;
 import org.h2.mvstore.cache.CacheLongKeyLIRS;
 import org.h2.mvstore.type.StringDataType;
+import org.h2.store.fs.niomapped.MappedRegion;
 import org.h2.util.MathUtils;
+import org.h2.util.StringUtils;
 import org.h2.util.Utils;
 
 /*
@@ -80,8 +83,8 @@ MVStore:
     for default serialization
 - MVStoreTool.dump should dump the data if possible;
     possibly using a callback for serialization
-- implement a sharded map (in one store, multiple stores)
-    to support concurrent updates and writes, and very large maps
+- MVShardedMap: use it in MVPrimaryIndex / MVSecondaryIndex;
+    shards in multiple stores
 - to save space when persisting very small transactions,
     use a transaction log where only the deltas are stored
 - serialization for lists, sets, sets, sorted sets, maps, sorted maps
@@ -97,22 +100,13 @@ MVStore:
 - temporary file storage
 - simple rollback method (rollback to last committed version)
 - MVMap to implement SortedMap, then NavigableMap
-- storage that splits database into multiple files,
-    to speed up compact and allow using trim
-    (by truncating / deleting empty files)
-- add new feature to the file system API to avoid copying data
-    (reads that returns a ByteBuffer instead of writing into one)
-    for memory mapped files and off-heap storage
-- support log structured merge style operations (blind writes)
-    using one map per level plus bloom filter
 - have a strict call order MVStore -> MVMap -> Page -> FileStore
 - autocommit commits, stores, and compacts from time to time;
     the background thread should wait at least 90% of the
     configured write delay to store changes
 - compact* should also store uncommitted changes (if there are any)
-- write a LSM-tree (log structured merge tree) utility on top of the MVStore
-    with blind writes and/or a bloom filter that
-    internally uses regular maps and merge sort
+- MVLSMMap: write the memtable on auto-commit; merged view
+    for size and cursors
 - chunk metadata: maybe split into static and variable,
     or use a small page size for metadata
 - data type "string": maybe use prefix compression for keys
@@ -152,6 +146,12 @@ public class MVStore implements AutoCloseable {
     private static final String HDR_CLEAN = "clean";
     private static final String HDR_FLETCHER = "fletcher";
 
+    /**
+     * The store header attribute that contains the segment size of a
+     * segmented file (see {@link SegmentedFileStore}).
+     */
+    static final String HDR_SEGMENT_SIZE = "segmentSize";
+
     /**
      * The key for the entry within "layout" map, which contains id of "meta" map.
      * Entry value (hex encoded) is usually equal to 1, unless it's a legacy
@@ -159,6 +159,18 @@ public class MVStore implements AutoCloseable {
      */
     public static final String META_ID_KEY = "meta.id";
 
+    /**
+     * The key for the entry within "meta" map, which contains the hex encoded
+     * dictionary of the DICTIONARY compression algorithm.
+     */
+    private static final String DICTIONARY_KEY = "setting.compressDictionary";
+
+    /**
+     * The amount of page data that is collected to train a compression
+     * dictionary.
+     */
+    private static final int DICTIONARY_TRAINING_SIZE = 128 * 1024;
+
     /**
      * The block size (physical sector size) of the disk. The store header is
      * written twice, one copy in each block, to ensure it survives a crash.
@@ -166,9 +178,20 @@ public class MVStore implements AutoCloseable {
     static final int BLOCK_SIZE = 4 * 1024;
 
     private static final int FORMAT_WRITE_MIN = 2;
-    private static final int FORMAT_WRITE_MAX = 2;
+    private static final int FORMAT_WRITE_MAX = 3;
     private static final int FORMAT_READ_MIN = 2;
-    private static final int FORMAT_READ_MAX = 2;
+    private static final int FORMAT_READ_MAX = 3;
+
+    /**
+     * The format of a new store.
+     */
+    private static final int FORMAT_DEFAULT = 2;
+
+    /**
+     * The format of a store that contains pages compressed with a codec
+     * (LZ4, DICTIONARY), which older versions can not read.
+     */
+    private static final int FORMAT_CODEC = 3;
 
     /**
      * Store is open.
@@ -287,14 +310,53 @@ public class MVStore implements AutoCloseable {
     private int versionsToKeep = 5;
 
     /**
-     * The compression level for new pages (0 for disabled, 1 for fast, 2 for
-     * high). Even if disabled, the store may contain (old) compressed pages.
+     * The compression algorithm for new pages, or null if compression is
+     * disabled. Even if disabled, the store may contain (old) compressed
+     * pages. Only used by the serialization thread.
      */
-    private final int compressionLevel;
+    private final Compressor pageCompressor;
 
-    private Compressor compressorFast;
+    /**
+     * The compressor for pages of the layout and the metadata map, if the
+     * page compressor needs the dictionary that is stored in the metadata.
+     */
+    private Compressor metaPageCompressor;
 
-    private Compressor compressorHigh;
+    /**
+     * The compressors used to read pages, by algorithm id. Expanding is
+     * thread safe for all algorithms.
+     */
+    private final ConcurrentHashMap<Integer, Compressor> readCompressors = new ConcurrentHashMap<>();
+
+    /**
+     * The dictionary of the DICTIONARY compression algorithm, or null if
+     * there is none yet.
+     */
+    private volatile byte[] compressionDictionary;
+
+    /**
+     * The compressor used to expand DICTIONARY compressed pages, for the
+     * current dictionary. Compressing and expanding is thread safe.
+     */
+    private volatile CompressDictionary dictionaryCompressor;
+
+    /**
+     * The pages collected to train a dictionary (only used by the
+     * serialization thread), or null if no dictionary needs to be trained.
+     */
+    private ArrayList<byte[]> dictionarySamples;
+
+    private int dictionarySamplesSize;
+
+    /**
+     * The trained dictionary, until it is stored in the metadata map.
+     */
+    private volatile byte[] trainedDictionary;
+
+    /**
+     * The first version that is stored with the trained dictionary.
+     */
+    private volatile long trainedDictionaryVersion = Long.MAX_VALUE;
 
     private final boolean recoveryMode;
 
@@ -380,13 +442,25 @@ public class MVStore implements AutoCloseable {
      */
     MVStore(Map<String, Object> config) {
         recoveryMode = config.containsKey("recoveryMode");
-        compressionLevel = DataUtils.getConfigParam(config, "compress", 0);
+        String compressAlgorithm = (String) config.get("compressAlgorithm");
+        if (compressAlgorithm == null) {
+            int compressionLevel = DataUtils.getConfigParam(config, "compress", 0);
+            compressAlgorithm = compressionLevel == 0 ? null : compressionLevel == 1 ? "LZF" : "DEFLATE";
+        }
+        Compressor compressor = compressAlgorithm == null ? null : CompressorRegistry.getCompressor(compressAlgorithm);
+        pageCompressor = compressor == null || compressor.getAlgorithm() == Compressor.NO ? null : compressor;
+        compressionDictionary = (byte[]) config.get("compressDictionary");
         String fileName = (String) config.get("fileName");
         FileStore fileStore = (FileStore) config.get("fileStore");
         boolean fileStoreShallBeOpen = false;
         if (fileStore == null) {
             if (fileName != null) {
-                fileStore = new FileStore();
+                int segmentSize = DataUtils.getConfigParam(config, "segmentSize", 0) * 1024 * 1024;
+                if (segmentSize == 0) {
+                    // a segmented file is opened with the segment size it was created with
+                    segmentSize = SegmentedFileStore.readSegmentSize(fileName);
+                }
+                fileStore = segmentSize > 0 ? new SegmentedFileStore(segmentSize) : new FileStore();
                 fileStoreShallBeOpen = true;
             }
             fileStoreShallBeClosed = true;
@@ -455,12 +529,27 @@ public class MVStore implements AutoCloseable {
                         creationTime = getTimeAbsolute();
                         storeHeader.put(HDR_H, 2);
                         storeHeader.put(HDR_BLOCK_SIZE, BLOCK_SIZE);
-                        storeHeader.put(HDR_FORMAT, FORMAT_WRITE_MAX);
+                        setFormat(isPageCodecUsed() ? FORMAT_CODEC : FORMAT_DEFAULT);
                         storeHeader.put(HDR_CREATED, creationTime);
+                        if (this.fileStore instanceof SegmentedFileStore) {
+                            storeHeader.put(HDR_SEGMENT_SIZE,
+                                    ((SegmentedFileStore) this.fileStore).getSegmentSize());
+                        }
                         setLastChunk(null);
                         writeStoreHeader();
                     } else {
                         readStoreHeader();
+                        boolean headerChanged = checkSegmentSize(fileStoreShallBeOpen);
+                        if (!this.fileStore.isReadOnly() && isPageCodecUsed()
+                                && getFormatRead() < FORMAT_CODEC) {
+                            // before the first page is written with the codec
+                            setFormat(FORMAT_CODEC);
+                            headerChanged = true;
+                        }
+                        if (headerChanged) {
+                            storeHeader.remove(HDR_CLEAN);
+                            writeStoreHeader();
+                        }
                     }
                 } finally {
                     saveChunkLock.unlock();
@@ -478,6 +567,7 @@ public class MVStore implements AutoCloseable {
             meta = openMetaMap();
             scrubLayoutMap();
             scrubMetaMap();
+            initCompressionDictionary();
 
             // setAutoCommitDelay starts the thread, but only if
             // the parameter is different from the old value
@@ -487,10 +577,40 @@ public class MVStore implements AutoCloseable {
             autoCommitMemory = 0;
             autoCompactFillRate = 0;
             meta = openMetaMap();
+            initCompressionDictionary();
         }
         onVersionChange(currentVersion);
     }
 
+    /**
+     * Load the compression dictionary from the metadata map, or store the
+     * configured one. If the dictionary is needed but there is none, it is
+     * trained from the first pages that are written.
+     */
+    private void initCompressionDictionary() {
+        String hex = meta.get(DICTIONARY_KEY);
+        byte[] dictionary = compressionDictionary;
+        if (hex != null) {
+            byte[] stored = StringUtils.convertHexToBytes(hex);
+            DataUtils.checkArgument(dictionary == null || Arrays.equals(dictionary, stored),
+                    "The compression dictionary does not match the dictionary of the store");
+            compressionDictionary = stored;
+        } else if (dictionary != null) {
+            if (!isReadOnly()) {
+                meta.put(DICTIONARY_KEY, StringUtils.convertBytesToHex(dictionary));
+                markMetaChanged();
+            }
+        }
+        if (pageCompressor instanceof CompressDictionary) {
+            metaPageCompressor = new CompressLZF();
+            if (compressionDictionary == null) {
+                dictionarySamples = new ArrayList<>();
+            } else {
+                ((CompressDictionary) pageCompressor).setDictionary(compressionDictionary);
+            }
+        }
+    }
+
     private MVMap<String,String> openMetaMap() {
         String metaIdStr = layout.get(META_ID_KEY);
         int metaId;
@@ -828,6 +948,43 @@ public class MVStore implements AutoCloseable {
         metaChanged = true;
     }
 
+    /**
+     * Check that the segment size of the file store matches the one in the
+     * store header. A file that was created before the segment size was
+     * stored in the header gets it (unless it is read-only).
+     *
+     * @param openedByName whether the file store was opened by this store
+     *            (and so its segment files may be listed)
+     * @return whether the store header needs to be written
+     */
+    private boolean checkSegmentSize(boolean openedByName) {
+        int stored = DataUtils.readHexInt(storeHeader, HDR_SEGMENT_SIZE, 0);
+        String fileName = fileStore.getFileName();
+        if (fileStore instanceof SegmentedFileStore) {
+            int segmentSize = ((SegmentedFileStore) fileStore).getSegmentSize();
+            if (stored == 0) {
+                if (fileStore.isReadOnly()) {
+                    return false;
+                }
+                storeHeader.put(HDR_SEGMENT_SIZE, segmentSize);
+                return true;
+            } else if (stored != segmentSize) {
+                throw DataUtils.newMVStoreException(DataUtils.ERROR_UNSUPPORTED_FORMAT,
+                        "The segment size {0} does not match the segment size {1} of file {2}",
+                        segmentSize, stored, fileName);
+            }
+        } else if (stored != 0) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_UNSUPPORTED_FORMAT,
+                    "File {0} is split into segments of {1} bytes, and can only be opened as a segmented file",
+                    fileName, stored);
+        } else if (openedByName && !SegmentedFileStore.getSegmentFileNames(fileName).isEmpty()) {
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_UNSUPPORTED_FORMAT,
+                    "File {0} has segment files, and can only be opened with the segment size",
+                    fileName);
+        }
+        return false;
+    }
+
     private void readStoreHeader() {
         Chunk newest = null;
         boolean assumeCleanShutdown = true;
@@ -1058,6 +1215,33 @@ public class MVStore implements AutoCloseable {
         assert validateFileLength("on open");
     }
 
+    /**
+     * Whether pages are compressed with a codec (LZ4, DICTIONARY), which
+     * needs at least FORMAT_CODEC to read.
+     */
+    private boolean isPageCodecUsed() {
+        return pageCompressor != null && pageCompressor.getAlgorithm() != Compressor.LZF
+                && pageCompressor.getAlgorithm() != Compressor.DEFLATE;
+    }
+
+    private long getFormatRead() {
+        return DataUtils.readHexLong(storeHeader, HDR_FORMAT_READ,
+                DataUtils.readHexLong(storeHeader, HDR_FORMAT, 1));
+    }
+
+    /**
+     * Set the write format, and the read format if it is newer than the
+     * default format, so that older versions refuse to open the file.
+     *
+     * @param format the format
+     */
+    private void setFormat(int format) {
+        storeHeader.put(HDR_FORMAT, format);
+        if (format > FORMAT_DEFAULT) {
+            storeHeader.put(HDR_FORMAT_READ, format);
+        }
+    }
+
     private MVStoreException getUnsupportedWriteFormatException(long format, int expectedFormat, String s) {
         format = DataUtils.readHexLong(storeHeader, HDR_FORMAT_READ, format);
         if (format >= FORMAT_READ_MIN && format <= FORMAT_READ_MAX) {
@@ -1305,6 +1489,9 @@ public class MVStore implements AutoCloseable {
     }
 
     private void closeStore(boolean normalShutdown, int allowedCompactionTime) {
+        if (normalShutdown && isOpen() && !storeLock.isHeldByCurrentThread()) {
+            beforeCommit();
+        }
         // If any other thead have already initiated closure procedure,
         // isClosed() would wait until closure is done and then  we jump out of the loop.
         // This is a subtle difference between !isClosed() and isOpen().
@@ -1325,6 +1512,10 @@ public class MVStore implements AutoCloseable {
                                 }
                                 setRetentionTime(0);
                                 commit();
+                                if (hasUnsavedChanges()) {
+                                    // a dictionary was trained while storing
+                                    commit();
+                                }
                                 if (allowedCompactionTime > 0) {
                                     compactFile(allowedCompactionTime);
                                 } else if (allowedCompactionTime < 0) {
@@ -1455,9 +1646,24 @@ public class MVStore implements AutoCloseable {
      * @return the new version (incremented if there were changes)
      */
     public long commit() {
+        if (!storeLock.isHeldByCurrentThread()) {
+            beforeCommit();
+        }
         return commit(x -> true);
     }
 
+    /**
+     * Let the open maps write buffered changes, see
+     * {@link MVMap#beforeCommit()}.
+     */
+    private void beforeCommit() {
+        for (MVMap<?, ?> map : maps.values()) {
+            if (!map.isClosed()) {
+                map.beforeCommit();
+            }
+        }
+    }
+
     private long commit(Predicate<MVStore> check) {
         // we need to prevent re-entrance, which may be possible,
         // because meta map is modified within storeNow() and that
@@ -1510,6 +1716,7 @@ public class MVStore implements AutoCloseable {
             int currentUnsavedPageCount = unsavedMemory;
             // it is ok, since that path suppose to be single-threaded under storeLock
             //noinspection NonAtomicOperationOnVolatileField
+            storeTrainedDictionary(currentVersion + 1);
             long version = ++currentVersion;
             ArrayList<Page<?,?>> changed = collectChangedMapRoots(version);
 
@@ -1592,6 +1799,7 @@ public class MVStore implements AutoCloseable {
                                     ArrayList<Page<?,?>> changed, long time, long version) {
         serializationLock.lock();
         try {
+            useTrainedDictionary(version);
             Chunk c = createChunk(time, version);
             chunks.put(c.id, c);
             WriteBuffer buff = getWriteBuffer();
@@ -1967,7 +2175,7 @@ public class MVStore implements AutoCloseable {
      * @return if there are any changes
      */
     public boolean hasUnsavedChanges() {
-        if (metaChanged) {
+        if (metaChanged || trainedDictionary != null && trainedDictionaryVersion == Long.MAX_VALUE) {
             return true;
         }
         long lastStoredVersion = currentVersion - 1;
@@ -2277,6 +2485,17 @@ public class MVStore implements AutoCloseable {
     public void compactFile(int maxCompactTime) {
         setRetentionTime(0);
         long stopAt = System.nanoTime() + maxCompactTime * 1_000_000L;
+        if (fileStore instanceof SegmentedFileStore) {
+            // empty segments are deleted, so chunks don't need to be moved
+            while (compactSegments(95, 16 * 1024 * 1024)) {
+                commit();
+                sync();
+                if (System.nanoTime() - stopAt > 0L) {
+                    break;
+                }
+            }
+            return;
+        }
         while (compact(95, 16 * 1024 * 1024)) {
             sync();
             compactMoveChunks(95, 16 * 1024 * 1024);
@@ -2348,6 +2567,119 @@ public class MVStore implements AutoCloseable {
         }
     }
 
+    /**
+     * Move the live data out of sparsely filled segments of a segmented file
+     * store, so that these segments become free and their files are deleted.
+     *
+     * @param targetFillRate the fill rate (in percent) below which a segment
+     *            is evacuated
+     * @param writeLimit the approximate number of live bytes to move
+     * @return if any pages were rewritten, or any chunks were freed
+     */
+    private boolean compactSegments(int targetFillRate, int writeLimit) {
+        storeLock.lock();
+        try {
+            checkOpen();
+            return evacuateSparseSegments(targetFillRate, writeLimit);
+        } finally {
+            unlockAndCheckPanicCondition();
+        }
+    }
+
+    private boolean evacuateSparseSegments(int targetFillRate, int writeLimit) {
+        assert storeLock.isHeldByCurrentThread();
+        if (!reuseSpace || lastChunk == null) {
+            return false;
+        }
+        SegmentedFileStore store = (SegmentedFileStore) fileStore;
+        serializationLock.lock();
+        try {
+            TxCounter txCounter = registerVersionUsage();
+            try {
+                long time = getTimeSinceCreation();
+                acceptChunkOccupancyChanges(time, currentVersion);
+                // chunks that were rewritten before are freed now, which
+                // deletes the segments that became empty
+                boolean dropped = dropUnusedChunks() > 0;
+                int[] evacuate = findSparseSegments(store, targetFillRate, writeLimit, time);
+                store.setEvacuating(evacuate);
+                if (evacuate.length == 0) {
+                    return dropped;
+                }
+                HashSet<Integer> idSet = new HashSet<>();
+                for (Chunk c : chunks.values()) {
+                    if (c.isMovable() && Arrays.binarySearch(evacuate,
+                            store.getSegment(c.block * BLOCK_SIZE)) >= 0) {
+                        idSet.add(c.id);
+                    }
+                }
+                return !idSet.isEmpty() && compactRewrite(idSet) > 0 || dropped;
+            } finally {
+                deregisterVersionUsage(txCounter);
+            }
+        } finally {
+            serializationLock.unlock();
+        }
+    }
+
+    /**
+     * Find the segments with the lowest fill rate. The live data of a chunk
+     * is attributed to the segment where it starts. Segments that contain
+     * chunks which can not be moved yet, the main file, and the segment of
+     * the last chunk are never evacuated.
+     *
+     * @param store the file store
+     * @param targetFillRate the fill rate (in percent) below which a segment
+     *            is evacuated
+     * @param writeLimit the approximate number of live bytes to move
+     * @param time the time
+     * @return the sorted list of segments
+     */
+    private int[] findSparseSegments(SegmentedFileStore store, int targetFillRate, int writeLimit, long time) {
+        int lastSegment = store.getSegment(lastChunk.block * BLOCK_SIZE);
+        long[] live = new long[lastSegment];
+        BitSet pinned = new BitSet();
+        for (Chunk c : chunks.values()) {
+            if (!c.isSaved()) {
+                continue;
+            }
+            int first = store.getSegment(c.block * BLOCK_SIZE);
+            if (first >= lastSegment) {
+                continue;
+            }
+            if (c.isLive()) {
+                if (!c.isMovable() || !isSeasonedChunk(c, time)) {
+                    int last = store.getSegment((c.block + c.len) * BLOCK_SIZE - 1);
+                    pinned.set(first, last + 1);
+                }
+                live[first] += (long) c.len * BLOCK_SIZE * c.getFillRate() / 100;
+            }
+        }
+        long limit = (long) store.getSegmentSize() * targetFillRate / 100;
+        ArrayList<Integer> candidates = new ArrayList<>();
+        for (int segment = 1; segment < lastSegment; segment++) {
+            if (!pinned.get(segment) && store.hasSegment(segment) && live[segment] < limit) {
+                candidates.add(segment);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(segment -> live[segment]));
+        int count = 0;
+        long written = 0;
+        for (int segment : candidates) {
+            if (count > 0 && written + live[segment] > writeLimit) {
+                break;
+            }
+            written += live[segment];
+            count++;
+        }
+        int[] evacuate = new int[count];
+        for (int i = 0; i < count; i++) {
+            evacuate[i] = candidates.get(i);
+        }
+        Arrays.sort(evacuate);
+        return evacuate;
+    }
+
     /**
      * Get the current fill rate (percentage of used space in the file). Unlike
      * the fill rate of the store, here we only account for chunk data; the fill
@@ -2565,15 +2897,18 @@ public class MVStore implements AutoCloseable {
             if (p == null) {
                 Chunk chunk = getChunk(pos);
                 int pageOffset = DataUtils.getPageOffset(pos);
-                try {
-                    ByteBuffer buff = chunk.readBufferForPage(fileStore, pageOffset, pos);
-                    p = Page.read(buff, pos, map);
-                } catch (MVStoreException e) {
-                    throw e;
-                } catch (Exception e) {
-                    throw DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
-                            "Unable to read the page at position {0}, chunk {1}, offset {2}",
-                            pos, chunk.id, pageOffset, e);
+                p = readMappedPage(map, chunk, pageOffset, pos);
+                if (p == null) {
+                    try {
+                        ByteBuffer buff = chunk.readBufferForPage(fileStore, pageOffset, pos);
+                        p = Page.read(buff, pos, map);
+                    } catch (MVStoreException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        throw DataUtils.newMVStoreException(DataUtils.ERROR_FILE_CORRUPT,
+                                "Unable to read the page at position {0}, chunk {1}, offset {2}",
+                                pos, chunk.id, pageOffset, e);
+                    }
                 }
                 cachePage(p);
             }
@@ -2586,6 +2921,42 @@ public class MVStore implements AutoCloseable {
         }
     }
 
+    /**
+     * Read a page directly from the mapped memory of the file, if the file is
+     * memory mapped. This avoids allocating and copying a buffer per page.
+     *
+     * @param map the map
+     * @param chunk the chunk
+     * @param pageOffset the offset of the page within the chunk
+     * @param pos the page position
+     * @return the page, or null if it needs to be read by copying
+     */
+    private <K,V> Page<K,V> readMappedPage(MVMap<K,V> map, Chunk chunk, int pageOffset, long pos) {
+        MappedRegion region = fileStore == null ? null : fileStore.acquireMappedRegion();
+        if (region == null) {
+            return null;
+        }
+        try {
+            long block = chunk.block;
+            ByteBuffer buff = chunk.sliceBufferForPage(fileStore, region, block, pageOffset, pos);
+            if (buff == null) {
+                return null;
+            }
+            Page<K,V> p;
+            try {
+                p = Page.read(buff, pos, map);
+            } catch (RuntimeException e) {
+                // read it again by copying, which reports the error
+                return null;
+            }
+            // if the chunk was moved meanwhile, the data may have been
+            // overwritten while reading
+            return chunk.block == block ? p : null;
+        } finally {
+            region.release();
+        }
+    }
+
     private long[] getToC(Chunk chunk) {
         if (chunk.tocPos == 0) {
             // legacy chunk without table of content
@@ -2645,22 +3016,91 @@ public class MVStore implements AutoCloseable {
         return pageNo;
     }
 
-    Compressor getCompressorFast() {
-        if (compressorFast == null) {
-            compressorFast = new CompressLZF();
+    /**
+     * Get the compressor for new pages of the given map. Must only be called
+     * by the serialization thread.
+     *
+     * @param map the map
+     * @return the compressor, or null if compression is disabled
+     */
+    Compressor getPageCompressor(MVMap<?, ?> map) {
+        if (metaPageCompressor != null && (map == meta || map == layout)) {
+            // the dictionary is stored in the metadata map
+            return metaPageCompressor;
+        }
+        return pageCompressor;
+    }
+
+    /**
+     * Get a compressor to expand pages.
+     *
+     * @param algorithm the compression algorithm
+     * @return the compressor
+     */
+    Compressor getCompressor(int algorithm) {
+        if (algorithm == Compressor.DICTIONARY) {
+            // the dictionary may be trained later
+            byte[] dictionary = compressionDictionary;
+            CompressDictionary compressor = dictionaryCompressor;
+            if (compressor == null || compressor.getDictionary() != dictionary) {
+                compressor = new CompressDictionary(dictionary);
+                dictionaryCompressor = compressor;
+            }
+            return compressor;
         }
-        return compressorFast;
+        return readCompressors.computeIfAbsent(algorithm, CompressorRegistry::getCompressor);
     }
 
-    Compressor getCompressorHigh() {
-        if (compressorHigh == null) {
-            compressorHigh = new CompressDeflate();
+    /**
+     * Add a serialized page to the samples for training the compression
+     * dictionary, if one still needs to be trained. Must only be called by
+     * the serialization thread.
+     *
+     * @param page the uncompressed page data
+     * @param pos the offset
+     * @param len the length
+     */
+    void addDictionarySample(byte[] page, int pos, int len) {
+        ArrayList<byte[]> samples = dictionarySamples;
+        if (samples == null) {
+            return;
+        }
+        samples.add(Arrays.copyOfRange(page, pos, pos + len));
+        dictionarySamplesSize += len;
+        if (dictionarySamplesSize >= DICTIONARY_TRAINING_SIZE) {
+            dictionarySamples = null;
+            trainedDictionary = CompressDictionary.train(samples, CompressDictionary.MAX_DICTIONARY_SIZE);
         }
-        return compressorHigh;
     }
 
-    int getCompressionLevel() {
-        return compressionLevel;
+    /**
+     * Store the trained dictionary in the metadata map of the given version,
+     * and start to use it when that version is serialized. That way, no
+     * page is stored that needs a dictionary that is not stored yet.
+     *
+     * @param version the version that will be stored next
+     */
+    private void storeTrainedDictionary(long version) {
+        byte[] dictionary = trainedDictionary;
+        if (dictionary != null && trainedDictionaryVersion == Long.MAX_VALUE) {
+            meta.put(DICTIONARY_KEY, StringUtils.convertBytesToHex(dictionary));
+            markMetaChanged();
+            trainedDictionaryVersion = version;
+        }
+    }
+
+    /**
+     * Start to use the trained dictionary, if it is stored in the given
+     * version. Must only be called by the serialization thread.
+     *
+     * @param version the version that is serialized
+     */
+    private void useTrainedDictionary(long version) {
+        if (version >= trainedDictionaryVersion && compressionDictionary == null) {
+            byte[] dictionary = trainedDictionary;
+            compressionDictionary = dictionary;
+            ((CompressDictionary) pageCompressor).setDictionary(dictionary);
+        }
     }
 
     public int getPageSplitSize() {
@@ -3224,7 +3664,11 @@ public class MVStore implements AutoCloseable {
                         if (isIdle()) {
                             moveSize *= 4;
                         }
-                        compactMoveChunks(101, moveSize);
+                        if (fileStore instanceof SegmentedFileStore) {
+                            evacuateSparseSegments(autoCompactFillRate, moveSize);
+                        } else {
+                            compactMoveChunks(101, moveSize);
+                        }
                     } finally {
                         unlockAndCheckPanicCondition();
                     }
@@ -3286,7 +3730,11 @@ public class MVStore implements AutoCloseable {
                                 break;
                             }
                         }
-                        if (!compactMoveChunks(101, writeLimit)) {
+                        if (fileStore instanceof SegmentedFileStore) {
+                            if (!evacuateSparseSegments(targetFillRate, writeLimit)) {
+                                break;
+                            }
+                        } else if (!compactMoveChunks(101, writeLimit)) {
                             break;
                         }
                     } finally {
@@ -3984,6 +4432,21 @@ public class MVStore implements AutoCloseable {
             return set("cacheSize", mb);
         }
 
+        /**
+         * Split the file into segments of the given size, each stored in its
+         * own file (see {@link SegmentedFileStore}). Empty segments are
+         * deleted, so that compacting the file does not need to move chunks.
+         * By default, a single file is used. The segment size is stored in
+         * the file: it is used when an existing file is opened without this
+         * setting, and a different segment size is rejected.
+         *
+         * @param mb the segment size in megabytes
+         * @return this
+         */
+        public Builder segmentSize(int mb) {
+            return set("segmentSize", mb);
+        }
+
         /**
          * Set the read cache concurrency. The default is 16, meaning 16
          * segments are used.
@@ -4025,6 +4488,37 @@ public class MVStore implements AutoCloseable {
             return set("compress", 2);
         }
 
+        /**
+         * Compress data before writing using the given algorithm, see
+         * {@link CompressorRegistry}. The algorithm id is stored in each
+         * compressed page; pages that are compressed with algorithms other
+         * than LZF and Deflate can not be read by older versions.
+         * <p>
+         * The DICTIONARY algorithm uses the dictionary set with
+         * {@link #compressionDictionary(byte[])}, or else trains one from
+         * the first pages that are written. The dictionary is stored in the
+         * file.
+         *
+         * @param algorithm the algorithm name, optionally followed by a space
+         *            and the options
+         * @return this
+         */
+        public Builder compress(String algorithm) {
+            return set("compressAlgorithm", algorithm);
+        }
+
+        /**
+         * Set the dictionary of the DICTIONARY compression algorithm. A store
+         * that already has a dictionary can only be opened with the same
+         * dictionary, or without one.
+         *
+         * @param dictionary the dictionary
+         * @return this
+         */
+        public Builder compressionDictionary(byte[] dictionary) {
+            return set("compressDictionary", dictionary);
+        }
+
         /**
          * Set the amount of memory a page should contain at most, in bytes,
          * before it is split. The default is 16 KB for persistent stores and 4
@@ -17,9 +17,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
-import org.h2.compress.CompressDeflate;
-import org.h2.compress.CompressLZF;
 import org.h2.compress.Compressor;
+import org.h2.compress.CompressorRegistry;
 import org.h2.engine.Constants;
 import org.h2.mvstore.tx.TransactionStore;
 import org.h2.mvstore.type.BasicDataType;
@@ -109,13 +108,23 @@ public class MVStoreTool {
             return;
         }
         long size = FileUtils.size(fileName);
+        for (String segmentFileName : SegmentedFileStore.getSegmentFileNames(fileName)) {
+            size += FileUtils.size(segmentFileName);
+        }
         pw.printf("File %s, %d bytes, %d MB\n", fileName, size, size / 1024 / 1024);
         int blockSize = MVStore.BLOCK_SIZE;
         TreeMap<Integer, Long> mapSizesTotal =
                 new TreeMap<>();
         long pageSizeTotal = 0;
+        // the segments of a segmented file are read through the file store
+        int segmentSize = SegmentedFileStore.readSegmentSize(fileName);
+        SegmentedFileStore segments = null;
         try (FileChannel file = FilePath.get(fileName).open("r")) {
-            long fileSize = file.size();
+            if (segmentSize > 0) {
+                segments = new SegmentedFileStore(segmentSize);
+                segments.open(fileName, true, null);
+            }
+            long fileSize = segments == null ? file.size() : segments.size();
             int len = Long.toHexString(fileSize).length();
             ByteBuffer block = ByteBuffer.allocate(4096);
             long pageCount = 0;
@@ -126,7 +135,7 @@ public class MVStoreTool {
                 // or file system issues.
                 // So we should skip the broken block at end of the DB file.
                 try {
-                    DataUtils.readFully(file, pos, block);
+                    readFully(file, segments, pos, block);
                 } catch (MVStoreException e) {
                     pos += blockSize;
                     pw.printf("ERROR illegal position %d%n", pos);
@@ -162,7 +171,7 @@ public class MVStoreTool {
                 pw.printf("%n%0" + len + "x chunkHeader %s%n",
                         pos, c.toString());
                 ByteBuffer chunk = ByteBuffer.allocate(length);
-                DataUtils.readFully(file, pos, chunk);
+                readFully(file, segments, pos, chunk);
                 int p = block.position();
                 pos += length;
                 int remaining = c.pageCount;
@@ -232,8 +241,8 @@ public class MVStoreTool {
                     if (mapId == 0 && details) {
                         ByteBuffer data;
                         if (compressed) {
-                            boolean fast = (type & DataUtils.PAGE_COMPRESSED_HIGH) != DataUtils.PAGE_COMPRESSED_HIGH;
-                            Compressor compressor = getCompressor(fast);
+                            Compressor compressor = CompressorRegistry.getCompressor(
+                                    DataUtils.getCompressAlgorithm(type, chunk));
                             int lenAdd = DataUtils.readVarInt(chunk);
                             int compLen = pageSize + start - chunk.position();
                             byte[] comp = Utils.newBytes(compLen);
@@ -320,16 +329,24 @@ public class MVStoreTool {
                 int percent = (int) (100 * mapSizesTotal.get(mapId) / pageSizeTotal);
                 pw.printf("map %x: %d bytes, %d%%%n", mapId, mapSizesTotal.get(mapId), percent);
             }
-        } catch (IOException e) {
+        } catch (IOException | MVStoreException e) {
             pw.println("ERROR: " + e);
             e.printStackTrace(pw);
+        } finally {
+            if (segments != null) {
+                segments.close();
+            }
         }
         // ignore
         pw.flush();
     }
 
-    private static Compressor getCompressor(boolean fast) {
-        return fast ? new CompressLZF() : new CompressDeflate();
+    private static void readFully(FileChannel file, SegmentedFileStore segments, long pos, ByteBuffer dst) {
+        if (segments == null) {
+            DataUtils.readFully(file, pos, dst);
+        } else {
+            dst.put(segments.readFully(pos, dst.remaining()));
+        }
     }
 
     /**
@@ -346,10 +363,11 @@ public class MVStoreTool {
             pw.println("File not found: " + fileName);
             return "File not found: " + fileName;
         }
-        long fileLength = FileUtils.size(fileName);
         try (MVStore store = new MVStore.Builder().
                 fileName(fileName).recoveryMode().
                 readOnly().open()) {
+            // including the segment files, if any
+            long fileLength = store.getFileStore().size();
             MVMap<String, String> layout = store.getLayoutMap();
             Map<String, Object> header = store.getStoreHeader();
             long fileCreated = DataUtils.readHexLong(header, "created", 0L);
@@ -620,6 +638,11 @@ public class MVStoreTool {
             pw.println("File not found: " + fileName);
             return newestVersion;
         }
+        if (SegmentedFileStore.readSegmentSize(fileName) > 0
+                || !SegmentedFileStore.getSegmentFileNames(fileName).isEmpty()) {
+            pw.println("ERROR: rollback of segmented file is not supported: " + fileName);
+            return newestVersion;
+        }
         FileChannel file = null;
         FileChannel target = null;
         int blockSize = MVStore.BLOCK_SIZE;
@@ -626,13 +626,7 @@ public abstract class Page<K,V> implements Cloneable {
         }
         boolean compressed = (type & DataUtils.PAGE_COMPRESSED) != 0;
         if (compressed) {
-            Compressor compressor;
-            if ((type & DataUtils.PAGE_COMPRESSED_HIGH) ==
-                    DataUtils.PAGE_COMPRESSED_HIGH) {
-                compressor = map.getStore().getCompressorHigh();
-            } else {
-                compressor = map.getStore().getCompressorFast();
-            }
+            Compressor compressor = map.getStore().getCompressor(DataUtils.getCompressAlgorithm(type, buff));
             int lenAdd = DataUtils.readVarInt(buff);
             int compLen = buff.remaining();
             byte[] comp;
@@ -722,16 +716,18 @@ public abstract class Page<K,V> implements Cloneable {
         MVStore store = map.getStore();
         int expLen = buff.position() - compressStart;
         if (expLen > 16) {
-            int compressionLevel = store.getCompressionLevel();
-            if (compressionLevel > 0) {
-                Compressor compressor;
+            Compressor compressor = store.getPageCompressor(map);
+            if (compressor != null) {
+                int algorithm = compressor.getAlgorithm();
                 int compressType;
-                if (compressionLevel == 1) {
-                    compressor = store.getCompressorFast();
+                int codecLen = 0;
+                if (algorithm == Compressor.LZF) {
                     compressType = DataUtils.PAGE_COMPRESSED;
-                } else {
-                    compressor = store.getCompressorHigh();
+                } else if (algorithm == Compressor.DEFLATE) {
                     compressType = DataUtils.PAGE_COMPRESSED_HIGH;
+                } else {
+                    compressType = DataUtils.PAGE_COMPRESSED_CODEC;
+                    codecLen = 1;
                 }
                 byte[] comp = new byte[expLen * 2];
                 ByteBuffer byteBuffer = buff.getBuffer();
@@ -744,13 +740,17 @@ public abstract class Page<K,V> implements Cloneable {
                     exp = Utils.newBytes(expLen);
                     buff.position(compressStart).get(exp);
                 }
+                store.addDictionarySample(exp, pos, expLen);
                 int compLen = compressor.compress(exp, pos, expLen, comp, 0);
-                int plus = DataUtils.getVarIntLen(expLen - compLen);
+                int plus = codecLen + DataUtils.getVarIntLen(expLen - compLen);
                 if (compLen + plus < expLen) {
                     buff.position(typePos)
                         .put((byte) (type | compressType));
-                    buff.position(compressStart)
-                        .putVarInt(expLen - compLen)
+                    buff.position(compressStart);
+                    if (codecLen > 0) {
+                        buff.put((byte) algorithm);
+                    }
+                    buff.putVarInt(expLen - compLen)
                         .put(comp, 0, compLen);
                 }
             }
@@ -0,0 +1,467 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.h2.store.fs.FilePath;
+import org.h2.store.fs.FileUtils;
+import org.h2.store.fs.encrypt.FileEncrypt;
+import org.h2.store.fs.niomapped.MappedRegion;
+
+/**
+ * A file store that splits the data into segments of fixed size, each stored
+ * in its own file. The first segment is the main file (which contains the
+ * store header); segment n is stored in the file "&lt;fileName&gt;.n.seg".
+ * The segment size is stored in the store header, so that the file can not
+ * be opened with a different segment size, or as a single file.
+ * <p>
+ * A segment file is deleted as soon as the whole segment is free, so the
+ * space is given back to the file system without first moving all chunks to
+ * the beginning of the file. To free a sparsely filled segment, the live data
+ * of its chunks is rewritten (see {@link MVStore#compactFile(int)}); while
+ * this is going on, no new chunks are placed in the segment.
+ * <p>
+ * Chunks may span two segments. Pages can not be read without copying, as
+ * the files are not memory mapped as a whole.
+ */
+public class SegmentedFileStore extends FileStore {
+
+    /**
+     * The suffix of the segment files.
+     */
+    public static final String SUFFIX = ".seg";
+
+    /**
+     * The segment size in bytes.
+     */
+    private final int segmentSize;
+
+    /**
+     * The open segment files (except the main file).
+     */
+    private final ConcurrentHashMap<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+
+    /**
+     * The segments where no space must be allocated, because their live data
+     * is moved away.
+     */
+    private volatile int[] evacuating = new int[0];
+
+    /**
+     * Create a new segmented file store.
+     *
+     * @param segmentSize the segment size in bytes (a multiple of the block
+     *            size)
+     */
+    public SegmentedFileStore(int segmentSize) {
+        DataUtils.checkArgument(segmentSize > 0 && segmentSize % MVStore.BLOCK_SIZE == 0,
+                "Invalid segment size {0}", segmentSize);
+        this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public void open(String fileName, boolean readOnly, char[] encryptionKey) {
+        super.open(fileName, readOnly, encryptionKey);
+        if (fileSize > segmentSize) {
+            close();
+            throw DataUtils.newIllegalArgumentException(
+                    "File {0} is larger than the segment size {1}", fileName, segmentSize);
+        }
+        try {
+            for (String name : getSegmentFileNames(fileName)) {
+                int segment = getSegmentNumber(name);
+                FileChannel file = getSegment(segment, true);
+                fileSize = Math.max(fileSize, getSegmentStart(segment) + file.size());
+            }
+        } catch (IOException | RuntimeException e) {
+            try { close(); } catch (Exception ignore) {}
+            throw DataUtils.newMVStoreException(
+                    DataUtils.ERROR_READING_FAILED,
+                    "Could not open segments of file {0}", fileName, e);
+        }
+    }
+
+    @Override
+    public ByteBuffer readFully(long pos, int len) {
+        ByteBuffer dst = ByteBuffer.allocate(len);
+        for (int off = 0; off < len;) {
+            int segment = getSegment(pos + off);
+            long segmentPos = pos + off - getSegmentStart(segment);
+            int l = (int) Math.min(len - off, segmentSize - segmentPos);
+            FileChannel file = getSegment(segment, false);
+            if (file == null) {
+                throw DataUtils.newMVStoreException(
+                        DataUtils.ERROR_READING_FAILED,
+                        "Could not read from position {0}, segment {1} of file {2} does not exist",
+                        pos, segment, getFileName());
+            }
+            ByteBuffer part = dst.duplicate();
+            part.limit(off + l);
+            part.position(off);
+            DataUtils.readFully(file, segmentPos, part.slice());
+            off += l;
+        }
+        readCount.incrementAndGet();
+        readBytes.addAndGet(len);
+        return dst;
+    }
+
+    @Override
+    public MappedRegion acquireMappedRegion() {
+        return null;
+    }
+
+    @Override
+    public void writeFully(long pos, ByteBuffer src) {
+        int len = src.remaining();
+        fileSize = Math.max(fileSize, pos + len);
+        for (int off = 0; off < len;) {
+            int segment = getSegment(pos + off);
+            long segmentPos = pos + off - getSegmentStart(segment);
+            int l = (int) Math.min(len - off, segmentSize - segmentPos);
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + l);
+            DataUtils.writeFully(getSegment(segment, true), segmentPos, part);
+            src.position(src.position() + l);
+            off += l;
+        }
+        writeCount.incrementAndGet();
+        writeBytes.addAndGet(len);
+    }
+
+    @Override
+    public void close() {
+        try {
+            for (FileChannel file : segments.values()) {
+                if (file.isOpen()) {
+                    file.close();
+                }
+            }
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(
+                    DataUtils.ERROR_WRITING_FAILED,
+                    "Closing failed for file {0}", getFileName(), e);
+        } finally {
+            segments.clear();
+            super.close();
+        }
+    }
+
+    @Override
+    public void sync() {
+        super.sync();
+        for (FileChannel file : segments.values()) {
+            try {
+                file.force(true);
+            } catch (IOException e) {
+                throw DataUtils.newMVStoreException(
+                        DataUtils.ERROR_WRITING_FAILED,
+                        "Could not sync file {0}", file, e);
+            }
+        }
+    }
+
+    @Override
+    public void truncate(long size) {
+        int last = getSegment(Math.max(size - 1, 0));
+        for (Integer segment : segments.keySet()) {
+            if (segment > last) {
+                deleteSegment(segment);
+            }
+        }
+        if (last == 0) {
+            super.truncate(size);
+            return;
+        }
+        FileChannel file = getSegment(last, false);
+        if (file != null) {
+            writeCount.incrementAndGet();
+            try {
+                file.truncate(size - getSegmentStart(last));
+            } catch (IOException e) {
+                throw DataUtils.newMVStoreException(
+                        DataUtils.ERROR_WRITING_FAILED,
+                        "Could not truncate file {0} to size {1}",
+                        getFileName(), size, e);
+            }
+        }
+        fileSize = Math.min(fileSize, size);
+    }
+
+    @Override
+    long allocate(int length, long reservedLow, long reservedHigh) {
+        int[] evacuate = evacuating;
+        BitSet[] reserved = reserve(evacuate);
+        try {
+            return super.allocate(length, reservedLow, reservedHigh);
+        } finally {
+            release(evacuate, reserved);
+        }
+    }
+
+    @Override
+    long predictAllocation(int blocks, long reservedLow, long reservedHigh) {
+        int[] evacuate = evacuating;
+        BitSet[] reserved = reserve(evacuate);
+        try {
+            return super.predictAllocation(blocks, reservedLow, reservedHigh);
+        } finally {
+            release(evacuate, reserved);
+        }
+    }
+
+    private BitSet[] reserve(int[] evacuate) {
+        BitSet[] reserved = new BitSet[evacuate.length];
+        for (int i = 0; i < evacuate.length; i++) {
+            reserved[i] = freeSpace.reserve(getSegmentStart(evacuate[i]), segmentSize);
+        }
+        return reserved;
+    }
+
+    private void release(int[] evacuate, BitSet[] reserved) {
+        for (int i = 0; i < evacuate.length; i++) {
+            freeSpace.release(getSegmentStart(evacuate[i]), reserved[i]);
+        }
+    }
+
+    /**
+     * Mark the space as free. Segment files (except the main file and the
+     * last segment) that are completely free afterwards are deleted.
+     *
+     * @param pos the position in bytes
+     * @param length the number of bytes
+     */
+    @Override
+    public void free(long pos, int length) {
+        super.free(pos, length);
+        int last = getSegment(Math.max(fileSize - 1, 0));
+        for (int segment = Math.max(getSegment(pos), 1),
+                end = Math.min(getSegment(pos + length - 1), last - 1); segment <= end; segment++) {
+            if (segments.containsKey(segment) && freeSpace.isFree(getSegmentStart(segment), segmentSize)) {
+                deleteSegment(segment);
+            }
+        }
+    }
+
+    /**
+     * Set the segments whose live data is about to be moved away. No space is
+     * allocated in these segments, so that they become free.
+     *
+     * @param segments the segments (replacing the previous ones)
+     */
+    void setEvacuating(int[] segments) {
+        evacuating = segments;
+    }
+
+    /**
+     * Get the segment size.
+     *
+     * @return the segment size in bytes
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Get the number of segment files, including the main file.
+     *
+     * @return the number of files
+     */
+    public int getSegmentCount() {
+        return segments.size() + 1;
+    }
+
+    /**
+     * Check whether the file of the given segment exists.
+     *
+     * @param segment the segment
+     * @return true if it exists
+     */
+    boolean hasSegment(int segment) {
+        return segment == 0 || segments.containsKey(segment);
+    }
+
+    /**
+     * Get the segment that contains the given position.
+     *
+     * @param pos the position in bytes
+     * @return the segment
+     */
+    int getSegment(long pos) {
+        return (int) (pos / segmentSize);
+    }
+
+    private long getSegmentStart(int segment) {
+        return (long) segment * segmentSize;
+    }
+
+    /**
+     * Get the name of the file of a segment.
+     *
+     * @param fileName the name of the main file
+     * @param segment the segment (1 or larger)
+     * @return the file name
+     */
+    public static String getSegmentFileName(String fileName, int segment) {
+        return fileName + "." + segment + SUFFIX;
+    }
+
+    /**
+     * Get the names of the existing segment files of a file, ordered by
+     * segment. The main file itself is not included.
+     *
+     * @param fileName the name of the main file
+     * @return the file names (empty if there are none)
+     */
+    public static List<String> getSegmentFileNames(String fileName) {
+        FilePath f = FilePath.get(fileName).toRealPath();
+        FilePath parent = f.getParent();
+        ArrayList<String> list = new ArrayList<>();
+        if (parent == null || !parent.isDirectory()) {
+            return list;
+        }
+        TreeSet<Integer> found = new TreeSet<>();
+        for (FilePath p : parent.newDirectoryStream()) {
+            String name = p.getName();
+            if (f.getName().equals(getMainFileName(name))) {
+                found.add(getSegmentNumber(name));
+            }
+        }
+        for (int segment : found) {
+            list.add(getSegmentFileName(fileName, segment));
+        }
+        return list;
+    }
+
+    /**
+     * Get the name of the main file of a segment file.
+     *
+     * @param fileName the file name
+     * @return the name of the main file, or null if this is not the name of
+     *         a segment file
+     */
+    public static String getMainFileName(String fileName) {
+        if (!fileName.endsWith(SUFFIX)) {
+            return null;
+        }
+        int end = fileName.length() - SUFFIX.length();
+        int dot = fileName.lastIndexOf('.', end - 1);
+        // segment 1 or larger, without leading zeros
+        if (dot < 0 || end - dot - 1 > 9 || end == dot + 1 || fileName.charAt(dot + 1) == '0') {
+            return null;
+        }
+        for (int i = dot + 1; i < end; i++) {
+            char c = fileName.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+        }
+        return fileName.substring(0, dot);
+    }
+
+    private static int getSegmentNumber(String segmentFileName) {
+        int end = segmentFileName.length() - SUFFIX.length();
+        return Integer.parseInt(segmentFileName.substring(segmentFileName.lastIndexOf('.', end - 1) + 1, end));
+    }
+
+    /**
+     * Read the segment size from the store header of a file, without opening
+     * the store.
+     *
+     * @param fileName the name of the main file
+     * @return the segment size in bytes, or 0 if the file does not exist, is
+     *         not segmented, or the header can not be read (for example
+     *         because the file is encrypted)
+     */
+    static int readSegmentSize(String fileName) {
+        FilePath f = FilePath.get(fileName);
+        if (!f.exists()) {
+            return 0;
+        }
+        try (FileChannel file = f.open("r")) {
+            int len = (int) Math.min(file.size(), 2 * MVStore.BLOCK_SIZE);
+            ByteBuffer buff = ByteBuffer.allocate(len);
+            DataUtils.readFully(file, 0, buff);
+            byte[] bytes = buff.array();
+            for (int i = 0; i + MVStore.BLOCK_SIZE <= len; i += MVStore.BLOCK_SIZE) {
+                HashMap<String, String> m = DataUtils.parseChecksummedMap(
+                        Arrays.copyOfRange(bytes, i, i + MVStore.BLOCK_SIZE));
+                if (m != null) {
+                    return DataUtils.readHexInt(m, MVStore.HDR_SEGMENT_SIZE, 0);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // the store reports the problem when it is opened
+        }
+        return 0;
+    }
+
+    private FileChannel getSegment(int segment, boolean create) {
+        if (segment == 0) {
+            return getFile();
+        }
+        FileChannel file = segments.get(segment);
+        if (file == null && create) {
+            file = segments.computeIfAbsent(segment, this::openSegment);
+        }
+        return file;
+    }
+
+    private FileChannel openSegment(int segment) {
+        String name = getSegmentFileName(getFileName(), segment);
+        try {
+            FileChannel file = FilePath.get(name).open(isReadOnly() ? "r" : "rw");
+            if (getEncryptedFile() != null) {
+                file = new FileEncrypt(name, (FileEncrypt) getFile(), file);
+            }
+            return file;
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(
+                    DataUtils.ERROR_WRITING_FAILED,
+                    "Could not open file {0}", name, e);
+        }
+    }
+
+    private void deleteSegment(int segment) {
+        FileChannel file = segments.remove(segment);
+        if (file == null) {
+            return;
+        }
+        // the (now empty) segment may be used again
+        int[] evacuate = evacuating;
+        int[] remaining = new int[evacuate.length];
+        int count = 0;
+        for (int s : evacuate) {
+            if (s != segment) {
+                remaining[count++] = s;
+            }
+        }
+        if (count < evacuate.length) {
+            evacuating = Arrays.copyOf(remaining, count);
+        }
+        writeCount.incrementAndGet();
+        String name = getSegmentFileName(getFileName(), segment);
+        try {
+            file.close();
+        } catch (IOException e) {
+            throw DataUtils.newMVStoreException(
+                    DataUtils.ERROR_WRITING_FAILED,
+                    "Closing failed for file {0}", name, e);
+        }
+        FileUtils.delete(name);
+    }
+
+}
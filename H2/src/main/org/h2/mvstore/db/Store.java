@@ -118,7 +118,12 @@ public final class Store {
                 builder.encryptionKey(decodePassword(key));
             }
             if (db.getSettings().compressData) {
-                builder.compress();
+                String compressAlgorithm = db.getSettings().compressAlgorithm;
+                if (compressAlgorithm == null) {
+                    builder.compress();
+                } else {
+                    builder.compress(compressAlgorithm);
+                }
                 // use a larger page split size to improve the compression ratio
                 builder.pageSplitSize(64 * 1024);
             }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.lsm;
+
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.type.DataType;
+
+/**
+ * A bloom filter over the keys of one level of an LSM map. The filter is kept
+ * in memory only, and is rebuilt from the level when the map is opened.
+ */
+final class BloomFilter {
+
+    /**
+     * The number of bits per expected key.
+     */
+    private static final int BITS_PER_KEY = 10;
+
+    /**
+     * The number of hash functions (ln 2 * BITS_PER_KEY).
+     */
+    private static final int HASH_COUNT = 7;
+
+    private final long[] bits;
+    private final long bitCount;
+
+    BloomFilter(long expectedKeys) {
+        long words = Math.max(1, (Math.max(expectedKeys, 1) * BITS_PER_KEY + 63) >>> 6);
+        bits = new long[(int) Math.min(words, Integer.MAX_VALUE - 8)];
+        bitCount = (long) bits.length << 6;
+    }
+
+    /**
+     * Add a key hash.
+     *
+     * @param hash the hash, see {@link DataUtils#getHash(DataType, Object)}
+     */
+    void add(long hash) {
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = Long.remainderUnsigned(hash + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Check whether a key with this hash may have been added.
+     *
+     * @param hash the hash, see {@link DataUtils#getHash(DataType, Object)}
+     * @return false if the key was definitely not added
+     */
+    boolean mightContain(long hash) {
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = Long.remainderUnsigned(hash + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
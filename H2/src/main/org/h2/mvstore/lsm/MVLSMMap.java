@@ -0,0 +1,679 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.lsm;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.Page;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.BasicDataType;
+import org.h2.mvstore.type.DataType;
+import org.h2.util.Utils;
+
+/**
+ * A log-structured merge-tree map for write heavy workloads.
+ * <p>
+ * Writes go to an in-memory memtable, without reading the B-tree. When the
+ * memtable is full, it is written as a new immutable level, which is a
+ * regular map named {@code <name>.lsm.<n>}. When there are more than
+ * {@code maxLevels} levels, they are merged in the background into the
+ * B-tree of this map, which is the bottom level. Lookups check the memtable,
+ * then the levels from newest to oldest (skipping levels whose bloom filter
+ * does not contain the key), and then the bottom level.
+ * <p>
+ * Differences to MVMap:
+ * <ul>
+ * <li>put and remove are blind writes; they always return null.
+ * Conditional operations (putIfAbsent, replace, remove with a value) read
+ * the current value and are atomic.</li>
+ * <li>size, isEmpty, cursors and iterators only see the bottom level; call
+ * {@link #compact()} first to get an exact result.</li>
+ * <li>The memtable is written to a new level by {@link MVStore#commit()} and
+ * when the store is closed, but not by the background auto-commit; after a
+ * crash, writes since the last explicit commit or {@link #flush()} may be
+ * lost.</li>
+ * </ul>
+ *
+ * @param <K> the key class
+ * @param <V> the value class
+ */
+public final class MVLSMMap<K, V> extends MVMap<K, V> {
+
+    /**
+     * The marker for a removed key in the memtable and in levels.
+     */
+    static final Object TOMBSTONE = new Object();
+
+    private static final String LEVEL_INFIX = ".lsm.";
+
+    /**
+     * The compaction thread, shared by all LSM maps.
+     */
+    private static final ThreadPoolExecutor COMPACTOR = Utils.createSingleThreadExecutor("H2-lsm-compaction");
+
+    private final int memtableSize;
+    private final int maxLevels;
+
+    /**
+     * Writers to the memtable hold the read lock, freezing the memtable
+     * requires the write lock.
+     */
+    private final ReentrantReadWriteLock memtableLock = new ReentrantReadWriteLock();
+
+    /**
+     * Guards writing frozen memtables to levels, and the list of levels.
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /**
+     * Only one compaction runs at a time.
+     */
+    private final ReentrantLock compactLock = new ReentrantLock();
+
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final AtomicInteger memtableCount = new AtomicInteger();
+    private volatile ConcurrentSkipListMap<K, Object> memtable;
+
+    /**
+     * Memtables that are being written to levels, newest first.
+     */
+    private final ConcurrentLinkedDeque<ConcurrentSkipListMap<K, Object>> frozen = new ConcurrentLinkedDeque<>();
+
+    /**
+     * The levels, newest first (copy on write).
+     */
+    private volatile List<Level<K>> levels = Collections.emptyList();
+
+    private int nextLevel;
+    private volatile boolean initialized;
+
+    /**
+     * Whether this is a read-only view of the bottom level.
+     */
+    private final boolean bottomOnly;
+    private volatile Throwable compactionFailure;
+
+    public MVLSMMap(Map<String, Object> config, DataType<K> keyType, DataType<V> valueType) {
+        super(config, keyType, valueType);
+        this.memtableSize = (Integer) config.get("memtableSize");
+        this.maxLevels = (Integer) config.get("maxLevels");
+        this.memtable = newMemtable();
+        this.bottomOnly = false;
+    }
+
+    /**
+     * A read-only view of the bottom level.
+     */
+    private MVLSMMap(MVLSMMap<K, V> source) {
+        super(source);
+        this.memtableSize = source.memtableSize;
+        this.maxLevels = source.maxLevels;
+        this.memtable = newMemtable();
+        this.initialized = true;
+        this.bottomOnly = true;
+    }
+
+    @Override
+    public MVLSMMap<K, V> cloneIt() {
+        return new MVLSMMap<>(this);
+    }
+
+    @Override
+    public String getType() {
+        return "lsm";
+    }
+
+    @Override
+    public V get(Page<K, V> p, K key) {
+        if (bottomOnly) {
+            return super.get(p, key);
+        }
+        init();
+        return getCurrent(key, memtable.get(key));
+    }
+
+    /**
+     * Get the value from the frozen memtables and levels.
+     *
+     * @param key the key
+     * @return the value, TOMBSTONE if removed, or null if not found
+     */
+    private Object getBelowMemtable(K key) {
+        for (ConcurrentSkipListMap<K, Object> m : frozen) {
+            Object value = m.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        // read after the frozen memtables: a memtable is only removed
+        // from there after its level was added
+        List<Level<K>> list = levels;
+        if (list.isEmpty()) {
+            return null;
+        }
+        long hash = DataUtils.getHash(getKeyType(), key);
+        for (Level<K> level : list) {
+            if (level.getBloomFilter(getKeyType()).mightContain(hash)) {
+                Object value = level.map.get(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V getCurrent(K key, Object memtableValue) {
+        Object value = memtableValue != null ? memtableValue : getBelowMemtable(key);
+        if (value == null) {
+            // the root is read after the levels: a compaction updates the
+            // bottom level before it removes the levels
+            return super.get(getRootPage(), key);
+        }
+        return value == TOMBSTONE ? null : (V) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V operate(K key, V value, DecisionMaker<? super V> decisionMaker) {
+        if (decisionMaker == DecisionMaker.PUT || decisionMaker == DecisionMaker.REMOVE) {
+            write(key, decisionMaker == DecisionMaker.PUT ? value : TOMBSTONE);
+            return null;
+        }
+        if (value == null) {
+            // page rewrite, which only applies to the bottom level
+            return super.operate(key, null, decisionMaker);
+        }
+        init();
+        beforeWrite();
+        Object[] previous = new Object[1];
+        memtableLock.readLock().lock();
+        try {
+            memtable.compute(key, (k, current) -> {
+                V existing = getCurrent(k, current);
+                previous[0] = existing;
+                decisionMaker.reset();
+                Decision decision = decisionMaker.decide(existing, value);
+                switch (decision) {
+                case PUT:
+                    return decisionMaker.selectValue(existing, value);
+                case REMOVE:
+                    return existing == null ? current : TOMBSTONE;
+                default:
+                    return current;
+                }
+            });
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+        afterWrite();
+        return (V) previous[0];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object key, Object value) {
+        init();
+        beforeWrite();
+        boolean[] removed = new boolean[1];
+        memtableLock.readLock().lock();
+        try {
+            memtable.compute((K) key, (k, current) -> {
+                V existing = getCurrent(k, current);
+                removed[0] = existing != null && getValueType().compare(existing, (V) value) == 0;
+                return removed[0] ? TOMBSTONE : current;
+            });
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+        afterWrite();
+        return removed[0];
+    }
+
+    private void write(K key, Object value) {
+        DataUtils.checkArgument(key != null, "The key may not be null");
+        init();
+        beforeWrite();
+        memtableLock.readLock().lock();
+        try {
+            memtable.put(key, value);
+        } finally {
+            memtableLock.readLock().unlock();
+        }
+        afterWrite();
+    }
+
+    private void afterWrite() {
+        if (memtableCount.incrementAndGet() >= memtableSize) {
+            if (freeze(false)) {
+                writeFrozen();
+                scheduleCompaction();
+            }
+        }
+    }
+
+    /**
+     * Replace the memtable with an empty one.
+     *
+     * @param force whether to freeze even if the memtable is not full
+     * @return whether this thread froze the memtable
+     */
+    private boolean freeze(boolean force) {
+        memtableLock.writeLock().lock();
+        try {
+            if (force ? memtable.isEmpty() : memtableCount.get() < memtableSize) {
+                return false;
+            }
+            frozen.addFirst(memtable);
+            memtable = newMemtable();
+            memtableCount.set(0);
+            return true;
+        } finally {
+            memtableLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write all frozen memtables to new levels, oldest first.
+     */
+    private void writeFrozen() {
+        flushLock.lock();
+        try {
+            ConcurrentSkipListMap<K, Object> m;
+            while ((m = frozen.peekLast()) != null) {
+                MVMap<K, Object> map = getStore().openMap(getName() + LEVEL_INFIX + nextLevel, levelBuilder());
+                BloomFilter bloom = new BloomFilter(m.size());
+                for (Map.Entry<K, Object> e : m.entrySet()) {
+                    map.append(e.getKey(), e.getValue());
+                    bloom.add(DataUtils.getHash(getKeyType(), e.getKey()));
+                }
+                map.flushAndGetRoot();
+                List<Level<K>> list = new ArrayList<>(levels.size() + 1);
+                list.add(new Level<>(nextLevel++, map, bloom));
+                list.addAll(levels);
+                levels = list;
+                frozen.removeLast();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (levels.size() > maxLevels && compactionScheduled.compareAndSet(false, true)) {
+            COMPACTOR.execute(() -> {
+                compactionScheduled.set(false);
+                try {
+                    compactLevels();
+                } catch (Throwable t) {
+                    compactionFailure = t;
+                }
+            });
+        }
+    }
+
+    /**
+     * Write the memtable to a new level. After the next commit of the store,
+     * all writes made before this call are persisted. The store does this
+     * itself on an explicit commit, so this is only needed to persist the
+     * writes with the auto-commit.
+     */
+    public void flush() {
+        checkCompactionFailure();
+        init();
+        freeze(true);
+        writeFrozen();
+        scheduleCompaction();
+    }
+
+    @Override
+    protected void beforeCommit() {
+        // flushLock: a level map written by this thread triggered the commit
+        if (bottomOnly || !initialized || flushLock.isHeldByCurrentThread()) {
+            return;
+        }
+        // compaction is left to the next write, the store may be closing
+        freeze(true);
+        writeFrozen();
+    }
+
+    /**
+     * Flush the memtable and merge all levels into the bottom level. This
+     * method blocks until the merge is done. Afterwards size and iteration
+     * include all entries written before this call.
+     */
+    public void compact() {
+        flush();
+        compactLevels();
+    }
+
+    /**
+     * Get the number of levels above the bottom level.
+     *
+     * @return the number of levels
+     */
+    public int getLevelCount() {
+        init();
+        return levels.size();
+    }
+
+    private void checkCompactionFailure() {
+        Throwable t = compactionFailure;
+        if (t != null) {
+            compactionFailure = null;
+            throw DataUtils.newMVStoreException(DataUtils.ERROR_INTERNAL,
+                    "Compaction of map {0} failed", getName(), t);
+        }
+    }
+
+    /**
+     * Merge sort the current levels into the bottom level, then remove them.
+     */
+    private void compactLevels() {
+        compactLock.lock();
+        try {
+            List<Level<K>> compacted = levels;
+            if (compacted.isEmpty()) {
+                return;
+            }
+            DataType<K> keyType = getKeyType();
+            // for equal keys, the newest level (lowest index) comes first
+            PriorityQueue<LevelCursor<K>> queue = new PriorityQueue<>(compacted.size(), (a, b) -> {
+                int comp = keyType.compare(a.cursor.getKey(), b.cursor.getKey());
+                return comp != 0 ? comp : Integer.compare(a.index, b.index);
+            });
+            for (int i = 0; i < compacted.size(); i++) {
+                new LevelCursor<>(compacted.get(i).map.cursor(null), i).advance(queue);
+            }
+            while (!queue.isEmpty()) {
+                LevelCursor<K> top = queue.poll();
+                K key = top.cursor.getKey();
+                Object value = top.cursor.getValue();
+                top.advance(queue);
+                while (!queue.isEmpty() && keyType.compare(queue.peek().cursor.getKey(), key) == 0) {
+                    queue.poll().advance(queue);
+                }
+                applyToBottom(key, value);
+            }
+            flushLock.lock();
+            try {
+                List<Level<K>> list = new ArrayList<>(levels);
+                list.removeAll(compacted);
+                levels = list;
+            } finally {
+                flushLock.unlock();
+            }
+            // oldest first: a concurrent lookup that misses a removed level
+            // must not find an older value in a level that is not removed yet
+            for (int i = compacted.size() - 1; i >= 0; i--) {
+                getStore().removeMap(compacted.get(i).map);
+            }
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applyToBottom(K key, Object value) {
+        if (value == TOMBSTONE) {
+            super.operate(key, null, DecisionMaker.REMOVE);
+        } else {
+            super.operate(key, (V) value, DecisionMaker.PUT);
+        }
+    }
+
+    @Override
+    public void clear() {
+        init();
+        List<Level<K>> removed;
+        compactLock.lock();
+        try {
+            flushLock.lock();
+            try {
+                memtableLock.writeLock().lock();
+                try {
+                    memtable = newMemtable();
+                    memtableCount.set(0);
+                    frozen.clear();
+                    removed = levels;
+                    levels = Collections.emptyList();
+                    super.clear();
+                } finally {
+                    memtableLock.writeLock().unlock();
+                }
+            } finally {
+                flushLock.unlock();
+            }
+        } finally {
+            compactLock.unlock();
+        }
+        for (Level<K> level : removed) {
+            getStore().removeMap(level.map);
+        }
+    }
+
+    /**
+     * Open the levels of an existing map. This can not be done in the
+     * constructor, because the name of a new map is only known afterwards.
+     */
+    private void init() {
+        if (initialized) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            if (initialized) {
+                return;
+            }
+            String prefix = getName() + LEVEL_INFIX;
+            List<Level<K>> list = new ArrayList<>();
+            for (String name : getStore().getMapNames()) {
+                if (name.startsWith(prefix) && isNumber(name, prefix.length())) {
+                    int seq = Integer.parseInt(name.substring(prefix.length()));
+                    list.add(new Level<>(seq, getStore().openMap(name, levelBuilder()), null));
+                    nextLevel = Math.max(nextLevel, seq + 1);
+                }
+            }
+            list.sort((a, b) -> Integer.compare(b.seq, a.seq));
+            levels = list;
+            initialized = true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private static boolean isNumber(String s, int start) {
+        if (start == s.length()) {
+            return false;
+        }
+        for (int i = start; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MVMap.Builder<K, Object> levelBuilder() {
+        return new MVMap.Builder<K, Object>().keyType(getKeyType())
+                .valueType(new LevelValueType<>(getValueType())).singleWriter();
+    }
+
+    private ConcurrentSkipListMap<K, Object> newMemtable() {
+        return new ConcurrentSkipListMap<>(getKeyType()::compare);
+    }
+
+    /**
+     * An immutable level.
+     */
+    private static final class Level<K> {
+
+        final int seq;
+        final MVMap<K, Object> map;
+        private volatile BloomFilter bloomFilter;
+
+        Level(int seq, MVMap<K, Object> map, BloomFilter bloomFilter) {
+            this.seq = seq;
+            this.map = map;
+            this.bloomFilter = bloomFilter;
+        }
+
+        BloomFilter getBloomFilter(DataType<K> keyType) {
+            BloomFilter bloom = bloomFilter;
+            if (bloom == null) {
+                // a level of a re-opened map
+                bloom = new BloomFilter(map.sizeAsLong());
+                for (Cursor<K, Object> c = map.cursor(null); c.hasNext();) {
+                    bloom.add(DataUtils.getHash(keyType, c.next()));
+                }
+                bloomFilter = bloom;
+            }
+            return bloom;
+        }
+    }
+
+    /**
+     * The position in a level during compaction.
+     */
+    private static final class LevelCursor<K> {
+
+        final Cursor<K, Object> cursor;
+        final int index;
+
+        LevelCursor(Cursor<K, Object> cursor, int index) {
+            this.cursor = cursor;
+            this.index = index;
+        }
+
+        void advance(PriorityQueue<LevelCursor<K>> queue) {
+            if (cursor.hasNext()) {
+                cursor.next();
+                queue.add(this);
+            }
+        }
+    }
+
+    /**
+     * The value type of a level: a flag byte (0 for a removed key), followed
+     * by the value.
+     */
+    static final class LevelValueType<V> extends BasicDataType<Object> {
+
+        private final DataType<V> valueType;
+
+        LevelValueType(DataType<V> valueType) {
+            this.valueType = valueType;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public int getMemory(Object obj) {
+            return obj == TOMBSTONE ? 1 : 1 + valueType.getMemory((V) obj);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void write(WriteBuffer buff, Object obj) {
+            if (obj == TOMBSTONE) {
+                buff.put((byte) 0);
+            } else {
+                buff.put((byte) 1);
+                valueType.write(buff, (V) obj);
+            }
+        }
+
+        @Override
+        public Object read(ByteBuffer buff) {
+            return buff.get() == 0 ? TOMBSTONE : valueType.read(buff);
+        }
+
+        @Override
+        public Object[] createStorage(int size) {
+            return new Object[size];
+        }
+    }
+
+    /**
+     * A builder for this class.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    public static class Builder<K, V> extends MVMap.BasicBuilder<MVLSMMap<K, V>, K, V> {
+
+        private int memtableSize = 10_000;
+        private int maxLevels = 4;
+
+        public Builder() {}
+
+        @Override
+        public Builder<K, V> keyType(DataType<? super K> dataType) {
+            setKeyType(dataType);
+            return this;
+        }
+
+        @Override
+        public Builder<K, V> valueType(DataType<? super V> dataType) {
+            setValueType(dataType);
+            return this;
+        }
+
+        /**
+         * Set the number of writes after which the memtable is written to a
+         * new level.
+         *
+         * @param memtableSize the number of writes
+         * @return this
+         */
+        public Builder<K, V> memtableSize(int memtableSize) {
+            DataUtils.checkArgument(memtableSize > 0, "Invalid memtable size {0}", memtableSize);
+            this.memtableSize = memtableSize;
+            return this;
+        }
+
+        /**
+         * Set the number of levels above which a background compaction
+         * is started.
+         *
+         * @param maxLevels the number of levels
+         * @return this
+         */
+        public Builder<K, V> maxLevels(int maxLevels) {
+            DataUtils.checkArgument(maxLevels >= 0, "Invalid number of levels {0}", maxLevels);
+            this.maxLevels = maxLevels;
+            return this;
+        }
+
+        @Override
+        protected MVLSMMap<K, V> create(Map<String, Object> config) {
+            Object type = config.get("type");
+            if (type != null && !"lsm".equals(type)) {
+                throw new IllegalArgumentException("Incompatible map type");
+            }
+            config.put("memtableSize", memtableSize);
+            config.put("maxLevels", maxLevels);
+            return new MVLSMMap<>(config, getKeyType(), getValueType());
+        }
+    }
+
+}
@@ -13,6 +13,7 @@ import org.h2.api.ErrorCode;
 import org.h2.engine.Constants;
 import org.h2.message.DbException;
 import org.h2.message.TraceSystem;
+import org.h2.mvstore.SegmentedFileStore;
 import org.h2.store.fs.FilePath;
 import org.h2.store.fs.FileUtils;
 
@@ -92,6 +93,8 @@ public class FileLister {
             String f = path.toString();
             if (f.endsWith(Constants.SUFFIX_MV_FILE)) {
                 ok = true;
+            } else if (isMVSegmentFile(f)) {
+                ok = true;
             } else if (all) {
                 if (f.endsWith(Constants.SUFFIX_LOCK_FILE)) {
                     ok = true;
@@ -110,4 +113,9 @@ public class FileLister {
         return files;
     }
 
+    private static boolean isMVSegmentFile(String fileName) {
+        String mainFileName = SegmentedFileStore.getMainFileName(fileName);
+        return mainFileName != null && mainFileName.endsWith(Constants.SUFFIX_MV_FILE);
+    }
+
 }
@@ -24,13 +24,14 @@ import org.h2.util.MemoryUnmapper;
  * Uses memory mapped files.
  * The file size is limited to 2 GB.
  */
-class FileNioMapped extends FileBaseDefault {
+public class FileNioMapped extends FileBaseDefault {
 
     private static final int GC_TIMEOUT_MS = 10_000;
     private final String name;
     private final MapMode mode;
     private FileChannel channel;
     private MappedByteBuffer mapped;
+    private volatile MappedRegion region;
     private long fileLength;
 
     FileNioMapped(String fileName, String mode) throws IOException {
@@ -48,6 +49,7 @@ class FileNioMapped extends FileBaseDefault {
         if (mapped == null) {
             return;
         }
+        closeRegion();
         // first write all data
         mapped.force();
 
@@ -72,6 +74,15 @@ class FileNioMapped extends FileBaseDefault {
         }
     }
 
+    /**
+     * Wait until the readers that do not copy are done.
+     */
+    private void closeRegion() throws IOException {
+        MappedRegion r = region;
+        region = null;
+        r.close(GC_TIMEOUT_MS);
+    }
+
     /**
      * Re-map byte buffer into memory, called when file size has changed or file
      * was created.
@@ -93,6 +104,19 @@ class FileNioMapped extends FileBaseDefault {
         if (SysProperties.NIO_LOAD_MAPPED) {
             mapped.load();
         }
+        region = new MappedRegion(mapped);
+    }
+
+    /**
+     * Acquire the mapped memory, to read from it without copying. The region
+     * must be released after use; until then, the file can not be unmapped
+     * (resized or closed).
+     *
+     * @return the region, or null if the file is currently not mapped
+     */
+    public MappedRegion acquireRegion() {
+        MappedRegion r = region;
+        return r != null && r.acquire() ? r : null;
     }
 
     private static void checkFileSizeLimit(long length) throws IOException {
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.store.fs.niomapped;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A reference counted view of the mapped memory of a file. Readers acquire
+ * the region, read slices of it without copying, and release it. The file may
+ * only unmap the memory after all readers have released the region, as
+ * accessing unmapped memory crashes the process.
+ */
+public final class MappedRegion {
+
+    /**
+     * The read-only view of the mapped memory (position and limit never
+     * change), or null after the region was closed, so that the mapped
+     * buffer can be garbage collected.
+     */
+    private ByteBuffer buffer;
+
+    private final int size;
+
+    /**
+     * The number of references, including the one of the file. After the
+     * file closed the region, 0 means no reader uses it any longer.
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    MappedRegion(MappedByteBuffer mapped) {
+        buffer = mapped.asReadOnlyBuffer();
+        size = buffer.capacity();
+    }
+
+    /**
+     * Try to acquire the region.
+     *
+     * @return false if the region was closed
+     */
+    boolean acquire() {
+        while (true) {
+            int r = references.get();
+            if (r <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(r, r + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release the region. Slices that were read must not be used afterwards.
+     */
+    public void release() {
+        references.decrementAndGet();
+    }
+
+    /**
+     * Get the number of mapped bytes.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get a read-only slice of the mapped memory, without copying. It is
+     * only valid until the region is released.
+     *
+     * @param pos the file position
+     * @param len the length
+     * @return the slice
+     */
+    public ByteBuffer slice(int pos, int len) {
+        ByteBuffer b = buffer.duplicate();
+        b.limit(pos + len);
+        b.position(pos);
+        return b.slice();
+    }
+
+    /**
+     * Read an int, without copying.
+     *
+     * @param pos the file position
+     * @return the value
+     */
+    public int getInt(int pos) {
+        return buffer.getInt(pos);
+    }
+
+    /**
+     * Close the region (by the file), and wait until all readers released
+     * it.
+     *
+     * @param timeoutMillis the maximum time to wait
+     * @throws IOException if a reader did not release the region in time
+     */
+    void close(long timeoutMillis) throws IOException {
+        long stopAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        int r = references.decrementAndGet();
+        while (r > 0) {
+            if (System.nanoTime() - stopAt > 0L) {
+                throw new IOException("Timeout (" + timeoutMillis + " ms) reached while waiting for "
+                        + r + " readers of the mapped buffer");
+            }
+            Thread.yield();
+            r = references.get();
+        }
+        buffer = null;
+    }
+
+}
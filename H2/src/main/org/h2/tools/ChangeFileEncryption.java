@@ -16,6 +16,7 @@ import java.util.concurrent.TimeUnit;
 import org.h2.engine.Constants;
 import org.h2.message.DbException;
 import org.h2.mvstore.MVStore;
+import org.h2.mvstore.SegmentedFileStore;
 import org.h2.store.FileLister;
 import org.h2.store.fs.FilePath;
 import org.h2.store.fs.FileUtils;
@@ -193,6 +194,10 @@ public class ChangeFileEncryption extends Tool {
         if (FileUtils.isDirectory(fileName)) {
             return;
         }
+        // segment files are encrypted with the key of the main file
+        if (!SegmentedFileStore.getSegmentFileNames(fileName).isEmpty()) {
+            throw new SQLException("can not change the encryption of segmented file " + fileName);
+        }
         // check that we have the right encryption key
         try {
             final MVStore source = new MVStore.Builder().
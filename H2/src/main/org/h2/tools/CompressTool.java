@@ -17,16 +17,14 @@ import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.h2.api.ErrorCode;
-import org.h2.compress.CompressDeflate;
-import org.h2.compress.CompressLZF;
-import org.h2.compress.CompressNo;
 import org.h2.compress.Compressor;
+import org.h2.compress.CompressorRegistry;
 import org.h2.compress.LZFInputStream;
 import org.h2.compress.LZFOutputStream;
 import org.h2.engine.Constants;
 import org.h2.message.DbException;
+import org.h2.mvstore.MVStoreException;
 import org.h2.util.Bits;
-import org.h2.util.StringUtils;
 import org.h2.util.Utils;
 
 /**
@@ -246,32 +244,18 @@ public class CompressTool {
      * @return index of the specified algorithm
      */
     private static int getCompressAlgorithm(String algorithm) {
-        algorithm = StringUtils.toUpperEnglish(algorithm);
-        if ("NO".equals(algorithm)) {
-            return Compressor.NO;
-        } else if ("LZF".equals(algorithm)) {
-            return Compressor.LZF;
-        } else if ("DEFLATE".equals(algorithm)) {
-            return Compressor.DEFLATE;
-        } else {
-            throw DbException.get(
-                    ErrorCode.UNSUPPORTED_COMPRESSION_ALGORITHM_1,
-                    algorithm);
+        try {
+            return CompressorRegistry.getAlgorithm(algorithm);
+        } catch (MVStoreException e) {
+            throw DbException.get(ErrorCode.UNSUPPORTED_COMPRESSION_ALGORITHM_1, e, algorithm);
         }
     }
 
     private static Compressor getCompressor(int algorithm) {
-        switch (algorithm) {
-        case Compressor.NO:
-            return new CompressNo();
-        case Compressor.LZF:
-            return new CompressLZF();
-        case Compressor.DEFLATE:
-            return new CompressDeflate();
-        default:
-            throw DbException.get(
-                    ErrorCode.UNSUPPORTED_COMPRESSION_ALGORITHM_1,
-                    Integer.toString(algorithm));
+        try {
+            return CompressorRegistry.getCompressor(algorithm);
+        } catch (MVStoreException e) {
+            throw DbException.get(ErrorCode.UNSUPPORTED_COMPRESSION_ALGORITHM_1, e, Integer.toString(algorithm));
         }
     }
 
@@ -132,10 +132,14 @@ import org.h2.test.store.TestDataUtils;
 import org.h2.test.store.TestDefrag;
 import org.h2.test.store.TestFreeSpace;
 import org.h2.test.store.TestKillProcessWhileWriting;
+import org.h2.test.store.TestLSMMap;
 import org.h2.test.store.TestMVRTree;
+import org.h2.test.store.TestMVShardedMap;
 import org.h2.test.store.TestMVStore;
 import org.h2.test.store.TestMVStoreBenchmark;
 import org.h2.test.store.TestMVStoreConcurrent;
+import org.h2.test.store.TestMVStoreMappedRead;
+import org.h2.test.store.TestMVStoreSegmented;
 import org.h2.test.store.TestMVStoreStopCompact;
 import org.h2.test.store.TestMVStoreTool;
 import org.h2.test.store.TestMVTableEngine;
@@ -905,6 +909,8 @@ kill -9 `jps -l | grep "org.h2.test." | cut -d " " -f 1`
         addTest(new TestFreeSpace());
         addTest(new TestKillProcessWhileWriting());
         addTest(new TestMVRTree());
+        addTest(new TestMVShardedMap());
+        addTest(new TestLSMMap());
         addTest(new TestMVStore());
         addTest(new TestMVStoreBenchmark());
         addTest(new TestMVStoreStopCompact());
@@ -957,6 +963,8 @@ kill -9 `jps -l | grep "org.h2.test." | cut -d " " -f 1`
         addTest(new TestDate());
         addTest(new TestDateTimeUtils());
         addTest(new TestMVStoreConcurrent());
+        addTest(new TestMVStoreMappedRead());
+        addTest(new TestMVStoreSegmented());
         addTest(new TestNetUtils());
         addTest(new TestPattern());
         addTest(new TestStringCache());
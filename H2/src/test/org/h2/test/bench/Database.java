@@ -24,6 +24,8 @@ import java.util.Random;
 import java.util.StringTokenizer;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.engine.Constants;
+import org.h2.store.fs.FileUtils;
 import org.h2.test.TestBase;
 import org.h2.tools.Server;
 import org.h2.util.StringUtils;
@@ -496,6 +498,24 @@ class Database {
         return executedStatements.get();
     }
 
+    /**
+     * Get the size of the database file, if this is an embedded H2 database.
+     *
+     * @return the size in KB, or -1 if unknown
+     */
+    int getFileSizeKB() {
+        if (!url.startsWith("jdbc:h2:./")) {
+            return -1;
+        }
+        String fileName = url.substring("jdbc:h2:".length());
+        int idx = fileName.indexOf(';');
+        if (idx >= 0) {
+            fileName = fileName.substring(0, idx);
+        }
+        fileName += Constants.SUFFIX_MV_FILE;
+        return FileUtils.exists(fileName) ? (int) (FileUtils.size(fileName) / 1024) : -1;
+    }
+
     /**
      * Get the database id.
      *
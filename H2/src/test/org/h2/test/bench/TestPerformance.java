@@ -184,6 +184,11 @@ public class TestPerformance implements Database.DatabaseTest {
             collect = true;
             runDatabase(db, tests, size);
             conn.close();
+            int fileSize = db.getFileSizeKB();
+            if (fileSize >= 0) {
+                db.log("File size", "KB", fileSize);
+                System.out.println("File size: " + fileSize + " KB");
+            }
             db.log("Executed statements", "#", db.getExecutedStatements());
             db.log("Total time", "ms", db.getTotalTime());
             System.out.println("Total time: " + db.getTotalTime() + " ms");
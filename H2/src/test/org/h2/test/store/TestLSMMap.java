@@ -0,0 +1,259 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.test.store;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.lsm.MVLSMMap;
+import org.h2.mvstore.type.StringDataType;
+import org.h2.store.fs.FileUtils;
+import org.h2.test.TestBase;
+
+/**
+ * Tests the LSM map.
+ */
+public class TestLSMMap extends TestBase {
+
+    /**
+     * Run just this test.
+     *
+     * @param a ignored
+     */
+    public static void main(String... a) throws Exception {
+        TestBase.createCaller().init().testFromMain();
+    }
+
+    @Override
+    public void test() throws Exception {
+        FileUtils.createDirectories(getBaseDir());
+        testPutGetRemove();
+        testConditional();
+        testRandom();
+        testReopen();
+        testConcurrentWrite();
+        testIngestPerformance();
+    }
+
+    private static MVLSMMap.Builder<Integer, String> builder(int memtableSize, int maxLevels) {
+        return new MVLSMMap.Builder<Integer, String>().valueType(StringDataType.INSTANCE)
+                .memtableSize(memtableSize).maxLevels(maxLevels);
+    }
+
+    private void testPutGetRemove() {
+        try (MVStore s = new MVStore.Builder().open()) {
+            MVLSMMap<Integer, String> map = s.openMap("data", builder(100, 100));
+            for (int i = 0; i < 1000; i++) {
+                assertNull(map.put(i, "v" + i));
+            }
+            assertEquals(10, map.getLevelCount());
+            for (int i = 0; i < 1000; i += 3) {
+                map.remove(i);
+            }
+            for (int i = 0; i < 1000; i += 5) {
+                map.put(i, "w" + i);
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(expected(i), map.get(i));
+            }
+            assertFalse(map.containsKey(3));
+            assertTrue(map.containsKey(5));
+            map.compact();
+            assertEquals(0, map.getLevelCount());
+            assertFalse(s.getMapNames().contains("data.lsm.0"));
+            int count = 0;
+            Iterator<Integer> it = map.keyIterator(null);
+            for (int i = 0; i < 1000; i++) {
+                if (expected(i) != null) {
+                    assertEquals(i, it.next().intValue());
+                    assertEquals(expected(i), map.get(i));
+                    count++;
+                }
+            }
+            assertFalse(it.hasNext());
+            assertEquals(count, map.size());
+            map.clear();
+            assertNull(map.get(5));
+            assertEquals(0, map.size());
+        }
+    }
+
+    private static String expected(int i) {
+        return i % 5 == 0 ? "w" + i : i % 3 == 0 ? null : "v" + i;
+    }
+
+    private void testConditional() {
+        try (MVStore s = new MVStore.Builder().open()) {
+            MVLSMMap<Integer, String> map = s.openMap("data", builder(10, 100));
+            map.put(1, "a");
+            map.put(2, "b");
+            map.flush();
+            assertEquals(1, map.getLevelCount());
+            // the existing values are in a level
+            assertEquals("a", map.putIfAbsent(1, "x"));
+            assertEquals("a", map.get(1));
+            assertNull(map.putIfAbsent(3, "c"));
+            assertEquals("c", map.get(3));
+            assertEquals("b", map.replace(2, "bb"));
+            assertEquals("bb", map.get(2));
+            assertNull(map.replace(4, "d"));
+            assertNull(map.get(4));
+            assertTrue(map.replace(2, "bb", "b2"));
+            assertFalse(map.replace(2, "bb", "b3"));
+            assertEquals("b2", map.get(2));
+            assertFalse(map.remove(1, "x"));
+            assertTrue(map.remove(1, "a"));
+            assertNull(map.get(1));
+            map.compact();
+            assertNull(map.putIfAbsent(1, "a2"));
+            assertEquals("a2", map.get(1));
+        }
+    }
+
+    private void testRandom() {
+        try (MVStore s = new MVStore.Builder().open()) {
+            MVLSMMap<Integer, String> map = s.openMap("data", builder(50, 3));
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            Random r = new Random(1);
+            for (int i = 0; i < 20_000; i++) {
+                int key = r.nextInt(500);
+                int op = r.nextInt(10);
+                if (op < 6) {
+                    map.put(key, "v" + i);
+                    expected.put(key, "v" + i);
+                } else if (op < 8) {
+                    map.remove(key);
+                    expected.remove(key);
+                } else if (op < 9) {
+                    assertEquals(expected.putIfAbsent(key, "a" + i), map.putIfAbsent(key, "a" + i));
+                } else {
+                    assertEquals(expected.get(key), map.get(key));
+                }
+            }
+            map.compact();
+            assertEquals(expected.size(), map.size());
+            for (Map.Entry<Integer, String> e : expected.entrySet()) {
+                assertEquals(e.getValue(), map.get(e.getKey()));
+            }
+        }
+    }
+
+    private void testReopen() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVLSMMap<Integer, String> map = s.openMap("data", builder(100, 100));
+            for (int i = 0; i < 550; i++) {
+                map.put(i, "v" + i);
+            }
+            map.remove(7);
+            map.flush();
+            // written by the commit, without flush
+            map.put(1000, "committed");
+            s.commit();
+            map.put(1001, "not committed");
+            s.closeImmediately();
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            assertTrue(s.getMapNames().contains("data.lsm.0"));
+            MVLSMMap<Integer, String> map = s.openMap("data", builder(100, 100));
+            assertEquals(7, map.getLevelCount());
+            assertEquals("v8", map.get(8));
+            assertNull(map.get(7));
+            assertEquals("committed", map.get(1000));
+            assertNull(map.get(1001));
+            map.put(8, "new");
+            map.compact();
+            // written when the store is closed
+            map.put(1002, "closed");
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            assertFalse(s.getMapNames().contains("data.lsm.0"));
+            assertThrows(IllegalArgumentException.class, () -> {
+                s.openMap("data");
+            });
+            MVLSMMap<Integer, String> map = s.openMap("data", builder(100, 100));
+            assertEquals(1, map.getLevelCount());
+            assertEquals(550, map.size());
+            assertEquals("new", map.get(8));
+            assertNull(map.get(7));
+            assertEquals("closed", map.get(1002));
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private void testConcurrentWrite() throws Exception {
+        try (MVStore s = new MVStore.Builder().open()) {
+            MVLSMMap<Integer, String> map = s.openMap("data", builder(100, 2));
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                int start = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = start; i < 20_000; i += threads.length) {
+                        map.put(i, "v" + i);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            for (int i = 0; i < 20_000; i++) {
+                assertEquals("v" + i, map.get(i));
+            }
+            map.compact();
+            assertEquals(20_000, map.size());
+        }
+    }
+
+    /**
+     * Compare the random insert rate of a plain map with the LSM map.
+     */
+    private void testIngestPerformance() {
+        if (!config.big) {
+            return;
+        }
+        int size = 2_000_000;
+        for (int i = 0; i < 3; i++) {
+            String fileName = getBaseDir() + "/" + getTestName();
+            FileUtils.delete(fileName);
+            long plain, lsm;
+            try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+                MVMap<Integer, String> map = s.openMap("data",
+                        new MVMap.Builder<Integer, String>().valueType(StringDataType.INSTANCE));
+                long time = System.nanoTime();
+                ingest(map, size);
+                s.commit();
+                plain = System.nanoTime() - time;
+            }
+            FileUtils.delete(fileName);
+            try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+                MVLSMMap<Integer, String> map = s.openMap("data", builder(100_000, 4));
+                long time = System.nanoTime();
+                ingest(map, size);
+                map.flush();
+                s.commit();
+                lsm = System.nanoTime() - time;
+            }
+            FileUtils.delete(fileName);
+            trace("ingest " + size + " plain: " + TimeUnit.NANOSECONDS.toMillis(plain)
+                    + " ms, lsm: " + TimeUnit.NANOSECONDS.toMillis(lsm) + " ms");
+        }
+    }
+
+    private static void ingest(Map<Integer, String> map, int size) {
+        Random r = new Random(1);
+        for (int i = 0; i < size; i++) {
+            map.put(r.nextInt(), "value " + i);
+        }
+    }
+
+}
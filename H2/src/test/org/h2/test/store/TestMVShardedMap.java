@@ -0,0 +1,234 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.test.store;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVShardedMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.StringDataType;
+import org.h2.store.fs.FileUtils;
+import org.h2.test.TestBase;
+import org.h2.util.Task;
+
+/**
+ * Tests the sharded map.
+ */
+public class TestMVShardedMap extends TestBase {
+
+    /**
+     * Run just this test.
+     *
+     * @param a ignored
+     */
+    public static void main(String... a) throws Exception {
+        TestBase.createCaller().init().testFromMain();
+    }
+
+    @Override
+    public void test() throws Exception {
+        FileUtils.createDirectories(getBaseDir());
+        testPutGetRemove();
+        testHash();
+        testOrderedCursor();
+        testReopen();
+        testConcurrentUpdate();
+        testScaling();
+    }
+
+    private static MVShardedMap.Builder<Integer, String> builder(int shards) {
+        return new MVShardedMap.Builder<Integer, String>().valueType(StringDataType.INSTANCE).shards(shards);
+    }
+
+    private void testPutGetRemove() {
+        try (MVStore s = new MVStore.Builder().open()) {
+            MVShardedMap<Integer, String> map = builder(8).open(s, "data");
+            assertTrue(map.isEmpty());
+            for (int i = 0; i < 1000; i++) {
+                assertNull(map.put(i, "v" + i));
+            }
+            assertEquals(1000, map.size());
+            int used = 0;
+            for (int i = 0; i < 8; i++) {
+                if (s.openMap("data.shard." + i).sizeAsLong() > 0) {
+                    used++;
+                }
+            }
+            assertEquals(8, used);
+            assertEquals("v5", map.put(5, "w5"));
+            assertEquals("w5", map.get(5));
+            assertEquals("w5", map.remove(5));
+            assertNull(map.get(5));
+            assertFalse(map.containsKey(5));
+            assertNull(map.putIfAbsent(5, "x5"));
+            assertEquals("x5", map.putIfAbsent(5, "y5"));
+            assertTrue(map.replace(5, "x5", "z5"));
+            assertFalse(map.remove(5, "x5"));
+            assertTrue(map.remove(5, "z5"));
+            assertEquals(999, map.size());
+            map.clear();
+            assertTrue(map.isEmpty());
+            assertNull(map.firstKey());
+        }
+    }
+
+    private void testHash() {
+        // the buffer used for hashing is reused, and dropped after a large key
+        StringDataType type = StringDataType.INSTANCE;
+        long small = DataUtils.getHash(type, "key");
+        String large = new String(new char[10_000]).replace('\0', 'x');
+        long largeHash = DataUtils.getHash(type, large);
+        assertEquals(small, DataUtils.getHash(type, "key"));
+        assertEquals(largeHash, DataUtils.getHash(type, large));
+        assertEquals(small, DataUtils.getHash(type, new String("key")));
+        assertFalse(small == DataUtils.getHash(type, "kez"));
+    }
+
+    private void testOrderedCursor() {
+        try (MVStore s = new MVStore.Builder().open()) {
+            MVShardedMap<Integer, String> map = builder(5).open(s, "data");
+            TreeMap<Integer, String> expected = new TreeMap<>();
+            Random r = new Random(1);
+            for (int i = 0; i < 2000; i++) {
+                int key = r.nextInt(100_000);
+                map.put(key, "v" + i);
+                expected.put(key, "v" + i);
+            }
+            assertEquals(expected.firstKey(), map.firstKey());
+            assertEquals(expected.lastKey(), map.lastKey());
+            Iterator<Map.Entry<Integer, String>> it = expected.entrySet().iterator();
+            for (Map.Entry<Integer, String> e : map.entrySet()) {
+                assertEquals(it.next(), e);
+            }
+            assertFalse(it.hasNext());
+            Iterator<Integer> keys = expected.tailMap(50_000).keySet().iterator();
+            for (Iterator<Integer> k = map.keyIterator(50_000); k.hasNext();) {
+                assertEquals(keys.next(), k.next());
+            }
+            assertFalse(keys.hasNext());
+            MVShardedMap.ShardedCursor<Integer, String> c = map.cursor(60_000, 20_000, true);
+            for (Map.Entry<Integer, String> e : expected.subMap(20_000, true, 60_000, true).descendingMap()
+                    .entrySet()) {
+                assertTrue(c.hasNext());
+                assertEquals(e.getKey(), c.next());
+                assertEquals(e.getValue(), c.getValue());
+            }
+            assertFalse(c.hasNext());
+        }
+    }
+
+    private void testReopen() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            MVShardedMap<Integer, String> map = builder(4).open(s, "data");
+            for (int i = 0; i < 100; i++) {
+                map.put(i, "v" + i);
+            }
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            assertThrows(IllegalArgumentException.class, () -> builder(8).open(s, "data"));
+            MVShardedMap<Integer, String> map = builder(4).open(s, "data");
+            assertEquals(100, map.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("v" + i, map.get(i));
+            }
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private void testConcurrentUpdate() {
+        try (MVStore s = new MVStore.Builder().open()) {
+            MVShardedMap<Integer, Integer> map = new MVShardedMap.Builder<Integer, Integer>().shards(4)
+                    .open(s, "data");
+            Task[] tasks = new Task[4];
+            for (int t = 0; t < tasks.length; t++) {
+                tasks[t] = new Task() {
+                    @Override
+                    public void call() {
+                        for (int i = 0; i < 10_000; i++) {
+                            int key = i % 100;
+                            while (true) {
+                                Integer old = map.putIfAbsent(key, 1);
+                                if (old == null || map.replace(key, old, old + 1)) {
+                                    break;
+                                }
+                            }
+                        }
+                    }
+                };
+                tasks[t].execute();
+            }
+            for (Task t : tasks) {
+                t.get();
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals(400, map.get(i).intValue());
+            }
+        }
+    }
+
+    /**
+     * Compare the update rate of a plain map with a sharded map, for 1 to 64
+     * threads updating a small set of keys.
+     */
+    private void testScaling() {
+        if (!config.big) {
+            return;
+        }
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            try (MVStore s = new MVStore.Builder().open()) {
+                MVMap<Integer, Integer> map = s.openMap("data");
+                long ops = measure(map, threads);
+                trace("threads " + threads + " plain: " + ops + " ops/s, update failure ratio "
+                        + s.getUpdateFailureRatio());
+            }
+            try (MVStore s = new MVStore.Builder().open()) {
+                MVShardedMap<Integer, Integer> map = new MVShardedMap.Builder<Integer, Integer>().shards(64)
+                        .open(s, "data");
+                long ops = measure(map, threads);
+                trace("threads " + threads + " sharded: " + ops + " ops/s, update failure ratio "
+                        + s.getUpdateFailureRatio());
+            }
+        }
+    }
+
+    private static long measure(ConcurrentMap<Integer, Integer> map, int threadCount) {
+        long duration = TimeUnit.SECONDS.toNanos(2);
+        AtomicLong total = new AtomicLong();
+        Task[] tasks = new Task[threadCount];
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            tasks[t] = new Task() {
+                @Override
+                public void call() {
+                    long count = 0;
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    while (System.nanoTime() - start < duration) {
+                        map.put(r.nextInt(1000), r.nextInt());
+                        count++;
+                    }
+                    total.addAndGet(count);
+                }
+            };
+            tasks[t].execute();
+        }
+        for (Task t : tasks) {
+            t.get();
+        }
+        return total.get() * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - start);
+    }
+
+}
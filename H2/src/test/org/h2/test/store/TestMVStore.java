@@ -5,6 +5,7 @@
  */
 package org.h2.test.store;
 
+import java.io.StringWriter;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
@@ -24,6 +25,7 @@ import org.h2.mvstore.FileStore;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.MVStoreException;
+import org.h2.mvstore.MVStoreTool;
 import org.h2.mvstore.OffHeapStore;
 import org.h2.mvstore.type.DataType;
 import org.h2.mvstore.type.ObjectDataType;
@@ -58,6 +60,7 @@ public class TestMVStore extends TestBase {
         testEntrySet();
         testCompressEmptyPage();
         testCompressed();
+        testCompressionAlgorithms();
         testFileFormatExample();
         testMaxChunkLength();
         testCacheInfo();
@@ -260,6 +263,68 @@ public class TestMVStore extends TestBase {
         }
     }
 
+    private void testCompressionAlgorithms() {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            putCompressionData(s.openMap("data"), 0);
+        }
+        long uncompressed = FileUtils.size(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).compress("LZF").open()) {
+            assertEquals("2", s.getStoreHeader().get("format").toString());
+            assertNull(s.getStoreHeader().get("formatRead"));
+        }
+        // older versions can not read pages compressed with a codec
+        try (MVStore s = new MVStore.Builder().fileName(fileName).compress("LZ4").open()) {
+            assertEquals("3", s.getStoreHeader().get("formatRead").toString());
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            assertEquals("3", s.getStoreHeader().get("format").toString());
+            assertEquals("3", s.getStoreHeader().get("formatRead").toString());
+        }
+        for (String algorithm : new String[] { "LZ4", "DICTIONARY" }) {
+            FileUtils.delete(fileName);
+            try (MVStore s = new MVStore.Builder().fileName(fileName).compress(algorithm).open()) {
+                putCompressionData(s.openMap("data"), 0);
+            }
+            long size = FileUtils.size(fileName);
+            assertTrue(algorithm + " " + size + " " + uncompressed, size < uncompressed);
+            try (MVStore s = new MVStore.Builder().fileName(fileName).readOnly().open()) {
+                assertEquals("3", s.getStoreHeader().get("formatRead").toString());
+            }
+            try (MVStore s = new MVStore.Builder().fileName(fileName).compress(algorithm).open()) {
+                putCompressionData(s.openMap("data"), 1);
+            }
+            try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+                MVMap<Integer, String> map = s.openMap("data");
+                assertEquals(8000, map.size());
+                for (int i = 0; i < 8000; i++) {
+                    assertEquals(getCompressionValue(i), map.get(i));
+                }
+                assertEquals("DICTIONARY".equals(algorithm),
+                        s.getMetaMap().containsKey("setting.compressDictionary"));
+            }
+            StringWriter w = new StringWriter();
+            MVStoreTool.dump(fileName, w, true);
+            assertFalse(w.toString(), w.toString().contains("ERROR"));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new MVStore.Builder().fileName(fileName).compress("DICTIONARY")
+                        .compressionDictionary(new byte[] { 1, 2, 3 }).open());
+        FileUtils.delete(fileName);
+    }
+
+    private static void putCompressionData(MVMap<Integer, String> map, int part) {
+        for (int i = part * 4000; i < (part + 1) * 4000; i++) {
+            map.put(i, getCompressionValue(i));
+        }
+    }
+
+    private static String getCompressionValue(int i) {
+        return "{\"id\":" + i + ",\"name\":\"customer" + i % 997 + "\",\"status\":\""
+                + (i % 3 == 0 ? "active" : "inactive") + "\"}";
+    }
+
     private void testFileFormatExample() {
         String fileName = getBaseDir() + "/" + getTestName();
         FileUtils.delete(fileName);
@@ -425,8 +490,8 @@ public class TestMVStore extends TestBase {
         s.setRetentionTime(Integer.MAX_VALUE);
         Map<String, Object> header = s.getStoreHeader();
         assertEquals("2", header.get("format").toString());
-        header.put("formatRead", "2");
-        header.put("format", "3");
+        header.put("formatRead", "3");
+        header.put("format", "4");
         forceWriteStoreHeader(s);
         MVMap<Integer, String> m = s.openMap("data");
         forceWriteStoreHeader(s);
@@ -718,7 +783,8 @@ public class TestMVStore extends TestBase {
             Map<String, Object> header = s.getStoreHeader();
             int format = Integer.parseInt(header.get("format").toString());
             assertEquals(2, format);
-            header.put("format", Integer.toString(format + 1));
+            // newer than the supported formats
+            header.put("format", "4");
             forceWriteStoreHeader(s);
         }
         assertThrows(DataUtils.ERROR_UNSUPPORTED_FORMAT, () -> openStore(fileName).close());
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.test.store;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.store.fs.FilePath;
+import org.h2.store.fs.FileUtils;
+import org.h2.store.fs.niomapped.FileNioMapped;
+import org.h2.store.fs.niomapped.MappedRegion;
+import org.h2.test.TestBase;
+import org.h2.util.Task;
+
+/**
+ * Tests reading pages from memory mapped files without copying.
+ */
+public class TestMVStoreMappedRead extends TestBase {
+
+    /**
+     * Run just this test.
+     *
+     * @param a ignored
+     */
+    public static void main(String... a) throws Exception {
+        TestBase.createCaller().init().testFromMain();
+    }
+
+    @Override
+    public void test() throws Exception {
+        FileUtils.createDirectories(getBaseDir());
+        testRegion();
+        testReadPages();
+        testConcurrentResize();
+        testAllocationRate();
+    }
+
+    private void testRegion() throws Exception {
+        String fileName = getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        FileChannel f = FilePath.get("nioMapped:" + fileName).open("rw");
+        try {
+            f.write(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 }), 0);
+            MappedRegion region = ((FileNioMapped) f).acquireRegion();
+            assertEquals(5, region.size());
+            ByteBuffer buff = region.slice(1, 3);
+            assertEquals(3, buff.remaining());
+            assertEquals(2, buff.get());
+            assertTrue(buff.isReadOnly());
+            // the file can not be re-mapped while the region is in use
+            AtomicBoolean resized = new AtomicBoolean();
+            Task task = new Task() {
+                @Override
+                public void call() throws Exception {
+                    f.write(ByteBuffer.wrap(new byte[100]), 5);
+                    resized.set(true);
+                }
+            };
+            task.execute();
+            Thread.sleep(100);
+            assertFalse(resized.get());
+            assertEquals(3, buff.get());
+            // the mapped buffer is garbage collected if the unmap hack is
+            // disabled
+            buff = null;
+            region.release();
+            task.get();
+            assertTrue(resized.get());
+            region = ((FileNioMapped) f).acquireRegion();
+            assertEquals(105, region.size());
+            region.release();
+        } finally {
+            f.close();
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private void testReadPages() {
+        String fileName = "nioMapped:" + getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).compress().open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 10_000; i++) {
+                map.put(i, "Hello " + i);
+            }
+        }
+        try (MVStore s = new MVStore.Builder().fileName(fileName).cacheSize(0).open()) {
+            MappedRegion region = s.getFileStore().acquireMappedRegion();
+            assertNotNull(region);
+            region.release();
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 10_000; i++) {
+                assertEquals("Hello " + i, map.get(i));
+            }
+        }
+        FileUtils.delete(fileName);
+    }
+
+    private void testConcurrentResize() throws Exception {
+        String fileName = "nioMapped:" + getBaseDir() + "/" + getTestName();
+        FileUtils.delete(fileName);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).cacheSize(0).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, "Hello " + i);
+            }
+            s.commit();
+            Task reader = new Task() {
+                @Override
+                public void call() {
+                    Random r = new Random(1);
+                    while (!stop) {
+                        int i = r.nextInt(1000);
+                        assertEquals("Hello " + i, map.get(i));
+                    }
+                }
+            };
+            reader.execute();
+            // each commit grows the file, which re-maps it
+            for (int i = 1000; i < 20_000; i++) {
+                map.put(i, "Hello " + i);
+                if (i % 500 == 0) {
+                    s.commit();
+                }
+            }
+            reader.get();
+        }
+        FileUtils.delete(fileName);
+    }
+
+    /**
+     * Compare the memory allocated per read of the copying and of the
+     * zero-copy read path.
+     */
+    private void testAllocationRate() {
+        if (!config.big) {
+            return;
+        }
+        for (String prefix : new String[] { "nio:", "nioMapped:" }) {
+            String fileName = prefix + getBaseDir() + "/" + getTestName();
+            FileUtils.delete(fileName);
+            try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+                MVMap<Integer, String> map = s.openMap("data");
+                for (int i = 0; i < 200_000; i++) {
+                    map.put(i, "Hello World " + i);
+                }
+            }
+            try (MVStore s = new MVStore.Builder().fileName(fileName).cacheSize(1).open()) {
+                MVMap<Integer, String> map = s.openMap("data");
+                Random r = new Random(1);
+                int count = 200_000;
+                long bytes = getAllocatedBytes();
+                long time = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    map.get(r.nextInt(200_000));
+                }
+                time = System.nanoTime() - time;
+                bytes = getAllocatedBytes() - bytes;
+                trace(prefix + " " + bytes / count + " bytes/read, "
+                        + time / count + " ns/read, "
+                        + s.getFileStore().getReadCount() + " file reads");
+            }
+            FileUtils.delete(fileName);
+        }
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2004-2022 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.test.store;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import org.h2.mvstore.FileStore;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.MVStoreException;
+import org.h2.mvstore.MVStoreTool;
+import org.h2.mvstore.SegmentedFileStore;
+import org.h2.store.FileLister;
+import org.h2.store.fs.FileUtils;
+import org.h2.test.TestBase;
+import org.h2.tools.DeleteDbFiles;
+import org.h2.util.IOUtils;
+
+/**
+ * Tests the segmented file store.
+ */
+public class TestMVStoreSegmented extends TestBase {
+
+    /**
+     * Run just this test.
+     *
+     * @param a ignored
+     */
+    public static void main(String... a) throws Exception {
+        TestBase.createCaller().init().testFromMain();
+    }
+
+    @Override
+    public void test() throws Exception {
+        String dir = getBaseDir() + "/" + getTestName();
+        FileUtils.deleteRecursive(dir, false);
+        FileUtils.createDirectories(dir);
+        testReopen(dir);
+        testDeleteFreedSegments(dir);
+        testBuilder(dir);
+        testEncrypted(dir);
+        testSegmentSizeInHeader(dir);
+        testTools(dir);
+        testCompactPerformance(dir);
+        FileUtils.deleteRecursive(dir, false);
+    }
+
+    private void testReopen(String dir) {
+        String fileName = dir + "/reopen.mv.db";
+        SegmentedFileStore fs = new SegmentedFileStore(64 * 1024);
+        fs.open(fileName, false, null);
+        try (MVStore s = new MVStore.Builder().fileStore(fs).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 20_000; i++) {
+                map.put(i, "Hello " + i);
+                if (i % 1000 == 0) {
+                    s.commit();
+                }
+            }
+        }
+        assertTrue(fs.getSegmentCount() > 2);
+        fs.close();
+        assertTrue(FileUtils.exists(SegmentedFileStore.getSegmentFileName(fileName, 1)));
+        fs = new SegmentedFileStore(64 * 1024);
+        fs.open(fileName, false, null);
+        try (MVStore s = new MVStore.Builder().fileStore(fs).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 20_000; i++) {
+                assertEquals("Hello " + i, map.get(i));
+            }
+        }
+        fs.close();
+        // a different segment size can not read the file
+        SegmentedFileStore small = new SegmentedFileStore(4 * 1024);
+        assertThrows(IllegalArgumentException.class, () -> small.open(fileName, false, null));
+    }
+
+    private void testDeleteFreedSegments(String dir) {
+        String fileName = dir + "/delete.mv.db";
+        SegmentedFileStore fs = new SegmentedFileStore(64 * 1024);
+        fs.open(fileName, false, null);
+        try (MVStore s = new MVStore.Builder().fileStore(fs).autoCommitDisabled().open()) {
+            s.setRetentionTime(0);
+            s.setVersionsToKeep(0);
+            MVMap<Integer, String> map = s.openMap("data");
+            MVMap<Integer, String> temp = s.openMap("temp");
+            for (int i = 0; i < 50_000; i++) {
+                map.put(i, "Hello World " + i);
+                temp.put(i, "Hello World " + i);
+                if (i % 1000 == 0) {
+                    s.commit();
+                }
+            }
+            s.commit();
+            // half of the data in each segment is removed
+            s.removeMap(temp);
+            s.commit();
+            int before = fs.getSegmentCount();
+            s.compactFile(10_000);
+            int after = fs.getSegmentCount();
+            assertTrue(before + " -> " + after, after < before * 3 / 4);
+            for (int i = 0; i < 50_000; i++) {
+                assertEquals("Hello World " + i, map.get(i));
+            }
+        }
+        fs.close();
+        fs = new SegmentedFileStore(64 * 1024);
+        fs.open(fileName, false, null);
+        try (MVStore s = new MVStore.Builder().fileStore(fs).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            assertEquals(50_000, map.size());
+            assertEquals("Hello World 49999", map.get(49_999));
+        }
+        fs.close();
+    }
+
+    private void testBuilder(String dir) {
+        String fileName = dir + "/builder.mv.db";
+        try (MVStore s = new MVStore.Builder().fileName(fileName).segmentSize(1).open()) {
+            assertTrue(s.getFileStore() instanceof SegmentedFileStore);
+            MVMap<Integer, byte[]> map = s.openMap("data");
+            for (int i = 0; i < 30; i++) {
+                map.put(i, new byte[100_000]);
+                s.commit();
+            }
+        }
+        assertTrue(FileUtils.exists(SegmentedFileStore.getSegmentFileName(fileName, 2)));
+        assertTrue(FileUtils.size(fileName) <= 1024 * 1024);
+        try (MVStore s = new MVStore.Builder().fileName(fileName).segmentSize(1).open()) {
+            MVMap<Integer, byte[]> map = s.openMap("data");
+            assertEquals(30, map.size());
+            assertEquals(100_000, map.get(29).length);
+        }
+    }
+
+    private void testEncrypted(String dir) {
+        String fileName = dir + "/encrypted.mv.db";
+        try (MVStore s = new MVStore.Builder().fileName(fileName).segmentSize(1)
+                .encryptionKey("secret".toCharArray()).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 100_000; i++) {
+                map.put(i, "Hello " + i);
+            }
+        }
+        assertTrue(FileUtils.exists(SegmentedFileStore.getSegmentFileName(fileName, 1)));
+        try (MVStore s = new MVStore.Builder().fileName(fileName).segmentSize(1)
+                .encryptionKey("secret".toCharArray()).open()) {
+            MVMap<Integer, String> map = s.openMap("data");
+            for (int i = 0; i < 100_000; i++) {
+                assertEquals("Hello " + i, map.get(i));
+            }
+        }
+    }
+
+    private void testSegmentSizeInHeader(String dir) throws IOException {
+        String fileName = dir + "/header.mv.db";
+        try (MVStore s = new MVStore.Builder().fileName(fileName).segmentSize(1).open()) {
+            assertEquals(1024 * 1024, ((Integer) s.getStoreHeader().get("segmentSize")).intValue());
+            MVMap<Integer, byte[]> map = s.openMap("data");
+            for (int i = 0; i < 20; i++) {
+                map.put(i, new byte[100_000]);
+                s.commit();
+            }
+        }
+        assertTrue(FileUtils.exists(SegmentedFileStore.getSegmentFileName(fileName, 1)));
+        // the segment size is taken from the header
+        try (MVStore s = new MVStore.Builder().fileName(fileName).open()) {
+            assertTrue(s.getFileStore() instanceof SegmentedFileStore);
+            assertEquals(1024 * 1024, ((SegmentedFileStore) s.getFileStore()).getSegmentSize());
+            assertEquals("100000", (String) s.getStoreHeader().get("segmentSize"));
+            MVMap<Integer, byte[]> map = s.openMap("data");
+            assertEquals(20, map.size());
+        }
+        // a different segment size is rejected
+        assertThrows(MVStoreException.class,
+                () -> new MVStore.Builder().fileName(fileName).segmentSize(2).open());
+        SegmentedFileStore fs = new SegmentedFileStore(2 * 1024 * 1024);
+        fs.open(fileName, false, null);
+        assertThrows(MVStoreException.class, () -> new MVStore.Builder().fileStore(fs).open());
+        fs.close();
+        // a plain file store does not see the segments
+        FileStore plain = new FileStore();
+        plain.open(fileName, false, null);
+        assertThrows(MVStoreException.class, () -> new MVStore.Builder().fileStore(plain).open());
+        plain.close();
+
+        // a file without the segment size in the header, but with segment files
+        String oldFileName = dir + "/old.mv.db";
+        try (MVStore s = new MVStore.Builder().fileName(oldFileName).open()) {
+            s.openMap("data").put(1, "Hello");
+        }
+        IOUtils.copyFiles(SegmentedFileStore.getSegmentFileName(fileName, 1),
+                SegmentedFileStore.getSegmentFileName(oldFileName, 1));
+        assertThrows(MVStoreException.class, () -> new MVStore.Builder().fileName(oldFileName).open());
+        FileUtils.delete(SegmentedFileStore.getSegmentFileName(oldFileName, 1));
+        // opening it as a segmented file stores the segment size
+        try (MVStore s = new MVStore.Builder().fileName(oldFileName).segmentSize(1).open()) {
+            assertEquals("Hello", s.openMap("data").get(1));
+        }
+        try (MVStore s = new MVStore.Builder().fileName(oldFileName).open()) {
+            assertTrue(s.getFileStore() instanceof SegmentedFileStore);
+        }
+    }
+
+    private void testTools(String dir) {
+        String fileName = dir + "/tools.mv.db";
+        try (MVStore s = new MVStore.Builder().fileName(fileName).segmentSize(1).open()) {
+            MVMap<Integer, byte[]> map = s.openMap("data");
+            for (int i = 0; i < 20; i++) {
+                map.put(i, new byte[100_000]);
+                s.commit();
+            }
+        }
+        List<String> segments = SegmentedFileStore.getSegmentFileNames(fileName);
+        assertTrue(segments.size() > 0);
+        assertEquals(SegmentedFileStore.getSegmentFileName(fileName, 1), segments.get(0));
+        List<String> files = FileLister.getDatabaseFiles(dir, "tools", false);
+        assertEquals(segments.size() + 1, files.size());
+
+        StringWriter dump = new StringWriter();
+        MVStoreTool.dump(fileName, dump, false);
+        assertFalse(dump.toString(), dump.toString().contains("ERROR"));
+        assertTrue(dump.toString().contains("chunkHeader"));
+        long size = FileUtils.size(fileName);
+        for (String segment : segments) {
+            size += FileUtils.size(segment);
+        }
+        assertTrue(dump.toString(), dump.toString().contains("File " + fileName + ", " + size + " bytes"));
+        StringWriter info = new StringWriter();
+        assertNull(MVStoreTool.info(fileName, info));
+        assertTrue(info.toString(), info.toString().contains("File length: " + size));
+
+        DeleteDbFiles.execute(dir, "tools", true);
+        assertFalse(FileUtils.exists(fileName));
+        for (String segment : segments) {
+            assertFalse(FileUtils.exists(segment));
+        }
+    }
+
+    /**
+     * Compare the time and the number of written bytes needed to compact a
+     * single file and a segmented file, after most of the data was removed.
+     */
+    private void testCompactPerformance(String dir) {
+        if (!config.big) {
+            return;
+        }
+        for (int segmentSize : new int[] { 0, 4 * 1024 * 1024 }) {
+            String fileName = dir + "/perf" + segmentSize + ".mv.db";
+            FileStore fs = segmentSize == 0 ? new FileStore() : new SegmentedFileStore(segmentSize);
+            fs.open(fileName, false, null);
+            try (MVStore s = new MVStore.Builder().fileStore(fs).autoCommitDisabled().open()) {
+                s.setRetentionTime(0);
+                s.setVersionsToKeep(0);
+                MVMap<Integer, String> map = s.openMap("data");
+                int count = 2_000_000;
+                for (int i = 0; i < count; i++) {
+                    map.put(i, "Hello World " + i);
+                    if (i % 10_000 == 0) {
+                        s.commit();
+                    }
+                }
+                s.commit();
+                // delete older data, as in a table where rows expire
+                for (int i = 0; i < count * 3 / 4; i++) {
+                    if (i % 10 != 0) {
+                        map.remove(i);
+                    }
+                }
+                s.commit();
+                long size = fs.size();
+                long writeBytes = fs.getWriteBytes();
+                long time = System.nanoTime();
+                s.compactFile(60_000);
+                s.commit();
+                time = System.nanoTime() - time;
+                writeBytes = fs.getWriteBytes() - writeBytes;
+                long used = fs.size();
+                if (fs instanceof SegmentedFileStore) {
+                    used = 0;
+                    for (String f : FileUtils.newDirectoryStream(dir)) {
+                        if (FileUtils.getName(f).startsWith(FileUtils.getName(fileName))) {
+                            used += FileUtils.size(f);
+                        }
+                    }
+                }
+                trace((segmentSize == 0 ? "single file" : "segmented") + ": " + time / 1_000_000
+                        + " ms, " + writeBytes / 1024 + " KB written, size " + size / 1024
+                        + " KB -> " + used / 1024 + " KB");
+            }
+            fs.close();
+        }
+    }
+
+}
@@ -19,6 +19,8 @@ import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
+import org.h2.api.ErrorCode;
+import org.h2.compress.CompressDictionary;
 import org.h2.compress.CompressLZF;
 import org.h2.compress.Compressor;
 import org.h2.engine.Constants;
@@ -71,6 +73,7 @@ public class TestCompress extends TestDb {
         }
         test(4000000);
         testVariableEnd();
+        testDictionary();
     }
 
     private void testVariableSizeInt() {
@@ -140,6 +143,36 @@ public class TestCompress extends TestDb {
         }
     }
 
+    private void testDictionary() {
+        ArrayList<byte[]> samples = new ArrayList<>();
+        Random r = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            StringBuilder b = new StringBuilder();
+            for (int j = 0; j < 20; j++) {
+                b.append("{\"id\":").append(r.nextInt(100_000)).append(",\"name\":\"customer")
+                        .append(r.nextInt(1000)).append("\",\"status\":\"active\"}");
+            }
+            samples.add(b.toString().getBytes());
+        }
+        byte[] dictionary = CompressDictionary.train(samples.subList(0, 100), 4096);
+        assertTrue(dictionary.length > 0 && dictionary.length <= 4096);
+        CompressDictionary withDictionary = new CompressDictionary(dictionary);
+        CompressDictionary without = new CompressDictionary();
+        int sizeWith = 0, sizeWithout = 0;
+        for (byte[] b : samples.subList(100, 200)) {
+            byte[] comp = new byte[b.length * 2];
+            int len = withDictionary.compress(b, 0, b.length, comp, 0);
+            sizeWith += len;
+            sizeWithout += without.compress(b, 0, b.length, new byte[b.length * 2], 0);
+            byte[] test = new byte[b.length];
+            withDictionary.expand(comp, 0, len, test, 0, b.length);
+            assertEquals(b, test);
+            assertThrows(ErrorCode.COMPRESSION_ERROR,
+                    () -> without.expand(comp, 0, len, new byte[b.length], 0, b.length));
+        }
+        assertTrue(sizeWith + " " + sizeWithout, sizeWith < sizeWithout);
+    }
+
     private void testDatabase() throws Exception {
         deleteDb("memFS:compress");
         Connection conn = getConnection("memFS:compress");
@@ -246,7 +279,7 @@ public class TestCompress extends TestDb {
             CompressTool utils = CompressTool.getInstance();
             // level 9 is highest, strategy 2 is huffman only
             for (String a : new String[] { "LZF", "No",
-                    "Deflate", "Deflate level 9 strategy 2" }) {
+                    "Deflate", "Deflate level 9 strategy 2", "LZ4", "Dictionary" }) {
                 long time = System.nanoTime();
                 byte[] out = utils.compress(b, a);
                 byte[] test = utils.expand(out);
@@ -0,0 +1,17 @@
+package study.datajpa.projection;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 인터페이스 기반 Projection 의 구현 클래스를 컴파일 시점에 만든다. (ProjectionProcessor)
+ * - UsernameOnly -> UsernameOnlyRow : getter 마다 final 필드, 생성자, of(row) / ofAll(rows)
+ * - 조회 결과의 컬럼 순서 = getter 선언 순서. 컬럼 index 로 바로 꺼내므로 이름으로 찾는 Map / 프록시가 필요 없다.
+ * - getter(getXxx / isXxx)만 선언할 수 있다. (@Value SpEL 같은 Open Projection 은 지원하지 않는다.)
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface GenerateProjection {
+}
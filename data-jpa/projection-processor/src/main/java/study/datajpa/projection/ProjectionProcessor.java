@@ -0,0 +1,287 @@
+package study.datajpa.projection;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @GenerateProjection 이 붙은 인터페이스마다 {인터페이스}Row 클래스를 만든다.
+ * - 생성되는 코드는 리플렉션 없이 컬럼 index 로 값을 꺼내서 생성자를 호출한다.
+ * - 숫자 타입은 Number 로 받아서 변환한다. (네이티브 쿼리는 DB 에 따라 BigInteger, Integer 등으로 올 수 있다.)
+ */
+@SupportedAnnotationTypes("study.datajpa.projection.GenerateProjection")
+public class ProjectionProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateProjection.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                error(element, "@GenerateProjection 은 인터페이스에만 붙일 수 있습니다.");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            List<Property> properties = properties(type);
+            if (properties == null) {
+                continue;
+            }
+            try {
+                write(type, properties);
+            } catch (IOException e) {
+                error(type, "Projection 구현 클래스 생성 실패: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    // 선언 순서 = 컬럼 순서 (상속받은 getter 가 먼저, 상위 인터페이스는 extends 순서대로)
+    private List<Property> properties(TypeElement type) {
+        List<TypeElement> hierarchy = new ArrayList<>();
+        collectHierarchy(type, hierarchy);
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (hierarchy.contains((TypeElement) method.getEnclosingElement())) { // java.lang.Object 메서드 제외
+                methods.add(method);
+            }
+        }
+        methods.sort(Comparator.<ExecutableElement>comparingInt(m -> hierarchy.indexOf((TypeElement) m.getEnclosingElement()))
+                .thenComparingInt(m -> m.getEnclosingElement().getEnclosedElements().indexOf(m)));
+
+        DeclaredType declaredType = (DeclaredType) type.asType();
+        List<Property> properties = new ArrayList<>();
+        boolean valid = true;
+        for (ExecutableElement method : methods) {
+            if (method.isDefault() || method.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            String name = method.getSimpleName().toString();
+            String propertyName = propertyName(name);
+            if (!method.getParameters().isEmpty() || propertyName == null
+                    || method.getReturnType().getKind() == TypeKind.VOID) {
+                error(method, "getter(getXxx / isXxx)만 선언할 수 있습니다: " + name);
+                valid = false;
+                continue;
+            }
+            // 제네릭 상위 인터페이스의 T getValue() 는 이 인터페이스 기준 타입으로
+            TypeMirror returnType = ((ExecutableType) processingEnv.getTypeUtils().asMemberOf(declaredType, method)).getReturnType();
+            properties.add(new Property(name, propertyName, returnType));
+        }
+        if (properties.isEmpty()) {
+            error(type, "getter 가 하나 이상 필요합니다.");
+            valid = false;
+        }
+        return valid ? properties : null;
+    }
+
+    // 상위 인터페이스를 먼저 (중복 제외)
+    private void collectHierarchy(TypeElement type, List<TypeElement> hierarchy) {
+        for (TypeMirror superInterface : type.getInterfaces()) {
+            collectHierarchy((TypeElement) processingEnv.getTypeUtils().asElement(superInterface), hierarchy);
+        }
+        if (!hierarchy.contains(type)) {
+            hierarchy.add(type);
+        }
+    }
+
+    private void write(TypeElement type, List<Property> properties) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String interfaceName = type.getSimpleName().toString();
+        String className = interfaceName + "Row";
+
+        StringBuilder src = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            src.append("package ").append(packageName).append(";\n\n");
+        }
+        src.append("import java.util.ArrayList;\n")
+                .append("import java.util.List;\n")
+                .append("import java.util.Objects;\n\n")
+                .append("/**\n")
+                .append(" * ").append(interfaceName).append(" 구현 (ProjectionProcessor 가 생성, 직접 수정하지 말 것)\n")
+                .append(" * 컬럼 순서: ").append(columnOrder(properties)).append("\n")
+                .append(" */\n")
+                .append("@javax.annotation.processing.Generated(\"").append(ProjectionProcessor.class.getName()).append("\")\n")
+                .append("public final class ").append(className).append(" implements ").append(interfaceName).append(" {\n\n");
+
+        for (Property p : properties) {
+            src.append("    private final ").append(p.type).append(' ').append(p.field).append(";\n");
+        }
+
+        // 생성자
+        src.append("\n    public ").append(className).append('(');
+        for (int i = 0; i < properties.size(); i++) {
+            Property p = properties.get(i);
+            src.append(i == 0 ? "" : ", ").append(p.type).append(' ').append(p.field);
+        }
+        src.append(") {\n");
+        for (Property p : properties) {
+            src.append("        this.").append(p.field).append(" = ").append(p.field).append(";\n");
+        }
+        src.append("    }\n\n");
+
+        // of / ofAll
+        src.append("    /**\n")
+                .append("     * 조회 결과 한 row -> ").append(className).append(" (컬럼이 하나면 Object[] 가 아닌 값 자체가 온다.)\n")
+                .append("     */\n")
+                .append("    public static ").append(className).append(" of(Object row) {\n")
+                .append("        Object[] columns = row instanceof Object[] ? (Object[]) row : new Object[]{row};\n")
+                .append("        return new ").append(className).append("(\n");
+        for (int i = 0; i < properties.size(); i++) {
+            src.append("                ").append(properties.get(i).read("columns[" + i + "]"))
+                    .append(i == properties.size() - 1 ? ");\n" : ",\n");
+        }
+        src.append("    }\n\n")
+                .append("    public static List<").append(interfaceName).append("> ofAll(List<?> rows) {\n")
+                .append("        List<").append(interfaceName).append("> result = new ArrayList<>(rows.size());\n")
+                .append("        for (Object row : rows) {\n")
+                .append("            result.add(of(row));\n")
+                .append("        }\n")
+                .append("        return result;\n")
+                .append("    }\n");
+
+        // getter
+        for (Property p : properties) {
+            src.append("\n    @Override\n")
+                    .append("    public ").append(p.type).append(' ').append(p.getter).append("() {\n")
+                    .append("        return ").append(p.field).append(";\n")
+                    .append("    }\n");
+        }
+
+        // equals / hashCode / toString
+        src.append("\n    @Override\n")
+                .append("    public boolean equals(Object o) {\n")
+                .append("        if (this == o) return true;\n")
+                .append("        if (!(o instanceof ").append(className).append(")) return false;\n")
+                .append("        ").append(className).append(" that = (").append(className).append(") o;\n")
+                .append("        return ");
+        for (int i = 0; i < properties.size(); i++) {
+            String field = properties.get(i).field;
+            src.append(i == 0 ? "" : "\n                && ")
+                    .append("Objects.equals(").append(field).append(", that.").append(field).append(')');
+        }
+        src.append(";\n    }\n\n")
+                .append("    @Override\n")
+                .append("    public int hashCode() {\n")
+                .append("        return Objects.hash(");
+        for (int i = 0; i < properties.size(); i++) {
+            src.append(i == 0 ? "" : ", ").append(properties.get(i).field);
+        }
+        src.append(");\n    }\n\n")
+                .append("    @Override\n")
+                .append("    public String toString() {\n")
+                .append("        return \"").append(className).append("(\"");
+        for (int i = 0; i < properties.size(); i++) {
+            String field = properties.get(i).field;
+            src.append(" + \"").append(i == 0 ? "" : ", ").append(field).append("=\" + ").append(field);
+        }
+        src.append(" + \")\";\n    }\n")
+                .append("}\n");
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                packageName.isEmpty() ? className : packageName + "." + className, type);
+        try (Writer writer = file.openWriter()) {
+            writer.write(src.toString());
+        }
+    }
+
+    private static String columnOrder(List<Property> properties) {
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < properties.size(); i++) {
+            order.append(i == 0 ? "" : ", ").append(properties.get(i).field);
+        }
+        return order.toString();
+    }
+
+    // getUsername -> username, isActive -> active, getURL -> URL (java.beans.Introspector.decapitalize 와 같은 규칙)
+    private static String propertyName(String getter) {
+        String name;
+        if (getter.startsWith("get") && getter.length() > 3) {
+            name = getter.substring(3);
+        } else if (getter.startsWith("is") && getter.length() > 2) {
+            name = getter.substring(2);
+        } else {
+            return null;
+        }
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(0)) && Character.isUpperCase(name.charAt(1))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static class Property {
+        final String getter;
+        final String field;
+        final String type;
+        final TypeMirror typeMirror;
+
+        Property(String getter, String field, TypeMirror typeMirror) {
+            this.getter = getter;
+            this.field = field;
+            this.type = typeMirror.toString();
+            this.typeMirror = typeMirror;
+        }
+
+        /**
+         * 컬럼 값 -> 필드 타입 변환 코드
+         */
+        String read(String column) {
+            switch (typeMirror.getKind()) {
+                case LONG:
+                case INT:
+                case SHORT:
+                case BYTE:
+                case DOUBLE:
+                case FLOAT:
+                    return column + " == null ? 0 : ((Number) " + column + ")." + type + "Value()";
+                case BOOLEAN:
+                    return column + " != null && (Boolean) " + column;
+                case CHAR:
+                    return column + " == null ? '\\0' : (Character) " + column;
+                default:
+                    break;
+            }
+            switch (type) {
+                case "java.lang.Long":
+                    return column + " == null ? null : ((Number) " + column + ").longValue()";
+                case "java.lang.Integer":
+                    return column + " == null ? null : ((Number) " + column + ").intValue()";
+                case "java.lang.Short":
+                    return column + " == null ? null : ((Number) " + column + ").shortValue()";
+                case "java.lang.Byte":
+                    return column + " == null ? null : ((Number) " + column + ").byteValue()";
+                case "java.lang.Double":
+                    return column + " == null ? null : ((Number) " + column + ").doubleValue()";
+                case "java.lang.Float":
+                    return column + " == null ? null : ((Number) " + column + ").floatValue()";
+                default:
+                    return "(" + type + ") " + column;
+            }
+        }
+    }
+}
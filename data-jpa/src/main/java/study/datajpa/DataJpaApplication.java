@@ -7,9 +7,12 @@ import org.springframework.data.domain.AuditorAware;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
+import study.datajpa.repository.AssignedIdJpaRepository;
+
 import java.util.Optional;
 import java.util.UUID;
 @EnableJpaAuditing
+@EnableJpaRepositories(repositoryBaseClass = AssignedIdJpaRepository.class) // @NewMarker 엔티티는 save 할때 merge 대신 persist
 @SpringBootApplication
 public class DataJpaApplication {
 
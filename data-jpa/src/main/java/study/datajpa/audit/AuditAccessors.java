@@ -0,0 +1,144 @@
+package study.datajpa.audit;
+
+import org.springframework.data.annotation.CreatedBy;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedBy;
+import org.springframework.data.annotation.LastModifiedDate;
+
+import javax.persistence.Id;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+
+/**
+ * 엔티티 클래스별 Auditing 필드 접근자 (클래스마다 한번만 만든다.)
+ * - @CreatedDate, @LastModifiedDate, @CreatedBy, @LastModifiedBy 필드를 상위 클래스(@MappedSuperclass)까지 찾아서
+ *   MethodHandle setter 로 바꿔둔다. 호출할 때마다 어노테이션을 찾거나 BeanWrapper 를 만들지 않는다.
+ * - 날짜 필드는 LocalDateTime 만 지원한다. 다른 타입이면 supported = false 이고 Spring AuditingHandler 가 처리한다.
+ */
+final class AuditAccessors {
+
+    private static final ClassValue<AuditAccessors> CACHE = new ClassValue<>() {
+        @Override
+        protected AuditAccessors computeValue(Class<?> type) {
+            return new AuditAccessors(type);
+        }
+    };
+
+    private MethodHandle createdDate;
+    private MethodHandle lastModifiedDate;
+    private MethodHandle createdBy;
+    private MethodHandle lastModifiedBy;
+    private MethodHandle id;
+    private boolean supported = true;
+
+    static AuditAccessors of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    private AuditAccessors(Class<?> type) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (createdDate == null) createdDate = dateSetter(field, CreatedDate.class);
+                if (lastModifiedDate == null) lastModifiedDate = dateSetter(field, LastModifiedDate.class);
+                if (createdBy == null) createdBy = auditorSetter(field, CreatedBy.class);
+                if (lastModifiedBy == null) lastModifiedBy = auditorSetter(field, LastModifiedBy.class);
+                if (id == null && field.isAnnotationPresent(Id.class)) id = getter(field);
+            }
+        }
+    }
+
+    /**
+     * 지원하는 타입의 감사 대상 필드가 하나라도 있는지 (isSupported 가 false 이면 의미가 없다.)
+     */
+    boolean isAudited() {
+        return createdDate != null || lastModifiedDate != null || createdBy != null || lastModifiedBy != null;
+    }
+
+    boolean isSupported() {
+        return supported;
+    }
+
+    boolean needsAuditor() {
+        return createdBy != null || lastModifiedBy != null;
+    }
+
+    void markCreated(Object entity, LocalDateTime now, String auditor) {
+        set(createdDate, entity, now);
+        set(createdBy, entity, auditor);
+        markModified(entity, now, auditor); // AuditingHandler 의 modifyOnCreation 기본값과 같다.
+    }
+
+    void markModified(Object entity, LocalDateTime now, String auditor) {
+        set(lastModifiedDate, entity, now);
+        set(lastModifiedBy, entity, auditor);
+    }
+
+    Object getId(Object entity) {
+        if (id == null) {
+            return null;
+        }
+        try {
+            return (Object) id.invokeExact(entity);
+        } catch (Throwable e) {
+            throw new IllegalStateException("id 조회 실패 " + entity.getClass().getName(), e);
+        }
+    }
+
+    private static void set(MethodHandle setter, Object entity, Object value) {
+        if (setter == null) {
+            return;
+        }
+        try {
+            setter.invokeExact(entity, value);
+        } catch (Throwable e) {
+            throw new IllegalStateException("auditing 필드 설정 실패 " + entity.getClass().getName(), e);
+        }
+    }
+
+    private MethodHandle dateSetter(Field field, Class<? extends Annotation> annotation) {
+        if (!field.isAnnotationPresent(annotation)) {
+            return null;
+        }
+        if (field.getType() != LocalDateTime.class) {
+            supported = false;
+            return null;
+        }
+        return setter(field);
+    }
+
+    private MethodHandle auditorSetter(Field field, Class<? extends Annotation> annotation) {
+        if (!field.isAnnotationPresent(annotation)) {
+            return null;
+        }
+        if (field.getType() != String.class) { // AuditorAware<String>
+            supported = false;
+            return null;
+        }
+        return setter(field);
+    }
+
+    // (Object, Object)void 로 맞춰서 invokeExact 로 호출한다. (호출할 때 타입 변환 비용이 없다.)
+    private static MethodHandle setter(Field field) {
+        try {
+            field.setAccessible(true);
+            MethodHandle setter = MethodHandles.lookup().unreflectSetter(field);
+            return setter.asType(setter.type().generic().changeReturnType(void.class));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // (Object)Object
+    private static MethodHandle getter(Field field) {
+        try {
+            field.setAccessible(true);
+            MethodHandle getter = MethodHandles.lookup().unreflectGetter(field);
+            return getter.asType(getter.type().generic());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package study.datajpa.audit;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import java.time.LocalDateTime;
+
+/**
+ * 엔티티 변경 이력 (스키마 생성과 조회용 매핑, 저장은 AuditHistoryWriter 가 JDBC batch 로 한다.)
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class AuditHistory {
+
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    private String entityName;
+    private String entityId;
+    @Enumerated(EnumType.STRING)
+    private Action action;
+    private String auditor;
+    private LocalDateTime auditedAt;
+
+    public enum Action {
+        CREATE, UPDATE, DELETE
+    }
+}
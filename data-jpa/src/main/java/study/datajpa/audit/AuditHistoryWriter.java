@@ -0,0 +1,142 @@
+package study.datajpa.audit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 변경 이력을 모아서 별도 스레드에서 audit_history 테이블에 batch insert 한다. (write-behind)
+ * - 커밋된 트랜잭션의 이력만 넘겨받는다. (AuditSupport 가 트랜잭션별로 모아서 afterCommit 에 넘긴다.)
+ * - flushInterval 마다, 혹은 batchSize 만큼 쌓일 때마다 자기 커넥션/자기 트랜잭션(auto commit)으로 저장한다.
+ * - 저장은 writer 스레드 하나에서만 한다. 주기 전에 비워야 할 때도 이미 예약된 drain 이 있으면 더 넣지 않는다.
+ * - 대기열이 가득 차면 넘기는 쪽이 기다린다. (이력을 버리지 않는다.)
+ * - 저장 실패는 로그만 남긴다. 이력 때문에 본 트랜잭션이 실패하지 않는다.
+ */
+@Slf4j
+@Component
+public class AuditHistoryWriter {
+
+    private static final String INSERT_SQL =
+            "insert into audit_history (entity_name, entity_id, action, auditor, audited_at) values (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingQueue<Entry> queue;
+    private final ScheduledExecutorService flusher;
+    private final int batchSize;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+
+    public AuditHistoryWriter(JdbcTemplate jdbcTemplate,
+                              @Value("${datajpa.audit.history.queue-capacity:10000}") int queueCapacity,
+                              @Value("${datajpa.audit.history.batch-size:500}") int batchSize,
+                              @Value("${datajpa.audit.history.flush-interval-ms:200}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "audit-history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::drain, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void append(List<Entry> entries) {
+        try {
+            for (Entry entry : entries) {
+                if (!queue.offer(entry)) {
+                    requestDrain(); // 가득 찼으면 주기를 기다리지 않고 비운다.
+                    queue.put(entry);
+                }
+            }
+            if (queue.size() >= batchSize) {
+                requestDrain();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("변경 이력 대기열 추가 중 인터럽트, 남은 이력 {}건은 기록되지 않는다.", entries.size());
+        }
+    }
+
+    /**
+     * 지금까지 넘겨받은 이력을 모두 저장할 때까지 기다린다. (테스트, 종료 시)
+     */
+    public void flush() {
+        try {
+            flusher.submit(this::drain).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private void requestDrain() {
+        if (drainRequested.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                drainRequested.set(false);
+                drain();
+            });
+        }
+    }
+
+    // writer 스레드에서만 호출된다.
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            try {
+                jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, entry) -> {
+                    ps.setString(1, entry.getEntityName());
+                    ps.setString(2, entry.getEntityId());
+                    ps.setString(3, entry.getAction().name());
+                    ps.setString(4, entry.getAuditor());
+                    ps.setTimestamp(5, Timestamp.valueOf(entry.getAuditedAt()));
+                });
+                written.addAndGet(batch.size());
+            } catch (RuntimeException e) {
+                failed.addAndGet(batch.size());
+                log.error("변경 이력 {}건 저장 실패", batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        flusher.shutdown();
+    }
+
+    @lombok.Value // 스프링 @Value 와 이름이 같다.
+    public static class Entry {
+        String entityName;
+        String entityId;
+        AuditHistory.Action action;
+        String auditor;
+        LocalDateTime auditedAt;
+    }
+}
@@ -0,0 +1,6 @@
+package study.datajpa.audit;
+
+public enum AuditMode {
+    SPRING, // Spring Data AuditingHandler (리플렉션 + 호출마다 AuditorAware 조회)
+    FAST    // 클래스별로 미리 만든 MethodHandle + 요청/트랜잭션마다 한번만 AuditorAware 조회
+}
@@ -0,0 +1,127 @@
+package study.datajpa.audit;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.auditing.AuditingHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FastAuditingListener 가 위임하는 실제 처리
+ * - mode=SPRING : 기존처럼 Spring Data AuditingHandler (@EnableJpaAuditing 이 등록한 jpaAuditingHandler)
+ * - mode=FAST   : AuditAccessors(MethodHandle) + CachedAuditor
+ *   AuditAccessors 가 지원하지 않는 타입(LocalDateTime, String 이 아닌)의 감사 필드가 있는 엔티티는 mode 와 상관없이 AuditingHandler 가 처리한다.
+ * - history.enabled=true 이면 변경 이력을 트랜잭션별로 모았다가 커밋된 뒤에 AuditHistoryWriter 로 넘긴다.
+ *   롤백되면 버린다. 본 트랜잭션에서는 목록에 추가하는 일만 한다.
+ */
+@Component
+public class AuditSupport {
+
+    private static final String HISTORY_KEY = AuditSupport.class.getName() + ".history";
+
+    private final AuditMode mode;
+    private final boolean historyEnabled;
+    private final ObjectProvider<AuditingHandler> auditingHandler;
+    private final CachedAuditor cachedAuditor;
+    private final AuditHistoryWriter historyWriter;
+
+    public AuditSupport(@Value("${datajpa.audit.mode:SPRING}") AuditMode mode,
+                        @Value("${datajpa.audit.history.enabled:false}") boolean historyEnabled,
+                        ObjectProvider<AuditingHandler> auditingHandler,
+                        CachedAuditor cachedAuditor,
+                        AuditHistoryWriter historyWriter) {
+        this.mode = mode;
+        this.historyEnabled = historyEnabled;
+        this.auditingHandler = auditingHandler;
+        this.cachedAuditor = cachedAuditor;
+        this.historyWriter = historyWriter;
+    }
+
+    public void markCreated(Object entity) {
+        AuditAccessors accessors = AuditAccessors.of(entity.getClass());
+        if (mode == AuditMode.SPRING || !accessors.isSupported()) {
+            auditingHandler.ifAvailable(handler -> handler.markCreated(entity));
+            return;
+        }
+        if (!accessors.isAudited()) {
+            return;
+        }
+        accessors.markCreated(entity, LocalDateTime.now(), accessors.needsAuditor() ? cachedAuditor.get() : null);
+    }
+
+    public void markModified(Object entity) {
+        AuditAccessors accessors = AuditAccessors.of(entity.getClass());
+        if (mode == AuditMode.SPRING || !accessors.isSupported()) {
+            auditingHandler.ifAvailable(handler -> handler.markModified(entity));
+            return;
+        }
+        if (!accessors.isAudited()) {
+            return;
+        }
+        accessors.markModified(entity, LocalDateTime.now(), accessors.needsAuditor() ? cachedAuditor.get() : null);
+    }
+
+    /**
+     * 변경 이력 추가 (Post* 콜백에서 호출하므로 id 가 있다.)
+     */
+    public void record(Object entity, AuditHistory.Action action) {
+        if (!historyEnabled || entity instanceof AuditHistory) {
+            return;
+        }
+        AuditAccessors accessors = AuditAccessors.of(entity.getClass());
+        if (accessors.isSupported() && !accessors.isAudited()) {
+            return;
+        }
+        Object id = accessors.getId(entity);
+        AuditHistoryWriter.Entry entry = new AuditHistoryWriter.Entry(entity.getClass().getSimpleName(),
+                id == null ? null : id.toString(), action, cachedAuditor.get(), LocalDateTime.now());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            historyWriter.append(List.of(entry));
+            return;
+        }
+        pending().add(entry);
+    }
+
+    public AuditMode getMode() {
+        return mode;
+    }
+
+    // 트랜잭션마다 하나, 커밋되면 writer 로 넘긴다.
+    // REQUIRES_NEW 로 바깥 트랜잭션이 보류되는 동안에는 목록도 스레드에서 떼어 두어 안쪽 트랜잭션이 자기 목록을 쓴다.
+    @SuppressWarnings("unchecked")
+    private List<AuditHistoryWriter.Entry> pending() {
+        List<AuditHistoryWriter.Entry> pending = (List<AuditHistoryWriter.Entry>) TransactionSynchronizationManager.getResource(HISTORY_KEY);
+        if (pending != null) {
+            return pending;
+        }
+        List<AuditHistoryWriter.Entry> created = new ArrayList<>();
+        TransactionSynchronizationManager.bindResource(HISTORY_KEY, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(HISTORY_KEY);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(HISTORY_KEY, created);
+            }
+
+            @Override
+            public void afterCommit() {
+                historyWriter.append(created);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(HISTORY_KEY);
+            }
+        });
+        return created;
+    }
+}
@@ -0,0 +1,71 @@
+package study.datajpa.audit;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * AuditorAware 를 요청(없으면 트랜잭션)마다 한번만 호출한다.
+ * - 요청 안: request attribute 에 저장
+ * - 요청 밖, 트랜잭션 안: 트랜잭션이 끝날 때까지 스레드에 묶어둔다. (REQUIRES_NEW 안에서는 따로 조회)
+ * - 둘 다 없으면 매번 호출한다.
+ */
+@Component
+@RequiredArgsConstructor
+public class CachedAuditor {
+
+    private static final String KEY = CachedAuditor.class.getName();
+    private static final Object NONE = new Object(); // 조회 결과가 비어 있는 것도 캐시한다.
+
+    private final AuditorAware<String> auditorAware;
+
+    public String get() {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            Object cached = request.getAttribute(KEY, RequestAttributes.SCOPE_REQUEST);
+            if (cached == null) {
+                cached = lookup();
+                request.setAttribute(KEY, cached, RequestAttributes.SCOPE_REQUEST);
+            }
+            return unwrap(cached);
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Object cached = TransactionSynchronizationManager.getResource(KEY);
+            if (cached == null) {
+                Object looked = lookup();
+                TransactionSynchronizationManager.bindResource(KEY, looked);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void suspend() {
+                        TransactionSynchronizationManager.unbindResource(KEY);
+                    }
+
+                    @Override
+                    public void resume() {
+                        TransactionSynchronizationManager.bindResource(KEY, looked);
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        TransactionSynchronizationManager.unbindResourceIfPossible(KEY);
+                    }
+                });
+                cached = looked;
+            }
+            return unwrap(cached);
+        }
+        return auditorAware.getCurrentAuditor().orElse(null);
+    }
+
+    private Object lookup() {
+        return auditorAware.getCurrentAuditor().map(Object.class::cast).orElse(NONE);
+    }
+
+    private static String unwrap(Object cached) {
+        return cached == NONE ? null : (String) cached;
+    }
+}
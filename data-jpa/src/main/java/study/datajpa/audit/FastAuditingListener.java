@@ -0,0 +1,71 @@
+package study.datajpa.audit;
+
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+
+/**
+ * orm.xml 의 기본 엔티티 리스너 (AuditingEntityListener 대신)
+ * - Hibernate 가 SpringBeanContainer 로 만들기 때문에 주입을 받을 수 있다.
+ *   EntityManagerFactory 를 만드는 도중에 생성되므로 AuditingEntityListener 처럼 ObjectFactory 로 늦게 꺼낸다.
+ */
+public class FastAuditingListener {
+
+    private ObjectFactory<AuditSupport> supportFactory;
+    private AuditSupport support;
+
+    @Autowired
+    public void setAuditSupport(ObjectFactory<AuditSupport> supportFactory) {
+        this.supportFactory = supportFactory;
+    }
+
+    @PrePersist
+    public void touchForCreate(Object entity) {
+        AuditSupport support = support();
+        if (support != null) {
+            support.markCreated(entity);
+        }
+    }
+
+    @PreUpdate
+    public void touchForUpdate(Object entity) {
+        AuditSupport support = support();
+        if (support != null) {
+            support.markModified(entity);
+        }
+    }
+
+    @PostPersist
+    public void created(Object entity) {
+        record(entity, AuditHistory.Action.CREATE);
+    }
+
+    @PostUpdate
+    public void updated(Object entity) {
+        record(entity, AuditHistory.Action.UPDATE);
+    }
+
+    @PostRemove
+    public void removed(Object entity) {
+        record(entity, AuditHistory.Action.DELETE);
+    }
+
+    private void record(Object entity, AuditHistory.Action action) {
+        AuditSupport support = support();
+        if (support != null) {
+            support.record(entity, action);
+        }
+    }
+
+    private AuditSupport support() {
+        if (support == null && supportFactory != null) {
+            support = supportFactory.getObject();
+        }
+        return support;
+    }
+}
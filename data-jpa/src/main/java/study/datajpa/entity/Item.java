@@ -4,19 +4,19 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
-import org.springframework.data.domain.Persistable;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import javax.persistence.Entity;
 import javax.persistence.EntityListeners;
-import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Transient;
 import java.time.LocalDateTime;
 
 @Entity
 @EntityListeners(AuditingEntityListener.class) // Auditing 을 실행을 위한 애노테이션
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
-public class Item implements Persistable<String> {
+@Getter
+public class Item {
 
     @Id
     private String id;
@@ -24,17 +24,12 @@ public class Item implements Persistable<String> {
     @CreatedDate
     private LocalDateTime createdDate;
 
+    // Persistable.isNew() 를 직접 구현하는 대신 (createdDate == null 로 판단하던 것)
+    // AssignedIdRepository.save 가 true 면 persist, false 면 merge 한다.
+    @Transient @NewMarker
+    private boolean isNew = true;
+
     public Item(String id) {
         this.id = id;
     }
-
-    @Override
-    public String getId() {
-        return this.id;
-    }
-
-    @Override
-    public boolean isNew() {
-        return createdDate==null; // null 이면 JPA가 동작하지 않은 것이므로 새로운게 아니다.
-    }
 }
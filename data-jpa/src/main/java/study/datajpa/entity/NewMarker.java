@@ -0,0 +1,21 @@
+package study.datajpa.entity;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * id 를 직접 할당하는 엔티티의 "새 엔티티" 표시 (@Transient boolean 필드에 붙인다.)
+ * <pre>
+ * &#64;Transient &#64;NewMarker
+ * private boolean isNew = true;
+ * </pre>
+ * - 생성자로 만든 엔티티는 true, 조회(@PostLoad)하거나 저장(@PostPersist)되면 NewMarkerListener 가 false 로 바꾼다.
+ * - AssignedIdRepository.save 는 true 이면 persist, false 이면 merge 한다. (merge 전 SELECT 가 없다.)
+ * - Persistable.isNew() 를 엔티티마다 직접 구현하지 않아도 된다.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface NewMarker {
+}
@@ -0,0 +1,17 @@
+package study.datajpa.entity;
+
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+
+/**
+ * orm.xml 의 기본 엔티티 리스너 - 조회되거나 저장된 엔티티의 @NewMarker 를 false 로 바꾼다.
+ * (@NewMarker 가 없는 엔티티는 아무것도 하지 않는다.)
+ */
+public class NewMarkerListener {
+
+    @PostLoad
+    @PostPersist
+    public void markNotNew(Object entity) {
+        NewMarkers.of(entity.getClass()).markNotNew(entity);
+    }
+}
@@ -0,0 +1,73 @@
+package study.datajpa.entity;
+
+import javax.persistence.Transient;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * 엔티티 클래스별 @NewMarker 필드 접근자 (클래스마다 한번만 찾는다.)
+ */
+public final class NewMarkers {
+
+    private static final ClassValue<NewMarkers> CACHE = new ClassValue<>() {
+        @Override
+        protected NewMarkers computeValue(Class<?> type) {
+            return new NewMarkers(type);
+        }
+    };
+
+    private MethodHandle getter; // (Object)boolean
+    private MethodHandle setter; // (Object, boolean)void
+
+    public static NewMarkers of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    private NewMarkers(Class<?> type) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!field.isAnnotationPresent(NewMarker.class)) {
+                    continue;
+                }
+                if (field.getType() != boolean.class || !field.isAnnotationPresent(Transient.class)) {
+                    throw new IllegalStateException("@NewMarker 는 @Transient boolean 필드에만 붙일 수 있습니다. " + field);
+                }
+                try {
+                    field.setAccessible(true);
+                    getter = MethodHandles.lookup().unreflectGetter(field)
+                            .asType(MethodType.methodType(boolean.class, Object.class));
+                    setter = MethodHandles.lookup().unreflectSetter(field)
+                            .asType(MethodType.methodType(void.class, Object.class, boolean.class));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+                return;
+            }
+        }
+    }
+
+    public boolean isPresent() {
+        return getter != null;
+    }
+
+    public boolean isNew(Object entity) {
+        try {
+            return (boolean) getter.invokeExact(entity);
+        } catch (Throwable e) {
+            throw new IllegalStateException("@NewMarker 조회 실패 " + entity.getClass().getName(), e);
+        }
+    }
+
+    public void markNotNew(Object entity) {
+        if (setter == null) {
+            return;
+        }
+        try {
+            setter.invokeExact(entity, false);
+        } catch (Throwable e) {
+            throw new IllegalStateException("@NewMarker 설정 실패 " + entity.getClass().getName(), e);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package study.datajpa.repository;
+
+import org.springframework.data.jpa.repository.support.JpaEntityInformation;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+import org.springframework.transaction.annotation.Transactional;
+import study.datajpa.entity.NewMarkers;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 모든 repository 의 기본 구현 (@EnableJpaRepositories(repositoryBaseClass = ...))
+ * - @NewMarker 가 없는 엔티티는 SimpleJpaRepository 와 똑같이 동작한다.
+ * - SimpleJpaRepository 클래스의 @Transactional(readOnly = true) 가 상속되므로 쓰기 메서드에는 @Transactional 을 다시 붙인다.
+ */
+public class AssignedIdJpaRepository<T, ID> extends SimpleJpaRepository<T, ID> implements AssignedIdRepository<T, ID> {
+
+    private static final String BATCH_SIZE = "hibernate.jdbc.batch_size";
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
+    private final EntityManager em;
+
+    public AssignedIdJpaRepository(JpaEntityInformation<T, ?> entityInformation, EntityManager em) {
+        super(entityInformation, em);
+        this.em = em;
+    }
+
+    @Transactional
+    @Override
+    public <S extends T> S save(S entity) {
+        NewMarkers markers = NewMarkers.of(entity.getClass());
+        if (!markers.isPresent()) {
+            return super.save(entity);
+        }
+        if (markers.isNew(entity)) {
+            em.persist(entity);
+            return entity;
+        }
+        return em.merge(entity);
+    }
+
+    @Transactional
+    @Override
+    public <S extends T> int insertAll(Iterable<S> entities) {
+        int batchSize = batchSize();
+        List<S> chunk = new ArrayList<>(batchSize);
+        int count = 0;
+        for (S entity : entities) {
+            em.persist(entity);
+            chunk.add(entity);
+            count++;
+            if (chunk.size() == batchSize) {
+                flushAndDetach(chunk);
+            }
+        }
+        flushAndDetach(chunk);
+        return count;
+    }
+
+    // batch_size 개의 insert 가 JDBC batch 하나로 나간다.
+    private <S extends T> void flushAndDetach(List<S> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        em.flush();
+        chunk.forEach(em::detach);
+        chunk.clear();
+    }
+
+    private int batchSize() {
+        Object value = em.getEntityManagerFactory().getProperties().get(BATCH_SIZE);
+        return value == null ? DEFAULT_BATCH_SIZE : Integer.parseInt(value.toString());
+    }
+}
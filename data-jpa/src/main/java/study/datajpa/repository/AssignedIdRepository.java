@@ -0,0 +1,21 @@
+package study.datajpa.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.repository.NoRepositoryBean;
+
+/**
+ * id 를 직접 할당하는 엔티티(@NewMarker)용 repository
+ * - save : @NewMarker 가 true 면 persist, false 면 merge (SimpleJpaRepository 는 id 가 있으면 항상 merge 라서 SELECT 가 먼저 나간다.)
+ * - insertAll : persist 하고 hibernate.jdbc.batch_size 마다 flush (JDBC batch insert)
+ * 구현은 AssignedIdJpaRepository (DataJpaApplication 의 repositoryBaseClass)
+ */
+@NoRepositoryBean
+public interface AssignedIdRepository<T, ID> extends JpaRepository<T, ID> {
+
+    /**
+     * 새 엔티티들을 batch 로 insert 한다. 이미 있는 id 가 섞여 있으면 제약조건 위반으로 실패한다.
+     * flush 한 엔티티는 영속성 컨텍스트에서 detach 한다. (대량 insert 중 영속성 컨텍스트가 커지지 않는다.)
+     * @return insert 한 엔티티 수
+     */
+    <S extends T> int insertAll(Iterable<S> entities);
+}
@@ -0,0 +1,18 @@
+package study.datajpa.repository;
+
+import lombok.Getter;
+
+/**
+ * 구간별 벌크 update 중 실패
+ * - getJob() 으로 받은 작업을 ChunkedBulkUpdater.execute 에 다시 넘기면 커밋되지 않은 구간부터 이어서 실행한다.
+ */
+@Getter
+public class BulkUpdateException extends RuntimeException {
+
+    private final ChunkedBulkUpdate job;
+
+    public BulkUpdateException(ChunkedBulkUpdate job, Throwable cause) {
+        super("벌크 update 실패 " + job, cause);
+        this.job = job;
+    }
+}
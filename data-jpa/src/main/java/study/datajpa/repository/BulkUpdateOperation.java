@@ -0,0 +1,26 @@
+package study.datajpa.repository;
+
+import lombok.Getter;
+
+/**
+ * 구간별로 나누어 실행할 벌크 update 한 종류 (ChunkedBulkUpdater)
+ * - JPQL 은 조각을 이어 붙이지 않고 작업마다 완성된 문장을 상수로 둔다. 값은 전부 파라미터로만 받는다.
+ * - rangeJpql : 대상의 id 범위 "select min(id), max(id) ..."
+ * - updateJpql : 같은 조건 + "id between :fromId and :toId"
+ */
+@Getter
+public class BulkUpdateOperation {
+
+    private final Class<?> entityClass;
+    private final String rangeJpql;
+    private final String updateJpql;
+
+    public BulkUpdateOperation(Class<?> entityClass, String rangeJpql, String updateJpql) {
+        if (!updateJpql.contains(":fromId") || !updateJpql.contains(":toId")) {
+            throw new IllegalArgumentException("updateJpql 은 :fromId, :toId 로 구간을 받아야 합니다. updateJpql=" + updateJpql);
+        }
+        this.entityClass = entityClass;
+        this.rangeJpql = rangeJpql;
+        this.updateJpql = updateJpql;
+    }
+}
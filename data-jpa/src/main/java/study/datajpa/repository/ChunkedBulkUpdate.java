@@ -0,0 +1,102 @@
+package study.datajpa.repository;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * id 구간별로 나눈 벌크 update 작업 (진행 상황 + 재시작 지점)
+ * - 구간은 준비(prepare)할 때 한번만 나누고 바뀌지 않는다. 실패 후 같은 객체로 다시 실행하면 커밋된 구간은 건너뛴다.
+ *   (age = age + 1 처럼 두번 실행하면 안되는 update 도 구간마다 정확히 한번만 반영된다.)
+ */
+public class ChunkedBulkUpdate {
+
+    @Getter
+    private final BulkUpdateOperation operation;
+    @Getter
+    private final Map<String, Object> parameters;
+    @Getter
+    private final List<IdRange> ranges;
+    private final Set<Integer> completed = ConcurrentHashMap.newKeySet(); // 커밋된 구간 index (밖에서 바꾸지 못하게 getter 없음)
+    private final AtomicLong updatedRows = new AtomicLong();
+
+    ChunkedBulkUpdate(BulkUpdateOperation operation, Map<String, Object> parameters, List<IdRange> ranges) {
+        this.operation = operation;
+        this.parameters = Collections.unmodifiableMap(parameters);
+        this.ranges = Collections.unmodifiableList(ranges);
+    }
+
+    public int getTotalRanges() {
+        return ranges.size();
+    }
+
+    public int getCompletedRanges() {
+        return completed.size();
+    }
+
+    public long getUpdatedRows() {
+        return updatedRows.get();
+    }
+
+    public boolean isDone() {
+        return completed.size() == ranges.size();
+    }
+
+    boolean isCompleted(int index) {
+        return completed.contains(index);
+    }
+
+    void complete(int index, int rows) {
+        if (completed.add(index)) {
+            updatedRows.addAndGet(rows);
+        }
+    }
+
+    boolean isUpdated(Object id) {
+        if (!(id instanceof Long)) {
+            return false;
+        }
+        long value = (Long) id;
+        for (int i = 0; i < ranges.size(); i++) {
+            if (completed.contains(i) && ranges.get(i).contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "ChunkedBulkUpdate{" + operation.getEntityClass().getSimpleName() +
+                " ranges=" + getCompletedRanges() + "/" + getTotalRanges() +
+                " rows=" + getUpdatedRows() + "}";
+    }
+
+    /**
+     * [fromId, toId] 양끝 포함
+     */
+    @Getter
+    public static class IdRange {
+        private final long fromId;
+        private final long toId;
+
+        IdRange(long fromId, long toId) {
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        boolean contains(long id) {
+            return fromId <= id && id <= toId;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + fromId + ", " + toId + "]";
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package study.datajpa.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 벌크 update 를 id 구간으로 나누어 구간마다 따로 커밋한다.
+ * - update 한 문장으로 전체를 바꾸면 트랜잭션 하나가 커지고(H2 MVStore undo log, 행 잠금) 중간에 실패하면 전부 다시 해야 한다.
+ * - 구간들은 고정 크기 스레드풀에서 동시에 실행한다. (parallelism 은 커넥션 풀 크기보다 작게)
+ * - 실패하면 남은 구간은 실행하지 않고 BulkUpdateException 을 던진다. 같은 작업으로 다시 execute 하면 이어서 실행한다.
+ * - clearAutomatically 처럼 영속성 컨텍스트 전체를 비우지 않고, 바뀐 구간의 엔티티만 detach 한다.
+ * - 구간들은 각자 새 트랜잭션에서 실행되므로 트랜잭션 안에서 호출하면 안된다. (커밋 안된 데이터가 안 보이고 잠금 대기가 생긴다.)
+ */
+@Slf4j
+@Component
+public class ChunkedBulkUpdater {
+
+    private final EntityManager em;
+    private final EntityManagerFactory emf;
+    private final TransactionTemplate tx;
+    private final ExecutorService executor;
+    private final long defaultChunkSize;
+
+    public ChunkedBulkUpdater(EntityManager em,
+                              EntityManagerFactory emf,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${datajpa.bulk.parallelism:4}") int parallelism,
+                              @Value("${datajpa.bulk.chunk-size:1000}") long defaultChunkSize) {
+        this.em = em;
+        this.emf = emf;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.executor = newExecutor(parallelism);
+        this.defaultChunkSize = defaultChunkSize;
+    }
+
+    /**
+     * 조건에 맞는 id 범위(min ~ max)를 chunkSize 단위로 나눈다.
+     * @param parameters rangeJpql, updateJpql 에 같이 바인딩할 값 (:fromId, :toId 제외)
+     */
+    public ChunkedBulkUpdate prepare(BulkUpdateOperation operation, Map<String, Object> parameters, long chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize 는 1 이상이어야 합니다. chunkSize=" + chunkSize);
+        }
+        emf.getMetamodel().entity(operation.getEntityClass()); // 엔티티가 아니면 IllegalArgumentException
+        Query rangeQuery = em.createQuery(operation.getRangeJpql());
+        parameters.forEach(rangeQuery::setParameter);
+        Object[] minMax = (Object[]) rangeQuery.getSingleResult();
+
+        List<ChunkedBulkUpdate.IdRange> ranges = new ArrayList<>();
+        if (minMax[0] != null) { // 대상이 없으면 구간도 없다.
+            long min = ((Number) minMax[0]).longValue();
+            long max = ((Number) minMax[1]).longValue();
+            for (long from = min; from <= max; from += chunkSize) {
+                ranges.add(new ChunkedBulkUpdate.IdRange(from, Math.min(from + chunkSize - 1, max)));
+            }
+        }
+        return new ChunkedBulkUpdate(operation, parameters, ranges);
+    }
+
+    public ChunkedBulkUpdate prepare(BulkUpdateOperation operation, Map<String, Object> parameters) {
+        return prepare(operation, parameters, defaultChunkSize);
+    }
+
+    /**
+     * 아직 커밋되지 않은 구간들을 실행한다.
+     * @param progress 구간 하나가 커밋될 때마다 작업 스레드에서 호출된다.
+     * @return 이번 작업 전체에서 update 된 row 수 (재실행 이전 것 포함)
+     */
+    public long execute(ChunkedBulkUpdate job, Consumer<ChunkedBulkUpdate> progress) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("구간마다 따로 커밋하므로 트랜잭션 밖에서 호출해야 합니다.");
+        }
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < job.getTotalRanges(); i++) {
+            if (job.isCompleted(i)) {
+                continue;
+            }
+            int index = i;
+            futures.add(executor.submit(() -> {
+                if (failed.get()) {
+                    return; // 실패 이후의 구간은 실행하지 않는다.
+                }
+                try {
+                    int rows = updateRange(job, index);
+                    job.complete(index, rows);
+                    progress.accept(job);
+                } catch (RuntimeException e) {
+                    failed.set(true);
+                    throw e;
+                }
+            }));
+        }
+
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new IllegalStateException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.set(true);
+                failure = new IllegalStateException("벌크 update 대기 중 인터럽트", e);
+                break;
+            }
+        }
+        evictUpdated(job); // 실패했어도 커밋된 구간은 반영되었다.
+        if (failure != null) {
+            log.warn("벌크 update 실패 {}", job, failure);
+            throw new BulkUpdateException(job, failure);
+        }
+        return job.getUpdatedRows();
+    }
+
+    public long execute(ChunkedBulkUpdate job) {
+        return execute(job, j -> log.debug("벌크 update 진행 {}", j));
+    }
+
+    private int updateRange(ChunkedBulkUpdate job, int index) {
+        ChunkedBulkUpdate.IdRange range = job.getRanges().get(index);
+        Integer rows = tx.execute(status -> {
+            Query query = em.createQuery(job.getOperation().getUpdateJpql())
+                    .setParameter("fromId", range.getFromId())
+                    .setParameter("toId", range.getToId());
+            job.getParameters().forEach(query::setParameter);
+            return query.executeUpdate();
+        });
+        return rows == null ? 0 : rows;
+    }
+
+    /**
+     * 호출한 스레드에 묶인 영속성 컨텍스트(OSIV 등)가 있으면 바뀐 구간의 엔티티만 detach 한다.
+     */
+    private void evictUpdated(ChunkedBulkUpdate job) {
+        EntityManager current = EntityManagerFactoryUtils.getTransactionalEntityManager(emf);
+        if (current == null) {
+            return;
+        }
+        SessionImplementor session = current.unwrap(SessionImplementor.class);
+        List<Object> targets = new ArrayList<>();
+        for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContext().reentrantSafeEntityEntries()) {
+            if (job.getOperation().getEntityClass().isInstance(entry.getKey()) && job.isUpdated(entry.getValue().getId())) {
+                targets.add(entry.getKey());
+            }
+        }
+        targets.forEach(current::detach);
+    }
+
+    private static ExecutorService newExecutor(int parallelism) {
+        AtomicInteger seq = new AtomicInteger();
+        // 구간 수만큼 대기열에 쌓이고 스레드는 parallelism 개만 사용한다.
+        return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "bulk-update-" + seq.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -1,5 +1,8 @@
 package study.datajpa.repository;
 
+import study.datajpa.projection.GenerateProjection;
+
+@GenerateProjection // MemberProjectionRow 생성, select 컬럼 순서를 getter 순서와 맞춘다.
 public interface MemberProjection {
     Long getId();
     String getUsername();
@@ -72,17 +72,12 @@ public interface MemberRepository extends JpaRepository<Member, Long> , MemberRe
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     List<Member> findLockByUsername(String username);
 
-    List<UsernameOnly> findProjectionsByUsername(@Param("username") String username);
+    // findProjectionsByUsername 은 MemberRepositoryCustom 으로 옮김 (생성된 UsernameOnlyRow 로 매핑)
     <T> List<T> findProjectionsDtoByUsername(@Param("username") String username, Class<T> type);
 
     // 해당 내용 그대로 DB에 쿼리를 날린다.
     @Query(value = "select * from member where username = ?", nativeQuery = true)
     Member findByNativeQuery(String username);
 
-    // Projection 에 맞게 매칭
-    @Query(value = "select m.member_id as id, m.username, t.name as teamName " +
-    "from member m left join team t",
-    countQuery = "select count(*) from member",
-    nativeQuery = true)
-    Page<MemberProjection> findByNativeProjection(Pageable pageable);
+    // findByNativeProjection 은 MemberRepositoryCustom 으로 옮김 (생성된 MemberProjectionRow 로 매핑)
 }
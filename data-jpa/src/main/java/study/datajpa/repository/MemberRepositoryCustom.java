@@ -1,10 +1,27 @@
 package study.datajpa.repository;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import study.datajpa.entity.Member;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface MemberRepositoryCustom {
 
     List<Member> findMemberCustom();
+
+    // bulkAgePlus 를 id 구간별로 나누어 커밋 (ChunkedBulkUpdater)
+    ChunkedBulkUpdate prepareBulkAgePlus(int age, long chunkSize);
+
+    long bulkAgePlusChunked(int age);
+
+    // Specification 조회를 id 구간별로 동시에 읽어서 batch 단위로 넘겨준다. (ParallelSpecScanner)
+    long findAllParallel(Specification<Member> spec, int parallelism, Consumer<List<Member>> consumer);
+
+    // 프록시(TupleBackedMap + JDK Proxy) 대신 컴파일때 생성된 *Row 로 컬럼 index 매핑 (@GenerateProjection)
+    List<UsernameOnly> findProjectionsByUsername(String username);
+
+    Page<MemberProjection> findByNativeProjection(Pageable pageable);
 }
@@ -1,10 +1,16 @@
 package study.datajpa.repository;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
 import study.datajpa.entity.Member;
 
 import javax.persistence.EntityManager;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 @RequiredArgsConstructor // 구현체 이름을 인터페이스명+Impl 로 맞춰주어야 Spring Date JPA가 맞추어서 알아서 처리해줌
 public class MemberRepositoryImpl implements MemberRepositoryCustom{
     // DB 커넥션
@@ -14,7 +20,14 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
         // RA로 인해 Injection
 
     // -> 주로 스프링 데이터 JPA로 처리할 수 없는 복잡한 동적쿼리를 짤떄 선택함
+    // bulkAgePlus 와 같은 조건 (id 구간별로 나누어 실행)
+    static final BulkUpdateOperation BULK_AGE_PLUS = new BulkUpdateOperation(Member.class,
+            "select min(m.id), max(m.id) from Member m where m.age >= :age",
+            "update Member m set m.age = m.age + 1 where m.age >= :age and m.id between :fromId and :toId");
+
     private final EntityManager em;
+    private final ChunkedBulkUpdater bulkUpdater;
+    private final ParallelSpecScanner specScanner;
 
 
     @Override
@@ -22,4 +35,40 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom{
         return em.createQuery("select m from Member m")
                 .getResultList();
     }
+
+    @Override
+    public ChunkedBulkUpdate prepareBulkAgePlus(int age, long chunkSize) {
+        return bulkUpdater.prepare(BULK_AGE_PLUS, Map.of("age", age), chunkSize);
+    }
+
+    @Override
+    public long bulkAgePlusChunked(int age) {
+        return bulkUpdater.execute(bulkUpdater.prepare(BULK_AGE_PLUS, Map.of("age", age)));
+    }
+
+    @Override
+    public long findAllParallel(Specification<Member> spec, int parallelism, Consumer<List<Member>> consumer) {
+        return specScanner.scan(Member.class, spec, parallelism, consumer);
+    }
+
+    @Override
+    public List<UsernameOnly> findProjectionsByUsername(String username) {
+        List<?> rows = em.createQuery("select m.username from Member m where m.username = :username")
+                .setParameter("username", username)
+                .getResultList();
+        return UsernameOnlyRow.ofAll(rows);
+    }
+
+    // select 컬럼 순서 = MemberProjection getter 순서
+    @Override
+    public Page<MemberProjection> findByNativeProjection(Pageable pageable) {
+        List<?> rows = em.createNativeQuery("select m.member_id as id, m.username, t.name as teamName " +
+                        "from member m left join team t on m.team_id = t.team_id " +
+                        "order by m.member_id")
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        return PageableExecutionUtils.getPage(MemberProjectionRow.ofAll(rows), pageable,
+                () -> ((Number) em.createNativeQuery("select count(*) from member").getSingleResult()).longValue());
+    }
 }
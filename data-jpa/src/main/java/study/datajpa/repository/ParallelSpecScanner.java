@@ -0,0 +1,242 @@
+package study.datajpa.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Specification 조회를 id 구간으로 나누어 동시에 읽는다. (통계/분석용 전체 조회)
+ * - min / max / count 를 한번 조회하고, count 를 partition 수로 나눈 위치의 id 를 샘플링해서 구간 경계로 쓴다.
+ *   id 가 한쪽에 몰려 있어도(중간에 큰 빈 구간이 있어도) 구간마다 row 수가 비슷해진다.
+ * - 구간마다 작업 스레드 하나가 읽기 전용 트랜잭션(= 커넥션 하나)을 잡고 id 순서대로 batchSize 씩 keyset 조회한다.
+ * - 읽은 batch 는 크기가 정해진 대기열에 넣고, consumer 는 호출한 스레드에서 하나씩 처리한다.
+ *   consumer 가 느리면 대기열이 차서 작업 스레드가 다음 batch 를 읽지 않고 기다린다. (메모리에 쌓이지 않는다.)
+ * - batch 마다 영속성 컨텍스트를 비우므로 consumer 가 받는 엔티티는 준영속 상태다. (지연로딩 불가)
+ */
+@Component
+public class ParallelSpecScanner {
+
+    private static final String ID = "id";
+
+    private final EntityManager em;
+    private final TransactionTemplate readOnlyTx;
+    private final ExecutorService executor;
+    private final int batchSize;
+
+    public ParallelSpecScanner(EntityManager em,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${datajpa.scan.max-parallelism:4}") int maxParallelism,
+                               @Value("${datajpa.scan.batch-size:500}") int batchSize) {
+        this.em = em;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTx.setReadOnly(true);
+        this.executor = newExecutor(maxParallelism);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param parallelism 나눌 구간 수 (max-parallelism 보다 크면 남는 구간은 앞 구간이 끝나길 기다린다.)
+     * @param consumer    batch 하나씩 호출한 스레드에서 호출된다. 구간끼리의 순서는 보장하지 않는다.
+     * @return 읽은 row 수
+     */
+    public <T> long scan(Class<T> entityClass, Specification<T> spec, int parallelism, Consumer<List<T>> consumer) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism 은 1 이상이어야 합니다. parallelism=" + parallelism);
+        }
+        List<Long> bounds = partitionBounds(entityClass, spec, parallelism);
+        if (bounds.isEmpty()) {
+            return 0;
+        }
+        int partitions = bounds.size() - 1;
+        BlockingQueue<List<?>> queue = new ArrayBlockingQueue<>(partitions * 2);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        AtomicInteger finished = new AtomicInteger(); // 끝난 구간 수 (실패해도 센다.)
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        for (int i = 0; i < partitions; i++) {
+            long from = bounds.get(i);
+            long to = bounds.get(i + 1);
+            boolean last = i == partitions - 1;
+            executor.execute(() -> {
+                try {
+                    readOnlyTx.executeWithoutResult(s -> scanPartition(entityClass, spec, from, to, last, queue, cancelled));
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    finished.incrementAndGet();
+                }
+            });
+        }
+
+        long rows = 0;
+        boolean completed = false;
+        try {
+            while (true) {
+                // 대기열을 보기 전에 센다. 그때까지 끝난 구간의 batch 는 모두 대기열에 들어가 있다.
+                int done = finished.get();
+                List<?> batch = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (failure.get() != null) {
+                    throw failure.get();
+                }
+                if (batch == null) {
+                    if (done == partitions) {
+                        break;
+                    }
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                List<T> entities = (List<T>) batch;
+                consumer.accept(entities);
+                rows += entities.size();
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("병렬 조회 대기 중 인터럽트", e);
+        } finally {
+            if (!completed) {
+                cancelled.set(true); // consumer 실패 등으로 중단되면 작업 스레드들도 멈춘다.
+                queue.clear();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 구간 경계 [b0, b1), [b1, b2) ... [bn-1, bn] - 마지막 구간만 끝을 포함한다.
+     * @return 대상이 없으면 빈 목록
+     */
+    <T> List<Long> partitionBounds(Class<T> entityClass, Specification<T> spec, int parallelism) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Object[]> statsQuery = cb.createQuery(Object[].class);
+        Root<T> statsRoot = statsQuery.from(entityClass);
+        Path<Long> statsId = statsRoot.get(ID);
+        statsQuery.multiselect(cb.min(statsId), cb.max(statsId), cb.count(statsId))
+                .where(where(spec, statsRoot, statsQuery, cb));
+        Object[] stats = em.createQuery(statsQuery).getSingleResult();
+        long count = ((Number) stats[2]).longValue();
+        if (count == 0) {
+            return new ArrayList<>();
+        }
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(((Number) stats[0]).longValue());
+        int partitions = (int) Math.min(parallelism, count);
+        long max = ((Number) stats[1]).longValue();
+        for (int i = 1; i < partitions; i++) {
+            Long bound = idAt(entityClass, spec, count * i / partitions);
+            if (bound == null) {
+                break; // count 이후에 row 가 지워졌다. 남은 구간은 마지막 구간에 합친다.
+            }
+            if (bound > bounds.get(bounds.size() - 1) && bound <= max) {
+                bounds.add(bound);
+            }
+        }
+        bounds.add(max); // row 가 하나뿐이면 [id, id] 한 구간
+        return bounds;
+    }
+
+    // id 순서로 offset 번째 row 의 id (샘플링), 없으면 null
+    private <T> Long idAt(Class<T> entityClass, Specification<T> spec, long offset) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        Root<T> root = query.from(entityClass);
+        query.select(root.get(ID))
+                .where(where(spec, root, query, cb))
+                .orderBy(cb.asc(root.get(ID)));
+        List<Long> ids = em.createQuery(query)
+                .setFirstResult((int) offset)
+                .setMaxResults(1)
+                .getResultList();
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    private <T> void scanPartition(Class<T> entityClass, Specification<T> spec, long from, long to, boolean last,
+                                   BlockingQueue<List<?>> queue, AtomicBoolean cancelled) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        Long after = null;
+        while (!cancelled.get()) {
+            CriteriaQuery<T> query = cb.createQuery(entityClass);
+            Root<T> root = query.from(entityClass);
+            Path<Long> id = root.get(ID);
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(where(spec, root, query, cb));
+            predicates.add(after == null ? cb.ge(id, from) : cb.gt(id, after)); // keyset
+            predicates.add(last ? cb.le(id, to) : cb.lt(id, to));
+            query.select(root)
+                    .where(predicates.toArray(new Predicate[0]))
+                    .orderBy(cb.asc(id));
+            List<T> batch = em.createQuery(query)
+                    .setMaxResults(batchSize)
+                    .getResultList();
+            if (batch.isEmpty()) {
+                return;
+            }
+            after = (Long) em.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(batch.get(batch.size() - 1));
+            em.clear(); // batch 마다 비워서 구간이 커도 영속성 컨텍스트가 커지지 않는다.
+            put(queue, batch, cancelled);
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private static <T> Predicate where(Specification<T> spec, Root<T> root, CriteriaQuery<?> query, CriteriaBuilder cb) {
+        Predicate predicate = spec == null ? null : spec.toPredicate(root, query, cb);
+        return predicate == null ? cb.conjunction() : predicate;
+    }
+
+    // 대기열이 가득 차 있으면 기다린다. (backpressure) 중단되면 버린다.
+    // 인터럽트되면 batch 를 버리지 않고 구간을 실패시킨다. (읽은 row 가 조용히 빠지면 안된다.)
+    private static void put(BlockingQueue<List<?>> queue, List<?> batch, AtomicBoolean cancelled) {
+        try {
+            while (!cancelled.get()) {
+                if (queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("병렬 조회 결과 전달 중 인터럽트", e);
+        }
+    }
+
+    private static ExecutorService newExecutor(int maxParallelism) {
+        AtomicInteger seq = new AtomicInteger();
+        return new ThreadPoolExecutor(maxParallelism, maxParallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "spec-scan-" + seq.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -1,7 +1,9 @@
 package study.datajpa.repository;
 
 import org.springframework.beans.factory.annotation.Value;
+import study.datajpa.projection.GenerateProjection;
 
+@GenerateProjection // UsernameOnlyRow 생성 (open projection 인 @Value 는 쓸 수 없다.)
 public interface UsernameOnly {
 //    @Value("#{target.username + ' ' + target.age}") // username과 age를 더한 값
     String getUsername();
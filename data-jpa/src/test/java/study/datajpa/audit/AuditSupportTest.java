@@ -0,0 +1,49 @@
+package study.datajpa.audit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 기본 mode(SPRING) 에서도 AuditAccessors 가 지원하지 않는 타입의 감사 필드를 채우는지 확인한다.
+ */
+@SpringBootTest
+@Transactional
+class AuditSupportTest {
+
+    @Autowired AuditSupport auditSupport;
+
+    @Test
+    public void unsupported_field_type_is_audited() throws Exception{
+        //given
+        assertEquals(AuditMode.SPRING, auditSupport.getMode());
+        InstantSample sample = new InstantSample();
+
+        //when
+        auditSupport.markCreated(sample);
+        Instant created = sample.createdDate;
+        auditSupport.markModified(sample);
+
+        //then
+        assertNotNull(created);
+        assertNotNull(sample.lastModifiedDate);
+        assertEquals(created, sample.createdDate);
+    }
+
+    /**
+     * 날짜 필드가 Instant 인 감사 대상 (AuditAccessors 는 LocalDateTime 만 지원한다.)
+     */
+    static class InstantSample {
+        @CreatedDate
+        Instant createdDate;
+        @LastModifiedDate
+        Instant lastModifiedDate;
+    }
+}
@@ -0,0 +1,197 @@
+package study.datajpa.audit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.auditing.AuditingHandler;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import study.datajpa.entity.BaseEntity;
+import study.datajpa.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 이력은 커밋된 뒤에 기록되므로 @Transactional 을 붙이지 않는다.
+ */
+@SpringBootTest(properties = {"datajpa.audit.mode=FAST", "datajpa.audit.history.enabled=true"})
+class FastAuditingTest {
+
+    @Autowired AuditSupport auditSupport;
+    @Autowired AuditingHandler auditingHandler;
+    @Autowired AuditHistoryWriter historyWriter;
+    @Autowired TransactionTemplate tx;
+    @Autowired JdbcTemplate jdbcTemplate;
+    @PersistenceContext EntityManager em;
+
+    @AfterEach
+    void cleanUp() {
+        tx.executeWithoutResult(s -> em.createQuery("delete from Team t where t.name like 'audit%'").executeUpdate());
+        historyWriter.flush();
+        jdbcTemplate.update("delete from audit_history");
+    }
+
+    @Test
+    public void timestamps() throws Exception{
+        //given
+        Long teamId = tx.execute(s -> {
+            Team team = new Team("auditA");
+            em.persist(team);
+            return team.getId();
+        });
+        Team created = find(teamId);
+        assertNotNull(created.getCreatedDate());
+        assertEquals(created.getCreatedDate(), created.getLastModifiedDate());
+
+        //when
+        Thread.sleep(10);
+        tx.executeWithoutResult(s -> em.find(Team.class, teamId).setName("auditB"));
+
+        //then
+        Team updated = find(teamId);
+        assertEquals(created.getCreatedDate(), updated.getCreatedDate());
+        assertThat(updated.getLastModifiedDate()).isAfter(created.getLastModifiedDate());
+    }
+
+    @Test
+    public void auditor_looked_up_once_per_transaction() throws Exception{
+        //given : auditorProvider 는 호출할 때마다 새 UUID 를 돌려준다.
+        RequestContextHolder.resetRequestAttributes(); // 테스트 메서드마다 묶이는 mock 요청을 뗀다.
+        Sample a = new Sample();
+        Sample b = new Sample();
+        Sample c = new Sample();
+
+        //when
+        tx.executeWithoutResult(s -> {
+            auditSupport.markCreated(a);
+            auditSupport.markCreated(b);
+        });
+        tx.executeWithoutResult(s -> auditSupport.markCreated(c));
+
+        //then
+        assertNotNull(a.getCreatedBy());
+        assertEquals(a.getCreatedBy(), a.getLastModifiedBy());
+        assertEquals(a.getCreatedBy(), b.getCreatedBy());
+        assertNotEquals(a.getCreatedBy(), c.getCreatedBy());
+    }
+
+    @Test
+    public void auditor_looked_up_once_per_request() throws Exception{
+        //given
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        Sample a = new Sample();
+        Sample b = new Sample();
+
+        //when : 한 요청 안의 여러 트랜잭션
+        tx.executeWithoutResult(s -> auditSupport.markCreated(a));
+        tx.executeWithoutResult(s -> auditSupport.markCreated(b));
+
+        //then
+        assertNotNull(a.getCreatedBy());
+        assertEquals(a.getCreatedBy(), b.getCreatedBy());
+    }
+
+    @Test
+    public void history_written_after_commit() throws Exception{
+        //when
+        Long teamId = tx.execute(s -> {
+            Team team = new Team("auditA");
+            em.persist(team);
+            em.flush();
+            team.setName("auditB");
+            return team.getId();
+        });
+        tx.executeWithoutResult(s -> em.remove(em.find(Team.class, teamId)));
+        historyWriter.flush();
+
+        //then
+        List<String> actions = jdbcTemplate.queryForList(
+                "select action from audit_history where entity_name = 'Team' and entity_id = ? order by id",
+                String.class, teamId.toString());
+        assertEquals(List.of("CREATE", "UPDATE", "DELETE"), actions);
+    }
+
+    @Test
+    public void no_history_on_rollback() throws Exception{
+        //when
+        tx.executeWithoutResult(s -> {
+            em.persist(new Team("auditA"));
+            em.flush();
+            s.setRollbackOnly();
+        });
+        historyWriter.flush();
+
+        //then
+        assertEquals(0, jdbcTemplate.queryForObject("select count(*) from audit_history", Long.class));
+    }
+
+    @Test
+    public void history_of_requires_new_follows_its_own_commit() throws Exception{
+        //given
+        TransactionTemplate requiresNew = new TransactionTemplate(tx.getTransactionManager());
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        //when : 안쪽(REQUIRES_NEW)은 커밋, 바깥은 롤백
+        Long innerId = tx.execute(s -> {
+            em.persist(new Team("auditOuter"));
+            em.flush();
+            Long id = requiresNew.execute(inner -> {
+                Team team = new Team("auditInner");
+                em.persist(team);
+                return team.getId();
+            });
+            s.setRollbackOnly();
+            return id;
+        });
+        historyWriter.flush();
+
+        //then
+        List<String> ids = jdbcTemplate.queryForList("select entity_id from audit_history", String.class);
+        assertEquals(List.of(innerId.toString()), ids);
+    }
+
+    /**
+     * AuditingHandler vs MethodHandle (수동 실행)
+     */
+    @Disabled("수동으로 실행하는 성능 측정")
+    @Test
+    public void benchmark_spring_vs_fast() throws Exception{
+        int count = 1_000_000;
+        for (int round = 0; round < 3; round++) { // 앞 round 는 워밍업
+            run("spring", count, auditingHandler::markCreated);
+            run("fast", count, auditSupport::markCreated);
+        }
+    }
+
+    private void run(String name, int count, Consumer<Object> markCreated) {
+        tx.executeWithoutResult(s -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                markCreated.accept(new Sample());
+            }
+            System.out.printf("%-6s count=%,d elapsed=%,dms%n", name, count, (System.nanoTime() - start) / 1_000_000);
+        });
+    }
+
+    private Team find(Long id) {
+        return tx.execute(s -> em.find(Team.class, id));
+    }
+
+    /**
+     * createdBy / lastModifiedBy 까지 있는 감사 대상 (엔티티가 아니어도 된다.)
+     */
+    static class Sample extends BaseEntity {
+    }
+}
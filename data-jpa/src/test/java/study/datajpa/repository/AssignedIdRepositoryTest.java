@@ -0,0 +1,133 @@
+package study.datajpa.repository;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Item;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 실제로 나가는 SQL 수는 Hibernate Statistics 의 prepareStatementCount 로 확인한다.
+ * (JDBC batch 는 batch 하나에 statement 하나)
+ */
+@SpringBootTest
+class AssignedIdRepositoryTest {
+
+    @Autowired ItemRepository itemRepository;
+    @Autowired TransactionTemplate tx;
+    @Autowired EntityManagerFactory emf;
+    @PersistenceContext EntityManager em;
+
+    Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        tx.executeWithoutResult(s -> em.createQuery("delete from Item i where i.id like 'asg%'").executeUpdate());
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    public void save_new_without_select() throws Exception{
+        //given
+        Item item = new Item("asg-1");
+        assertTrue(item.isNew());
+        statistics.clear();
+
+        //when
+        tx.executeWithoutResult(s -> itemRepository.save(item));
+
+        //then : insert 하나만 나간다. (merge 였다면 select 가 먼저 나간다.)
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1, statistics.getEntityInsertCount());
+        assertFalse(item.isNew(), "@PostPersist 에서 false 로 바뀐다.");
+        assertNotNull(item.getCreatedDate());
+    }
+
+    @Test
+    public void save_loaded_uses_merge() throws Exception{
+        //given
+        tx.executeWithoutResult(s -> itemRepository.save(new Item("asg-1")));
+        Item loaded = tx.execute(s -> em.find(Item.class, "asg-1"));
+        assertFalse(loaded.isNew(), "@PostLoad 에서 false 로 바뀐다.");
+
+        //when : 준영속 엔티티를 다시 save -> persist 였다면 중복 키로 실패한다.
+        Item saved = tx.execute(s -> itemRepository.save(loaded));
+
+        //then
+        assertEquals("asg-1", saved.getId());
+        assertEquals(1, countItems());
+    }
+
+    @Test
+    public void insertAll_uses_jdbc_batch() throws Exception{
+        //given : hibernate.jdbc.batch_size = 100
+        List<Item> items = items(250, i -> "asg-" + i);
+        statistics.clear();
+
+        //when
+        int inserted = itemRepository.insertAll(items);
+
+        //then
+        assertEquals(250, inserted);
+        assertEquals(250, statistics.getEntityInsertCount());
+        assertEquals(3, statistics.getPrepareStatementCount(), "batch 100 + 100 + 50");
+        assertEquals(250, countItems());
+    }
+
+    /**
+     * merge (기존 SimpleJpaRepository.save) vs persist vs insertAll (수동 실행)
+     */
+    @Disabled("수동으로 실행하는 성능 측정")
+    @Test
+    public void benchmark_merge_vs_persist_vs_insertAll() throws Exception{
+        int count = 10_000;
+        for (int round = 0; round < 2; round++) { // 첫 round 는 워밍업
+            String prefix = "asg-" + round + "-";
+            run("merge", () -> tx.executeWithoutResult(s -> items(count, i -> prefix + "m" + i).forEach(em::merge)));
+            run("persist", () -> tx.executeWithoutResult(s -> items(count, i -> prefix + "p" + i).forEach(itemRepository::save)));
+            run("insertAll", () -> itemRepository.insertAll(items(count, i -> prefix + "b" + i)));
+        }
+    }
+
+    private void run(String name, Runnable insert) {
+        statistics.clear();
+        long start = System.nanoTime();
+        insert.run();
+        System.out.printf("%-10s inserts=%,d statements=%,d elapsed=%,dms%n", name,
+                statistics.getEntityInsertCount(), statistics.getPrepareStatementCount(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // 다른 테스트가 남긴 Item 은 세지 않는다.
+    private long countItems() {
+        return tx.execute(s -> em.createQuery("select count(i) from Item i where i.id like 'asg%'", Long.class).getSingleResult());
+    }
+
+    private static List<Item> items(int count, IntFunction<String> id) {
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new Item(id.apply(i)));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,194 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 구간마다 따로 커밋해야 하므로 @Transactional 을 붙이지 않는다.
+ * - 다른 테스트가 남긴 회원에 영향을 주지 않도록 나이 BASE 이상인 회원만 만들고 지운다.
+ */
+@SpringBootTest
+class ChunkedBulkUpdaterTest {
+
+    static final int BASE = 10_000;
+
+    @Autowired MemberRepository memberRepository;
+    @Autowired ChunkedBulkUpdater bulkUpdater;
+    @Autowired TransactionTemplate tx;
+    @Autowired PlatformTransactionManager transactionManager;
+    @Autowired EntityManagerFactory emf;
+    @PersistenceContext EntityManager em;
+
+    @AfterEach
+    void cleanUp() {
+        tx.executeWithoutResult(s -> {
+            em.createQuery("delete from Member m where m.age >= :age").setParameter("age", BASE).executeUpdate();
+            em.createQuery("delete from Team t where t.name = 'bulkTeam'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void chunked_same_result_as_bulkAgePlus() throws Exception{
+        //given : 나이 BASE ~ BASE+299, 그 중 BASE+100 이상 200명이 대상
+        createMembers(300);
+
+        //when
+        ChunkedBulkUpdate job = memberRepository.prepareBulkAgePlus(BASE + 100, 16);
+        AtomicInteger progressCalls = new AtomicInteger();
+        long updated = bulkUpdater.execute(job, j -> progressCalls.incrementAndGet());
+
+        //then
+        assertEquals(200, updated);
+        assertTrue(job.isDone());
+        assertThat(job.getTotalRanges()).isGreaterThan(1);
+        assertEquals(job.getTotalRanges(), progressCalls.get());
+        assertAges(300, 100);
+    }
+
+    @Test
+    public void resume_after_failure_updates_each_row_once() throws Exception{
+        //given
+        createMembers(300);
+        ChunkedBulkUpdate job = memberRepository.prepareBulkAgePlus(BASE, 10);
+        AtomicInteger progressCalls = new AtomicInteger();
+
+        //when : 세번째 구간이 커밋된 뒤 실패
+        BulkUpdateException e = assertThrows(BulkUpdateException.class, () -> bulkUpdater.execute(job, j -> {
+            if (progressCalls.incrementAndGet() == 3) {
+                throw new IllegalStateException("중간 실패");
+            }
+        }));
+        assertSame(job, e.getJob());
+        assertFalse(job.isDone());
+        assertThat(job.getCompletedRanges()).isGreaterThanOrEqualTo(3); // 실패한 구간도 커밋은 되었다.
+
+        long updated = bulkUpdater.execute(e.getJob());
+
+        //then : 커밋된 구간은 건너뛰고 나머지만 실행해서 모든 회원이 정확히 한살씩 많아진다.
+        assertTrue(job.isDone());
+        assertEquals(300, updated);
+        assertAges(300, 0);
+    }
+
+    @Test
+    public void evicts_only_updated_members() throws Exception{
+        //given : OSIV 처럼 트랜잭션 없이 영속성 컨텍스트가 스레드에 묶여 있다.
+        Long skippedId = tx.execute(s -> {
+            Team team = new Team("bulkTeam");
+            em.persist(team);
+            Member skipped = new Member("skipped", BASE, team); // 구간 밖 (id 가 더 작고 나이 조건도 안 맞는다)
+            em.persist(skipped);
+            return skipped.getId();
+        });
+        createMembers(50);
+
+        EntityManager osiv = emf.createEntityManager();
+        TransactionSynchronizationManager.bindResource(emf, new EntityManagerHolder(osiv));
+        try {
+            Member skipped = osiv.find(Member.class, skippedId);
+            Team team = skipped.getTeam();
+            team.getName(); // 프록시 초기화
+            Member target = osiv.createQuery("select m from Member m where m.age = :age", Member.class)
+                    .setParameter("age", BASE + 49)
+                    .getSingleResult();
+
+            //when
+            bulkUpdater.execute(memberRepository.prepareBulkAgePlus(BASE + 10, 8));
+
+            //then
+            assertFalse(osiv.contains(target), "바뀐 회원은 detach 되어 다음 조회때 새 값을 읽는다.");
+            assertTrue(osiv.contains(skipped), "바뀌지 않은 구간의 회원은 그대로");
+            assertTrue(osiv.contains(team), "다른 엔티티도 그대로");
+            assertEquals(BASE + 50, osiv.find(Member.class, target.getId()).getAge());
+        } finally {
+            TransactionSynchronizationManager.unbindResource(emf);
+            osiv.close();
+        }
+    }
+
+    @Test
+    public void cannot_run_inside_transaction() throws Exception{
+        createMembers(10);
+        ChunkedBulkUpdate job = memberRepository.prepareBulkAgePlus(BASE, 4);
+
+        assertThrows(IllegalStateException.class, () -> tx.executeWithoutResult(s -> bulkUpdater.execute(job)));
+        assertEquals(0, job.getCompletedRanges());
+    }
+
+    /**
+     * update 한 문장 vs id 구간별 커밋 (수동 실행)
+     */
+    @Disabled("데이터 준비에 시간이 오래 걸리므로 필요할 때만 수동으로 실행")
+    @Test
+    public void benchmark_monolithic_vs_chunked() throws Exception{
+        int rows = 200_000;
+        tx.executeWithoutResult(s -> em.createNativeQuery(
+                        "insert into member(member_id, age, username)" +
+                                " select x, " + BASE + " + mod(x, 100), concat('bulk', x) from system_range(1000001, " + (1_000_000 + rows) + ")")
+                .executeUpdate());
+
+        for (int round = 0; round < 2; round++) { // 첫 round 는 워밍업
+            long start = System.nanoTime();
+            int monolithic = tx.execute(s -> memberRepository.bulkAgePlus(BASE));
+            report("monolithic", monolithic, start);
+
+            for (int parallelism : new int[]{1, 4}) {
+                ChunkedBulkUpdater updater = new ChunkedBulkUpdater(em, emf, transactionManager, parallelism, 10_000);
+                try {
+                    start = System.nanoTime();
+                    long chunked = updater.execute(updater.prepare(MemberRepositoryImpl.BULK_AGE_PLUS,
+                            Map.of("age", BASE), 10_000));
+                    report("chunked-p" + parallelism, chunked, start);
+                } finally {
+                    updater.shutdown();
+                }
+            }
+        }
+    }
+
+    private static void report(String name, long rows, long start) {
+        System.out.printf("%-12s rows=%,d elapsed=%,dms%n", name, rows, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void createMembers(int count) {
+        tx.executeWithoutResult(s -> {
+            for (int i = 0; i < count; i++) {
+                em.persist(new Member("bulk" + i, BASE + i, null));
+            }
+        });
+    }
+
+    /**
+     * 나이 BASE+from 이상인 회원만 한살씩 많아졌는지 확인
+     */
+    private void assertAges(int count, int from) {
+        List<Member> members = tx.execute(s -> em.createQuery(
+                        "select m from Member m where m.age >= :age order by m.id", Member.class)
+                .setParameter("age", BASE)
+                .getResultList());
+        assertEquals(count, members.size());
+        for (int i = 0; i < count; i++) {
+            int expected = BASE + i + (i >= from ? 1 : 0);
+            assertEquals(expected, members.get(i).getAge(), members.get(i).getUsername());
+        }
+    }
+}
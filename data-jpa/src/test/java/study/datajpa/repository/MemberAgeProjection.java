@@ -0,0 +1,8 @@
+package study.datajpa.repository;
+
+import study.datajpa.projection.GenerateProjection;
+
+@GenerateProjection // 상속받은 getter(MemberProjection) 먼저, 그 다음 age
+public interface MemberAgeProjection extends MemberProjection {
+    int getAge();
+}
@@ -0,0 +1,190 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 작업 스레드가 각자 트랜잭션에서 읽으므로 데이터를 커밋해야 한다. (@Transactional 을 붙이지 않는다.)
+ * - 다른 테스트가 남긴 회원과 섞이지 않도록 나이 BASE 이상인 회원만 만들고 지운다.
+ */
+@SpringBootTest
+class ParallelSpecScannerTest {
+
+    static final int BASE = 20_000;
+
+    @Autowired MemberRepository memberRepository;
+    @Autowired ParallelSpecScanner specScanner;
+    @Autowired TransactionTemplate tx;
+    @PersistenceContext EntityManager em;
+
+    @AfterEach
+    void cleanUp() {
+        tx.executeWithoutResult(s -> {
+            em.createQuery("delete from Member m where m.age >= :age").setParameter("age", BASE).executeUpdate();
+            em.createQuery("delete from Team t where t.name like 'scan%'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void same_result_as_findAll() throws Exception{
+        //given
+        tx.executeWithoutResult(s -> {
+            Team teamA = new Team("scanA");
+            Team teamB = new Team("scanB");
+            em.persist(teamA);
+            em.persist(teamB);
+            for (int i = 0; i < 1_000; i++) {
+                em.persist(new Member("scan" + i, BASE + i, i % 3 == 0 ? teamB : teamA));
+            }
+        });
+        Specification<Member> spec = MemberSpec.teamName("scanA").and(ageGoe(BASE));
+
+        //when
+        List<Long> ids = new ArrayList<>();
+        long rows = memberRepository.findAllParallel(spec, 4, batch -> batch.forEach(m -> ids.add(m.getId())));
+
+        //then : 빠지거나 중복된 회원이 없다.
+        List<Member> all = memberRepository.findAll(spec); // JpaSpecificationExecutor 가 raw type 이다.
+        Set<Long> expected = all.stream().map(Member::getId).collect(toSet());
+        assertEquals(666, expected.size());
+        assertEquals(666, rows);
+        assertEquals(expected, new HashSet<>(ids));
+        assertEquals(ids.size(), new HashSet<>(ids).size());
+    }
+
+    @Test
+    public void partitions_balanced_by_row_count() throws Exception{
+        //given : id 900개가 몰려 있고, 나머지 100개는 아주 넓게 흩어져 있다.
+        tx.executeWithoutResult(s -> em.createNativeQuery(
+                        "insert into member(member_id, age, username)" +
+                                " select x, " + BASE + ", 'dense' from system_range(3000001, 3000900)" +
+                                " union all select 3000900 + x * 10000, " + BASE + ", 'sparse' from system_range(1, 100)")
+                .executeUpdate());
+        Specification<Member> spec = ageGoe(BASE);
+
+        //when
+        List<Long> bounds = specScanner.partitionBounds(Member.class, spec, 4);
+
+        //then : id 범위를 균등하게 나누면 첫 구간에 900개가 몰리지만, 샘플링한 경계는 250개씩 나눈다.
+        assertEquals(5, bounds.size());
+        for (int i = 0; i < 4; i++) {
+            long from = bounds.get(i);
+            long to = bounds.get(i + 1);
+            boolean last = i == 3;
+            long count = tx.execute(s -> em.createQuery(
+                            "select count(m) from Member m where m.age >= :age and m.id >= :from and " +
+                                    (last ? "m.id <= :to" : "m.id < :to"), Long.class)
+                    .setParameter("age", BASE)
+                    .setParameter("from", from)
+                    .setParameter("to", to)
+                    .getSingleResult());
+            assertEquals(250, count, "partition " + i);
+        }
+    }
+
+    @Test
+    public void consumer_failure_stops_scan() throws Exception{
+        //given
+        createMembers(2_000);
+
+        //when : 첫 batch 에서 실패 (repository 를 거치면 DataAccessException 으로 바뀌므로 직접 호출)
+        AtomicInteger batches = new AtomicInteger();
+        assertThrows(IllegalStateException.class, () -> specScanner.scan(Member.class, ageGoe(BASE), 4, batch -> {
+            batches.incrementAndGet();
+            throw new IllegalStateException("consumer 실패");
+        }));
+
+        //then : 작업 스레드가 멈춰서 다음 조회가 정상적으로 실행된다.
+        assertEquals(1, batches.get());
+        assertEquals(2_000, memberRepository.findAllParallel(ageGoe(BASE), 4, batch -> { }));
+    }
+
+    @Test
+    public void worker_interrupt_fails_scan() throws Exception{
+        //given : 작업 스레드가 조회 조건을 만들 때 인터럽트된다.
+        createMembers(2_000);
+        Specification<Member> interrupted = (root, query, builder) -> {
+            if (Thread.currentThread().getName().startsWith("spec-scan-")) {
+                Thread.currentThread().interrupt();
+            }
+            return builder.ge(root.get("age"), BASE);
+        };
+
+        //when then : 읽은 batch 를 버리고 끝나거나 멈추지 않고 실패한다.
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () ->
+                assertThrows(RuntimeException.class, () -> specScanner.scan(Member.class, interrupted, 4, batch -> { })));
+        assertEquals(2_000, memberRepository.findAllParallel(ageGoe(BASE), 4, batch -> { }));
+    }
+
+    @Test
+    public void empty_result() throws Exception{
+        assertEquals(0, memberRepository.findAllParallel(ageGoe(Integer.MAX_VALUE), 4, batch -> fail("대상 없음")));
+    }
+
+    /**
+     * 단일 쿼리 findAll(spec) vs 구간 병렬 조회 (수동 실행)
+     */
+    @Disabled("데이터 준비에 시간이 오래 걸리므로 필요할 때만 수동으로 실행")
+    @Test
+    public void benchmark_findAll_vs_parallel() throws Exception{
+        tx.executeWithoutResult(s -> em.createNativeQuery(
+                        "insert into member(member_id, age, username)" +
+                                " select x, " + BASE + " + mod(x, 100), concat('scan', x) from system_range(4000001, 4200000)")
+                .executeUpdate());
+        Specification<Member> spec = ageGoe(BASE + 10);
+
+        for (int round = 0; round < 2; round++) { // 첫 round 는 워밍업
+            long start = System.nanoTime();
+            int single = tx.execute(s -> {
+                int size = memberRepository.findAll(spec).size();
+                em.clear();
+                return size;
+            });
+            report("findAll", single, start);
+
+            for (int parallelism : new int[]{1, 4}) {
+                AtomicLong sum = new AtomicLong();
+                start = System.nanoTime();
+                long rows = memberRepository.findAllParallel(spec, parallelism,
+                        batch -> batch.forEach(m -> sum.addAndGet(m.getAge())));
+                report("parallel-p" + parallelism, rows, start);
+            }
+        }
+    }
+
+    private static void report(String name, long rows, long start) {
+        System.out.printf("%-12s rows=%,d elapsed=%,dms%n", name, rows, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static Specification<Member> ageGoe(int age) {
+        return (root, query, builder) -> builder.ge(root.get("age"), age);
+    }
+
+    private void createMembers(int count) {
+        tx.executeWithoutResult(s -> {
+            for (int i = 0; i < count; i++) {
+                em.persist(new Member("scan" + i, BASE + i, null));
+            }
+        });
+    }
+}
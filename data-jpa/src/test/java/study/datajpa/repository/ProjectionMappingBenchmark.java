@@ -0,0 +1,166 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.data.repository.query.ReturnedType;
+import study.datajpa.entity.Member;
+
+import javax.persistence.Tuple;
+import javax.persistence.TupleElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 네이티브 쿼리 결과 한 row -> MemberProjection 변환 비용 (DB 조회 제외)
+ * - proxy : Spring Data 가 하는 그대로 Tuple -> TupleBackedMap (TupleConverter) -> JDK 프록시 (ProjectionFactory)
+ * - generated : 컴파일때 생성된 MemberProjectionRow.of(Object[])
+ * 두 경우 모두 getter 3개를 호출한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectionMappingBenchmark {
+
+    private static final List<String> ALIASES = List.of("id", "username", "teamName");
+
+    private Object[] row;
+    private Tuple tuple;
+    private Converter<Object, Object> tupleConverter;
+    private ProjectionFactory projectionFactory;
+
+    @Setup
+    public void setUp() throws Exception {
+        row = new Object[]{1L, "member1", "teamA"};
+        tuple = new ArrayTuple(row);
+        projectionFactory = new SpelAwareProxyProjectionFactory();
+        tupleConverter = tupleConverter(projectionFactory);
+    }
+
+    @Benchmark
+    public void proxy(Blackhole bh) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) tupleConverter.convert(tuple);
+        consume(projectionFactory.createProjection(MemberProjection.class, map), bh);
+    }
+
+    @Benchmark
+    public void generated(Blackhole bh) {
+        consume(MemberProjectionRow.of(row), bh);
+    }
+
+    private static void consume(MemberProjection projection, Blackhole bh) {
+        bh.consume(projection.getId());
+        bh.consume(projection.getUsername());
+        bh.consume(projection.getTeamName());
+    }
+
+    // ReturnedType.of, AbstractJpaQuery.TupleConverter 는 package-private 이다.
+    @SuppressWarnings("unchecked")
+    private static Converter<Object, Object> tupleConverter(ProjectionFactory factory) throws Exception {
+        Method of = ReturnedType.class.getDeclaredMethod("of", Class.class, Class.class, ProjectionFactory.class);
+        of.setAccessible(true);
+        ReturnedType type = (ReturnedType) of.invoke(null, MemberProjection.class, Member.class, factory);
+        Constructor<?> constructor = Class.forName("org.springframework.data.jpa.repository.query.AbstractJpaQuery$TupleConverter")
+                .getDeclaredConstructor(ReturnedType.class);
+        constructor.setAccessible(true);
+        return (Converter<Object, Object>) constructor.newInstance(type);
+    }
+
+    /**
+     * Hibernate 가 네이티브 쿼리 결과로 만드는 Tuple 과 같은 모양 (alias 로 조회)
+     */
+    private static class ArrayTuple implements Tuple {
+
+        private final Object[] values;
+        private final List<TupleElement<?>> elements = new ArrayList<>();
+
+        ArrayTuple(Object[] values) {
+            this.values = values;
+            for (int i = 0; i < values.length; i++) {
+                String alias = ALIASES.get(i);
+                Class<?> javaType = values[i].getClass();
+                elements.add(new TupleElement<Object>() {
+                    @Override
+                    public Class<?> getJavaType() {
+                        return javaType;
+                    }
+
+                    @Override
+                    public String getAlias() {
+                        return alias;
+                    }
+                });
+            }
+        }
+
+        @Override
+        public <X> X get(TupleElement<X> tupleElement) {
+            return tupleElement.getJavaType().cast(get(tupleElement.getAlias()));
+        }
+
+        @Override
+        public <X> X get(String alias, Class<X> type) {
+            return type.cast(get(alias));
+        }
+
+        @Override
+        public Object get(String alias) {
+            return values[ALIASES.indexOf(alias)];
+        }
+
+        @Override
+        public <X> X get(int i, Class<X> type) {
+            return type.cast(values[i]);
+        }
+
+        @Override
+        public Object get(int i) {
+            return values[i];
+        }
+
+        @Override
+        public Object[] toArray() {
+            return values.clone();
+        }
+
+        @Override
+        public List<TupleElement<?>> getElements() {
+            return elements;
+        }
+    }
+
+    /**
+     * 수동 실행 (JMH 가 JVM 을 새로 띄워서 측정한다.)
+     */
+    @Disabled("수동으로 실행하는 성능 측정")
+    @Test
+    public void run() throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ProjectionMappingBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
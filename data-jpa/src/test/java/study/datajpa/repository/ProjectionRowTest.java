@@ -0,0 +1,107 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.transaction.annotation.Transactional;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @GenerateProjection 으로 생성된 *Row 가 Spring Data 프록시와 같은 값을 돌려주는지 확인
+ */
+@SpringBootTest
+@Transactional
+class ProjectionRowTest {
+
+    @Autowired MemberRepository memberRepository;
+    @PersistenceContext EntityManager em;
+
+    @Test
+    public void findProjectionsByUsername() throws Exception{
+        //given
+        Team team = new Team("projTeam");
+        em.persist(team);
+        em.persist(new Member("projM1", 0, team));
+        em.persist(new Member("projM2", 0, team));
+        em.flush();
+        em.clear();
+
+        //when
+        List<UsernameOnly> result = memberRepository.findProjectionsByUsername("projM1");
+
+        //then
+        assertEquals(1, result.size());
+        assertThat(result.get(0)).isInstanceOf(UsernameOnlyRow.class);
+        assertEquals("projM1", result.get(0).getUsername());
+    }
+
+    @Test
+    public void findByNativeProjection() throws Exception{
+        //given
+        Team team = new Team("projTeam");
+        em.persist(team);
+        Member m1 = new Member("projM1", 0, team);
+        Member m2 = new Member("projM2", 0, null);
+        em.persist(m1);
+        em.persist(m2);
+        em.flush();
+        em.clear();
+        long total = memberRepository.count(); // 다른 테스트가 남긴 회원이 있을 수 있다.
+
+        //when
+        Page<MemberProjection> page = memberRepository.findByNativeProjection(PageRequest.of(0, (int) total));
+
+        //then : join 조건(on m.team_id = t.team_id)이 있어서 회원마다 한 row 씩, 팀이 없으면 teamName 은 null
+        assertEquals(total, page.getTotalElements());
+        assertEquals(total, page.getContent().size());
+        Map<Long, MemberProjection> byId = page.getContent().stream().collect(toMap(MemberProjection::getId, p -> p));
+        assertEquals(new MemberProjectionRow(m1.getId(), "projM1", "projTeam"), byId.get(m1.getId()));
+        assertEquals(new MemberProjectionRow(m2.getId(), "projM2", null), byId.get(m2.getId()));
+    }
+
+    @Test
+    public void same_values_as_proxy() throws Exception{
+        //given
+        Object[] row = {1L, "m1", "teamA"};
+        MemberProjection proxy = new SpelAwareProxyProjectionFactory().createProjection(MemberProjection.class,
+                Map.of("id", row[0], "username", row[1], "teamName", row[2]));
+
+        //when
+        MemberProjection generated = MemberProjectionRow.of(row);
+
+        //then
+        assertEquals(proxy.getId(), generated.getId());
+        assertEquals(proxy.getUsername(), generated.getUsername());
+        assertEquals(proxy.getTeamName(), generated.getTeamName());
+        assertEquals("MemberProjectionRow(id=1, username=m1, teamName=teamA)", generated.toString());
+    }
+
+    @Test
+    public void inherited_getters() throws Exception{
+        //given : 상위 인터페이스 getter 가 먼저, 선언 순서대로
+        Object[] row = {1L, "m1", "teamA", 20};
+
+        //when
+        MemberAgeProjection generated = MemberAgeProjectionRow.of(row);
+
+        //then
+        assertEquals(1L, generated.getId());
+        assertEquals("m1", generated.getUsername());
+        assertEquals("teamA", generated.getTeamName());
+        assertEquals(20, generated.getAge());
+        assertEquals("MemberAgeProjectionRow(id=1, username=m1, teamName=teamA, age=20)", generated.toString());
+    }
+}
@@ -2,26 +2,47 @@ package jpabook.jpashop;
 
 import jpabook.jpashop.domain.*;
 import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.service.ItemService;
+import jpabook.jpashop.shard.ShardRouting;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.cfg.AvailableSettings;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.persistence.CacheRetrieveMode;
 import javax.persistence.EntityManager;
+import java.util.Map;
 
 /**
  * 총 주문 2개
- *
+ * - 상품은 ItemService 로 저장한다. (shard 를 쓰면 모든 shard 에 복제된다.)
+ * - shard 를 쓰면 회원마다 돌아가며 배정한 shard 에 회원, 주문을 같이 넣는다.
  */
 @Component
 @RequiredArgsConstructor
 public class InitDb {
     private final InitService initService;
+    private final ItemService itemService;
+    private final ShardRouting shardRouting;
 
     @PostConstruct
     public void init(){
-        initService.dbInit1();
-        initService.dbInit2();
+        Book jpa1 = saveBook("JPA1 BOOK", 10000, 100);
+        Book jpa2 = saveBook("JPA2 BOOK", 20000, 100);
+        Book spring1 = saveBook("Spring1 BOOK", 20000, 200);
+        Book spring2 = saveBook("Spring2 BOOK", 40000, 300);
+        shardRouting.run(shardRouting.nextShard(), () -> initService.dbInit1(jpa1.getId(), jpa2.getId()));
+        shardRouting.run(shardRouting.nextShard(), () -> initService.dbInit2(spring1.getId(), spring2.getId()));
+    }
+
+    private Book saveBook(String name, int price, int stockQuantity) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(price);
+        book.setStockQuantity(stockQuantity);
+        itemService.saveItem(book);
+        return book;
     }
 
     @Component
@@ -30,15 +51,12 @@ public class InitDb {
     static class InitService {
 
         private final EntityManager em;
-        public void dbInit1(){
+        public void dbInit1(Long book1Id, Long book2Id){
             Member member = createMember("userA", "서울", "1", "1111");
             em.persist(member);
 
-            Book book1 = createBook("JPA1 BOOK", 10000, 100);
-            em.persist(book1);
-
-            Book book2 = createBook("JPA2 BOOK", 20000, 100);
-            em.persist(book2);
+            Book book1 = findBook(book1Id);
+            Book book2 = findBook(book2Id);
 
             OrderItem orderItem1 = OrderItem.createOrderItem(book1, 10000, 1);
             OrderItem orderItem2 = OrderItem.createOrderItem(book2, 20000, 2);
@@ -49,15 +67,12 @@ public class InitDb {
             em.persist(order);
         }
 
-        public void dbInit2(){
+        public void dbInit2(Long book1Id, Long book2Id){
             Member member = createMember("userB", "진주", "2", "2222");
             em.persist(member);
 
-            Book book1 = createBook("Spring1 BOOK", 20000, 200);
-            em.persist(book1);
-
-            Book book2 = createBook("Spring2 BOOK", 40000, 300);
-            em.persist(book2);
+            Book book1 = findBook(book1Id);
+            Book book2 = findBook(book2Id);
 
             OrderItem orderItem1 = OrderItem.createOrderItem(book1, 20000, 3);
             OrderItem orderItem2 = OrderItem.createOrderItem(book2, 40000, 4);
@@ -67,20 +82,17 @@ public class InitDb {
             em.persist(order);
         }
 
+        // 2차 캐시를 거치지 않는다. (같은 JVM 의 다른 컨텍스트가 같은 id 로 캐시해 둔 상품일 수 있다.)
+        private Book findBook(Long id) {
+            return em.find(Book.class, id, Map.of(AvailableSettings.JPA_SHARED_CACHE_RETRIEVE_MODE, CacheRetrieveMode.BYPASS));
+        }
+
         private static Delivery getDelivery(Member member) {
             Delivery delivery = new Delivery();
             delivery.setAddress(member.getAddress());
             return delivery;
         }
 
-        private static Book createBook(String name, int price, int stockQuantity) {
-            Book book1 = new Book();
-            book1.setName(name);
-            book1.setPrice(price);
-            book1.setStockQuantity(stockQuantity);
-            return book1;
-        }
-
         private static Member createMember(String userName, String city, String street, String zipcode) {
             Member member = new Member();
             member.setName(userName);
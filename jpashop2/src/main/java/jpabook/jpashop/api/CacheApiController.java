@@ -0,0 +1,69 @@
+package jpabook.jpashop.api;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * 2차 캐시 region 별 hit / miss 통계
+ * - hibernate.generate_statistics: true 일 때만 값이 쌓인다.
+ */
+@RestController
+@RequiredArgsConstructor
+public class CacheApiController {
+
+    private final EntityManagerFactory emf;
+
+    @GetMapping("/api/cache/stats")
+    public Result<List<RegionStatsDto>> cacheStats() {
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        List<RegionStatsDto> regions = Arrays.stream(statistics.getSecondLevelCacheRegionNames())
+                .sorted()
+                .map(name -> {
+                    CacheRegionStatistics region = statistics.getCacheRegionStatistics(name);
+                    return region == null ? null : new RegionStatsDto(region);
+                })
+                .filter(Objects::nonNull)
+                .collect(toList());
+        return new Result<>(regions.size(), regions);
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class Result<T> {
+        private int count;
+        private T data;
+    }
+
+    @Data
+    static class RegionStatsDto {
+        private String region;
+        private long hitCount;
+        private long missCount;
+        private long putCount;
+        private long elementCountInMemory;
+        private double hitRatio;
+
+        public RegionStatsDto(CacheRegionStatistics region) {
+            this.region = region.getRegionName();
+            this.hitCount = region.getHitCount();
+            this.missCount = region.getMissCount();
+            this.putCount = region.getPutCount();
+            this.elementCountInMemory = region.getElementCountInMemory();
+            long total = hitCount + missCount;
+            this.hitRatio = total == 0 ? 0 : (double) hitCount / total;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package jpabook.jpashop.api;
+
+import jpabook.jpashop.fetch.FetchPlan;
+import jpabook.jpashop.fetch.FetchPlanner;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * 진입점의 repository 메서드별로 배운 fetch 경로
+ */
+@RestController
+@RequiredArgsConstructor
+public class FetchPlanApiController {
+
+    private final FetchPlanner fetchPlanner;
+
+    @GetMapping("/api/fetch-plans")
+    public Result<List<FetchPlanDto>> fetchPlans() {
+        List<FetchPlanDto> plans = fetchPlanner.getPlans().stream()
+                .map(FetchPlanDto::new)
+                .collect(toList());
+        return new Result<>(plans.size(), plans);
+    }
+
+    /**
+     * 배운 경로를 모두 지운다. (다시 관찰해서 배운다.)
+     */
+    @DeleteMapping("/api/fetch-plans")
+    public void resetFetchPlans() {
+        fetchPlanner.reset();
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class Result<T> {
+        private int count;
+        private T data;
+    }
+
+    @Data
+    static class FetchPlanDto {
+        private String entryPoint;
+        private String method;
+        private String entityName;
+        private List<String> paths;
+        private Map<String, Long> lazyLoads;
+        private long observationCount;
+        private long applicationCount;
+
+        public FetchPlanDto(FetchPlan plan) {
+            this.entryPoint = plan.getEntryPoint();
+            this.method = plan.getMethod();
+            this.entityName = plan.getEntityName();
+            this.paths = plan.getPaths();
+            this.lazyLoads = plan.getLazyLoads();
+            this.observationCount = plan.getObservationCount();
+            this.applicationCount = plan.getApplicationCount();
+        }
+    }
+}
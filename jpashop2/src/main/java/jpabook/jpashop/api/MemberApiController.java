@@ -1,5 +1,6 @@
 package jpabook.jpashop.api;
 
+import jpabook.jpashop.api.support.DbWorkExecutor;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.service.MemberService;
 import lombok.AllArgsConstructor;
@@ -10,6 +11,7 @@ import org.springframework.web.bind.annotation.*;
 import javax.validation.Valid;
 import javax.validation.constraints.NotEmpty;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @RestController
@@ -17,6 +19,7 @@ import java.util.stream.Collectors;
 public class MemberApiController {
 
     private final MemberService memberService;
+    private final DbWorkExecutor dbWork; // jpashop.api.execution=ASYNC 면 전용 스레드풀에서 실행
 
 
     @GetMapping("/api/v1/members")
@@ -25,13 +28,15 @@ public class MemberApiController {
     }
 
     @GetMapping("/api/v2/members")
-    public Result memberV2(){
-        List<Member> findMembers = memberService.findMembers();
-        List<MemberDto> collect = findMembers.stream()
-                .map(m -> new MemberDto(m.getName()))
-                .collect(Collectors.toList());
-
-        return new Result(collect.size(), collect);
+    public CompletableFuture<Result> memberV2(){
+        return dbWork.read(() -> {
+            List<Member> findMembers = memberService.findMembers();
+            List<MemberDto> collect = findMembers.stream()
+                    .map(m -> new MemberDto(m.getName()))
+                    .collect(Collectors.toList());
+
+            return new Result(collect.size(), collect);
+        });
     }
 
     @Data
@@ -54,23 +59,24 @@ public class MemberApiController {
     }
 
     @PostMapping("api/v2/members")
-    public CreateMemberResponse saveMemberV2(@RequestBody @Valid CreateMemberRequest request){
+    public CompletableFuture<CreateMemberResponse> saveMemberV2(@RequestBody @Valid CreateMemberRequest request){
 
         Member member = new Member();
         //member.setName(request.getName());
         member.setName(request.getName());
 
-        Long id = memberService.join(member);
-        return new CreateMemberResponse(id);
+        return dbWork.write(() -> new CreateMemberResponse(memberService.join(member)));
     }
 
     @PutMapping("/api/v2/members/{id}") // patch가 더 맞는듯.
-    public UpdateMemberResponse updateMemberV2(
+    public CompletableFuture<UpdateMemberResponse> updateMemberV2(
             @PathVariable("id") Long id,
             @RequestBody @Valid UpdateMemberRequest request){
-        memberService.update(id, request.getName()); // return을 안한다.
-        Member findMember = memberService.findOne(id);
-        return new UpdateMemberResponse(findMember.getId(), findMember.getName());
+        return dbWork.write(() -> {
+            memberService.update(id, request.getName()); // return을 안한다.
+            Member findMember = memberService.findOne(id);
+            return new UpdateMemberResponse(findMember.getId(), findMember.getName());
+        });
     }
 
     @Data
@@ -1,26 +1,42 @@
 package jpabook.jpashop.api;
 
+import jpabook.jpashop.api.support.DbWorkExecutor;
 import jpabook.jpashop.domain.Address;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.OrderItem;
 import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.repository.OrderCursor;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
 import jpabook.jpashop.repository.order.query.OrderFlatDto;
 import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
 import jpabook.jpashop.repository.order.query.OrderQueryDto;
 import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import jpabook.jpashop.service.OptimisticRetry;
+import jpabook.jpashop.service.OrderLine;
+import jpabook.jpashop.service.OrderService;
 import jpabook.jpashop.service.query.OrderDto;
+import jpabook.jpashop.service.query.OrderExportService;
 import jpabook.jpashop.service.query.OrderQueryService;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.*;
@@ -29,72 +45,140 @@ import static java.util.stream.Collectors.*;
 @RequiredArgsConstructor
 public class OrderApiController {
     private final OrderQueryService orderQueryService;
+    private final OrderExportService orderExportService;
     private final OrderRepository orderRepository;
     private final OrderQueryRepository orderQueryRepository;
+    private final OrderService orderService;
+    private final OptimisticRetry optimisticRetry;
+    private final DbWorkExecutor dbWork; // 스트리밍(export) 외에는 모두 이걸 거친다.
+
+    private static final int MAX_LIMIT = 100; // 한 번에 조회할 수 있는 최대 주문 수
+
+    // OSIV 가 꺼져 있으므로 JSON 이 읽는 연관관계를 dbWork.read 의 읽기 전용 트랜잭션 안에서 모두 초기화한다.
     @GetMapping("/api/v1/orders")
-    public List<Order> ordersV1(){
-        List<Order> all = orderRepository.findAllByString(new OrderSearch());
-        for (Order order : all) { // iter short cut
-            order.getMember().getName();      // Lazy 강제 초기화 -> 지연로딩 잘된다.
-            order.getDelivery().getAddress(); // Lazy 강제 초기화
-
-            List<OrderItem> orderItems = order.getOrderItems();
-            orderItems.stream().forEach(o -> o.getItem().getName()); // Lazy 강제 초기화
-        }
-        return all;
+    public CompletableFuture<List<Order>> ordersV1(){
+        return dbWork.read(() -> {
+            List<Order> all = orderRepository.findAllByString(new OrderSearch());
+            for (Order order : all) { // iter short cut
+                order.getMember().getName();      // Lazy 강제 초기화 -> 지연로딩 잘된다.
+                order.getDelivery().getAddress(); // Lazy 강제 초기화
+
+                List<OrderItem> orderItems = order.getOrderItems();
+                orderItems.stream().forEach(o -> Hibernate.initialize(o.getItem().getCategories())); // Lazy 강제 초기화
+            }
+            return all;
+        });
     }
 
     @GetMapping("/api/v2/orders")
-    public List<OrderDto> ordersV2(){
-        // 여러개의 Order Table의 Record를 조회하는 메서드
-        List<Order> orders = orderRepository.findAllByString(new OrderSearch());
-        List<OrderDto> collect = orders.stream()
-                .map(o -> new OrderDto(o))
-                .collect(toList());
-
-        return collect;
+    public CompletableFuture<List<jpabook.jpashop.service.query.OrderDto>> ordersV2(){
+        // 여러개의 Order Table의 Record를 조회하고, 트랜잭션 안에서 연관관계를 경로별로 한번에 읽어 DTO 로 바꾼다.
+        return dbWork.read(() -> orderQueryService.findOrderDtos(new OrderSearch()));
     }
 
     @GetMapping("/api/v3/orders")
-    public List<OrderDto> ordersV3(){
-        List<Order> orders = orderRepository.findAllWithItem(); // 수정
+    public CompletableFuture<List<OrderDto>> ordersV3(){
+        return dbWork.read(() -> {
+            List<Order> orders = orderRepository.findAllWithItem(); // 수정
 
-        for (Order order : orders) {
-            System.out.println("order ref=" + order + " id=" + order.getId());
-        }
+            for (Order order : orders) {
+                System.out.println("order ref=" + order + " id=" + order.getId());
+            }
 
-        List<OrderDto> collect = orders.stream()
-                .map(o -> new OrderDto(o))
-                .collect(toList());
-        return collect;
+            List<OrderDto> collect = orders.stream()
+                    .map(o -> new OrderDto(o))
+                    .collect(toList());
+            return collect;
+        });
     }
 
     @GetMapping("/api/v3.1/orders")
-    public List<OrderDto> ordersV3_page(
+    public CompletableFuture<List<OrderDto>> ordersV3_page(
             @RequestParam(value = "offset", defaultValue = "0") int offset,
             @RequestParam(value = "limit", defaultValue = "100") int limit) {
-        List<Order> orders = orderRepository.findAllWithMemberDelivery(offset, limit);
+        int pageLimit = clampLimit(limit);
+        return dbWork.read(() -> {
+            List<Order> orders = orderRepository.findAllWithMemberDelivery(Math.max(offset, 0), pageLimit);
+
+            List<OrderDto> result = orders.stream()
+                    .map(o -> new OrderDto(o))
+                    .collect(toList());
+
+            return result;
+        });
+    }
+
+    /**
+     * keyset(seek) 페이징
+     * - offset 대신 (orderDate, order_id) 커서를 기준으로 조회하므로 페이지가 깊어져도 조회 속도가 일정하다.
+     * - limit + 1 개를 조회해서 다음(이전) 페이지가 존재하는지 판단한다.
+     * - limit 은 1 ~ MAX_LIMIT 으로 맞춘다.
+     */
+    @GetMapping("/api/v3.1/orders/cursor")
+    public CompletableFuture<CursorResult<List<OrderDto>>> ordersV3_cursor(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "direction", defaultValue = "NEXT") CursorDirection direction,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        int pageLimit = clampLimit(limit);
+        return dbWork.read(() -> cursorPage(cursor, direction, pageLimit));
+    }
+
+    private static int clampLimit(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    private CursorResult<List<OrderDto>> cursorPage(String cursor, CursorDirection direction, int limit) {
+        OrderCursor orderCursor = cursor == null ? null : OrderCursor.decode(cursor);
+        boolean prev = direction == CursorDirection.PREV && orderCursor != null;
+
+        List<Order> orders = prev
+                ? orderRepository.findAllWithMemberDeliveryBefore(orderCursor, limit + 1)
+                : orderRepository.findAllWithMemberDeliveryAfter(orderCursor, limit + 1);
+
+        boolean hasMore = orders.size() > limit;
+        if (hasMore) {
+            // 이전 페이지는 역순으로 읽었으므로 맨 앞의 1개가 초과분이다.
+            orders = prev ? orders.subList(1, orders.size()) : orders.subList(0, limit);
+        }
 
         List<OrderDto> result = orders.stream()
                 .map(o -> new OrderDto(o))
                 .collect(toList());
 
-        return result;
+        String prevCursor = null;
+        String nextCursor = null;
+        if (!orders.isEmpty()) {
+            Order first = orders.get(0);
+            Order last = orders.get(orders.size() - 1);
+            if (prev ? hasMore : orderCursor != null) {
+                prevCursor = new OrderCursor(first.getOrderDate(), first.getId()).encode();
+            }
+            if (prev || hasMore) {
+                nextCursor = new OrderCursor(last.getOrderDate(), last.getId()).encode();
+            }
+        }
+        return new CursorResult<>(result, prevCursor, nextCursor);
     }
 
     @GetMapping("/api/v3.2/orders")
-    public List<jpabook.jpashop.service.query.OrderDto> ordersV3ByService(){
-        return orderQueryService.findAllByService();
+    public CompletableFuture<List<jpabook.jpashop.service.query.OrderDto>> ordersV3ByService(){
+        return dbWork.read(orderQueryService::findAllByService);
+    }
+
+    // v3 와 같은 데이터를 엔티티 없이 읽기 전용으로 조회 (스냅샷, 1차 캐시 없음 / replica 라우팅)
+    @GetMapping("/api/v3.3/orders")
+    public CompletableFuture<List<OrderQueryDto>> ordersV3ReadOnly(){
+        return dbWork.read(orderQueryService::findAllReadOnly);
     }
 
     @GetMapping("/api/v4/orders")
-    public List<OrderQueryDto> ordersV4(){
-        return orderQueryRepository.findOrderQueryDtos();
+    public CompletableFuture<List<OrderQueryDto>> ordersV4(){
+        return dbWork.read(orderQueryRepository::findOrderQueryDtos);
     }
 
     @GetMapping("/api/v5/orders")
-    public List<OrderQueryDto> ordersV5(){
-        return orderQueryRepository.findAllByDto_optimization();
+    public CompletableFuture<List<OrderQueryDto>> ordersV5(){
+        return dbWork.read(orderQueryRepository::findAllByDto_optimization);
     }
 
 //    @GetMapping("/api/v6/orders")
@@ -103,9 +187,13 @@ public class OrderApiController {
 //    }
 
     @GetMapping("/api/v6/orders")
-    public List<OrderQueryDto> ordersV6(){
+    public CompletableFuture<List<OrderQueryDto>> ordersV6(){
         //return orderQueryRepository.findAllByDto_flat();
-        List<OrderFlatDto> flats = orderQueryRepository.findAllByDto_flat();
+        return dbWork.read(orderQueryRepository::findAllByDto_flat)
+                .thenApply(OrderApiController::groupFlats);
+    }
+
+    private static List<OrderQueryDto> groupFlats(List<OrderFlatDto> flats) {
 
         // flat 자체에서 Loop를 돌려서 원하는 부분만 쪼개어 DTO로 만들어주는 방법이다.
         return flats.stream()
@@ -121,6 +209,68 @@ public class OrderApiController {
 
     }
 
+    /**
+     * 주문 전체 스트리밍 내보내기 (NDJSON)
+     * - v6 은 전체 결과를 두 번(flat List, groupingBy Map) 메모리에 올린 뒤에야 응답을 시작한다.
+     * - 이 API는 조회하면서 바로 응답에 쓰기 때문에 주문 수와 상관없이 힙 사용량이 일정하다.
+     */
+    @GetMapping(value = "/api/v6/orders/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> ordersV6_export() {
+        StreamingResponseBody body = out -> orderExportService.exportNdjson(out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    /**
+     * 대량 주문
+     * - 한 트랜잭션에서 JDBC batch insert 로 저장한다. 재고가 하나라도 모자라면 전체가 취소된다.
+     * - 낙관적 락(jpashop.stock.mode=OPTIMISTIC) 충돌이면 주문 화면(OrderController)처럼 트랜잭션 전체를 다시 실행한다.
+     */
+    @PostMapping("/api/v1/orders/bulk")
+    public CompletableFuture<CreateOrdersResponse> createOrdersBulk(@RequestBody List<CreateOrderRequest> requests){
+        List<OrderLine> lines = requests.stream()
+                .map(r -> new OrderLine(r.getMemberId(), r.getItemId(), r.getCount()))
+                .collect(toList());
+        return dbWork.write(() -> optimisticRetry.execute(() -> orderService.orderAll(lines)))
+                .thenApply(orderIds -> new CreateOrdersResponse(orderIds.size(), orderIds));
+    }
+
+    /**
+     * 잘못된 요청(변조되었거나 형식이 틀린 커서, 존재하지 않는 회원/상품 등)은 500 이 아니라 400 으로 응답한다.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+    }
+
+    @Data
+    static class CreateOrderRequest {
+        private Long memberId;
+        private Long itemId;
+        private int count;
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class CreateOrdersResponse {
+        private int count;
+        private List<Long> orderIds;
+    }
+
+    enum CursorDirection {
+        NEXT, // 커서 이후 (더 최근 주문)
+        PREV  // 커서 이전
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class CursorResult<T> {
+        private T data;
+        private String prevCursor; // 이전 페이지가 없으면 null
+        private String nextCursor; // 다음 페이지가 없으면 null
+    }
+
     @Data
     static class OrderDto {
         private Long orderId;
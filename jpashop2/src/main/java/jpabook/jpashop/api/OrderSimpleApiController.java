@@ -1,19 +1,20 @@
 package jpabook.jpashop.api;
 
-import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.api.support.DbWorkExecutor;
 import jpabook.jpashop.domain.Order;
-import jpabook.jpashop.domain.OrderStatus;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
 import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto;
 import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryRepository;
-import lombok.Data;
+import jpabook.jpashop.service.query.OrderQueryService;
+import jpabook.jpashop.service.query.SimpleOrderDto;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -28,57 +29,43 @@ public class OrderSimpleApiController {
 
     private final OrderRepository orderRepository;
     private final OrderSimpleQueryRepository orderSimpleQueryRepository;
+    private final OrderQueryService orderQueryService;
+    private final DbWorkExecutor dbWork;
 
+    // 엔티티를 그대로 JSON 으로 쓰면 주문상품까지 모두 읽는다. OSIV 가 꺼져 있으므로 dbWork.read 의 읽기 전용 트랜잭션 안에서 초기화한다.
     @GetMapping("/api/v1/simple-orders")
-    public List<Order> ordersV1(){
-        List<Order> all = orderRepository.findAllByString(new OrderSearch());
-//        for (Order order: all) {
-//            order.getMember().getName(); // Lazy 강제 초기화
-//            order.getDelivery().getAddress(); //Lazy 강제 초기화
-//        }
-        return all;
+    public CompletableFuture<List<Order>> ordersV1(){
+        return dbWork.read(() -> {
+            List<Order> all = orderRepository.findAllByString(new OrderSearch());
+            for (Order order: all) {
+                order.getMember().getName(); // Lazy 강제 초기화
+                order.getDelivery().getAddress(); //Lazy 강제 초기화
+                order.getOrderItems().forEach(o -> Hibernate.initialize(o.getItem().getCategories()));
+            }
+            return all;
+        });
     }
 
     @GetMapping("/api/v2/simple-orders")
-    public List<SimpleOrderDto> ordersV2(){
-        // Order -> 1 + 회원N + 배송N -> N+1 문제발생
-        // Eager 쓰더라도 성능 최적화가 일어나지는 않음
-        List<Order> orders = orderRepository.findAllByString(new OrderSearch());
-        List<SimpleOrderDto> result = orders.stream()
-                .map(o -> new SimpleOrderDto(o))
-                .collect(Collectors.toList());
-
-        return result;
+    public CompletableFuture<List<SimpleOrderDto>> ordersV2(){
+        // Order -> 1 + 회원N + 배송N -> N+1 문제발생 (Eager 쓰더라도 성능 최적화가 일어나지는 않음)
+        // -> 트랜잭션 안에서 회원, 배송을 in 절로 한번씩 읽고 DTO 로 바꾼다. (OSIV 없이도 동작)
+        return dbWork.read(() -> orderQueryService.findSimpleOrderDtos(new OrderSearch()));
     }
 
     @GetMapping("/api/v3/simple-orders")
-    public List<SimpleOrderDto> ordersV3(){
-        List<Order> orders = orderRepository.findAllWithMemberDelivery();
-        List<SimpleOrderDto> result = orders.stream()
-                .map(o -> new SimpleOrderDto(o))
-                .collect(Collectors.toList());
-        return result;
+    public CompletableFuture<List<SimpleOrderDto>> ordersV3(){
+        return dbWork.read(() -> {
+            List<Order> orders = orderRepository.findAllWithMemberDelivery();
+            List<SimpleOrderDto> result = orders.stream()
+                    .map(o -> new SimpleOrderDto(o))
+                    .collect(Collectors.toList());
+            return result;
+        });
     }
 
     @GetMapping("/api/v4/simple-orders")
-    public List<OrderSimpleQueryDto> ordersV4() {
-        return orderSimpleQueryRepository.findOrderDtos();
-    }
-
-    @Data
-    static class SimpleOrderDto{
-        private Long orderId;
-        private String name;
-        private LocalDateTime orderDate;
-        private OrderStatus orderStatus;
-        private Address address;
-
-        public SimpleOrderDto(Order order) {
-            orderId = order.getId();
-            name = order.getMember().getName(); // Lazy 초기화
-            orderDate = order.getOrderDate();
-            orderStatus = order.getStatus();
-            address = order.getDelivery().getAddress();
-        }
+    public CompletableFuture<List<OrderSimpleQueryDto>> ordersV4() {
+        return dbWork.read(orderSimpleQueryRepository::findOrderDtos);
     }
 }
@@ -0,0 +1,11 @@
+package jpabook.jpashop.api.support;
+
+/**
+ * API 의 DB 작업을 어느 스레드에서 실행할지 (jpashop.api.execution)
+ */
+public enum ApiExecutionMode {
+    /** 요청을 받은 servlet 스레드에서 바로 실행 (기본값) */
+    SYNC,
+    /** DB 커넥션 풀 크기만큼의 전용 스레드풀에서 실행하고 servlet 스레드는 바로 반납한다. */
+    ASYNC
+}
@@ -0,0 +1,94 @@
+package jpabook.jpashop.api.support;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandler;
+import org.springframework.web.method.support.HandlerMethodReturnValueHandlerComposite;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 이미 끝난 CompletableFuture 는 비동기 처리 없이 값을 바로 응답으로 쓴다.
+ * - Spring MVC 는 CompletableFuture 를 반환하면 끝났는지와 상관없이 startAsync 후 요청을 한번 더 dispatch 한다.
+ * - SYNC 모드의 DbWorkExecutor 는 servlet 스레드에서 작업을 끝내고 완료된 future 를 돌려주므로
+ *   그 값을 원래 반환 타입(CompletableFuture<T> 의 T)으로 보고 기존 handler(@ResponseBody 등)에 넘긴다.
+ * - 아직 끝나지 않았거나(ASYNC) 예외로 끝난 future 는 원래대로 비동기 처리한다.
+ */
+@Component
+public class CompletedFutureReturnValueHandler implements HandlerMethodReturnValueHandler, InitializingBean {
+
+    private final RequestMappingHandlerAdapter handlerAdapter;
+    private final HandlerMethodReturnValueHandlerComposite delegate = new HandlerMethodReturnValueHandlerComposite();
+
+    public CompletedFutureReturnValueHandler(RequestMappingHandlerAdapter handlerAdapter) {
+        this.handlerAdapter = handlerAdapter;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        List<HandlerMethodReturnValueHandler> handlers = handlerAdapter.getReturnValueHandlers();
+        delegate.addHandlers(handlers);
+        List<HandlerMethodReturnValueHandler> withThis = new ArrayList<>(handlers.size() + 1);
+        withThis.add(this); // CompletableFuture 를 처리하는 기본 handler 보다 먼저
+        withThis.addAll(handlers);
+        handlerAdapter.setReturnValueHandlers(withThis);
+    }
+
+    @Override
+    public boolean supportsReturnType(MethodParameter returnType) {
+        return CompletableFuture.class.isAssignableFrom(returnType.getParameterType());
+    }
+
+    @Override
+    public void handleReturnValue(Object returnValue, MethodParameter returnType,
+                                  ModelAndViewContainer mavContainer, NativeWebRequest webRequest) throws Exception {
+        CompletableFuture<?> future = (CompletableFuture<?>) returnValue;
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            delegate.handleReturnValue(returnValue, returnType, mavContainer, webRequest);
+            return;
+        }
+        delegate.handleReturnValue(future.join(), new CompletedValueParameter(returnType), mavContainer, webRequest);
+    }
+
+    /**
+     * CompletableFuture<T> 반환 타입을 T 로 보이게 한다.
+     */
+    private static class CompletedValueParameter extends MethodParameter {
+
+        private final ResolvableType valueType;
+
+        CompletedValueParameter(MethodParameter returnType) {
+            super(returnType);
+            this.valueType = ResolvableType.forMethodParameter(returnType).as(CompletableFuture.class).getGeneric();
+        }
+
+        CompletedValueParameter(CompletedValueParameter original) {
+            super(original);
+            this.valueType = original.valueType;
+        }
+
+        @Override
+        public Class<?> getParameterType() {
+            Class<?> resolved = valueType.resolve();
+            return resolved != null ? resolved : Object.class;
+        }
+
+        @Override
+        public Type getGenericParameterType() {
+            return valueType.getType();
+        }
+
+        @Override
+        public CompletedValueParameter clone() {
+            return new CompletedValueParameter(this);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package jpabook.jpashop.api.support;
+
+import jpabook.jpashop.exception.ServerBusyException;
+import jpabook.jpashop.monitor.QueryScope;
+import jpabook.jpashop.shard.ShardContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * API 의 DB 작업 실행기
+ * - SYNC : 지금처럼 servlet 스레드에서 바로 실행하고 완료된 CompletableFuture 를 돌려준다.
+ *   완료된 future 는 CompletedFutureReturnValueHandler 가 비동기 처리(재 dispatch) 없이 바로 응답으로 쓴다.
+ * - ASYNC : 전용 스레드풀에서 실행하고 servlet 스레드는 바로 반납한다. (Spring MVC 비동기 처리)
+ *   스레드 수는 작업 하나가 동시에 잡을 수 있는 커넥션 수로 커넥션 풀을 나눈 값이라 커넥션을 기다리지 않는다. (concurrencyFor)
+ *   대기열(queue-capacity)까지 가득 차면 기다리지 않고 ServerBusyException(503)으로 바로 거절한다.
+ * - 작업 스레드에는 OSIV 영속성 컨텍스트가 없으므로 지연로딩은 작업 안에서 끝내야 한다.
+ *   엔티티를 그대로 반환하는 API(v1)도 JSON 이 읽는 연관관계를 작업(트랜잭션) 안에서 모두 초기화해서 반환한다.
+ */
+@Slf4j
+@Component
+public class DbWorkExecutor {
+
+    private final ApiExecutionMode mode;
+    private final ThreadPoolExecutor executor; // SYNC 면 null
+    private final TransactionTemplate readOnlyTx;
+    private final LongAdder rejected = new LongAdder();
+
+    @Autowired
+    public DbWorkExecutor(PlatformTransactionManager transactionManager,
+                          @Value("${jpashop.api.execution:SYNC}") ApiExecutionMode mode,
+                          @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                          @Value("${jpashop.batch-loader.parallelism:1}") int batchLoaderParallelism,
+                          @Value("${jpashop.api.async.max-concurrency:0}") int maxConcurrency,
+                          @Value("${jpashop.api.async.queue-capacity:1000}") int queueCapacity) {
+        this(transactionManager, mode,
+                maxConcurrency > 0 ? maxConcurrency : concurrencyFor(poolSize, batchLoaderParallelism),
+                queueCapacity);
+    }
+
+    public DbWorkExecutor(PlatformTransactionManager transactionManager, ApiExecutionMode mode,
+                          int maxConcurrency, int queueCapacity) {
+        this.mode = mode;
+        this.executor = mode == ApiExecutionMode.ASYNC ? newExecutor(maxConcurrency, queueCapacity) : null;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    /**
+     * 커넥션을 기다리지 않고 동시에 실행할 수 있는 작업 수
+     * - 작업 하나는 자기 트랜잭션의 커넥션 1개를 잡는다.
+     * - BatchInLoader 를 병렬로 쓰면(parallelism > 1) chunk 마다 EntityManager 를 새로 열어서 커넥션을 더 잡는다.
+     *   BatchInLoader 스레드(parallelism 개)는 모든 작업이 같이 쓰므로 풀에서 따로 빼두고,
+     *   그 대기열이 차면 작업 스레드가 chunk 를 직접 실행하므로 작업당 커넥션은 최대 2개다.
+     */
+    static int concurrencyFor(int poolSize, int batchLoaderParallelism) {
+        if (batchLoaderParallelism <= 1) {
+            return poolSize;
+        }
+        return Math.max(1, (poolSize - batchLoaderParallelism) / 2);
+    }
+
+    /**
+     * 조회 작업
+     * - 읽기 전용 트랜잭션 안에서 실행해서 DTO 변환 중의 지연로딩이 같은 커넥션/영속성 컨텍스트를 쓴다.
+     * - OSIV 가 꺼져 있으므로(spring.jpa.open-in-view=false) 트랜잭션이 끝날 때 커넥션을 반납하고, JSON 을 쓰는 동안에는 커넥션을 잡고 있지 않는다.
+     */
+    public <T> CompletableFuture<T> read(Supplier<T> work) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(readOnlyTx.execute(s -> work.get()));
+        }
+        return submit(() -> readOnlyTx.execute(s -> work.get()));
+    }
+
+    /**
+     * 변경 작업 - 트랜잭션은 호출하는 서비스(@Transactional)가 연다.
+     */
+    public <T> CompletableFuture<T> write(Supplier<T> work) {
+        if (executor == null) {
+            return CompletableFuture.completedFuture(work.get());
+        }
+        return submit(work);
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        try {
+            // 요청의 SQL 집계와 shard 를 작업 스레드로 이어간다.
+            return CompletableFuture.supplyAsync(QueryScope.propagate(ShardContext.propagate(work)), executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            log.debug("DB 작업 대기열이 가득 참 active={} queued={}", executor.getActiveCount(), executor.getQueue().size());
+            CompletableFuture<T> busy = new CompletableFuture<>();
+            busy.completeExceptionally(new ServerBusyException("DB 작업 대기열이 가득 찼습니다."));
+            return busy;
+        }
+    }
+
+    public ApiExecutionMode getMode() {
+        return mode;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private static ThreadPoolExecutor newExecutor(int maxConcurrency, int queueCapacity) {
+        AtomicInteger seq = new AtomicInteger();
+        return new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "db-work-" + seq.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
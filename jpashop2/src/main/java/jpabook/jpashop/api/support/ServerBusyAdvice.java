@@ -0,0 +1,24 @@
+package jpabook.jpashop.api.support;
+
+import jpabook.jpashop.exception.ServerBusyException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * 대기열이 가득 찼을 때의 503 응답
+ * - @ResponseStatus 만 쓰면 /error 로 다시 dispatch 되어 에러 페이지를 만드느라 바쁜 서버가 더 바빠진다.
+ *   본문 없이 바로 응답하고 Retry-After 로 클라이언트가 잠시 뒤에 다시 요청하도록 알려준다.
+ */
+@RestControllerAdvice
+public class ServerBusyAdvice {
+
+    @ExceptionHandler(ServerBusyException.class)
+    public ResponseEntity<Void> serverBusy() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .build();
+    }
+}
@@ -0,0 +1,51 @@
+package jpabook.jpashop.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+
+/**
+ * 읽기 전용 replica 설정 (jpashop.datasource.replica.url 이 있을 때만)
+ * - primary 는 spring.datasource, replica 는 jpashop.datasource.replica 설정을 사용한다.
+ * - 계정을 따로 지정하지 않으면 primary 와 같은 계정을 사용한다.
+ * - 커넥션 풀 설정(spring.datasource.hikari.*)은 두 풀에 똑같이 적용한다.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "jpashop.datasource.replica", name = "url")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                              @Value("${jpashop.datasource.replica.url}") String replicaUrl,
+                                              @Value("${jpashop.datasource.replica.username:${spring.datasource.username:}}") String replicaUsername,
+                                              @Value("${jpashop.datasource.replica.password:${spring.datasource.password:}}") String replicaPassword) {
+        return properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(replicaUrl)
+                .username(replicaUsername)
+                .password(replicaPassword)
+                .build();
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica) {
+        return ReplicaRoutingDataSource.of(primary, replica);
+    }
+}
@@ -6,6 +6,7 @@ import jpabook.jpashop.domain.item.Item;
 import jpabook.jpashop.repository.OrderSearch;
 import jpabook.jpashop.service.ItemService;
 import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OptimisticRetry;
 import jpabook.jpashop.service.OrderService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
@@ -21,6 +22,7 @@ public class OrderController {
     private final OrderService orderService;
     private final MemberService memberService;
     private final ItemService itemService;
+    private final OptimisticRetry optimisticRetry;
     
     @GetMapping("/order")
     public String createForm(Model model){
@@ -37,7 +39,8 @@ public class OrderController {
     public String order(@RequestParam("memberId") Long memberId, //html 쪽의 name= 을 기준으로 들어온다.
                         @RequestParam("itemId") Long itemId,
                         @RequestParam("count") int count){
-        orderService.order(memberId, itemId, count);
+        // 재고 version 충돌(낙관적 락)이 나면 주문 트랜잭션 전체를 다시 시도한다.
+        optimisticRetry.execute(() -> orderService.order(memberId, itemId, count));
         return "redirect:/orders";
     }
 
@@ -51,7 +54,7 @@ public class OrderController {
 
     @PostMapping("/orders/{orderId}/cancel")
     public String cancelOrder(@PathVariable("orderId") Long orderId){
-        orderService.cancelOrder(orderId);
+        optimisticRetry.run(() -> orderService.cancelOrder(orderId));
         return "redirect:/orders";
     }
 }
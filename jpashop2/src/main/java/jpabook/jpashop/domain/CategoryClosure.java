@@ -0,0 +1,46 @@
+package jpabook.jpashop.domain;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * 카테고리 closure table - 조상/자손 쌍마다 한 행 (자기 자신도 depth 0 으로 포함)
+ * - "X 아래의 모든 카테고리" 가 ancestor_id = X 인덱스 조회 한번이다. (parent 를 한 단계씩 따라가지 않는다.)
+ * - 쓰기는 CategoryRepository 가 네이티브 쿼리로 한다. (엔티티는 스키마 생성과 JPQL 조회용)
+ */
+@Entity
+@IdClass(CategoryClosure.Key.class)
+@Table(name = "category_closure", indexes = @Index(name = "idx_category_closure_descendant", columnList = "descendant_id"))
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class CategoryClosure {
+
+    @Id
+    @Column(name = "ancestor_id")
+    private Long ancestorId;
+
+    @Id
+    @Column(name = "descendant_id")
+    private Long descendantId;
+
+    private int depth;
+
+    @EqualsAndHashCode
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long ancestorId;
+        private Long descendantId;
+    }
+}
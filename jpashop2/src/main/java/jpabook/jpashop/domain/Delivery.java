@@ -1,8 +1,11 @@
 package jpabook.jpashop.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import jpabook.jpashop.shard.ShardedSequenceGenerator;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 
@@ -10,7 +13,11 @@ import javax.persistence.*;
 @Getter @Setter
 public class Delivery {
 
-    @Id @GeneratedValue
+    @Id
+    @GeneratedValue(generator = "delivery_seq")
+    @GenericGenerator(name = "delivery_seq", strategy = ShardedSequenceGenerator.STRATEGY, parameters = {
+            @Parameter(name = "sequence_name", value = "delivery_seq"),
+            @Parameter(name = "increment_size", value = "50")})
     @Column(name = "delivery_id")
     private Long id;
     @JsonIgnore
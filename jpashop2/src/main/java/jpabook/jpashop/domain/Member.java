@@ -1,18 +1,28 @@
 package jpabook.jpashop.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import jpabook.jpashop.shard.ShardedSequenceGenerator;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Cacheable // 2차 캐시 (orders 컬렉션은 캐시하지 않는다.)
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "member")
 @Getter @Setter
 public class Member {
 
-    @Id @GeneratedValue
+    // id 에 shard 번호가 들어간다. (ShardedSequenceGenerator)
+    // 회원 전용 시퀀스 - 상품/카테고리(기본 hibernate_sequence)와 시퀀스 값을 나누어 쓰지 않는다.
+    @Id @GeneratedValue(generator = "member_seq")
+    @GenericGenerator(name = "member_seq", strategy = ShardedSequenceGenerator.STRATEGY, parameters = @Parameter(name = "sequence_name", value = "member_seq"))
     @Column(name = "member_id")
     private Long id;
     private String name;
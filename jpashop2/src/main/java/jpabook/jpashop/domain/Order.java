@@ -1,10 +1,13 @@
 package jpabook.jpashop.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import jpabook.jpashop.shard.ShardedSequenceGenerator;
 import lombok.Getter;
 import lombok.Setter;
 import org.aspectj.weaver.ast.Or;
 import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
@@ -12,10 +15,20 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        // keyset 페이징(order_date, order_id) 용 인덱스
+        @Index(name = "idx_orders_order_date_id", columnList = "order_date, order_id")
+})
 @Getter @Setter
 public class Order {
-    @Id @GeneratedValue
+    // pooled 시퀀스: 시퀀스를 한번 조회할 때 id 를 50개씩 받아두고 메모리에서 나눠준다.
+    // (기본 hibernate_sequence 는 increment 1 이라 persist 마다 시퀀스를 조회한다.)
+    @Id
+    // 회원과 같은 shard 에서 만들고 id 에 shard 번호가 들어간다. (ShardedSequenceGenerator)
+    @GeneratedValue(generator = "order_seq")
+    @GenericGenerator(name = "order_seq", strategy = ShardedSequenceGenerator.STRATEGY, parameters = {
+            @Parameter(name = "sequence_name", value = "orders_seq"),
+            @Parameter(name = "increment_size", value = "50")})
     @Column(name = "order_id")
     private Long id;
 
@@ -30,6 +43,7 @@ public class Order {
     @JoinColumn(name = "delivery_id")
     private Delivery delivery;
 
+    @Column(name = "order_date")
     private LocalDateTime orderDate; // 주문 시간
     @Enumerated(EnumType.STRING)
     private OrderStatus status; // 주문 상태 - > ORDER CANCEL
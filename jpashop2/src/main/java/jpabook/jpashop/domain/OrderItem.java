@@ -2,10 +2,13 @@ package jpabook.jpashop.domain;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.shard.ShardedSequenceGenerator;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 
@@ -13,7 +16,11 @@ import javax.persistence.*;
 @Getter @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED) // 다른 곳에서 OrderItem 생성을 막기 위함
 public class OrderItem {
-    @Id @GeneratedValue
+    @Id
+    @GeneratedValue(generator = "order_item_seq")
+    @GenericGenerator(name = "order_item_seq", strategy = ShardedSequenceGenerator.STRATEGY, parameters = {
+            @Parameter(name = "sequence_name", value = "order_item_seq"),
+            @Parameter(name = "increment_size", value = "50")})
     @Column(name = "order_item_id")
     private Long id;
 
@@ -33,12 +40,21 @@ public class OrderItem {
      * 주문시 상품의 재고가 줄어들어야한다.
      */
     public static OrderItem createOrderItem(Item item, int orderPrice, int count){
+        OrderItem orderItem = createReservedOrderItem(item, orderPrice, count);
+
+        item.removeStock(count);
+        return orderItem;
+    }
+
+    /**
+     * 재고 차감이 이미 끝난 상태(StockReservationService)에서 주문상품 생성
+     * - 엔티티로 한번 더 재고를 줄이면 이중 차감이 되므로 재고는 건드리지 않는다.
+     */
+    public static OrderItem createReservedOrderItem(Item item, int orderPrice, int count){
         OrderItem orderItem = new OrderItem();
         orderItem.setItem(item);
         orderItem.setOrderPrice(orderPrice);
         orderItem.setCount(count);
-
-        item.removeStock(count);
         return orderItem;
     }
 
@@ -5,12 +5,22 @@ import jpabook.jpashop.exception.NotEnoughStockException;
 import lombok.Getter;
 import lombok.Setter;
 import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * 2차 캐시(region = "item")
+ * - 상속 구조(SINGLE_TABLE)에서는 최상위 엔티티에만 캐시를 설정하면 Book, Album, Movie 모두 같은 region 을 사용한다.
+ * - READ_WRITE : 엔티티 변경(change, addStock, removeStock)은 flush 시점에 캐시 엔트리를 잠그고(soft lock)
+ *   커밋 후에 새 값으로 교체한다. 잠겨있는 동안 다른 트랜잭션은 캐시 대신 DB를 읽으므로 오래된 재고를 보지 않는다.
+ */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "item")
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "dtype")
 @Getter @Setter
@@ -23,6 +33,14 @@ public abstract class Item {
     private int price;
     private int stockQuantity;
 
+    /**
+     * 낙관적 락 버전
+     * - 재고 원자적 차감(ItemRepository.decreaseStock)도 version 을 올리므로
+     *   그 사이에 엔티티로 재고를 바꾸려던 트랜잭션은 OptimisticLockException 으로 실패하고 재시도한다.
+     */
+    @Version
+    private Long version;
+
     @ManyToMany(mappedBy = "items")
     private List<Category> categories = new ArrayList<>();
 
@@ -0,0 +1,24 @@
+package jpabook.jpashop.exception;
+
+/**
+ * 한 요청(QueryScope)에서 같은 모양의 SQL 이 기준 횟수 이상 실행되었을 때 (N+1)
+ * - jpashop.query-monitor.mode=FAIL 일 때만 던진다.
+ */
+public class RepeatedQueryException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    public RepeatedQueryException() {
+        super();
+    }
+
+    public RepeatedQueryException(String message) {
+        super(message);
+    }
+
+    public RepeatedQueryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public RepeatedQueryException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,17 @@
+package jpabook.jpashop.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * DB 작업 대기열이 가득 차서 요청을 받을 수 없을 때 (503)
+ * - 커넥션을 기다리며 한참 매달려 있다가 타임아웃 나는 것보다 바로 거절하는 편이 클라이언트도 빨리 재시도할 수 있다.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ServerBusyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public ServerBusyException(String message) {
+        super(message);
+    }
+}
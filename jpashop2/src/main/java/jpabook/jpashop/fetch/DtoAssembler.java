@@ -0,0 +1,36 @@
+package jpabook.jpashop.fetch;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 트랜잭션 안에서 엔티티 -> DTO 변환
+ * - DTO 가 읽는 연관관계 경로(paths)를 먼저 한번에 읽고(FetchPlanner.prefetch) 변환한다. (N+1 없이)
+ * - 트랜잭션이 끝나면 엔티티 대신 DTO 만 남으므로 OSIV 없이도 응답을 만들 수 있고, 커넥션은 트랜잭션이 끝날 때 반납된다.
+ */
+@Component
+@RequiredArgsConstructor
+public class DtoAssembler {
+
+    private final FetchPlanner fetchPlanner;
+
+    /**
+     * @param paths DTO 가 읽는 연관관계 경로 ex) member, delivery, orderItems, orderItems.item
+     */
+    public <E, D> List<D> assemble(List<E> entities, List<String> paths, Function<? super E, ? extends D> mapper) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("DTO 조립은 트랜잭션 안에서 해야 합니다.");
+        }
+        fetchPlanner.prefetch(entities, paths);
+        List<D> result = new ArrayList<>(entities.size());
+        for (E entity : entities) {
+            result.add(mapper.apply(entity));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package jpabook.jpashop.fetch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 진입점(controller / service 메서드)에서 호출한 repository 메서드 하나에 대해 배운 fetch 경로
+ * - 경로는 결과 엔티티에서 시작하는 연관관계 이름이다. ex) member, delivery, orderItems, orderItems.item
+ * - 여러 스레드에서 동시에 배우고 읽으므로 경로 목록은 바뀔 때마다 새 불변 리스트로 바꾼다.
+ */
+public class FetchPlan {
+
+    private final String entryPoint;
+    private final String method;
+    private final String entityName;
+    private final Map<String, LongAdder> lazyLoads = new ConcurrentHashMap<>();
+    private final LongAdder observations = new LongAdder();
+    private final LongAdder applications = new LongAdder();
+    private volatile List<String> paths = Collections.emptyList();
+
+    FetchPlan(String entryPoint, String method, String entityName) {
+        this.entryPoint = entryPoint;
+        this.method = method;
+        this.entityName = entityName;
+    }
+
+    static String key(String entryPoint, String method) {
+        return entryPoint == null ? method : entryPoint + " > " + method;
+    }
+
+    void observed(Map<String, Integer> loads, int minLoads) {
+        observations.increment();
+        List<String> learned = null;
+        for (Map.Entry<String, Integer> load : loads.entrySet()) {
+            lazyLoads.computeIfAbsent(load.getKey(), k -> new LongAdder()).add(load.getValue());
+            if (load.getValue() >= minLoads && !paths.contains(load.getKey())) {
+                if (learned == null) {
+                    learned = new ArrayList<>();
+                }
+                learned.add(load.getKey());
+            }
+        }
+        if (learned != null) {
+            learn(learned);
+        }
+    }
+
+    private synchronized void learn(List<String> learned) {
+        List<String> merged = new ArrayList<>(paths);
+        for (String path : learned) {
+            if (!merged.contains(path)) {
+                merged.add(path);
+            }
+        }
+        Collections.sort(merged); // 부모 경로가 자식 경로보다 먼저 온다. (orderItems, orderItems.item)
+        paths = Collections.unmodifiableList(merged);
+    }
+
+    void applied() {
+        applications.increment();
+    }
+
+    /**
+     * 진입점, repository 를 바로 호출했으면 null
+     */
+    public String getEntryPoint() {
+        return entryPoint;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public List<String> getPaths() {
+        return paths;
+    }
+
+    /**
+     * 경로별로 관찰된 지연로딩 횟수 (배우기 전 포함)
+     */
+    public Map<String, Long> getLazyLoads() {
+        Map<String, Long> result = new TreeMap<>();
+        lazyLoads.forEach((path, count) -> result.put(path, count.sum()));
+        return result;
+    }
+
+    public long getObservationCount() {
+        return observations.sum();
+    }
+
+    public long getApplicationCount() {
+        return applications.sum();
+    }
+}
@@ -0,0 +1,55 @@
+package jpabook.jpashop.fetch;
+
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+/**
+ * @Repository 메서드의 결과를 FetchPlanner 에 넘긴다. (key = 진입점 + "OrderRepository.findAllByString")
+ * - 진입점은 현재 스레드에서 가장 바깥에 있는 controller / service 메서드다. ex) "OrderApiController.ordersV2"
+ *   같은 repository 메서드라도 호출한 화면마다 읽는 연관관계가 다르므로 진입점마다 따로 배운다.
+ * - RepositoryMetricsAspect 안쪽, 트랜잭션 advice 바깥에서 실행된다.
+ */
+@Aspect
+@Component
+@Order(FetchPlanAspect.ORDER)
+@RequiredArgsConstructor
+public class FetchPlanAspect {
+
+    static final int ORDER = Ordered.LOWEST_PRECEDENCE - 100;
+
+    private static final ThreadLocal<String> entryPoint = new ThreadLocal<>();
+
+    private final FetchPlanner fetchPlanner;
+
+    @Around("@within(org.springframework.stereotype.Controller)" +
+            " || @within(org.springframework.web.bind.annotation.RestController)" +
+            " || @within(org.springframework.stereotype.Service)")
+    public Object enter(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (entryPoint.get() != null) {
+            return joinPoint.proceed(); // 안쪽 호출은 바깥 진입점을 그대로 쓴다.
+        }
+        entryPoint.set(name(joinPoint));
+        try {
+            return joinPoint.proceed();
+        } finally {
+            entryPoint.remove();
+        }
+    }
+
+    @Around("@within(org.springframework.stereotype.Repository)")
+    public Object plan(ProceedingJoinPoint joinPoint) throws Throwable {
+        Object result = joinPoint.proceed();
+        fetchPlanner.afterCall(entryPoint.get(), name(joinPoint), result);
+        return result;
+    }
+
+    private static String name(ProceedingJoinPoint joinPoint) {
+        return ClassUtils.getUserClass(joinPoint.getTarget()).getSimpleName() + "." + joinPoint.getSignature().getName();
+    }
+}
@@ -0,0 +1,371 @@
+package jpabook.jpashop.fetch;
+
+import jpabook.jpashop.monitor.QueryScope;
+import jpabook.jpashop.repository.support.BatchInLoader;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.hibernate.MappingException;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * 지연로딩을 관찰해서 진입점(controller / service 메서드)의 repository 호출별 fetch 경로를 배우고, 다음 호출부터 미리 읽는다.
+ * - 같은 repository 메서드를 여러 화면이 쓰면 화면마다 읽는 연관관계가 다르므로 진입점마다 따로 배운다. (FetchPlanAspect)
+ * - 관찰 : 메서드가 반환할 때 결과(최대 sample-size 개)에서 아직 초기화되지 않은 연관관계(프록시, 컬렉션)를 적어두고,
+ *   QueryScope(요청)가 끝날 때 그중 초기화된 것을 센다. min-loads 개 이상 초기화된 경로(N+1 이 생긴 경로)를 배운다.
+ *   2단계까지 본다. ex) orderItems 를 읽고 그 안의 item 까지 읽었으면 orderItems.item
+ * - 적용 : 배운 경로가 있으면 결과를 반환하기 전에 경로마다 한번에 읽는다.
+ *   컬렉션은 fetch join 쿼리(id in 절)로, xToOne 은 multiLoad(영속성 컨텍스트와 2차 캐시를 먼저 보고 나머지만 in 절)로 읽는다.
+ *   결과 엔티티가 영속성 컨텍스트에 있을 때(트랜잭션, OSIV)만 적용한다.
+ * - 배운 경로는 메모리에만 있다. (재시작하면 다시 배운다.) /api/fetch-plans 에서 보고 지울 수 있다.
+ */
+@Slf4j
+@Component
+public class FetchPlanner {
+
+    private final EntityManager em;
+    private final SessionFactoryImplementor sessionFactory;
+    private final boolean enabled;
+    private final int minLoads;
+    private final int sampleSize;
+    private final int maxChunkSize;
+    private final Map<String, FetchPlan> plans = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> associations = new ConcurrentHashMap<>();
+
+    public FetchPlanner(EntityManager em, EntityManagerFactory emf,
+                        @Value("${jpashop.fetch-planner.enabled:true}") boolean enabled,
+                        @Value("${jpashop.fetch-planner.min-loads:2}") int minLoads,
+                        @Value("${jpashop.fetch-planner.sample-size:50}") int sampleSize,
+                        @Value("${jpashop.batch-loader.max-chunk-size:256}") int maxChunkSize) {
+        this.em = em;
+        this.sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+        this.enabled = enabled;
+        this.minLoads = minLoads;
+        this.sampleSize = sampleSize;
+        this.maxChunkSize = maxChunkSize;
+    }
+
+    /**
+     * repository 메서드가 결과를 반환하기 직전에 호출한다.
+     * @param entryPoint 진입점, 없으면 (테스트 등에서 repository 를 바로 호출) null
+     */
+    public void afterCall(String entryPoint, String method, Object result) {
+        if (!enabled) {
+            return;
+        }
+        List<Object> roots = initialized(result);
+        if (roots.isEmpty()) {
+            return;
+        }
+        EntityPersister persister = persister(HibernateProxyHelper.getClassWithoutInitializingProxy(roots.get(0)));
+        if (persister == null) {
+            return; // DTO, 스칼라
+        }
+
+        String key = FetchPlan.key(entryPoint, method);
+        FetchPlan plan = plans.get(key);
+        if (plan != null && !plan.getPaths().isEmpty() && em.contains(roots.get(0))) {
+            prefetch(persister, roots, plan.getPaths());
+            plan.applied();
+        }
+
+        QueryScope scope = QueryScope.current();
+        if (scope != null) {
+            Observation observation = new Observation(persister, roots.subList(0, Math.min(sampleSize, roots.size())));
+            if (!observation.isEmpty()) {
+                scope.addCloseCallback(() -> learn(key, entryPoint, method, persister.getEntityName(), observation));
+            }
+        }
+    }
+
+    /**
+     * 경로를 지정해서 한번에 읽는다. (DtoAssembler) 엔티티가 영속성 컨텍스트에 있어야 한다.
+     */
+    public void prefetch(List<?> entities, List<String> paths) {
+        List<Object> roots = initialized(entities);
+        if (roots.isEmpty() || paths.isEmpty()) {
+            return;
+        }
+        EntityPersister persister = persister(HibernateProxyHelper.getClassWithoutInitializingProxy(roots.get(0)));
+        if (persister == null) {
+            throw new IllegalArgumentException("엔티티가 아닙니다. type=" + roots.get(0).getClass().getName());
+        }
+        prefetch(persister, roots, paths);
+    }
+
+    public List<FetchPlan> getPlans() {
+        return plans.values().stream()
+                .sorted(Comparator.comparing(FetchPlan::getEntryPoint, Comparator.nullsFirst(Comparator.naturalOrder()))
+                        .thenComparing(FetchPlan::getMethod))
+                .collect(toList());
+    }
+
+    /**
+     * 진입점 없이 호출한 repository 메서드의 경로
+     */
+    public FetchPlan getPlan(String method) {
+        return getPlan(null, method);
+    }
+
+    public FetchPlan getPlan(String entryPoint, String method) {
+        return plans.get(FetchPlan.key(entryPoint, method));
+    }
+
+    public void reset() {
+        plans.clear();
+    }
+
+    private void learn(String key, String entryPoint, String method, String entityName, Observation observation) {
+        try {
+            Map<String, Integer> loads = observation.lazyLoads();
+            FetchPlan plan = loads.isEmpty() ? plans.get(key) : plans.computeIfAbsent(key, k -> new FetchPlan(entryPoint, method, entityName));
+            if (plan == null) {
+                return;
+            }
+            List<String> before = plan.getPaths();
+            plan.observed(loads, minLoads);
+            if (plan.getPaths() != before) {
+                log.info("fetch 경로를 배웠습니다. entryPoint={} method={} paths={} lazyLoads={}", entryPoint, method, plan.getPaths(), loads);
+            }
+        } catch (RuntimeException e) {
+            log.warn("지연로딩 관찰 실패 entryPoint={} method={}", entryPoint, method, e); // 관찰 실패로 요청을 실패시키지 않는다.
+        }
+    }
+
+    //==적용==//
+
+    private void prefetch(EntityPersister persister, List<Object> roots, List<String> paths) {
+        Set<String> firsts = new LinkedHashSet<>();
+        for (String path : paths) {
+            int dot = path.indexOf('.');
+            firsts.add(dot < 0 ? path : path.substring(0, dot)); // 자식 경로만 배웠어도 부모부터 읽는다.
+        }
+        for (String first : firsts) {
+            List<Object> targets = fetch(persister, roots, first);
+            EntityPersister target = targetPersister(persister, first);
+            for (String path : paths) {
+                if (target != null && !targets.isEmpty() && path.startsWith(first + ".")) {
+                    fetch(target, targets, path.substring(first.length() + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * owners 의 name 연관관계를 한번에 읽고, 읽은 대상 엔티티들을 반환한다.
+     */
+    private List<Object> fetch(EntityPersister owner, List<Object> owners, String name) {
+        Type type = owner.getPropertyType(name);
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        List<Object> targets = new ArrayList<>();
+        if (type.isCollectionType()) {
+            List<Long> ids = new ArrayList<>();
+            for (Object entity : owners) {
+                Object value = owner.getPropertyValue(entity, name);
+                if (value instanceof PersistentCollection && !Hibernate.isInitialized(value)) {
+                    Object id = owner.getIdentifier(entity, session);
+                    if (id instanceof Long) {
+                        ids.add((Long) id);
+                    }
+                }
+            }
+            if (!ids.isEmpty()) {
+                // 이미 영속성 컨텍스트에 있는 owner 를 다시 조회하면 초기화되지 않은 컬렉션을 fetch join 결과로 채운다.
+                String jpql = "select o from " + owner.getEntityName() + " o left join fetch o." + name +
+                        " where o." + owner.getIdentifierPropertyName() + " in :ids";
+                for (List<Long> chunk : BatchInLoader.chunk(new ArrayList<>(new LinkedHashSet<>(ids)), maxChunkSize)) {
+                    em.createQuery(jpql).setParameter("ids", chunk).getResultList();
+                }
+            }
+            for (Object entity : owners) {
+                Object value = owner.getPropertyValue(entity, name);
+                if (value != null && Hibernate.isInitialized(value)) {
+                    targets.addAll(elements(value));
+                }
+            }
+        } else if (type.isEntityType()) {
+            List<Serializable> ids = new ArrayList<>();
+            for (Object entity : owners) {
+                Object value = owner.getPropertyValue(entity, name);
+                if (value instanceof HibernateProxy && !Hibernate.isInitialized(value)) {
+                    ids.add(((HibernateProxy) value).getHibernateLazyInitializer().getIdentifier());
+                }
+            }
+            if (!ids.isEmpty()) {
+                Class<?> entityClass = sessionFactory.getMetamodel()
+                        .entityPersister(((EntityType) type).getAssociatedEntityName()).getMappedClass();
+                session.byMultipleIds(entityClass)
+                        .withBatchSize(maxChunkSize)
+                        .multiLoad(new ArrayList<>(new LinkedHashSet<>(ids)));
+            }
+            for (Object entity : owners) {
+                Object value = owner.getPropertyValue(entity, name);
+                if (value != null) {
+                    targets.add(Hibernate.unproxy(value)); // 방금 읽었으므로 영속성 컨텍스트에서 찾는다.
+                }
+            }
+        }
+        return targets;
+    }
+
+    //==관찰==//
+
+    /**
+     * 반환 시점에 초기화되지 않았던 연관관계 - scope 가 끝날 때 초기화되었으면 지연로딩으로 읽은 것이다.
+     */
+    private final class Observation {
+
+        private final EntityPersister persister;
+        private final List<String> paths = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+
+        Observation(EntityPersister persister, List<Object> roots) {
+            this.persister = persister;
+            Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>()); // 여러 owner 가 같은 프록시를 가리키면 한번만
+            for (Object root : roots) {
+                for (String name : associations(persister)) {
+                    Object value = persister.getPropertyValue(root, name);
+                    if (isLazy(value) && !Hibernate.isInitialized(value) && seen.add(value)) {
+                        paths.add(name);
+                        values.add(value);
+                    }
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return values.isEmpty();
+        }
+
+        Map<String, Integer> lazyLoads() {
+            Map<String, Integer> loads = new HashMap<>();
+            Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < values.size(); i++) {
+                Object value = values.get(i);
+                if (!Hibernate.isInitialized(value)) {
+                    continue;
+                }
+                String path = paths.get(i);
+                loads.merge(path, 1, Integer::sum);
+
+                EntityPersister target = targetPersister(persister, path);
+                if (target == null) {
+                    continue;
+                }
+                List<Object> children = elements(value);
+                for (Object child : children.subList(0, Math.min(sampleSize, children.size()))) {
+                    for (String name : associations(target)) {
+                        Object childValue = target.getPropertyValue(child, name);
+                        if (isLazy(childValue) && Hibernate.isInitialized(childValue) && seen.add(childValue)) {
+                            loads.merge(path + "." + name, 1, Integer::sum);
+                        }
+                    }
+                }
+            }
+            return loads;
+        }
+    }
+
+    //==메타모델==//
+
+    private List<String> associations(EntityPersister persister) {
+        return associations.computeIfAbsent(persister.getEntityName(), k -> {
+            List<String> names = new ArrayList<>();
+            String[] propertyNames = persister.getPropertyNames();
+            Type[] types = persister.getPropertyTypes();
+            for (int i = 0; i < types.length; i++) {
+                if (types[i].isCollectionType() || types[i].isEntityType()) {
+                    names.add(propertyNames[i]);
+                }
+            }
+            return Collections.unmodifiableList(names);
+        });
+    }
+
+    private EntityPersister targetPersister(EntityPersister owner, String name) {
+        Type type = owner.getPropertyType(name);
+        try {
+            if (type.isCollectionType()) {
+                return persister(((CollectionType) type).getAssociatedEntityName(sessionFactory));
+            }
+            if (type.isEntityType()) {
+                return persister(((EntityType) type).getAssociatedEntityName());
+            }
+        } catch (MappingException e) {
+            // 값 타입 컬렉션
+        }
+        return null;
+    }
+
+    // 상속 구조(Item - Book, Album ..)는 최상위 엔티티 기준으로 본다.
+    private EntityPersister persister(Class<?> type) {
+        try {
+            return persister(sessionFactory.getMetamodel().entityPersister(type).getEntityName());
+        } catch (MappingException e) {
+            return null;
+        }
+    }
+
+    private EntityPersister persister(String entityName) {
+        EntityPersister persister = sessionFactory.getMetamodel().entityPersister(entityName);
+        return sessionFactory.getMetamodel().entityPersister(persister.getRootEntityName());
+    }
+
+    //==값==//
+
+    private static boolean isLazy(Object value) {
+        return value instanceof HibernateProxy || value instanceof PersistentCollection;
+    }
+
+    private static List<Object> elements(Object value) {
+        Object unproxied = Hibernate.unproxy(value);
+        if (unproxied instanceof Map) {
+            return new ArrayList<>(((Map<?, ?>) unproxied).values());
+        }
+        if (unproxied instanceof Collection) {
+            return new ArrayList<>((Collection<?>) unproxied);
+        }
+        return Collections.singletonList(unproxied);
+    }
+
+    // 결과 중 읽을 수 있는 엔티티만 (초기화되지 않은 프록시는 건드리지 않는다.)
+    private static List<Object> initialized(Object result) {
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        Collection<?> values = result instanceof Collection ? (Collection<?>) result : Collections.singletonList(result);
+        List<Object> entities = new ArrayList<>(values.size());
+        for (Object value : values) {
+            if (value != null && Hibernate.isInitialized(value)) {
+                entities.add(Hibernate.unproxy(value));
+            }
+        }
+        return entities;
+    }
+}
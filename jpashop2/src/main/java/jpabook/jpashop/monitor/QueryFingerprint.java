@@ -0,0 +1,47 @@
+package jpabook.jpashop.monitor;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * SQL 의 모양(fingerprint)
+ * - 문자열/숫자 상수를 ? 로 바꾸고, in (?, ?, ..) 목록은 길이와 상관없이 in (?) 로 줄이고, 공백을 하나로 합친다.
+ *   값만 다르고 모양이 같은 SQL 은 같은 fingerprint 가 된다.
+ * - Hibernate 가 만드는 SQL 문자열은 종류가 많지 않으므로 결과를 캐시한다. (모든 SQL 마다 정규식을 돌리지 않는다.)
+ */
+public final class QueryFingerprint {
+
+    private static final int MAX_CACHE_SIZE = 2_000;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.$])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    private QueryFingerprint() {
+    }
+
+    public static String of(String sql) {
+        String cached = cache.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        String fingerprint = normalize(sql);
+        if (cache.size() < MAX_CACHE_SIZE) { // 상수가 들어간 네이티브 쿼리 등으로 계속 늘어나지 않게
+            cache.putIfAbsent(sql, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    static String normalize(String sql) {
+        String result = STRING_LITERAL.matcher(sql).replaceAll("?");
+        result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+        result = PARAMETER_LIST.matcher(result).replaceAll("(?)");
+        result = WHITESPACE.matcher(result).replaceAll(" ");
+        return result.trim().toLowerCase(Locale.ROOT);
+    }
+}
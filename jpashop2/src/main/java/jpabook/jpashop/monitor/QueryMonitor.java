@@ -0,0 +1,90 @@
+package jpabook.jpashop.monitor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.exception.RepeatedQueryException;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * SQL 실행 횟수 / N+1 감지
+ * - Hibernate StatementInspector 로 등록되어 (QueryMonitorConfig) Hibernate 가 실행하는 모든 SQL 을 받는다.
+ *   JDBC batch 는 batch 하나를 한번으로 센다.
+ * - 현재 스레드에 QueryScope 가 있을 때만 센다. 요청은 QueryMonitorFilter 가 scope 를 연다.
+ * - 같은 fingerprint 가 한 scope 에서 repeat-threshold 번 실행되면 N+1 로 보고 mode 에 따라 경고하거나 실패시킨다.
+ * - scope 가 끝나면 SQL 수를 jpashop.query.statements (tag scope) 로 기록한다.
+ */
+@Slf4j
+@Component
+public class QueryMonitor implements StatementInspector {
+
+    static final String STATEMENTS_METRIC = "jpashop.query.statements";
+    static final String REPEATED_METRIC = "jpashop.query.repeated";
+
+    private final MeterRegistry meterRegistry;
+    private final QueryMonitorMode mode;
+    private final int repeatThreshold;
+
+    public QueryMonitor(MeterRegistry meterRegistry,
+                        @Value("${jpashop.query-monitor.mode:LOG}") QueryMonitorMode mode,
+                        @Value("${jpashop.query-monitor.repeat-threshold:10}") int repeatThreshold) {
+        if (repeatThreshold < 2) {
+            throw new IllegalArgumentException("repeat-threshold 는 2 이상이어야 합니다. repeatThreshold=" + repeatThreshold);
+        }
+        this.meterRegistry = meterRegistry;
+        this.mode = mode;
+        this.repeatThreshold = repeatThreshold;
+    }
+
+    /**
+     * 현재 스레드에 scope 를 연다. try-with-resources 로 닫는다.
+     */
+    public QueryScope open(String name) {
+        return QueryScope.open(this, name);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        if (mode == QueryMonitorMode.OFF) {
+            return sql;
+        }
+        QueryScope scope = QueryScope.current();
+        if (scope == null) {
+            return sql;
+        }
+        String fingerprint = QueryFingerprint.of(sql);
+        int count = scope.record(fingerprint);
+        if (count == repeatThreshold) {
+            meterRegistry.counter(REPEATED_METRIC, "scope", scope.getName()).increment();
+            if (mode == QueryMonitorMode.LOG) {
+                log.warn("N+1 의심 scope={} count={} sql={}", scope.getName(), count, fingerprint);
+            }
+        }
+        if (count >= repeatThreshold && mode == QueryMonitorMode.FAIL) {
+            throw new RepeatedQueryException("같은 SQL 이 " + count + "번 실행되었습니다. scope=" + scope.getName() + " sql=" + fingerprint);
+        }
+        return sql;
+    }
+
+    void onClose(QueryScope scope) {
+        if (mode == QueryMonitorMode.OFF) {
+            return;
+        }
+        meterRegistry.summary(STATEMENTS_METRIC, "scope", scope.getName()).record(scope.getStatementCount());
+        if (log.isDebugEnabled()) {
+            Map<String, Integer> repeated = scope.getRepeated(repeatThreshold);
+            log.debug("scope={} statements={} repeated={}", scope.getName(), scope.getStatementCount(), repeated);
+        }
+    }
+
+    public QueryMonitorMode getMode() {
+        return mode;
+    }
+
+    public int getRepeatThreshold() {
+        return repeatThreshold;
+    }
+}
@@ -0,0 +1,19 @@
+package jpabook.jpashop.monitor;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * QueryMonitor 를 Hibernate StatementInspector 로 등록한다.
+ * - 클래스 이름으로 지정하면 Hibernate 가 따로 인스턴스를 만들므로 빈 인스턴스를 직접 넘긴다.
+ */
+@Configuration
+public class QueryMonitorConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer queryMonitorCustomizer(QueryMonitor queryMonitor) {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, queryMonitor);
+    }
+}
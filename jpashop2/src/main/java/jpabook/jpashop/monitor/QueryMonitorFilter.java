@@ -0,0 +1,72 @@
+package jpabook.jpashop.monitor;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 요청마다 QueryScope 를 연다.
+ * - scope 이름은 "GET /api/v2/orders/{id}" 처럼 매핑된 패턴을 쓴다. (metric tag 가 id 마다 늘어나지 않게)
+ * - CompletableFuture 를 반환하는 비동기 요청은 servlet 스레드에서 scope 를 떼어내고 요청이 끝날 때(AsyncListener) 닫는다.
+ *   DbWorkExecutor 가 작업 스레드로 scope 를 넘겨준다.
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryMonitorFilter extends OncePerRequestFilter {
+
+    private final QueryMonitor queryMonitor;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        QueryScope scope = queryMonitor.open(request.getMethod() + " " + request.getRequestURI());
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (pattern != null) {
+                scope.rename(request.getMethod() + " " + pattern);
+            }
+            if (request.isAsyncStarted()) {
+                scope.detach();
+                request.getAsyncContext().addListener(new CloseOnComplete(scope));
+            } else {
+                scope.close();
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class CloseOnComplete implements AsyncListener {
+
+        private final QueryScope scope;
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            scope.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            scope.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            scope.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
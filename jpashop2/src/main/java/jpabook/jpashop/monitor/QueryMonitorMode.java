@@ -0,0 +1,10 @@
+package jpabook.jpashop.monitor;
+
+/**
+ * 같은 모양의 SQL 이 한 요청에서 반복될 때(N+1) 처리 방식
+ */
+public enum QueryMonitorMode {
+    OFF,  // 세지 않는다.
+    LOG,  // 경고 로그만 남긴다.
+    FAIL  // RepeatedQueryException 으로 실패시킨다. (테스트용)
+}
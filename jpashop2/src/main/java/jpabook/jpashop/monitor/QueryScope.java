@@ -0,0 +1,168 @@
+package jpabook.jpashop.monitor;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * SQL 을 세는 작업 단위 (보통 HTTP 요청 하나)
+ * - 현재 스레드에 묶어두면 QueryMonitor 가 그 스레드에서 실행된 SQL 을 fingerprint 별로 센다.
+ * - 다른 스레드(DbWorkExecutor 등)에서 이어서 실행하는 작업은 propagate 로 감싸면 같은 scope 에서 센다.
+ *   여러 스레드에서 동시에 셀 수 있으므로 카운터는 thread-safe 하다.
+ */
+public final class QueryScope implements AutoCloseable {
+
+    private static final ThreadLocal<QueryScope> current = new ThreadLocal<>();
+
+    private final QueryMonitor monitor;
+    private final QueryScope previous;
+    private final AtomicInteger statements = new AtomicInteger();
+    private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+    private final List<Runnable> closeCallbacks = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile String name;
+
+    private QueryScope(QueryMonitor monitor, String name, QueryScope previous) {
+        this.monitor = monitor;
+        this.name = name;
+        this.previous = previous;
+    }
+
+    static QueryScope open(QueryMonitor monitor, String name) {
+        QueryScope scope = new QueryScope(monitor, name, current.get());
+        current.set(scope);
+        return scope;
+    }
+
+    /**
+     * 현재 스레드의 scope (없으면 null)
+     */
+    public static QueryScope current() {
+        return current.get();
+    }
+
+    /**
+     * 지금 스레드의 scope 를 작업을 실행하는 스레드로 넘긴다. scope 가 없으면 work 를 그대로 반환한다.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> work) {
+        QueryScope scope = current.get();
+        if (scope == null) {
+            return work;
+        }
+        return () -> {
+            QueryScope outer = current.get();
+            current.set(scope);
+            try {
+                return work.get();
+            } finally {
+                restore(outer);
+            }
+        };
+    }
+
+    /**
+     * @return 이 fingerprint 가 이 scope 에서 실행된 횟수 (이번 포함)
+     */
+    int record(String fingerprint) {
+        statements.incrementAndGet();
+        return counts.computeIfAbsent(fingerprint, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * metric tag 로 쓰는 이름 - 요청 URI 대신 매핑된 패턴처럼 종류가 적은 이름으로 바꿀 때
+     */
+    public void rename(String name) {
+        this.name = name;
+    }
+
+    public int getStatementCount() {
+        return statements.get();
+    }
+
+    public int getCount(String fingerprint) {
+        AtomicInteger count = counts.get(fingerprint);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * 지금까지 fingerprint 별로 실행된 횟수 (resetCounts 로 되돌릴 때 쓴다.)
+     */
+    public Map<String, Integer> getCounts() {
+        Map<String, Integer> snapshot = new HashMap<>();
+        counts.forEach((fingerprint, count) -> snapshot.put(fingerprint, count.get()));
+        return snapshot;
+    }
+
+    /**
+     * fingerprint 별 횟수를 getCounts 로 얻은 값으로 되돌린다. 전체 SQL 수(getStatementCount)는 그대로 둔다.
+     * - 롤백된 트랜잭션을 다시 실행할 때(OptimisticRetry) 같은 SQL 이 다시 실행되어도 N+1 로 보지 않도록
+     */
+    public void resetCounts(Map<String, Integer> snapshot) {
+        counts.keySet().retainAll(snapshot.keySet());
+        snapshot.forEach((fingerprint, count) -> counts.computeIfAbsent(fingerprint, k -> new AtomicInteger()).set(count));
+    }
+
+    /**
+     * threshold 번 이상 실행된 fingerprint, 많이 실행된 순서
+     */
+    public Map<String, Integer> getRepeated(int threshold) {
+        Map<String, Integer> repeated = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .filter(e -> e.getValue().get() >= threshold)
+                .sorted(Comparator.comparingInt((Map.Entry<String, AtomicInteger> e) -> e.getValue().get()).reversed())
+                .forEach(e -> repeated.put(e.getKey(), e.getValue().get()));
+        return repeated;
+    }
+
+    /**
+     * scope 가 끝날 때 실행한다. (닫는 스레드에서, 등록한 순서대로)
+     */
+    public void addCloseCallback(Runnable callback) {
+        closeCallbacks.add(callback);
+    }
+
+    /**
+     * 스레드에서 떼어내기만 하고 끝내지는 않는다. (비동기 요청에서 servlet 스레드를 반납할 때)
+     */
+    public void detach() {
+        if (current.get() == this) {
+            restore(previous);
+        }
+    }
+
+    /**
+     * 스레드에서 떼어내고 결과를 기록한다. 여러번 호출해도 한번만 기록한다.
+     */
+    @Override
+    public void close() {
+        detach();
+        if (closed.compareAndSet(false, true)) {
+            closeCallbacks.forEach(Runnable::run);
+            monitor.onClose(this);
+        }
+    }
+
+    private static void restore(QueryScope scope) {
+        if (scope == null) {
+            current.remove();
+        } else {
+            current.set(scope);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QueryScope{name=" + name + ", statements=" + statements.get() + "}";
+    }
+}
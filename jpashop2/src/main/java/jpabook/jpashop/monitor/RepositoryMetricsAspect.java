@@ -0,0 +1,71 @@
+package jpabook.jpashop.monitor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Repository 클래스의 메서드별 실행 시간 (jpashop.repository, tag repository / method / exception)
+ * - Spring Data 인터페이스 repository 는 actuator 가 spring.data.repository.invocations 로 이미 기록한다.
+ * - 정상 종료 Timer 는 repository 클래스 + 메서드별로 캐시해서 호출마다 tag 를 새로 만들지 않는다.
+ *   (상속받은 메서드는 Method 가 같아도 repository tag 가 다르다.)
+ * - FetchPlanAspect 보다 바깥에서 실행되므로 fetch plan 의 in 절 조회 시간도 repository 호출에 포함된다.
+ */
+@Aspect
+@Component
+@Order(RepositoryMetricsAspect.ORDER)
+@RequiredArgsConstructor
+public class RepositoryMetricsAspect {
+
+    static final int ORDER = Ordered.LOWEST_PRECEDENCE - 200;
+    static final String METRIC = "jpashop.repository";
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Class<?>, Map<Method, Timer>> timers = new ConcurrentHashMap<>();
+
+    @Around("@within(org.springframework.stereotype.Repository)")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        long start = System.nanoTime();
+        String exception = NO_EXCEPTION;
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            timer(joinPoint, exception).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(ProceedingJoinPoint joinPoint, String exception) {
+        Class<?> repository = ClassUtils.getUserClass(joinPoint.getTarget());
+        if (NO_EXCEPTION.equals(exception)) {
+            Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+            return timers.computeIfAbsent(repository, r -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(method, m -> newTimer(repository, joinPoint, exception));
+        }
+        return newTimer(repository, joinPoint, exception);
+    }
+
+    private Timer newTimer(Class<?> repository, ProceedingJoinPoint joinPoint, String exception) {
+        return Timer.builder(METRIC)
+                .tag("repository", repository.getSimpleName())
+                .tag("method", joinPoint.getSignature().getName())
+                .tag("exception", exception)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,125 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.Category;
+import jpabook.jpashop.domain.item.Item;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.query.NativeQuery;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.List;
+
+/**
+ * 카테고리 + closure table(category_closure) 관리
+ * - 카테고리를 저장하거나 옮길 때 같은 트랜잭션에서 closure 행을 같이 바꾼다.
+ * - closure 는 네이티브 쿼리로만 바꾼다. (실행 즉시 DB 에 반영되므로 closure 를 읽는 쿼리 전에 flush 할 필요가 없다.)
+ * - closure 가 생기기 전에 만든 카테고리는 backfillClosure 로 parent_id 를 따라가서 채운다.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CategoryRepository {
+
+    private static final String CLOSURE_TABLE = "category_closure";
+
+    private final EntityManager em;
+
+    /**
+     * 카테고리 저장 + 조상 경로 복사 (부모의 조상들 + 자기 자신)
+     */
+    public void save(Category category) {
+        em.persist(category);
+        em.flush(); // closure 의 id 가 category 를 가리키므로 먼저 insert
+        Category parent = category.getParent();
+        if (parent != null) {
+            closureUpdate("insert into category_closure (ancestor_id, descendant_id, depth)" +
+                    " select ancestor_id, :id, depth + 1 from category_closure where descendant_id = :parentId")
+                    .setParameter("id", category.getId())
+                    .setParameter("parentId", parent.getId())
+                    .executeUpdate();
+        }
+        closureUpdate("insert into category_closure (ancestor_id, descendant_id, depth) values (:id, :id, 0)")
+                .setParameter("id", category.getId())
+                .executeUpdate();
+    }
+
+    /**
+     * parent_id 로 모든 조상/자손 쌍을 만들어서 closure 에 없는 행만 넣는다. (이미 있는 행은 그대로)
+     * @return 추가한 행 수
+     */
+    public int backfillClosure() {
+        em.flush(); // 아직 insert 되지 않은 카테고리도 포함
+        return closureUpdate("insert into category_closure (ancestor_id, descendant_id, depth)" +
+                " with recursive path(ancestor_id, descendant_id, depth) as (" +
+                " select category_id, category_id, 0 from category" +
+                " union all" +
+                " select p.ancestor_id, c.category_id, p.depth + 1 from path p join category c on c.parent_id = p.descendant_id)" +
+                " select ancestor_id, descendant_id, depth from path" +
+                " where not exists (select 1 from category_closure cc" +
+                " where cc.ancestor_id = path.ancestor_id and cc.descendant_id = path.descendant_id)")
+                .executeUpdate();
+    }
+
+    // 네이티브 update 는 기본적으로 2차 캐시 region 을 모두 비운다. category_closure 만 바뀐다고 알려준다.
+    private Query closureUpdate(String sql) {
+        Query query = em.createNativeQuery(sql);
+        query.unwrap(NativeQuery.class).addSynchronizedQuerySpace(CLOSURE_TABLE);
+        return query;
+    }
+
+    public Category findOne(Long id) {
+        return em.find(Category.class, id);
+    }
+
+    /**
+     * 트리 스냅샷용 (id, parentId, name)
+     */
+    public List<Object[]> findAllNodes() {
+        return em.createQuery("select c.id, p.id, c.name from Category c left join c.parent p", Object[].class)
+                .getResultList();
+    }
+
+    public boolean isDescendant(Long ancestorId, Long descendantId) {
+        return !em.createQuery("select 1 from CategoryClosure cc" +
+                        " where cc.ancestorId = :ancestorId and cc.descendantId = :descendantId")
+                .setParameter("ancestorId", ancestorId)
+                .setParameter("descendantId", descendantId)
+                .setMaxResults(1)
+                .getResultList()
+                .isEmpty();
+    }
+
+    /**
+     * 서브트리를 새 부모 아래로 옮긴다. (newParentId 가 null 이면 최상위)
+     * 1. 서브트리 밖의 조상 -> 서브트리 안의 자손 경로를 지운다.
+     * 2. 새 부모의 조상들 x 서브트리 자손들 경로를 만든다.
+     * 서브트리 안쪽 경로(자기 자신 포함)는 그대로 둔다.
+     */
+    public void moveSubtree(Long categoryId, Long newParentId) {
+        closureUpdate("delete from category_closure" +
+                " where descendant_id in (select descendant_id from category_closure where ancestor_id = :id)" +
+                " and ancestor_id not in (select descendant_id from category_closure where ancestor_id = :id)")
+                .setParameter("id", categoryId)
+                .executeUpdate();
+        if (newParentId == null) {
+            return;
+        }
+        closureUpdate("insert into category_closure (ancestor_id, descendant_id, depth)" +
+                " select sup.ancestor_id, sub.descendant_id, sup.depth + sub.depth + 1" +
+                " from category_closure sup, category_closure sub" +
+                " where sup.descendant_id = :parentId and sub.ancestor_id = :id")
+                .setParameter("parentId", newParentId)
+                .setParameter("id", categoryId)
+                .executeUpdate();
+    }
+
+    /**
+     * 카테고리 X 와 그 아래 모든 카테고리에 속한 상품 (한번의 쿼리)
+     */
+    public List<Item> findItemsUnder(Long categoryId) {
+        return em.createQuery("select distinct i from Category c join c.items i" +
+                        " where c.id in (select cc.descendantId from CategoryClosure cc where cc.ancestorId = :categoryId)", Item.class)
+                .setParameter("categoryId", categoryId)
+                .getResultList();
+    }
+}
@@ -1,16 +1,28 @@
 package jpabook.jpashop.repository;
 
 import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.ReplicationMode;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.query.NativeQuery;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 @RequiredArgsConstructor
 public class ItemRepository {
 
+    private static final String STOCK_QUERY_SPACE = "item_stock";
+
     private final EntityManager em;
 
     // 매개변수 객체에 id가 있으면 DB에 저장,
@@ -23,15 +35,130 @@ public class ItemRepository {
         }
     }
 
+    /**
+     * 현재 shard 에 상품 복제본을 저장한다. (ItemService) 재고만 stockQuantity(이 shard 의 몫)로 바꿔서 저장한다.
+     * - id 가 없으면 새로 만들고(shard 0), 있으면 같은 id 로 넣거나 덮어쓴다.
+     * - 저장한 뒤 영속성 컨텍스트에서 떼어내고 item 의 재고를 원래대로 돌려놓는다. (다음 shard 에 같은 item 으로 저장한다.)
+     */
+    public void saveReplica(Item item, int stockQuantity){
+        int total = item.getStockQuantity();
+        item.setStockQuantity(stockQuantity);
+        try {
+            if (item.getId() == null) {
+                em.persist(item);
+            } else {
+                em.unwrap(Session.class).replicate(item, ReplicationMode.OVERWRITE);
+            }
+            em.flush();
+            em.detach(item);
+        } finally {
+            item.setStockQuantity(total);
+        }
+    }
+
     public Item findOne(Long id){
         return em.find(Item.class, id);
     }
 
+    // 상품 목록은 자주 조회되므로 쿼리 캐시를 사용한다.
+    // - item 테이블이 변경되면 Hibernate 가 자동으로 쿼리 캐시 결과를 무효화한다.
     public List<Item> findAll(){
         return em.createQuery("select i from Item i", Item.class)
+                .setHint(QueryHints.CACHEABLE, true)
                 .getResultList();
     }
 
+    /**
+     * 재고 원자적 차감
+     * - update ... set stock = stock - :count where stock >= :count 한 문장으로 검사와 차감을 같이 한다.
+     *   (엔티티를 읽고 → 빼고 → 쓰는 사이에 다른 주문이 끼어들어 재고가 덮어써지는 lost update 가 없다.)
+     * - 행 잠금은 update 문 하나 동안만 걸리므로 비관적 락(select for update)처럼 구매자들이 줄을 서지 않는다.
+     * @return 차감했으면 true, 재고가 모자라면 false
+     */
+    public boolean decreaseStock(Long itemId, int count){
+        int updated = stockUpdate(
+                "update item set stock_quantity = stock_quantity - :count, version = version + 1" +
+                        " where item_id = :itemId and stock_quantity >= :count")
+                .setParameter("count", count)
+                .setParameter("itemId", itemId)
+                .executeUpdate();
+        evictAfterCompletion(itemId);
+        return updated == 1;
+    }
+
+    /**
+     * 재고 변경분 반영 (delta 만큼 차감, 음수면 증가)
+     * - 메모리에서 재고 검사가 끝난 변경분(StripedStockCounter)을 DB에 모아서 반영할 때 사용한다.
+     * - 그 사이 다른 경로로 DB 재고가 줄었을 수 있으므로 여기서도 재고가 0 밑으로 내려가지 않는지 검사한다.
+     * @throws NotEnoughStockException DB 재고가 delta 보다 적을 때
+     */
+    public void applyStockDelta(Long itemId, int delta){
+        int updated = stockUpdate("update item set stock_quantity = stock_quantity - :delta, version = version + 1" +
+                " where item_id = :itemId and stock_quantity >= :delta")
+                .setParameter("delta", delta)
+                .setParameter("itemId", itemId)
+                .executeUpdate();
+        evictAfterCompletion(itemId);
+        if (updated == 0) {
+            throw new NotEnoughStockException("need more stock. itemId=" + itemId + ", delta=" + delta);
+        }
+    }
+
+    /**
+     * DB 의 현재 재고
+     * - 영속성 컨텍스트, 2차 캐시에 있는 상품은 이미 지난 재고일 수 있으므로 테이블에서 바로 읽는다.
+     */
+    public int findStockQuantity(Long itemId){
+        em.flush();
+        Number stock = (Number) em.createNativeQuery("select stock_quantity from item where item_id = :itemId")
+                .setParameter("itemId", itemId)
+                .getSingleResult();
+        return stock.intValue();
+    }
 
+    /**
+     * 상품 id -> DB 의 현재 재고 (shard 마다 나누어 가진 재고를 합칠 때)
+     */
+    public Map<Long, Integer> findStockQuantities(){
+        em.flush();
+        List<?> rows = em.createNativeQuery("select item_id, stock_quantity from item").getResultList();
+        Map<Long, Integer> stocks = new HashMap<>(rows.size());
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            stocks.put(((Number) columns[0]).longValue(), ((Number) columns[1]).intValue());
+        }
+        return stocks;
+    }
+
+    private Query stockUpdate(String sql){
+        // query space 를 지정하면 자동 flush 대상에서도 빠지므로, 아직 insert 되지 않은 상품이 있을 수 있어 먼저 flush 한다.
+        em.flush();
+        Query query = em.createNativeQuery(sql);
+        // 네이티브 update 는 기본적으로 모든 2차 캐시 region 을 비워버린다.
+        // 어떤 엔티티와도 겹치지 않는 query space 를 지정해서 막고, 대신 변경한 상품만 evict 한다.
+        query.unwrap(NativeQuery.class).addSynchronizedQuerySpace(STOCK_QUERY_SPACE);
+        return query;
+    }
 
+    // 커밋(또는 롤백) 이후에 지워야 그 사이 다른 트랜잭션이 옛날 재고를 캐시에 다시 올려놓는 일이 없다.
+    private void evictAfterCompletion(Long itemId){
+        evict(itemId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(itemId);
+                }
+            });
+        }
+    }
+
+    /**
+     * 2차 캐시 명시적 무효화
+     * - 엔티티 변경(더티체킹)은 Hibernate 가 알아서 캐시를 갱신한다.
+     * - 벌크 연산, 네이티브 쿼리처럼 영속성 컨텍스트를 거치지 않고 재고를 바꾼 경우에 호출한다.
+     */
+    public void evict(Long id){
+        em.getEntityManagerFactory().getCache().evict(Item.class, id);
+    }
 }
@@ -2,6 +2,7 @@ package jpabook.jpashop.repository;
 
 import jpabook.jpashop.domain.Member;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
@@ -23,7 +24,8 @@ public class MemberRepository {
     }
 
     public List<Member> findAll(){
-        return em.createQuery("select m from Member m",Member.class)
+        return em.createQuery("select m from Member m order by m.id",Member.class)
+                .setHint(QueryHints.CACHEABLE, true) // 쿼리 캐시
                 .getResultList();
     }
 
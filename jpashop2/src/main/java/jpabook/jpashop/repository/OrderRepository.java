@@ -1,30 +1,45 @@
 package jpabook.jpashop.repository;
 
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.OrderStatus;
 import jpabook.jpashop.domain.QMember;
 import jpabook.jpashop.domain.QOrder;
 import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto;
+import jpabook.jpashop.repository.support.CompiledQueryCache;
+import jpabook.jpashop.repository.support.QueryShape;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.StringUtils;
 
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Repository
 @RequiredArgsConstructor
 public class OrderRepository {
 
+    // findAll(OrderSearch) 최대 건수
+    public static final int FIND_ALL_LIMIT = 1000;
+
     private final EntityManager em;
+    private final CompiledQueryCache compiledQueryCache;
 
     public void save(Order order){
         em.persist(order);
     }
 
+    // 모아둔 insert 를 batch 로 보내고 영속성 컨텍스트를 비운다. (대량 저장시 메모리가 끝없이 커지지 않도록)
+    public void flushAndClear(){
+        em.flush();
+        em.clear();
+    }
+
     public Order findOne(Long id){
         return em.find(Order.class,id);
     }
@@ -73,7 +88,16 @@ public class OrderRepository {
     // QueryDsl
     // JPQL 문법과 크게 다르지 않음 간결하다!
     // 100% Java 코드이므로 오타가 발생하면 컴파일 에러를 통해 다 잡을 수 있다.
+    // - 조건 유무 조합(shape)별로 JPQL 을 한번만 만들고 이후에는 값만 바인딩한다. (CompiledQueryCache)
+    // - 주문일 최신순 (shard 별 결과를 이 순서로 합친다.)
     public List<Order> findAll(OrderSearch orderSearch){
+        QueryShape shape = QueryShape.of("findAllOrders")
+                .param(orderSearch.getOrderStatus())
+                .param(orderSearch.getMemberName());
+        return compiledQueryCache.fetch(shape, () -> findAllQuery(orderSearch));
+    }
+
+    private JPAQuery<Order> findAllQuery(OrderSearch orderSearch){
         // static 이므로 Import 해서 사용할 수도 있음.
         QOrder order = QOrder.order;
         QMember member = QMember.member;
@@ -84,8 +108,8 @@ public class OrderRepository {
                 .from(order)
                 .join(order.member, member)
                 .where(statusEq(orderSearch.getOrderStatus()), nameLike(orderSearch))
-                .limit(1000)
-                .fetch();
+                .orderBy(order.orderDate.desc(), order.id.desc())
+                .limit(FIND_ALL_LIMIT);
     }
 
     private static BooleanExpression nameLike(OrderSearch orderSearch) {
@@ -122,6 +146,52 @@ public class OrderRepository {
                 .getResultList();
     }
 
+    /**
+     * keyset(seek) 페이징 - 다음 페이지
+     * - offset 방식은 앞의 row를 전부 읽고 버리기 때문에 뒤 페이지로 갈수록 느려진다.
+     * - (orderDate, order_id) 인덱스를 타고 커서 바로 다음 위치부터 limit 만큼만 읽는다.
+     * - cursor 가 null 이면 첫 페이지를 조회한다.
+     */
+    public List<Order> findAllWithMemberDeliveryAfter(OrderCursor cursor, int limit) {
+        String jpql = "select o from Order o" +
+                " join fetch o.member m" +
+                " join fetch o.delivery d";
+        if (cursor != null) {
+            jpql += " where o.orderDate > :orderDate" +
+                    " or (o.orderDate = :orderDate and o.id > :orderId)";
+        }
+        jpql += " order by o.orderDate asc, o.id asc";
+
+        TypedQuery<Order> query = em.createQuery(jpql, Order.class)
+                .setMaxResults(limit);
+        if (cursor != null) {
+            query.setParameter("orderDate", cursor.getOrderDate())
+                    .setParameter("orderId", cursor.getOrderId());
+        }
+        return query.getResultList();
+    }
+
+    /**
+     * keyset(seek) 페이징 - 이전 페이지
+     * - 역순으로 limit 만큼 읽은 뒤 다시 뒤집어서 정렬 순서를 맞춰준다.
+     */
+    public List<Order> findAllWithMemberDeliveryBefore(OrderCursor cursor, int limit) {
+        List<Order> orders = em.createQuery(
+                "select o from Order o" +
+                        " join fetch o.member m" +
+                        " join fetch o.delivery d" +
+                        " where o.orderDate < :orderDate" +
+                        " or (o.orderDate = :orderDate and o.id < :orderId)" +
+                        " order by o.orderDate desc, o.id desc", Order.class)
+                .setParameter("orderDate", cursor.getOrderDate())
+                .setParameter("orderId", cursor.getOrderId())
+                .setMaxResults(limit)
+                .getResultList();
+        List<Order> result = new ArrayList<>(orders);
+        Collections.reverse(result);
+        return result;
+    }
+
     public List<Order> findAllWithItem(){ // fetch 나중에 붙여!!
         return em.createQuery(
                 "select distinct o from Order o" +
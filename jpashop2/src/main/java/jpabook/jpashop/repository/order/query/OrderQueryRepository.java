@@ -1,19 +1,31 @@
 package jpabook.jpashop.repository.order.query;
 
 import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.repository.support.BatchInLoader;
+import jpabook.jpashop.repository.support.LongKeyMap;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.annotations.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Repository
 @RequiredArgsConstructor
 public class OrderQueryRepository {
 
+    private static final int FETCH_SIZE = 500;
+
     private final EntityManager em;
+    private final BatchInLoader batchInLoader;
 
 
     public List<OrderQueryDto> findOrders() {
@@ -31,27 +43,28 @@ public class OrderQueryRepository {
 
         List<Long> orderIds = toOrderIds(result);
 
-        Map<Long, List<OrderItemQueryDto>> orderItemMap = findOrderItemMap(orderIds);
+        LongKeyMap<List<OrderItemQueryDto>> orderItemMap = findOrderItemMap(orderIds);
 
-        result.forEach(o -> o.setOrderItems(orderItemMap.get(o.getOrderId())));
+        result.forEach(o -> o.setOrderItems(orderItemMap.getOrDefault(o.getOrderId(), new ArrayList<>())));
 
         return result;
     }
 
-    private Map<Long, List<OrderItemQueryDto>> findOrderItemMap(List<Long> orderIds) {
-        List<OrderItemQueryDto> orderItems = em.createQuery(
+    // 이전에는 루프를 돌리면서 쿼리를 날리고, 쿼리에서 얻은 값을 Setter로 DTo에 넣어주었었다.
+    // 반면 이번에는 in 절로 한번에 조회한 후, 쿼리에서 얻은 List를 Map으로 바꾸어 알맞게 값을 매칭해주었다.(Map 조회는 O(1))
+    // - in 절 크기가 무한정 커지지 않도록 BatchInLoader 가 일정 크기 단위로 나누어 조회한다.
+    private LongKeyMap<List<OrderItemQueryDto>> findOrderItemMap(List<Long> orderIds) {
+        return batchInLoader.load(orderIds, OrderQueryRepository::findOrderItemsIn, OrderItemQueryDto::getOrderId);
+    }
+
+    private static List<OrderItemQueryDto> findOrderItemsIn(EntityManager em, List<Long> orderIds) {
+        return em.createQuery(
                         "select new jpabook.jpashop.repository.order.query.OrderItemQueryDto(oi.order.id, i.name, oi.orderPrice, oi.count)" +
                                 " from OrderItem oi" +
                                 " join oi.item i" +
                                 " where oi.order.id in :orderIds", OrderItemQueryDto.class)
                 .setParameter("orderIds", orderIds)
                 .getResultList();
-
-        // 이전에는 루프를 돌리면서 쿼리를 날리고, 쿼리에서 얻은 값을 Setter로 DTo에 넣어주었었다.
-        // 반면 이번에는 쿼리를 한번만 날린 후, 쿼리에서 얻은 List를 Map으로 바꾸어 알맞게 값을 매칭해주었다.(Map 조회는 O(1))
-        Map<Long, List<OrderItemQueryDto>> orderItemMap = orderItems.stream()
-                .collect(Collectors.groupingBy(orderItemQueryDto -> orderItemQueryDto.getOrderId()));
-        return orderItemMap;
     }
 
     private static List<Long> toOrderIds(List<OrderQueryDto> result) {
@@ -66,24 +79,32 @@ public class OrderQueryRepository {
         // ToOne 관계
         List<OrderQueryDto> result = findOrders(); // query 1번 -> N개 조회
 
-        result.forEach(o -> {
-            List<OrderItemQueryDto> orderItems = findOrderItems(o.getOrderId());
-            o.setOrderItems(orderItems);
-        });
+        // 주문마다 findOrderItems(orderId)를 호출하면 N+1 문제가 발생한다.
+        // -> 주문상품은 BatchInLoader 로 묶어서 조회한다.
+        LongKeyMap<List<OrderItemQueryDto>> orderItemMap = findOrderItemMap(toOrderIds(result));
+        result.forEach(o -> o.setOrderItems(orderItemMap.getOrDefault(o.getOrderId(), new ArrayList<>())));
         return result;
     }
 
-    private List<OrderItemQueryDto> findOrderItems(Long orderId) {
+    public List<OrderFlatDto> findAllByDto_flat() {
         return em.createQuery(
-                "select new jpabook.jpashop.repository.order.query.OrderItemQueryDto(oi.order.id, i.name, oi.orderPrice, oi.count)" +
-                        " from OrderItem oi"+
-                        " join oi.item i" +
-                        " where oi.order.id = :orderId", OrderItemQueryDto.class)
-                .setParameter("orderId", orderId)
+                "select new " +
+                        "jpabook.jpashop.repository.order.query.OrderFlatDto(o.id, m.name, o.orderDate, o.status, d.address, i.name, oi.orderPrice, oi.count)"+
+                        " from Order o"+
+                        " join o.member m" +
+                        " join o.delivery d" +
+                        " join o.orderItems oi"+
+                        " join oi.item i", OrderFlatDto.class)
                 .getResultList();
     }
 
-    public List<OrderFlatDto> findAllByDto_flat() {
+    /**
+     * findAllByDto_flat 의 스트리밍 버전
+     * - 결과를 List로 한번에 올리지 않고 forward-only 커서(ScrollableResults)로 한 row씩 읽는다.
+     * - 주문 단위로 다시 묶을 수 있도록 order_id 순으로 정렬한다.
+     * - 커넥션을 계속 사용하므로 반드시 트랜잭션 안에서 소비하고 close 해야 한다.
+     */
+    public Stream<OrderFlatDto> streamAllByDto_flat() {
         return em.createQuery(
                 "select new " +
                         "jpabook.jpashop.repository.order.query.OrderFlatDto(o.id, m.name, o.orderDate, o.status, d.address, i.name, oi.orderPrice, oi.count)"+
@@ -91,7 +112,43 @@ public class OrderQueryRepository {
                         " join o.member m" +
                         " join o.delivery d" +
                         " join o.orderItems oi"+
-                        " join oi.item i", OrderFlatDto.class)
-                .getResultList();
+                        " join oi.item i" +
+                        " order by o.id, oi.id", OrderFlatDto.class)
+                .setHint(QueryHints.FETCH_SIZE, FETCH_SIZE)
+                .getResultStream();
+    }
+
+    /**
+     * 읽기 전용 조회 (StatelessSession + DTO)
+     * - 영속성 컨텍스트를 만들지 않으므로 1차 캐시, 스냅샷(더티체킹용 복사본)이 없고 엔티티, 프록시도 만들지 않는다.
+     * - 새 커넥션을 잡지 않고 현재 트랜잭션의 커넥션을 같이 쓴다. (요청 하나가 커넥션 풀에서 커넥션을 2개 잡지 않는다.)
+     *   트랜잭션 안에서 호출해야 하며, readOnly 트랜잭션이면 replica 가 설정된 경우 replica 에서 읽는다. (ReplicaRoutingDataSource)
+     */
+    public List<OrderQueryDto> findAllByDto_readOnly() {
+        SessionFactory sessionFactory = em.getEntityManagerFactory().unwrap(SessionFactory.class);
+        // StatelessSession 을 닫아도 넘겨준 커넥션은 닫지 않는다. (커넥션은 트랜잭션이 반납한다.)
+        try (StatelessSession session = em.unwrap(Session.class).doReturningWork(sessionFactory::openStatelessSession)) {
+            List<OrderFlatDto> flats = session.createQuery(
+                    "select new " +
+                            "jpabook.jpashop.repository.order.query.OrderFlatDto(o.id, m.name, o.orderDate, o.status, d.address, i.name, oi.orderPrice, oi.count)"+
+                            " from Order o"+
+                            " join o.member m" +
+                            " join o.delivery d" +
+                            " join o.orderItems oi"+
+                            " join oi.item i" +
+                            " order by o.id, oi.id", OrderFlatDto.class)
+                    .setFetchSize(FETCH_SIZE)
+                    .getResultList();
+
+            // order_id 순으로 정렬되어 있으므로 한번 훑으면서 주문 단위로 묶는다.
+            Map<Long, OrderQueryDto> orders = new LinkedHashMap<>();
+            for (OrderFlatDto flat : flats) {
+                orders.computeIfAbsent(flat.getOrderId(), id -> new OrderQueryDto(id, flat.getName(),
+                                flat.getOrderDate(), flat.getOrderStatus(), flat.getAddress(), new ArrayList<>()))
+                        .getOrderItems()
+                        .add(new OrderItemQueryDto(flat.getOrderId(), flat.getItemName(), flat.getOrderPrice(), flat.getCount()));
+            }
+            return new ArrayList<>(orders.values());
+        }
     }
 }
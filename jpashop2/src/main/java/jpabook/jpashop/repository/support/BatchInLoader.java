@@ -0,0 +1,145 @@
+package jpabook.jpashop.repository.support;
+
+import jpabook.jpashop.shard.ShardContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.ToLongFunction;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * IN 절 배치 조회기
+ * - id 하나당 쿼리 하나(N+1)도, 크기 제한 없는 in 절 하나도 아닌 "적당한 크기의 in 절 여러 개"로 조회한다.
+ * - chunk 크기는 2의 거듭제곱(1, 2, 4, ... maxChunkSize)으로만 만들고 모자란 자리는 마지막 id로 채운다.
+ *   -> in 절 파라미터 개수 종류가 log2(maxChunkSize) + 1 개로 고정되어 Hibernate/H2 쿼리 플랜 캐시가 커지지 않는다.
+ * - parallelism 이 1보다 크면 chunk 들을 고정 크기 스레드풀에서 동시에 조회한다.
+ *   EntityManager 는 스레드 간에 공유할 수 없으므로 chunk 마다 새 EntityManager 를 만들어 넘기고 조회가 끝나면 닫는다.
+ *   호출한 쪽의 트랜잭션/영속성 컨텍스트를 공유하지 않으므로 DTO 조회에만 사용해야 한다.
+ */
+@Component
+public class BatchInLoader {
+
+    private final EntityManager em; // 순서대로 조회할 때 쓰는 (호출한 쪽 트랜잭션의) EntityManager
+    private final int maxChunkSize;
+    private final ExecutorService executor; // null 이면 호출한 스레드에서 순서대로 조회
+
+    public BatchInLoader(EntityManager em,
+                         @Value("${jpashop.batch-loader.max-chunk-size:256}") int maxChunkSize,
+                         @Value("${jpashop.batch-loader.parallelism:1}") int parallelism) {
+        if (maxChunkSize < 1 || Integer.bitCount(maxChunkSize) != 1) {
+            throw new IllegalArgumentException("maxChunkSize 는 2의 거듭제곱이어야 합니다. maxChunkSize=" + maxChunkSize);
+        }
+        this.em = em;
+        this.maxChunkSize = maxChunkSize;
+        this.executor = parallelism > 1 ? newExecutor(parallelism) : null;
+    }
+
+    /**
+     * @param ids   조회할 id 목록 (중복은 제거된다)
+     * @param query chunk 하나를 주어진 EntityManager 로 in 절 조회하는 함수 (다른 EntityManager 를 쓰면 안된다)
+     * @param keyOf 조회 결과를 어떤 id 로 묶을지
+     * @return id -> 조회 결과 목록 (결과가 없는 id 는 포함되지 않는다)
+     */
+    public <T> LongKeyMap<List<T>> load(Collection<Long> ids,
+                                        BiFunction<EntityManager, List<Long>, List<T>> query,
+                                        ToLongFunction<T> keyOf) {
+        List<List<Long>> chunks = chunk(new ArrayList<>(new LinkedHashSet<>(ids)), maxChunkSize);
+        LongKeyMap<List<T>> result = new LongKeyMap<>(ids.size());
+
+        if (executor == null || chunks.size() == 1) {
+            for (List<Long> chunk : chunks) {
+                merge(result, query.apply(em, chunk), keyOf);
+            }
+            return result;
+        }
+
+        List<CompletableFuture<List<T>>> futures = chunks.stream()
+                .map(chunk -> CompletableFuture.supplyAsync(
+                        ShardContext.propagate(() -> queryInOwnEntityManager(query, chunk)), executor)) // 호출한 스레드의 shard 에서 읽는다.
+                .collect(toList());
+        try {
+            for (CompletableFuture<List<T>> future : futures) {
+                merge(result, future.join(), keyOf);
+            }
+        } catch (CompletionException e) {
+            futures.forEach(f -> f.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    private <T> List<T> queryInOwnEntityManager(BiFunction<EntityManager, List<Long>, List<T>> query,
+                                                List<Long> chunk) {
+        EntityManager chunkEm = em.getEntityManagerFactory().createEntityManager();
+        try {
+            return query.apply(chunkEm, chunk);
+        } finally {
+            chunkEm.close();
+        }
+    }
+
+    /**
+     * maxChunkSize 단위로 자르고, 마지막 나머지는 2의 거듭제곱 크기가 되도록 마지막 id로 채운다.
+     * ex) maxChunkSize=4, [1..7] -> [1,2,3,4], [5,6,7,7]
+     */
+    public static List<List<Long>> chunk(List<Long> ids, int maxChunkSize) {
+        List<List<Long>> chunks = new ArrayList<>();
+        int from = 0;
+        while (from < ids.size()) {
+            int size = Math.min(maxChunkSize, ids.size() - from);
+            List<Long> chunk = new ArrayList<>(ids.subList(from, from + size));
+            int padded = size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+            Long last = chunk.get(size - 1);
+            while (chunk.size() < padded) {
+                chunk.add(last); // 같은 id 가 in 절에 여러번 들어가도 결과 row 는 늘어나지 않는다.
+            }
+            chunks.add(chunk);
+            from += size;
+        }
+        return chunks;
+    }
+
+    private static <T> void merge(LongKeyMap<List<T>> result, List<T> rows, ToLongFunction<T> keyOf) {
+        for (T row : rows) {
+            result.computeIfAbsent(keyOf.applyAsLong(row), k -> new ArrayList<>()).add(row);
+        }
+    }
+
+    private static ExecutorService newExecutor(int parallelism) {
+        AtomicInteger seq = new AtomicInteger();
+        // 큐가 가득 차면 호출한 스레드가 직접 실행해서 자연스럽게 속도를 조절한다.
+        return new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(parallelism * 4),
+                r -> {
+                    Thread thread = new Thread(r, "batch-in-loader-" + seq.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package jpabook.jpashop.repository.support;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.QueryModifiers;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.TypedQuery;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 주문 검색처럼 조건 유무만 바뀌는 엔티티 조회의 shape 별 JPQL 캐시
+ * - 같은 shape 이면 JPQL 도 같으므로 Querydsl AST 생성과 직렬화는 처음 한번만 하고, 이후에는 값만 바인딩한다.
+ * - limit/offset, lock mode, 힌트(flush mode, 캐시, fetch graph ..)는 처음 만든 Querydsl 쿼리의 설정을 그대로 옮긴다.
+ * - 직렬화된 파라미터(?1, ?2 ..)가 shape 의 값과 순서까지 같은 엔티티 조회만 캐시하고,
+ *   그 외(DTO 프로젝션, shape 에 없는 상수)는 그냥 Querydsl 로 실행한다.
+ */
+@Component
+public class CompiledQueryCache {
+
+    private final EntityManager em;
+    private final Map<String, CompiledQuery> compiled = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder uncacheable = new LongAdder();
+
+    public CompiledQueryCache(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * @param queryBuilder 캐시에 없을 때만 호출된다. shape 의 값으로 만든 쿼리를 반환해야 한다.
+     */
+    public <T> List<T> fetch(QueryShape shape, Supplier<JPAQuery<T>> queryBuilder) {
+        CompiledQuery cached = compiled.get(shape.key());
+        if (cached != null) {
+            hits.increment();
+            return cached.execute(em, shape.values());
+        }
+
+        misses.increment();
+        JPAQuery<T> query = queryBuilder.get();
+        CompiledQuery compiledQuery = compile(query, shape.values());
+        if (compiledQuery == null) {
+            uncacheable.increment();
+            return query.fetch();
+        }
+        compiled.putIfAbsent(shape.key(), compiledQuery);
+        return compiledQuery.execute(em, shape.values());
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 캐시하지 못하고 Querydsl 로 실행한 횟수 (miss 에 포함)
+     */
+    public long getUncacheableCount() {
+        return uncacheable.sum();
+    }
+
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public int size() {
+        return compiled.size();
+    }
+
+    private CompiledQuery compile(JPAQuery<?> query, List<Object> values) {
+        QueryMetadata metadata = query.getMetadata();
+        if (metadata.getProjection() instanceof FactoryExpression) {
+            return null;
+        }
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+        serializer.serialize(metadata, false, null);
+
+        // 값 i 번째가 ?(i+1) 로 직렬화 되었는지 확인 (constants 는 파라미터 번호 순서)
+        if (!serializer.getConstants().equals(values)) {
+            return null;
+        }
+        // Querydsl 이 실제로 만드는 Query 에서 lock mode 와 힌트를 읽어온다. (값을 바인딩할 뿐 실행하지 않는다.)
+        javax.persistence.Query template = query.createQuery();
+        return new CompiledQuery(serializer.toString(), metadata.getProjection().getType(),
+                metadata.getModifiers(), template.getLockMode(), template.getHints());
+    }
+
+    private static final class CompiledQuery {
+        private final String jpql;
+        private final Class<?> resultType;
+        private final Long limit;
+        private final Long offset;
+        private final LockModeType lockMode;
+        private final Map<String, Object> hints;
+
+        private CompiledQuery(String jpql, Class<?> resultType, QueryModifiers modifiers,
+                              LockModeType lockMode, Map<String, Object> hints) {
+            this.jpql = jpql;
+            this.resultType = resultType;
+            this.limit = modifiers.getLimit();
+            this.offset = modifiers.getOffset();
+            this.lockMode = lockMode;
+            this.hints = Map.copyOf(hints);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> List<T> execute(EntityManager em, List<Object> values) {
+            TypedQuery<T> query = em.createQuery(jpql, (Class<T>) resultType);
+            for (int i = 0; i < values.size(); i++) {
+                query.setParameter(i + 1, values.get(i));
+            }
+            if (limit != null) {
+                query.setMaxResults(limit.intValue());
+            }
+            if (offset != null) {
+                query.setFirstResult(offset.intValue());
+            }
+            if (lockMode != LockModeType.NONE) {
+                query.setLockMode(lockMode);
+            }
+            hints.forEach(query::setHint);
+            return query.getResultList();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package jpabook.jpashop.repository.support;
+
+import java.util.function.LongFunction;
+
+/**
+ * long 키 전용 해시 맵 (open addressing, linear probing)
+ * - HashMap&lt;Long, V&gt; 처럼 키를 Long 으로 박싱하거나 Entry 객체를 만들지 않는다.
+ * - 조회 결과를 id 기준으로 묶는 용도로만 쓰므로 삭제는 지원하지 않는다.
+ */
+public class LongKeyMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Object[] values; // null 이면 빈 슬롯
+    private int size;
+
+    public LongKeyMap() {
+        this(16);
+    }
+
+    public LongKeyMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int idx = indexOf(key);
+        return idx < 0 ? null : (V) values[idx];
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        V value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null 값은 저장할 수 없습니다.");
+        }
+        int mask = keys.length - 1;
+        int idx = hash(key) & mask;
+        while (values[idx] != null) {
+            if (keys[idx] == key) {
+                @SuppressWarnings("unchecked")
+                V old = (V) values[idx];
+                values[idx] = value;
+                return old;
+            }
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = key;
+        values[idx] = value;
+        if (++size > keys.length * LOAD_FACTOR) {
+            resize();
+        }
+        return null;
+    }
+
+    public V computeIfAbsent(long key, LongFunction<V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int idx = hash(key) & mask;
+        while (values[idx] != null) {
+            if (keys[idx] == key) {
+                return idx;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length << 1];
+        values = new Object[oldValues.length << 1];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                @SuppressWarnings("unchecked")
+                V value = (V) oldValues[i];
+                put(oldKeys[i], value);
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        // 연속된 id 가 한쪽에 몰리지 않도록 섞어준다. (murmur3 finalizer)
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    @Override
+    public String toString() {
+        return "LongKeyMap{size=" + size + ", capacity=" + keys.length + "}";
+    }
+}
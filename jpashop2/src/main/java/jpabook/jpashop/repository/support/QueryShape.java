@@ -0,0 +1,56 @@
+package jpabook.jpashop.repository.support;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CompiledQueryCache 의 캐시 키
+ * - 주문 검색처럼 조건이 n개인 동적 쿼리는 조건이 있고 없는 조합(최대 2^n 가지)마다 JPQL 이 하나로 정해진다.
+ * - param 을 where 조건 순서대로 호출하면, 값이 있는 조건의 bit 를 켜고 값을 바인딩 순서대로 모아둔다.
+ * - null, 빈 문자열은 조건 없음으로 본다. (OrderRepository 의 StringUtils.hasText 검사와 같다.)
+ */
+public final class QueryShape {
+
+    private final String name;
+    private final List<Object> values = new ArrayList<>();
+    private long mask;
+    private int index;
+
+    private QueryShape(String name) {
+        this.name = name;
+    }
+
+    public static QueryShape of(String name) {
+        return new QueryShape(name);
+    }
+
+    public QueryShape param(Object value) {
+        if (index >= Long.SIZE) {
+            throw new IllegalStateException("조건은 " + Long.SIZE + "개까지 가능합니다. name=" + name);
+        }
+        if (isPresent(value)) {
+            mask |= 1L << index;
+            values.add(value);
+        }
+        index++;
+        return this;
+    }
+
+    String key() {
+        return name + "#" + Long.toBinaryString(mask);
+    }
+
+    List<Object> values() {
+        return Collections.unmodifiableList(values);
+    }
+
+    private static boolean isPresent(Object value) {
+        if (value instanceof String) {
+            return StringUtils.hasText((String) value);
+        }
+        return value != null;
+    }
+}
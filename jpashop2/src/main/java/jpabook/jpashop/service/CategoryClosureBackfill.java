@@ -0,0 +1,32 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.shard.ShardRouting;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * closure table 이 생기기 전에 저장된 카테고리의 경로를 시작할 때 채운다.
+ * - 이미 있는 행은 건너뛰므로 매번 실행해도 된다. (shard 마다 실행)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CategoryClosureBackfill {
+
+    private final CategoryService categoryService;
+    private final ShardRouting shardRouting;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        for (int shard = 0; shard < shardRouting.count(); shard++) {
+            int added = shardRouting.on(shard, categoryService::backfillClosure);
+            if (added > 0) {
+                log.info("category_closure 경로 {}건 추가 (shard {})", added, shard);
+                categoryService.reload();
+            }
+        }
+    }
+}
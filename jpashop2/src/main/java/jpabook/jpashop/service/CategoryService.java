@@ -0,0 +1,137 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Category;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.CategoryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * 카테고리 트리
+ * - 쓰기 : 카테고리와 closure table 을 같은 트랜잭션에서 바꾸고, 커밋된 뒤에 메모리 스냅샷(CategoryTree)도 바꾼다.
+ *   스냅샷은 처음 한번만 DB 에서 읽고 이후 변경은 이전 스냅샷에서 배열 복사로 만든다.
+ * - 읽기 : 하위 카테고리 상품은 closure table 로 한번에, 트리 구조는 스냅샷에서 DB 없이 조회한다.
+ * - 서버가 여러 대면 다른 서버의 변경은 반영되지 않는다. (reload 로 다시 읽는다.)
+ */
+@Service
+@Transactional(readOnly = true)
+@RequiredArgsConstructor
+public class CategoryService {
+
+    private final CategoryRepository categoryRepository;
+    private final Object treeLock = new Object();
+    private volatile CategoryTree tree;
+
+    @Transactional
+    public Long create(String name, Long parentId) {
+        Category category = new Category();
+        category.setName(name);
+        if (parentId != null) {
+            categoryRepository.findOne(parentId).addChildCategory(category);
+        }
+        categoryRepository.save(category);
+        Long id = category.getId();
+        afterCommit(tree -> tree.withAdded(id, parentId == null ? CategoryTree.NO_PARENT : parentId, name));
+        return id;
+    }
+
+    /**
+     * 서브트리를 통째로 옮긴다. (newParentId 가 null 이면 최상위로)
+     */
+    @Transactional
+    public void move(Long categoryId, Long newParentId) {
+        if (newParentId != null && categoryRepository.isDescendant(categoryId, newParentId)) {
+            throw new IllegalArgumentException("자기 자신이나 자손 아래로 옮길 수 없습니다.");
+        }
+        Category category = categoryRepository.findOne(categoryId);
+        Category oldParent = category.getParent();
+        if (oldParent != null) {
+            oldParent.getChild().remove(category);
+            category.setParent(null);
+        }
+        if (newParentId != null) {
+            categoryRepository.findOne(newParentId).addChildCategory(category);
+        }
+        categoryRepository.moveSubtree(categoryId, newParentId);
+        afterCommit(tree -> tree.withMoved(categoryId, newParentId == null ? CategoryTree.NO_PARENT : newParentId));
+    }
+
+    @Transactional
+    public void rename(Long categoryId, String name) {
+        categoryRepository.findOne(categoryId).setName(name);
+        afterCommit(tree -> tree.withRenamed(categoryId, name));
+    }
+
+    @Transactional
+    public void addItem(Long categoryId, Item item) {
+        Category category = categoryRepository.findOne(categoryId);
+        category.getItems().add(item);
+        item.getCategories().add(category);
+    }
+
+    /**
+     * closure 에 없는 기존 카테고리의 경로를 채운다. (CategoryClosureBackfill 이 시작할 때 호출)
+     * @return 추가한 closure 행 수
+     */
+    @Transactional
+    public int backfillClosure() {
+        return categoryRepository.backfillClosure();
+    }
+
+    /**
+     * 카테고리와 모든 하위 카테고리의 상품 (closure table 로 쿼리 한번)
+     */
+    public List<Item> findItemsUnder(Long categoryId) {
+        return categoryRepository.findItemsUnder(categoryId);
+    }
+
+    /**
+     * 현재 트리 스냅샷 (처음 호출할 때 DB 에서 읽는다.)
+     */
+    public CategoryTree tree() {
+        CategoryTree current = tree;
+        if (current == null) {
+            synchronized (treeLock) {
+                if (tree == null) {
+                    tree = CategoryTree.of(categoryRepository.findAllNodes());
+                }
+                current = tree;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * DB 에서 다시 읽는다. (다른 서버에서 바뀌었을 때 등)
+     */
+    public void reload() {
+        synchronized (treeLock) {
+            tree = null;
+        }
+    }
+
+    // 커밋된 뒤에 스냅샷을 바꾼다. 아직 한번도 읽지 않았으면 다음 조회때 DB 에서 읽으므로 할 일이 없다.
+    private void afterCommit(UnaryOperator<CategoryTree> change) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                synchronized (treeLock) {
+                    if (tree == null) {
+                        return;
+                    }
+                    try {
+                        tree = change.apply(tree);
+                    } catch (RuntimeException e) {
+                        tree = null; // 커밋 직후에 처음 읽어서 이미 반영된 경우 등 - 다음 조회때 다시 읽는다.
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,279 @@
+package jpabook.jpashop.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * 카테고리 트리 불변 스냅샷
+ * - 노드를 전위 순회(preorder) 순서로 배열에 담는다. 서브트리는 [index, end[index]) 연속 구간이다.
+ *   자손 여부, 서브트리 순회, 부모/깊이 조회가 배열 접근과 이진 탐색뿐이라 객체를 만들지 않는다.
+ * - 바뀔 때는 DB 를 다시 읽지 않고 배열을 복사해서 새 스냅샷을 만든다. (withAdded, withMoved, withRenamed)
+ *   읽는 쪽은 스냅샷 참조 하나만 잡고 쓰므로 잠금이 필요 없다.
+ */
+public final class CategoryTree {
+
+    public static final long NO_PARENT = -1L;
+
+    private static final CategoryTree EMPTY = new CategoryTree(new long[0], new long[0], new String[0], new long[0]);
+
+    // 전위 순회 순서
+    private final long[] ids;
+    private final long[] parentIds;
+    private final String[] names;
+    private final int[] parents;  // 부모 index, 최상위는 -1
+    private final int[] ends;     // 서브트리 끝 (exclusive)
+    private final int[] depths;   // 최상위 0
+    // id -> index (이진 탐색), sortedIds 는 id 가 바뀌지 않는 한 스냅샷끼리 같이 쓴다. (정렬은 처음 한번)
+    private final long[] sortedIds;
+    private final int[] sortedIndexes;
+
+    /**
+     * @param sortedIds ids 를 정렬한 배열 (바꾸지 않으므로 다른 스냅샷과 같이 써도 된다.)
+     */
+    private CategoryTree(long[] ids, long[] parentIds, String[] names, long[] sortedIds) {
+        int n = ids.length;
+        this.ids = ids;
+        this.parentIds = parentIds;
+        this.names = names;
+        this.parents = new int[n];
+        this.ends = new int[n];
+        this.depths = new int[n];
+
+        this.sortedIds = sortedIds;
+        this.sortedIndexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            sortedIndexes[Arrays.binarySearch(sortedIds, ids[i])] = i;
+        }
+
+        for (int i = 0; i < n; i++) {
+            int parent = parentIds[i] == NO_PARENT ? -1 : indexOf(parentIds[i]);
+            if (parentIds[i] != NO_PARENT && (parent < 0 || parent >= i)) {
+                throw new IllegalStateException("전위 순회 순서가 아닙니다. id=" + ids[i]);
+            }
+            parents[i] = parent;
+            depths[i] = parent < 0 ? 0 : depths[parent] + 1;
+            ends[i] = i + 1;
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            if (parents[i] >= 0) {
+                ends[parents[i]] = Math.max(ends[parents[i]], ends[i]);
+            }
+        }
+    }
+
+    // 이름만 바뀐 스냅샷 (구조는 같이 쓴다.)
+    private CategoryTree(CategoryTree tree, String[] names) {
+        this.ids = tree.ids;
+        this.parentIds = tree.parentIds;
+        this.names = names;
+        this.parents = tree.parents;
+        this.ends = tree.ends;
+        this.depths = tree.depths;
+        this.sortedIds = tree.sortedIds;
+        this.sortedIndexes = tree.sortedIndexes;
+    }
+
+    public static CategoryTree empty() {
+        return EMPTY;
+    }
+
+    /**
+     * (id, parentId(null 이면 최상위), name) 목록으로 만든다. 형제는 id 순서
+     */
+    public static CategoryTree of(List<Object[]> nodes) {
+        int n = nodes.size();
+        List<Object[]> sorted = new ArrayList<>(nodes);
+        sorted.sort(Comparator.comparingLong(node -> ((Number) node[0]).longValue()));
+
+        // 부모별 자식 목록 (id 순서)
+        Map<Long, List<Object[]>> children = new HashMap<>();
+        for (Object[] node : sorted) {
+            Long parentId = node[1] == null ? null : ((Number) node[1]).longValue();
+            children.computeIfAbsent(parentId, k -> new ArrayList<>()).add(node);
+        }
+
+        long[] ids = new long[n];
+        long[] parentIds = new long[n];
+        String[] names = new String[n];
+        int size = 0;
+        Deque<Object[]> stack = new ArrayDeque<>();
+        List<Object[]> roots = children.getOrDefault(null, List.of());
+        for (int i = roots.size() - 1; i >= 0; i--) {
+            stack.push(roots.get(i));
+        }
+        while (!stack.isEmpty()) {
+            Object[] node = stack.pop();
+            long id = ((Number) node[0]).longValue();
+            ids[size] = id;
+            parentIds[size] = node[1] == null ? NO_PARENT : ((Number) node[1]).longValue();
+            names[size] = (String) node[2];
+            size++;
+            List<Object[]> nodeChildren = children.getOrDefault(id, List.of());
+            for (int i = nodeChildren.size() - 1; i >= 0; i--) {
+                stack.push(nodeChildren.get(i));
+            }
+        }
+        if (size != n) {
+            throw new IllegalStateException("최상위에서 닿지 않는 카테고리가 있습니다. (순환 참조)");
+        }
+        long[] sortedIds = ids.clone();
+        Arrays.sort(sortedIds);
+        return new CategoryTree(ids, parentIds, names, sortedIds);
+    }
+
+    //==조회 (객체를 만들지 않는다)==//
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean contains(long id) {
+        return indexOf(id) >= 0;
+    }
+
+    public long parentId(long id) {
+        return parentIds[require(id)];
+    }
+
+    public int depth(long id) {
+        return depths[require(id)];
+    }
+
+    public String name(long id) {
+        return names[require(id)];
+    }
+
+    /**
+     * 자기 자신도 포함
+     */
+    public boolean isDescendant(long ancestorId, long id) {
+        int ancestor = indexOf(ancestorId);
+        int node = indexOf(id);
+        return ancestor >= 0 && node >= ancestor && node < ends[ancestor];
+    }
+
+    /**
+     * 자기 자신 포함 서브트리 크기
+     */
+    public int subtreeSize(long id) {
+        int index = require(id);
+        return ends[index] - index;
+    }
+
+    /**
+     * 자기 자신과 모든 자손을 전위 순회 순서로
+     */
+    public void forEachInSubtree(long id, LongConsumer action) {
+        int index = require(id);
+        for (int i = index; i < ends[index]; i++) {
+            action.accept(ids[i]);
+        }
+    }
+
+    //==변경 (새 스냅샷)==//
+
+    /**
+     * parentId 의 마지막 자식으로 추가 (NO_PARENT 면 마지막 최상위)
+     */
+    public CategoryTree withAdded(long id, long parentId, String name) {
+        if (contains(id)) {
+            throw new IllegalArgumentException("이미 있는 카테고리 id=" + id);
+        }
+        int at = parentId == NO_PARENT ? ids.length : ends[require(parentId)];
+        int n = ids.length;
+        long[] newIds = new long[n + 1];
+        long[] newParentIds = new long[n + 1];
+        String[] newNames = new String[n + 1];
+        copy(this, 0, at, newIds, newParentIds, newNames, 0);
+        newIds[at] = id;
+        newParentIds[at] = parentId;
+        newNames[at] = name;
+        copy(this, at, n, newIds, newParentIds, newNames, at + 1);
+        // 정렬된 id 에는 들어갈 자리에 끼우기만 한다.
+        int sortedAt = -(Arrays.binarySearch(sortedIds, id) + 1);
+        long[] newSortedIds = new long[n + 1];
+        System.arraycopy(sortedIds, 0, newSortedIds, 0, sortedAt);
+        newSortedIds[sortedAt] = id;
+        System.arraycopy(sortedIds, sortedAt, newSortedIds, sortedAt + 1, n - sortedAt);
+        return new CategoryTree(newIds, newParentIds, newNames, newSortedIds);
+    }
+
+    /**
+     * id 의 서브트리를 newParentId 의 마지막 자식으로 옮긴다. (NO_PARENT 면 최상위로)
+     */
+    public CategoryTree withMoved(long id, long newParentId) {
+        int from = require(id);
+        int to = ends[from];
+        if (newParentId != NO_PARENT && isDescendant(id, newParentId)) {
+            throw new IllegalArgumentException("자기 자신이나 자손 아래로 옮길 수 없습니다. id=" + id + ", parentId=" + newParentId);
+        }
+        int n = ids.length;
+        int width = to - from;
+        // 서브트리를 뺀 나머지에서 들어갈 위치
+        int at;
+        if (newParentId == NO_PARENT) {
+            at = n - width;
+        } else {
+            int parentEnd = ends[require(newParentId)];
+            at = parentEnd > from ? parentEnd - width : parentEnd;
+        }
+        long[] newIds = new long[n];
+        long[] newParentIds = new long[n];
+        String[] newNames = new String[n];
+        // 서브트리를 뺀 배열 [0, from) + [to, n) 의 at 위치에 서브트리를 끼운다.
+        int w = 0;
+        for (int i = 0; i <= n - width; i++) {
+            if (i == at) {
+                copy(this, from, to, newIds, newParentIds, newNames, w);
+                newParentIds[w] = newParentId;
+                w += width;
+            }
+            if (i < n - width) {
+                int source = i < from ? i : i + width;
+                newIds[w] = ids[source];
+                newParentIds[w] = parentIds[source];
+                newNames[w] = names[source];
+                w++;
+            }
+        }
+        return new CategoryTree(newIds, newParentIds, newNames, sortedIds); // id 집합은 그대로
+    }
+
+    public CategoryTree withRenamed(long id, String name) {
+        String[] newNames = names.clone();
+        newNames[require(id)] = name;
+        return new CategoryTree(this, newNames);
+    }
+
+    private static void copy(CategoryTree tree, int from, int to,
+                             long[] ids, long[] parentIds, String[] names, int at) {
+        System.arraycopy(tree.ids, from, ids, at, to - from);
+        System.arraycopy(tree.parentIds, from, parentIds, at, to - from);
+        System.arraycopy(tree.names, from, names, at, to - from);
+    }
+
+    private int require(long id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            throw new IllegalArgumentException("카테고리가 없습니다. id=" + id);
+        }
+        return index;
+    }
+
+    private int indexOf(long id) {
+        int found = Arrays.binarySearch(sortedIds, id);
+        return found < 0 ? -1 : sortedIndexes[found];
+    }
+
+    @Override
+    public String toString() {
+        return "CategoryTree{size=" + ids.length + "}";
+    }
+}
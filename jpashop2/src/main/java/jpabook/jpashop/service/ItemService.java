@@ -3,38 +3,88 @@ package jpabook.jpashop.service;
 import jpabook.jpashop.domain.item.Book;
 import jpabook.jpashop.domain.item.Item;
 import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.shard.ShardContext;
+import jpabook.jpashop.shard.ShardRouting;
+import jpabook.jpashop.shard.ShardTransactions;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * 상품
+ * - shard 를 쓰면 상품은 모든 shard 에 같은 id 로 둔다. 주문은 회원의 shard 안에서 끝나므로(shard 를 넘는 트랜잭션은 없다.)
+ *   주문상품이 참조하는 상품이 그 shard 에 있어야 한다. id 는 shard 0 의 시퀀스로 한번만 만들고 나머지 shard 에 복제한다.
+ * - 재고는 shard 마다 나누어 가진다. (ShardRouting.share) 주문은 회원 shard 의 재고만 차감하므로 전체 재고보다 많이 팔리지 않는다.
+ *   대신 한 shard 의 재고가 먼저 떨어질 수 있다. 조회할 때는 shard 마다 남은 재고를 합쳐서 보여준다.
+ * - 여러 shard 에 걸치는 메서드는 트랜잭션을 직접 열지 않고 shard 마다 연다. (ShardTransactions)
+ */
 @Service
 @Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class ItemService {
 
     private final ItemRepository itemRepository;
+    private final StockReservationService stockReservationService;
+    private final ShardRouting shardRouting;
+    private final ShardTransactions shardTransactions;
 
-    @Transactional
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void saveItem(Item item){
-        itemRepository.save(item);
+        if (!shardRouting.isSharded()) {
+            shardTransactions.write(ShardContext.DEFAULT_SHARD, () -> itemRepository.save(item));
+            return;
+        }
+        int total = item.getStockQuantity();
+        for (int shard = 0; shard < shardRouting.count(); shard++) { // shard 0 에서 id 를 만든다.
+            int stockQuantity = shardRouting.share(total, shard);
+            shardTransactions.write(shard, () -> itemRepository.saveReplica(item, stockQuantity));
+        }
     }
 
-    @Transactional
+    /**
+     * @return shard 0 의 상품
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Item updateItem(Long itemId, int price, String name, int stockQuantity){
-        Item findItem = itemRepository.findOne(itemId); // 영속상태의 Item
-        // 수정 가능성 있는 필드를 적는다.
-        Item changeItem = findItem.change(price, name, stockQuantity);
-        return changeItem;
+        Item changed = null;
+        for (int shard = shardRouting.count() - 1; shard >= 0; shard--) {
+            int share = shardRouting.share(stockQuantity, shard);
+            changed = shardTransactions.write(shard, () -> {
+                Item findItem = itemRepository.findOne(itemId); // 영속상태의 Item
+                // 수정 가능성 있는 필드를 적는다.
+                Item changeItem = findItem.change(price, name, share);
+                stockReservationService.stockChanged(itemId);
+                return changeItem;
+            });
+        }
+        return changed;
     }
 
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public List<Item> findItems(){
-        return itemRepository.findAll();
+        List<Item> items = shardTransactions.read(ShardContext.DEFAULT_SHARD, itemRepository::findAll);
+        if (shardRouting.isSharded()) {
+            Map<Long, Integer> totals = new HashMap<>();
+            shardTransactions.readAll(shard -> itemRepository.findStockQuantities())
+                    .forEach(stocks -> stocks.forEach((id, stock) -> totals.merge(id, stock, Integer::sum)));
+            items.forEach(item -> item.setStockQuantity(totals.getOrDefault(item.getId(), 0))); // 준영속 - 화면에만 쓴다.
+        }
+        return items;
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Item findOne(Long itemId){
-        return itemRepository.findOne(itemId);
+        Item item = shardTransactions.read(ShardContext.DEFAULT_SHARD, () -> itemRepository.findOne(itemId));
+        if (item != null && shardRouting.isSharded()) {
+            item.setStockQuantity(shardTransactions.readAll(shard -> itemRepository.findStockQuantity(itemId))
+                    .stream().mapToInt(Integer::intValue).sum());
+        }
+        return item;
     }
 }
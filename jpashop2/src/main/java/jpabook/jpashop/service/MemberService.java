@@ -3,8 +3,13 @@ package jpabook.jpashop.service;
 import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.repository.MemberRepository;
 import jpabook.jpashop.repository.MemberRepositorySpringJPA;
+import jpabook.jpashop.shard.ShardKey;
+import jpabook.jpashop.shard.ShardRouting;
+import jpabook.jpashop.shard.ShardScatter;
+import jpabook.jpashop.shard.ShardTransactions;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
@@ -16,38 +21,47 @@ public class MemberService {
 
     private final MemberRepository memberRepository;
 //    private final MemberRepositorySpringJPA memberRepository;
+    private final ShardRouting shardRouting;
+    private final ShardTransactions shardTransactions;
 
 
     /**
      * 회원 가입
+     * - shard 를 쓰면 이름 중복은 모든 shard 에서 검사하고(shard 마다 읽기 트랜잭션), 돌아가며 배정한 shard 에 저장한다.
+     *   shard 를 넘는 unique 제약은 없으므로 같은 이름으로 동시에 가입하는 것까지 막지는 못한다.
      */
-    @Transactional // readOnly = false 가 Default 이다.
+    @Transactional(propagation = Propagation.SUPPORTS) // 트랜잭션은 shard 를 정한 뒤에 ShardTransactions 가 연다.
     public Long join(Member member){
         validateDuplicateMember(member);
-        memberRepository.save(member);
-        return member.getId();
+        int shard = member.getId() == null ? shardRouting.nextShard() : shardRouting.shardOf(member.getId());
+        return shardTransactions.write(shard, () -> {
+            memberRepository.save(member);
+            return member.getId();
+        });
     }
 
     private void validateDuplicateMember(Member member) {
         // EXCEPTION
-        List<Member> findMembers = memberRepository.findByName(member.getName());
-        if(!findMembers.isEmpty()){
+        boolean exists = shardTransactions.readAll(shard -> !memberRepository.findByName(member.getName()).isEmpty())
+                .contains(true);
+        if(exists){
             throw new IllegalStateException("이미 존재하는 회원입니다.");
         }
     }
-    // 회원 전체 조회
+    // 회원 전체 조회 (shard 를 쓰면 모든 shard 에서 읽어서 id 순서로 합친다.)
+    @ShardScatter(orderBy = "id")
     public List<Member> findMembers(){
         return memberRepository.findAll();
     }
 
-    public Member findOne(Long memberId){
+    public Member findOne(@ShardKey Long memberId){
         return memberRepository.findOne(memberId);
 //        return memberRepository.findById(memberId).get();
     }
 
     // 회원 수정
     @Transactional
-    public void update(Long id, String name){
+    public void update(@ShardKey Long id, String name){
         Member member = memberRepository.findOne(id);
 //        Member member = memberRepository.findById(id).get();
         member.setName(name);
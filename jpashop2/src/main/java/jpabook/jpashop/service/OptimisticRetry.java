@@ -0,0 +1,64 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.monitor.QueryScope;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.OptimisticLockException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 낙관적 락(@Version) 충돌시 트랜잭션 전체를 다시 실행한다.
+ * - 충돌한 트랜잭션은 이미 롤백되었으므로 반드시 트랜잭션 "밖"(컨트롤러 등)에서 감싸야 한다.
+ */
+@Slf4j
+@Component
+public class OptimisticRetry {
+
+    private final int maxAttempts;
+
+    public OptimisticRetry(@Value("${jpashop.stock.optimistic.max-attempts:10}") int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public <T> T execute(Supplier<T> action) {
+        QueryScope scope = QueryScope.current();
+        Map<String, Integer> counts = scope == null ? null : scope.getCounts();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                log.debug("낙관적 락 충돌, 재시도 {}/{}", attempt, maxAttempts);
+                backoff(attempt);
+                if (scope != null) {
+                    scope.resetCounts(counts); // 다시 실행하는 SQL 은 N+1 이 아니다.
+                }
+            }
+        }
+    }
+
+    public void run(Runnable action) {
+        execute(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    private static void backoff(int attempt) {
+        // 동시에 충돌한 트랜잭션들이 또 같이 부딪히지 않도록 조금씩 다르게 쉰다.
+        long millis = ThreadLocalRandom.current().nextLong(1, 1L << Math.min(attempt, 6));
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
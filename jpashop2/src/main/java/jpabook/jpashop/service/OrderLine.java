@@ -0,0 +1,15 @@
+package jpabook.jpashop.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 대량 주문 한 건 (회원, 상품, 수량)
+ */
+@Getter
+@AllArgsConstructor
+public class OrderLine {
+    private Long memberId;
+    private Long itemId;
+    private int count;
+}
@@ -5,15 +5,25 @@ import jpabook.jpashop.domain.Member;
 import jpabook.jpashop.domain.Order;
 import jpabook.jpashop.domain.OrderItem;
 import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.fetch.FetchPlanner;
 import jpabook.jpashop.repository.ItemRepository;
 import jpabook.jpashop.repository.MemberRepository;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.shard.ShardContext;
+import jpabook.jpashop.shard.ShardKey;
+import jpabook.jpashop.shard.ShardRouting;
+import jpabook.jpashop.shard.ShardScatter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Service
 @Transactional(readOnly = true)
@@ -22,12 +32,22 @@ public class OrderService {
     private final OrderRepository orderRepository;
     private final MemberRepository memberRepository;
     private final ItemRepository itemRepository;
+    private final StockReservationService stockReservationService;
+    private final FetchPlanner fetchPlanner;
+    private final ShardRouting shardRouting;
+
+    private static final List<String> ORDER_LIST_PATHS = List.of("member", "orderItems", "orderItems.item");
+
+    // 대량 주문시 flush/clear 주기, batch 하나가 꽉 차서 나가도록 jdbc.batch_size 와 맞춘다.
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}")
+    private int bulkFlushSize = 100;
 
     /**
      * 주문
+     * - 회원이 있는 shard 에 주문/배송/주문상품을 저장한다. 상품은 모든 shard 에 있고 재고는 그 shard 의 몫에서 차감한다. (ItemService)
      */
     @Transactional
-    public Long order(Long memberId, Long itemId, int count){
+    public Long order(@ShardKey Long memberId, Long itemId, int count){
         // 엔티티 조회
         Member member = memberRepository.findOne(memberId);
         Item item = itemRepository.findOne(itemId);
@@ -36,8 +56,12 @@ public class OrderService {
         Delivery delivery = new Delivery();
         delivery.setAddress(member.getAddress());
 
-        // 주문상품 생성
-        OrderItem orderItem = OrderItem.createOrderItem(item, item.getPrice(), count);
+        // 재고 차감
+        // - 동시에 같은 상품을 주문해도 차감이 사라지지 않도록 StockReservationService 에서 처리한다.
+        stockReservationService.reserve(item, count);
+
+        // 주문상품 생성 (재고는 위에서 이미 차감했다.)
+        OrderItem orderItem = OrderItem.createReservedOrderItem(item, item.getPrice(), count);
 
         // 주문 생성
         Order order = Order.createOrder(member, delivery, orderItem);
@@ -52,22 +76,97 @@ public class OrderService {
         return order.getId();
     }
 
+    /**
+     * 대량 주문
+     * - 재고는 상품별로 수량을 합쳐서 상품당 한번만 차감한다. 하나라도 모자라면 전체 주문이 롤백된다.
+     *   (상품 id 순서로 차감해서 대량 주문끼리 서로 행 잠금을 기다리는 데드락을 피한다.)
+     * - Order / OrderItem / Delivery 는 pooled 시퀀스라 persist 마다 시퀀스를 조회하지 않고,
+     *   insert 는 bulkFlushSize 건마다 flush 해서 테이블별 JDBC batch 로 보낸다.
+     * - flush 후에는 영속성 컨텍스트를 비워서 메모리가 주문 수만큼 커지지 않게 한다.
+     * - shard 를 쓰면 첫 줄의 회원 shard 에서 실행하고, 모든 회원이 그 shard 에 있어야 한다. (shard 를 넘는 트랜잭션은 없다.)
+     * - 없는 회원/상품이나 1 미만의 수량이 하나라도 있으면 재고를 건드리기 전에 IllegalArgumentException 으로 거절한다.
+     */
+    @Transactional
+    public List<Long> orderAll(@ShardKey List<OrderLine> lines){
+        // 검증
+        Map<Long, Integer> countByItem = new TreeMap<>();
+        for (OrderLine line : lines) {
+            if (line.getMemberId() == null || line.getItemId() == null) {
+                throw new IllegalArgumentException("회원 id, 상품 id 는 필수입니다.");
+            }
+            if (line.getCount() <= 0) {
+                throw new IllegalArgumentException("주문 수량은 1 이상이어야 합니다. itemId=" + line.getItemId() + ", count=" + line.getCount());
+            }
+            if (shardRouting.shardOf(line.getMemberId()) != ShardContext.current()) {
+                throw new IllegalArgumentException("다른 shard 의 회원 주문은 같이 처리할 수 없습니다. memberId=" + line.getMemberId());
+            }
+            countByItem.merge(line.getItemId(), line.getCount(), Integer::sum);
+        }
+        Map<Long, Item> reserveItems = new TreeMap<>();
+        for (Long itemId : countByItem.keySet()) {
+            Item item = itemRepository.findOne(itemId);
+            if (item == null) {
+                throw new IllegalArgumentException("존재하지 않는 상품입니다. itemId=" + itemId);
+            }
+            reserveItems.put(itemId, item);
+        }
+        lines.stream().map(OrderLine::getMemberId).distinct().forEach(memberId -> {
+            if (memberRepository.findOne(memberId) == null) {
+                throw new IllegalArgumentException("존재하지 않는 회원입니다. memberId=" + memberId);
+            }
+        });
+
+        // 재고 차감
+        countByItem.forEach((itemId, count) -> stockReservationService.reserve(reserveItems.get(itemId), count));
+
+        // 주문 생성
+        // - clear 하면 조회해둔 회원, 상품도 준영속이 되므로 flush 주기마다 다시 조회한다. (2차 캐시)
+        List<Long> orderIds = new ArrayList<>(lines.size());
+        Map<Long, Member> members = new HashMap<>();
+        Map<Long, Item> items = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            OrderLine line = lines.get(i);
+            Member member = members.computeIfAbsent(line.getMemberId(), memberRepository::findOne);
+            Item item = items.computeIfAbsent(line.getItemId(), itemRepository::findOne);
+
+            Delivery delivery = new Delivery();
+            delivery.setAddress(member.getAddress());
+            OrderItem orderItem = OrderItem.createReservedOrderItem(item, item.getPrice(), line.getCount());
+            Order order = Order.createOrder(member, delivery, orderItem);
+            orderRepository.save(order);
+            orderIds.add(order.getId());
+
+            if ((i + 1) % bulkFlushSize == 0) {
+                orderRepository.flushAndClear();
+                members.clear();
+                items.clear();
+            }
+        }
+        return orderIds;
+    }
+
     /**
      * 주문 취소
      */
     @Transactional
-    public void cancelOrder(Long orderId){
+    public void cancelOrder(@ShardKey Long orderId){
         // 주문 엔티티 조회
         Order order = orderRepository.findOne(orderId);
         // 주문 취소
             // JPA의 더티체킹으로 인해, 알맞은 변화 쿼리가 날라간다.
             // (이렇게 따로 쿼리를 안쓰고 데이터를 관리하는 것이 JPA의 장점)
         order.cancel();
+        order.getOrderItems().forEach(oi -> stockReservationService.stockChanged(oi.getItem().getId()));
     }
 
     // 주문 검색
+    // 화면(orderList)이 읽는 연관관계를 트랜잭션 안에서 미리 읽어둔다. (OSIV 를 꺼도 화면을 그릴 수 있다.)
+    // shard 를 쓰면 shard 마다 (트랜잭션 하나씩) 조회해서 주문일 최신순으로 합친다.
+    @ShardScatter(orderBy = "orderDate", desc = true, limit = OrderRepository.FIND_ALL_LIMIT)
     public List<Order> findOrders(OrderSearch orderSearch){
 //        return orderRepository.findAllByString(orderSearch);
-        return orderRepository.findAll(orderSearch);
+        List<Order> orders = orderRepository.findAll(orderSearch);
+        fetchPlanner.prefetch(orders, ORDER_LIST_PATHS);
+        return orders;
     }
 }
@@ -0,0 +1,13 @@
+package jpabook.jpashop.service;
+
+/**
+ * 주문시 재고 차감 방식 (jpashop.stock.mode)
+ */
+public enum StockMode {
+    /** update ... where stock >= :count 로 DB 에서 검사와 차감을 한번에 (기본값) */
+    ATOMIC,
+    /** 엔티티(removeStock) + @Version, 충돌하면 OptimisticRetry 로 재시도 */
+    OPTIMISTIC,
+    /** 메모리의 striped counter 에서 차감하고 DB 는 주기적으로 모아서 반영 (서버 1대일 때만 사용) */
+    STRIPED
+}
@@ -0,0 +1,213 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.ItemRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 주문시 재고 차감
+ * - Item.removeStock 만으로는 읽기 → 빼기 → 쓰기 사이에 다른 주문이 끼어들면 차감이 사라진다.(lost update)
+ * - 비관적 락은 인기 상품을 사려는 모든 주문을 한 줄로 세우므로 사용하지 않는다.
+ * - 기본은 ATOMIC(조건부 update), 그 외 방식은 jpashop.stock.mode 로 선택한다.
+ */
+@Slf4j
+@Service
+@Transactional
+public class StockReservationService {
+
+    private final ItemRepository itemRepository;
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+    private final StockMode mode;
+    private final long reconcileIntervalMillis;
+    private final StripedStockCounter stripedStockCounter;
+    private ScheduledExecutorService reconciler;
+
+    public StockReservationService(ItemRepository itemRepository, EntityManager em,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${jpashop.stock.mode:ATOMIC}") StockMode mode,
+                                   @Value("${jpashop.stock.striped.stripes:16}") int stripes,
+                                   @Value("${jpashop.stock.striped.reconcile-interval-ms:200}") long reconcileIntervalMillis) {
+        this.itemRepository = itemRepository;
+        this.em = em;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mode = mode;
+        this.reconcileIntervalMillis = reconcileIntervalMillis;
+        this.stripedStockCounter = new StripedStockCounter(stripes);
+    }
+
+    @PostConstruct
+    public void startReconciler() {
+        if (mode != StockMode.STRIPED) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "stock-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcileStripedStock();
+            } catch (RuntimeException e) {
+                log.warn("재고 반영 실패, 다음 주기에 다시 시도합니다.", e);
+            }
+        }, reconcileIntervalMillis, reconcileIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stopReconciler() {
+        if (reconciler != null) {
+            reconciler.shutdown();
+            reconcileStripedStock(); // 남은 차감분은 종료 전에 반영
+        }
+    }
+
+    public void reserve(Item item, int count) {
+        checkCount(count);
+        switch (mode) {
+            case OPTIMISTIC:
+                reserveOptimistic(item, count);
+                break;
+            case STRIPED:
+                reserveStriped(item, count);
+                break;
+            default:
+                reserveAtomic(item, count);
+        }
+    }
+
+    /**
+     * update ... set stock = stock - :count where stock >= :count
+     */
+    public void reserveAtomic(Item item, int count) {
+        checkCount(count);
+        if (!itemRepository.decreaseStock(item.getId(), count)) {
+            throw new NotEnoughStockException("need more stock");
+        }
+        // 영속성 컨텍스트의 상품도 DB 와 같은 재고, version 으로 맞춰준다.
+        em.refresh(item);
+    }
+
+    /**
+     * 엔티티로 차감하고 바로 flush 해서 version 을 검사한다.
+     * - 충돌하면 OptimisticLockException 이 발생하고 트랜잭션은 롤백된다. 재시도는 OptimisticRetry 가 한다.
+     */
+    public void reserveOptimistic(Item item, int count) {
+        checkCount(count);
+        item.removeStock(count);
+        em.flush();
+    }
+
+    /**
+     * 메모리 카운터에서 차감하고 DB 반영은 reconcileStripedStock 에 맡긴다.
+     * - 카운터가 없는 상품은 DB 에서 현재 재고를 새로 읽어 만든다. (영속성 컨텍스트의 item 은 이미 지난 값일 수 있다.)
+     * - 주문 트랜잭션이 롤백되면 차감한 수량을 되돌린다.
+     */
+    public void reserveStriped(Item item, int count) {
+        checkCount(count);
+        Long itemId = item.getId();
+        if (!stripedStockCounter.tryReserve(itemId, count, () -> itemRepository.findStockQuantity(itemId))) {
+            throw new NotEnoughStockException("need more stock");
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        stripedStockCounter.release(itemId, count);
+                    }
+                }
+            });
+        }
+    }
+
+    private static void checkCount(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("주문 수량은 1 이상이어야 합니다. count=" + count);
+        }
+    }
+
+    /**
+     * 메모리에서 차감한 재고를 상품별로 모아서 반영한다.
+     * - 상품마다 따로 반영해서, DB 재고가 모자란 상품 하나 때문에 다른 상품까지 반영이 밀리지 않게 한다.
+     * - 반영하지 못한 차감분은 다음 주기에 다시 반영하고, 그 상품의 카운터는 DB 에서 다시 읽는다.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void reconcileStripedStock() {
+        Map<Long, Integer> deltas = stripedStockCounter.drainPending();
+        RuntimeException failure = null;
+        for (Map.Entry<Long, Integer> delta : deltas.entrySet()) {
+            Map<Long, Integer> drained = Map.of(delta.getKey(), delta.getValue());
+            boolean[] completing = {false};
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    itemRepository.applyStockDelta(delta.getKey(), delta.getValue());
+                    // 커밋(또는 롤백)이 끝난 뒤에 inFlight 를 정리한다. 그 전에 다시 읽은 재고에는 아직 반영되지 않았을 수 있다.
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCompletion(int completionStatus) {
+                            if (completionStatus == STATUS_COMMITTED) {
+                                stripedStockCounter.completeDrain(drained);
+                            } else {
+                                stripedStockCounter.restorePending(drained);
+                            }
+                        }
+                    });
+                    completing[0] = true;
+                });
+            } catch (RuntimeException e) {
+                if (!completing[0]) {
+                    stripedStockCounter.restorePending(drained);
+                }
+                if (e instanceof NotEnoughStockException) {
+                    stripedStockCounter.invalidate(delta.getKey());
+                }
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 상품 수정, 주문 취소처럼 다른 경로로 재고가 바뀌었을 때 호출한다. (커밋 후 메모리 카운터를 다시 읽도록)
+     */
+    public void stockChanged(Long itemId) {
+        if (mode != StockMode.STRIPED) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    stripedStockCounter.invalidate(itemId);
+                }
+            });
+        } else {
+            stripedStockCounter.invalidate(itemId);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package jpabook.jpashop.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * 상품별 메모리 재고 카운터
+ * - 상품 하나의 재고를 여러 칸(stripe)에 나누어 담고, 스레드마다 다른 칸에서 CAS 로 차감한다.
+ *   인기 상품 하나에 주문이 몰려도 CAS 경합이 칸 수만큼 분산된다.
+ * - 차감한 수량은 pending 에 쌓아두었다가 주기적으로 DB 에 한번에 반영한다.
+ *   꺼낸 수량은 반영 트랜잭션이 끝날 때까지 inFlight 에 남겨서, 그 사이 DB 에서 다시 읽은 재고(아직 반영 전)에서도 뺀다.
+ * - 메모리 값이 기준이므로 서버가 여러 대이거나 다른 경로로 재고를 바꾼 경우에는 invalidate 로 다시 읽어야 한다.
+ */
+public class StripedStockCounter {
+
+    private final int stripeCount;
+    private final Map<Long, AtomicIntegerArray> available = new ConcurrentHashMap<>();
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+    private final Map<Long, LongAdder> inFlight = new ConcurrentHashMap<>();
+
+    public StripedStockCounter(int stripeCount) {
+        if (stripeCount < 1 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("stripeCount 는 2의 거듭제곱이어야 합니다. stripeCount=" + stripeCount);
+        }
+        this.stripeCount = stripeCount;
+    }
+
+    /**
+     * @param stockLoader 처음 조회하는 상품의 DB 재고
+     * @return 차감했으면 true, 재고가 모자라면 false
+     */
+    public boolean tryReserve(Long itemId, int count, IntSupplier stockLoader) {
+        AtomicIntegerArray stripes = available.computeIfAbsent(itemId, id -> {
+            // DB 를 읽기 전에 아직 반영되지 않은 수량을 센다. (pending -> inFlight 순서, drainPending 과 반대)
+            // 그 사이 반영이 커밋되면 같은 수량을 두 번 빼게 되지만, 재고가 모자라게 보일 뿐 초과 판매는 없다.
+            long unapplied = pendingOf(id) + inFlightOf(id);
+            return split(stockLoader.getAsInt() - (int) unapplied);
+        });
+        int start = ThreadLocalRandom.current().nextInt(stripeCount);
+
+        // 1. 한 칸에서 전부 뺄 수 있으면 그 칸만 CAS
+        for (int i = 0; i < stripeCount; i++) {
+            if (takeAll(stripes, (start + i) & (stripeCount - 1), count)) {
+                pending.computeIfAbsent(itemId, id -> new LongAdder()).add(count);
+                return true;
+            }
+        }
+
+        // 2. 재고가 여러 칸에 흩어져 있으면 조금씩 모은다. 모자라면 가져온 만큼 되돌려준다.
+        int taken = 0;
+        for (int i = 0; i < stripeCount && taken < count; i++) {
+            taken += takeSome(stripes, (start + i) & (stripeCount - 1), count - taken);
+        }
+        if (taken < count) {
+            stripes.addAndGet(start, taken);
+            return false;
+        }
+        pending.computeIfAbsent(itemId, id -> new LongAdder()).add(count);
+        return true;
+    }
+
+    /**
+     * 차감을 취소한다. (주문 트랜잭션 롤백)
+     */
+    public void release(Long itemId, int count) {
+        AtomicIntegerArray stripes = available.get(itemId);
+        if (stripes != null) {
+            stripes.addAndGet(ThreadLocalRandom.current().nextInt(stripeCount), count);
+        }
+        pending.computeIfAbsent(itemId, id -> new LongAdder()).add(-count);
+    }
+
+    /**
+     * DB 에 반영할 차감 수량을 꺼낸다. (상품 id -> 차감 수량)
+     * - 꺼낸 수량은 inFlight 로 옮긴다. 반영이 커밋되면 completeDrain, 실패하면 restorePending 을 호출해야 한다.
+     * - inFlight 에 먼저 더하고 pending 에서 빼므로, 어느 순간에도 차감분이 두 곳 중 하나에는 남아 있다.
+     */
+    public Map<Long, Integer> drainPending() {
+        Map<Long, Integer> deltas = new HashMap<>();
+        pending.forEach((itemId, adder) -> {
+            long delta = adder.sum();
+            if (delta != 0) {
+                inFlight.computeIfAbsent(itemId, id -> new LongAdder()).add(delta);
+                adder.add(-delta); // 그 사이 더해진 차감분은 pending 에 남는다.
+                deltas.put(itemId, (int) delta);
+            }
+        });
+        return deltas;
+    }
+
+    /**
+     * 반영이 커밋된 차감분을 inFlight 에서 뺀다. (이제 DB 재고에 들어 있다.)
+     */
+    public void completeDrain(Map<Long, Integer> deltas) {
+        deltas.forEach((itemId, delta) -> inFlight.computeIfAbsent(itemId, id -> new LongAdder()).add(-delta));
+    }
+
+    /**
+     * 반영하지 못한 차감분을 pending 으로 되돌린다. (다음 주기에 다시 반영)
+     */
+    public void restorePending(Map<Long, Integer> deltas) {
+        deltas.forEach((itemId, delta) -> {
+            pending.computeIfAbsent(itemId, id -> new LongAdder()).add(delta);
+            inFlight.computeIfAbsent(itemId, id -> new LongAdder()).add(-delta);
+        });
+    }
+
+    /**
+     * 다른 경로(상품 수정, 주문 취소)로 DB 재고가 바뀌었을 때 다음 주문에서 다시 읽도록 한다.
+     */
+    public void invalidate(Long itemId) {
+        available.remove(itemId);
+    }
+
+    public long pendingOf(Long itemId) {
+        LongAdder adder = pending.get(itemId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public long inFlightOf(Long itemId) {
+        LongAdder adder = inFlight.get(itemId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public int availableOf(Long itemId) {
+        AtomicIntegerArray stripes = available.get(itemId);
+        if (stripes == null) {
+            return -1;
+        }
+        int sum = 0;
+        for (int i = 0; i < stripeCount; i++) {
+            sum += stripes.get(i);
+        }
+        return sum;
+    }
+
+    private AtomicIntegerArray split(int stock) {
+        AtomicIntegerArray stripes = new AtomicIntegerArray(stripeCount);
+        int share = Math.max(stock, 0) / stripeCount;
+        int rest = Math.max(stock, 0) % stripeCount;
+        for (int i = 0; i < stripeCount; i++) {
+            stripes.set(i, share + (i < rest ? 1 : 0));
+        }
+        return stripes;
+    }
+
+    private static boolean takeAll(AtomicIntegerArray stripes, int idx, int count) {
+        while (true) {
+            int current = stripes.get(idx);
+            if (current < count) {
+                return false;
+            }
+            if (stripes.compareAndSet(idx, current, current - count)) {
+                return true;
+            }
+        }
+    }
+
+    private static int takeSome(AtomicIntegerArray stripes, int idx, int max) {
+        while (true) {
+            int current = stripes.get(idx);
+            int take = Math.min(current, max);
+            if (take <= 0) {
+                return 0;
+            }
+            if (stripes.compareAndSet(idx, current, current - take)) {
+                return take;
+            }
+        }
+    }
+}
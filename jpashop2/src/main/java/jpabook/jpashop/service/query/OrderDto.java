@@ -15,6 +15,12 @@ import static java.util.stream.Collectors.toList;
 
 @Data
 public class OrderDto {
+
+    /**
+     * 생성자에서 읽는 연관관계 (DtoAssembler)
+     */
+    public static final List<String> FETCH_PATHS = List.of("member", "delivery", "orderItems", "orderItems.item");
+
     private Long orderId;
     private String name;
     private LocalDateTime orderDate;
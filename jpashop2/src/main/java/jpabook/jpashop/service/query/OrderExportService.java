@@ -0,0 +1,82 @@
+package jpabook.jpashop.service.query;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jpabook.jpashop.repository.order.query.OrderFlatDto;
+import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * 주문 전체 NDJSON(한 줄에 주문 JSON 하나) 내보내기
+ * - v6 처럼 flat row 전체를 메모리에 올린 뒤 groupingBy 하지 않는다.
+ * - order_id 순으로 정렬된 row를 하나씩 읽다가 order_id 가 바뀌는 순간 이전 주문을 바로 써버린다.
+ * - 메모리에는 항상 "현재 조립중인 주문 1개"만 남으므로 주문 수와 상관없이 힙 사용량이 일정하다.
+ */
+@Service
+@Transactional(readOnly = true)
+@RequiredArgsConstructor
+public class OrderExportService {
+
+    private static final int FLUSH_INTERVAL = 100; // 주문 100개마다 클라이언트로 flush
+
+    private final OrderQueryRepository orderQueryRepository;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @return 내보낸 주문 수
+     */
+    public long exportNdjson(OutputStream out) throws IOException {
+        // 주문마다 flush 하지 않고 FLUSH_INTERVAL 단위로 모아서 내보낸다.
+        // 줄바꿈은 직접 쓰므로 기본 root 구분자(공백)는 끈다.
+        ObjectWriter writer = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator((String) null);
+        JsonGenerator generator = writer.createGenerator(out);
+        // 응답 스트림은 컨테이너가 닫는다.
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        long written = 0;
+        try (Stream<OrderFlatDto> flats = orderQueryRepository.streamAllByDto_flat()) {
+            OrderQueryDto current = null;
+            Iterator<OrderFlatDto> it = flats.iterator();
+            while (it.hasNext()) {
+                OrderFlatDto flat = it.next();
+                if (current == null || !current.getOrderId().equals(flat.getOrderId())) {
+                    if (current != null) {
+                        writeLine(writer, generator, current);
+                        if (++written % FLUSH_INTERVAL == 0) {
+                            generator.flush();
+                        }
+                    }
+                    current = new OrderQueryDto(flat.getOrderId(), flat.getName(), flat.getOrderDate(),
+                            flat.getOrderStatus(), flat.getAddress(), new ArrayList<>());
+                }
+                current.getOrderItems().add(new OrderItemQueryDto(flat.getOrderId(),
+                        flat.getItemName(), flat.getOrderPrice(), flat.getCount()));
+            }
+            if (current != null) {
+                writeLine(writer, generator, current);
+                written++;
+            }
+        }
+        generator.flush();
+        return written;
+    }
+
+    private void writeLine(ObjectWriter writer, JsonGenerator generator, OrderQueryDto order) throws IOException {
+        writer.writeValue(generator, order);
+        generator.writeRaw('\n');
+    }
+}
@@ -2,7 +2,11 @@ package jpabook.jpashop.service.query;
 
 import jpabook.jpashop.api.OrderApiController;
 import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.fetch.DtoAssembler;
 import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -17,6 +21,26 @@ import static java.util.stream.Collectors.toList;
 public class OrderQueryService {
 
     private final OrderRepository orderRepository;
+    private final OrderQueryRepository orderQueryRepository;
+    private final DtoAssembler dtoAssembler;
+
+    /**
+     * 주문 + 회원, 배송, 주문상품, 상품
+     * - 트랜잭션 안에서 연관관계를 경로별로 한번에 읽고 DTO 로 바꿔서 반환한다. (OSIV 가 없어도 된다.)
+     */
+    public List<OrderDto> findOrderDtos(OrderSearch orderSearch){
+        List<Order> orders = orderRepository.findAllByString(orderSearch);
+        return dtoAssembler.assemble(orders, OrderDto.FETCH_PATHS, OrderDto::new);
+    }
+
+    /**
+     * 주문 + 회원, 배송
+     */
+    public List<SimpleOrderDto> findSimpleOrderDtos(OrderSearch orderSearch){
+        List<Order> orders = orderRepository.findAllByString(orderSearch);
+        return dtoAssembler.assemble(orders, SimpleOrderDto.FETCH_PATHS, SimpleOrderDto::new);
+    }
+
     public List<OrderDto> findAllByService(){
         List<Order> orders = orderRepository.findAllWithItem(); // 수정
 
@@ -29,6 +53,15 @@ public class OrderQueryService {
                 .collect(toList());
         return collect;
     }
+
+    /**
+     * 읽기 전용 빠른 조회
+     * - 엔티티를 영속성 컨텍스트에 올리지 않고 DTO 로 바로 조회한다. (StatelessSession)
+     * - readOnly 트랜잭션이므로 replica 가 설정되어 있으면 replica 에서 읽는다.
+     */
+    public List<OrderQueryDto> findAllReadOnly(){
+        return orderQueryRepository.findAllByDto_readOnly();
+    }
 }
 
 
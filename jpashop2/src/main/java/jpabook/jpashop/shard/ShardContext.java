@@ -0,0 +1,65 @@
+package jpabook.jpashop.shard;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * 현재 스레드가 사용할 shard 번호
+ * - 아무것도 묶지 않으면 DEFAULT_SHARD(0) 를 사용한다.
+ * - 트랜잭션은 시작할 때 잡은 커넥션(shard)을 끝까지 쓰므로, 트랜잭션 안에서 다른 shard 로 바꿀 수 없다.
+ *   shard 는 항상 @Transactional 보다 바깥(ShardRoutingAspect, ShardRouting.on)에서 정한다.
+ */
+public final class ShardContext {
+
+    public static final int DEFAULT_SHARD = 0;
+
+    private static final ThreadLocal<Integer> current = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static int current() {
+        Integer shard = current.get();
+        return shard == null ? DEFAULT_SHARD : shard;
+    }
+
+    /**
+     * shard 를 묶고 이전 값을 돌려준다. (restore 로 되돌린다.)
+     */
+    static Integer bind(int shard) {
+        int now = current();
+        if (shard != now && TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("트랜잭션 안에서는 shard 를 바꿀 수 없습니다. (현재 " + now + ", 요청 " + shard + ")");
+        }
+        Integer previous = current.get();
+        current.set(shard);
+        return previous;
+    }
+
+    /**
+     * 지금 스레드의 shard 를 작업을 실행하는 스레드로 넘긴다. (DbWorkExecutor, BatchInLoader) 묶인 shard 가 없으면 work 를 그대로 반환한다.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> work) {
+        Integer shard = current.get();
+        if (shard == null) {
+            return work;
+        }
+        return () -> {
+            Integer previous = bind(shard);
+            try {
+                return work.get();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    static void restore(Integer previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+}
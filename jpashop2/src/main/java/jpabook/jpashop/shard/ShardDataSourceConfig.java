@@ -0,0 +1,70 @@
+package jpabook.jpashop.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 회원 단위 shard 설정 (jpashop.datasource.shards 에 shard URL 을 순서대로 적었을 때만)
+ * - 계정/드라이버는 spring.datasource, 커넥션 풀 설정은 spring.datasource.hikari.* 를 모든 shard 에 똑같이 적용한다.
+ *   (pool-name 을 지정했으면 뒤에 -shard 번호를 붙인다.)
+ * - shard 번호가 id 에 들어가므로 shard 순서를 바꾸거나 중간에 shard 를 추가하면 안 된다.
+ * - 2차 캐시 / 쿼리 캐시는 끈다. 쿼리 캐시 키에는 shard 가 없고, 상품(Item) 은 shard 마다 복제본이 있다. (재고는 shard 마다 다르다.)
+ * - STRIPED 재고 모드는 쓸 수 없다. 재고 카운터가 상품 id 로만 나뉘어 shard 의 재고 몫을 구분하지 못한다.
+ * - OSIV 는 요청 내내 처음 잡은 shard 의 커넥션을 쓰므로 꺼야 한다.
+ * - replica 설정(jpashop.datasource.replica)과 같이 쓸 수 없다.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "jpashop.datasource", name = "shards")
+public class ShardDataSourceConfig {
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, Environment environment,
+                                 @Value("${jpashop.datasource.shards}") List<String> shardUrls) {
+        Binder binder = Binder.get(environment);
+        List<DataSource> shards = new ArrayList<>();
+        for (String url : shardUrls) {
+            HikariDataSource shard = properties.initializeDataSourceBuilder().type(HikariDataSource.class).url(url).build();
+            binder.bind("spring.datasource.hikari", Bindable.ofInstance(shard));
+            if (shard.getPoolName() != null) {
+                shard.setPoolName(shard.getPoolName() + "-shard" + shards.size());
+            }
+            shards.add(shard);
+        }
+        return ShardRoutingDataSource.of(shards);
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer shardHibernateCustomizer(DataSource dataSource,
+                                                                 @Value("${spring.jpa.open-in-view:true}") boolean openInView,
+                                                                 @Value("${jpashop.stock.mode:ATOMIC}") String stockMode) {
+        if (openInView) {
+            throw new IllegalStateException("shard 를 쓰려면 spring.jpa.open-in-view=false 로 설정해야 합니다.");
+        }
+        if ("STRIPED".equalsIgnoreCase(stockMode)) {
+            throw new IllegalStateException("shard 를 쓰면 jpashop.stock.mode=STRIPED 를 사용할 수 없습니다.");
+        }
+        List<DataSource> shards = ((ShardRoutingDataSource) dataSource).getShards();
+        IntegratorProvider schemaExporter = () -> List.of(new ShardSchemaExporter(shards.subList(1, shards.size())));
+        return properties -> {
+            properties.put(ShardedSequenceGenerator.SHARD_COUNT, shards.size());
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, false);
+            properties.put(AvailableSettings.USE_QUERY_CACHE, false);
+            properties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER, schemaExporter);
+        };
+    }
+}
@@ -0,0 +1,17 @@
+package jpabook.jpashop.shard;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 이 파라미터로 shard 를 정해서 메서드(와 그 트랜잭션)를 실행한다. (ShardRoutingAspect)
+ * - 회원/주문/배송/주문상품 id(Long) : id 가 있는 shard
+ * - OrderLine 목록(대량 주문) : 첫 줄의 회원이 있는 shard
+ * - 첫번째가 아닌 파라미터에 붙여도 된다.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShardKey {
+}
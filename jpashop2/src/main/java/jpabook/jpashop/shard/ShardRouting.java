@@ -0,0 +1,135 @@
+package jpabook.jpashop.shard;
+
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 회원 단위 shard 라우팅
+ * - 회원과 그 회원의 주문/주문상품/배송은 같은 shard 에 있다. shard 는 id % shard 수 (ShardedSequenceGenerator)
+ * - 새 회원은 shard 를 돌아가며 배정한다.
+ * - 상품은 모든 shard 에 같은 id 로 복제하고 재고는 shard 마다 나누어 가진다. (ItemService, share)
+ * - 목록 조회는 모든 shard 에서 같은 순서로 정렬된 결과를 받아 k-way merge 한다. (scatter-gather)
+ * - DataSource 가 ShardRoutingDataSource 가 아니면 shard 하나로 동작한다. (라우팅 없이 그대로 실행)
+ */
+@Component
+public class ShardRouting {
+
+    private final int count;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ShardRouting(DataSource dataSource) {
+        this.count = dataSource instanceof ShardRoutingDataSource
+                ? ((ShardRoutingDataSource) dataSource).getShards().size() : 1;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    /**
+     * 회원/주문/배송/주문상품 id 가 있는 shard
+     */
+    public int shardOf(long id) {
+        return Math.floorMod(id, count);
+    }
+
+    /**
+     * 새 회원을 넣을 shard (돌아가며 배정)
+     */
+    public int nextShard() {
+        return Math.floorMod(next.getAndIncrement(), count);
+    }
+
+    /**
+     * 전체 수량 중 shard 가 나누어 가질 몫 - 나머지는 앞 shard 부터 하나씩 더 갖는다. (몫을 모두 더하면 total)
+     */
+    public int share(int total, int shard) {
+        return total / count + (shard < total % count ? 1 : 0);
+    }
+
+    /**
+     * shard 에서 실행한다. work 안에서 트랜잭션을 시작해야 한다. (이미 트랜잭션 안이면 다른 shard 로 바꿀 수 없다.)
+     */
+    public <T> T on(int shard, Supplier<T> work) {
+        Integer previous = ShardContext.bind(shard);
+        try {
+            return work.get();
+        } finally {
+            ShardContext.restore(previous);
+        }
+    }
+
+    public void run(int shard, Runnable work) {
+        on(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * 모든 shard 에서 query 를 실행하고 order 순서로 합친다. (각 shard 결과도 order 순서여야 한다.)
+     */
+    public <T> List<T> scatter(Supplier<List<T>> query, Comparator<? super T> order, int limit) {
+        List<List<T>> results = new ArrayList<>(count);
+        for (int shard = 0; shard < count; shard++) {
+            results.add(on(shard, query));
+        }
+        return mergeSorted(results, order, limit);
+    }
+
+    /**
+     * 정렬된 목록 k 개를 합친다. 목록마다 맨 앞 원소만 heap 에 두므로 O(n log k)
+     * - 순서가 같으면 앞 목록(낮은 shard)의 원소가 먼저 온다.
+     */
+    public static <T> List<T> mergeSorted(List<? extends List<? extends T>> sorted, Comparator<? super T> order, int limit) {
+        PriorityQueue<Cursor<T>> heap = new PriorityQueue<>(Math.max(1, sorted.size()),
+                Comparator.<Cursor<T>, T>comparing(cursor -> cursor.head, order).thenComparingInt(cursor -> cursor.index));
+        for (int i = 0; i < sorted.size(); i++) {
+            Iterator<? extends T> iterator = sorted.get(i).iterator();
+            if (iterator.hasNext()) {
+                heap.add(new Cursor<>(i, iterator));
+            }
+        }
+        List<T> merged = new ArrayList<>();
+        while (!heap.isEmpty() && merged.size() < limit) {
+            Cursor<T> cursor = heap.poll();
+            merged.add(cursor.head);
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private static final class Cursor<T> {
+        private final int index;
+        private final Iterator<? extends T> iterator;
+        private T head;
+
+        private Cursor(int index, Iterator<? extends T> iterator) {
+            this.index = index;
+            this.iterator = iterator;
+            this.head = iterator.next();
+        }
+
+        private boolean advance() {
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            head = iterator.next();
+            return true;
+        }
+    }
+}
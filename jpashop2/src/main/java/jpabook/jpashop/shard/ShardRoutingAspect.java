@@ -0,0 +1,130 @@
+package jpabook.jpashop.shard;
+
+import jpabook.jpashop.service.OrderLine;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+import java.beans.PropertyDescriptor;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @ShardKey / @ShardScatter 처리
+ * - @Transactional 보다 바깥에서 실행해야 트랜잭션이 커넥션을 잡기 전에 shard 가 정해진다. (HIGHEST_PRECEDENCE)
+ * - shard 가 하나면 아무것도 하지 않는다.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class ShardRoutingAspect {
+
+    private final ShardRouting shardRouting;
+    private final Map<Method, Integer> keyIndexes = new ConcurrentHashMap<>();
+    private final Map<Method, Comparator<Object>> orders = new ConcurrentHashMap<>();
+
+    @Around("execution(* jpabook.jpashop..*(.., @jpabook.jpashop.shard.ShardKey (*), ..))")
+    public Object routeByKey(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!shardRouting.isSharded()) {
+            return joinPoint.proceed();
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        Object key = joinPoint.getArgs()[keyIndexes.computeIfAbsent(method, ShardRoutingAspect::keyIndex)];
+        Integer previous = ShardContext.bind(shardOf(key));
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ShardContext.restore(previous);
+        }
+    }
+
+    // shard 마다 proceed 해서 (shard 마다 트랜잭션) 결과를 합친다.
+    // (ExposeInvocationInterceptor 보다 먼저 실행되므로 어노테이션을 파라미터로 바인딩하지 않고 메서드에서 읽는다.)
+    @Around("@annotation(jpabook.jpashop.shard.ShardScatter)")
+    public Object scatter(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!shardRouting.isSharded()) {
+            return joinPoint.proceed();
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        ShardScatter scatter = method.getAnnotation(ShardScatter.class);
+        List<List<Object>> results = new ArrayList<>(shardRouting.count());
+        for (int shard = 0; shard < shardRouting.count(); shard++) {
+            Integer previous = ShardContext.bind(shard);
+            try {
+                results.add(castList(joinPoint.proceed()));
+            } finally {
+                ShardContext.restore(previous);
+            }
+        }
+        return ShardRouting.mergeSorted(results, orders.computeIfAbsent(method, m -> order(scatter)), scatter.limit());
+    }
+
+    private int shardOf(Object key) {
+        if (key instanceof Number) {
+            return shardRouting.shardOf(((Number) key).longValue());
+        }
+        if (key instanceof List) {
+            // 대량 주문 : 첫 줄의 회원 shard (다른 shard 의 회원이 섞여 있으면 서비스가 거절한다.)
+            List<?> lines = (List<?>) key;
+            if (!lines.isEmpty() && lines.get(0) instanceof OrderLine) {
+                Long memberId = ((OrderLine) lines.get(0)).getMemberId();
+                return memberId == null ? ShardContext.current() : shardRouting.shardOf(memberId);
+            }
+            if (lines.isEmpty()) {
+                return ShardContext.current();
+            }
+        }
+        throw new IllegalArgumentException("@ShardKey 는 id 나 OrderLine 목록이어야 합니다. key=" + key);
+    }
+
+    private static int keyIndex(Method method) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof ShardKey) {
+                    return i;
+                }
+            }
+        }
+        throw new IllegalStateException("@ShardKey 파라미터가 없습니다. " + method);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> castList(Object result) {
+        if (!(result instanceof List)) {
+            throw new IllegalStateException("@ShardScatter 메서드는 List 를 반환해야 합니다.");
+        }
+        return (List<Object>) result;
+    }
+
+    // 메서드마다 한번 만든다. getter 는 원소 타입마다 한번만 찾는다.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparator<Object> order(ShardScatter scatter) {
+        Comparator<Comparable> values = scatter.desc() ? Comparator.reverseOrder() : Comparator.naturalOrder();
+        Map<Class<?>, Method> getters = new ConcurrentHashMap<>();
+        return Comparator.comparing(element -> (Comparable) ReflectionUtils.invokeMethod(
+                        getters.computeIfAbsent(element.getClass(), type -> getter(type, scatter.orderBy())), element),
+                Comparator.nullsLast(values));
+    }
+
+    private static Method getter(Class<?> type, String property) {
+        PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(type, property);
+        if (descriptor == null || descriptor.getReadMethod() == null) {
+            throw new IllegalStateException("@ShardScatter orderBy 프로퍼티가 없습니다. type=" + type.getName() + ", orderBy=" + property);
+        }
+        return descriptor.getReadMethod();
+    }
+}
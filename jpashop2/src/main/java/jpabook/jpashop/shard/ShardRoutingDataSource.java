@@ -0,0 +1,47 @@
+package jpabook.jpashop.shard;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 현재 스레드의 shard(ShardContext) 로 커넥션을 보내는 DataSource
+ * - 없는 shard 번호면 기본 shard 로 보내지 않고 실패한다. (잘못된 shard 에 쓰는 것을 막는다.)
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final List<DataSource> shards;
+
+    // p6spy 가 DataSource 빈을 CGLIB 으로 감싸므로 private 으로 두지 않는다.
+    ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+    }
+
+    public static ShardRoutingDataSource of(List<DataSource> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("shard 가 하나 이상 있어야 합니다.");
+        }
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+
+        ShardRoutingDataSource routing = new ShardRoutingDataSource(shards);
+        routing.setTargetDataSources(targets);
+        routing.setLenientFallback(false);
+        routing.afterPropertiesSet();
+        return routing;
+    }
+
+    public List<DataSource> getShards() {
+        return shards;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
@@ -0,0 +1,24 @@
+package jpabook.jpashop.shard;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * List 를 반환하는 조회 메서드를 모든 shard 에서 실행하고 orderBy 순서로 합친다. (ShardRoutingAspect)
+ * - 메서드의 쿼리도 같은 순서로 정렬해야 한다. (shard 별 결과를 k-way merge 한다.)
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShardScatter {
+
+    /**
+     * 결과 원소의 정렬 기준 프로퍼티
+     */
+    String orderBy();
+
+    boolean desc() default false;
+
+    int limit() default Integer.MAX_VALUE;
+}
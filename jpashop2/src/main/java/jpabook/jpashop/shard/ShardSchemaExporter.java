@@ -0,0 +1,55 @@
+package jpabook.jpashop.shard;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.hibernate.tool.schema.TargetType;
+
+import javax.sql.DataSource;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * ddl-auto(create, create-drop) 를 기본 shard 외의 shard 에도 적용한다.
+ * - Hibernate 는 기본 shard(라우팅 DataSource 의 기본값)에만 스키마를 만들기 때문에,
+ *   SessionFactory 를 만들 때 같은 매핑 정보로 나머지 shard 에도 drop + create 를 실행한다.
+ * - update / validate / none 이면 아무것도 하지 않는다. (운영 shard 스키마는 따로 관리한다.)
+ */
+public class ShardSchemaExporter implements Integrator {
+
+    private final List<DataSource> shards;
+
+    public ShardSchemaExporter(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        Object ddlAuto = sessionFactory.getProperties().get(AvailableSettings.HBM2DDL_AUTO);
+        if (!"create".equals(ddlAuto) && !"create-drop".equals(ddlAuto)) {
+            return;
+        }
+        String dialect = sessionFactory.getJdbcServices().getDialect().getClass().getName();
+        for (DataSource shard : shards) {
+            StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                    .applySetting(AvailableSettings.DATASOURCE, shard)
+                    .applySetting(AvailableSettings.DIALECT, dialect)
+                    .build();
+            try {
+                new SchemaExport().execute(EnumSet.of(TargetType.DATABASE), SchemaExport.Action.BOTH, metadata, registry);
+            } finally {
+                StandardServiceRegistryBuilder.destroy(registry);
+            }
+        }
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
@@ -0,0 +1,63 @@
+package jpabook.jpashop.shard;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * 여러 shard 에 쓰거나(상품 복제) 모든 shard 를 읽는(회원 이름 중복 검사) 서비스 메서드의 shard 별 트랜잭션
+ * - 호출하는 메서드는 트랜잭션을 열지 않아야 한다. (@Transactional(propagation = SUPPORTS)) 트랜잭션 안에서는 shard 를 바꿀 수 없다.
+ * - shard 를 쓰면 shard 마다 새 트랜잭션, 새 영속성 컨텍스트에서 실행한다. (같은 id 의 상품 복제본이 한 영속성 컨텍스트에 섞이지 않는다.)
+ * - shard 가 하나면 호출한 쪽 트랜잭션에 참여한다. (없으면 새로 연다.)
+ */
+@Component
+public class ShardTransactions {
+
+    private final ShardRouting shardRouting;
+    private final TransactionTemplate writeTx;
+    private final TransactionTemplate readTx;
+
+    public ShardTransactions(ShardRouting shardRouting, PlatformTransactionManager transactionManager) {
+        this.shardRouting = shardRouting;
+        int propagation = shardRouting.isSharded()
+                ? TransactionDefinition.PROPAGATION_REQUIRES_NEW : TransactionDefinition.PROPAGATION_REQUIRED;
+        this.writeTx = new TransactionTemplate(transactionManager);
+        this.writeTx.setPropagationBehavior(propagation);
+        this.readTx = new TransactionTemplate(transactionManager);
+        this.readTx.setPropagationBehavior(propagation);
+        this.readTx.setReadOnly(true);
+    }
+
+    public <T> T write(int shard, Supplier<T> work) {
+        return shardRouting.on(shard, () -> writeTx.execute(s -> work.get()));
+    }
+
+    public void write(int shard, Runnable work) {
+        write(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    public <T> T read(int shard, Supplier<T> work) {
+        return shardRouting.on(shard, () -> readTx.execute(s -> work.get()));
+    }
+
+    /**
+     * 모든 shard 에서 읽는다. (shard 번호 순서의 결과)
+     */
+    public <T> List<T> readAll(IntFunction<T> work) {
+        List<T> results = new ArrayList<>(shardRouting.count());
+        for (int shard = 0; shard < shardRouting.count(); shard++) {
+            int target = shard;
+            results.add(read(shard, () -> work.apply(target)));
+        }
+        return results;
+    }
+}
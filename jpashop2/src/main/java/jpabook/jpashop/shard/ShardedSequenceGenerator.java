@@ -0,0 +1,63 @@
+package jpabook.jpashop.shard;
+
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.boot.model.relational.SqlStringGenerationContext;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * shard 번호를 담은 id 를 만드는 시퀀스 생성기
+ * - id = (shard 의 시퀀스 값) * shard 수 + shard 번호 -> id % shard 수 가 그 행이 있는 shard 다.
+ *   회원이 있는 shard 에서 만든 주문/배송/주문상품 id 도 같은 shard 를 가리키므로 어떤 id 로든 shard 를 찾는다.
+ * - shard 마다 시퀀스가 따로 있으므로 shard 별로 SequenceStyleGenerator 를 두고 pooled 상태도 따로 가진다.
+ * - shard 가 하나면 (jpashop.shard.count 가 없으면) SequenceStyleGenerator 와 같은 id 를 만든다.
+ * - 파라미터는 SequenceStyleGenerator 와 같다. (sequence_name, increment_size ...)
+ */
+public class ShardedSequenceGenerator implements IdentifierGenerator {
+
+    public static final String STRATEGY = "jpabook.jpashop.shard.ShardedSequenceGenerator";
+    public static final String SHARD_COUNT = "jpashop.shard.count";
+
+    private SequenceStyleGenerator[] generators;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+        Object count = serviceRegistry.getService(ConfigurationService.class).getSettings().get(SHARD_COUNT);
+        generators = new SequenceStyleGenerator[count == null ? 1 : Integer.parseInt(count.toString())];
+        for (int i = 0; i < generators.length; i++) {
+            generators[i] = new SequenceStyleGenerator();
+            generators[i].configure(type, params, serviceRegistry);
+        }
+    }
+
+    @Override
+    public void registerExportables(Database database) {
+        for (SequenceStyleGenerator generator : generators) {
+            generator.registerExportables(database);
+        }
+    }
+
+    @Override
+    public void initialize(SqlStringGenerationContext context) {
+        for (SequenceStyleGenerator generator : generators) {
+            generator.initialize(context);
+        }
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        int shard = ShardContext.current();
+        if (shard >= generators.length) {
+            throw new IllegalStateException("없는 shard 입니다. shard=" + shard + ", shard 수=" + generators.length);
+        }
+        long value = ((Number) generators[shard].generate(session, object)).longValue();
+        return value * generators.length + shard;
+    }
+}
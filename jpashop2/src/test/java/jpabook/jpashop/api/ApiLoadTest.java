@@ -0,0 +1,134 @@
+package jpabook.jpashop.api;
+
+import jpabook.jpashop.JpashopApplication;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 동시 접속 1,000 명 부하 테스트 (수동 실행)
+ * - 실행 모드마다 애플리케이션을 새로 띄우고, 클라이언트 1,000 개가 쉬지 않고 /api/v2/orders 를 호출한다.
+ * - 503(대기열 가득 참)을 받은 클라이언트는 잠깐(BUSY_BACKOFF) 쉬었다가 다시 요청한다.
+ */
+class ApiLoadTest {
+
+    static final int CLIENTS = 1_000;
+    static final Duration WARMUP = Duration.ofSeconds(5);
+    static final Duration MEASURE = Duration.ofSeconds(15);
+    static final long BUSY_BACKOFF_MILLIS = 200;
+
+    @Disabled("서버를 여러번 띄우고 오래 걸리므로 필요할 때만 수동으로 실행")
+    @Test
+    public void load_1k_clients() throws Exception{
+        report("sync", "jpashop.api.execution=SYNC");
+        report("async", "jpashop.api.execution=ASYNC");
+        report("async-q200", "jpashop.api.execution=ASYNC", "jpashop.api.async.queue-capacity=200"); // 대기열이 작으면 503 으로 거절
+    }
+
+    private void report(String name, String... properties) throws Exception {
+        List<String> args = new ArrayList<>(List.of("--server.port=0",
+                "--logging.level.org.hibernate.SQL=off", // SQL 로그가 켜져 있으면 로그 출력이 병목이 된다.
+                "--logging.level.org.hibernate.type=off",
+                "--logging.level.p6spy=off",
+                "--decorator.datasource.p6spy.enable-logging=false"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(JpashopApplication.class)
+                .run(args.toArray(new String[0]));
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            URI uri = URI.create("http://localhost:" + port + "/api/v2/orders");
+            run(uri, WARMUP); // 워밍업
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.resetPeakThreadCount();
+            Result result = run(uri, MEASURE);
+
+            long[] latencies = result.latencies();
+            System.out.printf("%-12s clients=%,d ok/sec=%,.0f busy(503)=%,d errors=%,d p50=%,dms p99=%,dms peakThreads=%,d%n",
+                    name, CLIENTS, result.ok.get() / (double) MEASURE.toSeconds(), result.busy.get(), result.errors.get(),
+                    latencies[latencies.length / 2] / 1_000_000, latencies[latencies.length * 99 / 100] / 1_000_000,
+                    threads.getPeakThreadCount());
+        } finally {
+            context.close();
+        }
+    }
+
+    private Result run(URI uri, Duration duration) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).GET().build();
+        Result result = new Result();
+        CountDownLatch ready = new CountDownLatch(1);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> futures = new ArrayList<>();
+        long end = System.nanoTime() + duration.toNanos();
+        for (int c = 0; c < CLIENTS; c++) {
+            futures.add(clients.submit(() -> {
+                ready.await();
+                List<Long> latencies = new ArrayList<>();
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        if (status == 200) {
+                            result.ok.incrementAndGet();
+                            latencies.add(System.nanoTime() - start);
+                        } else if (status == 503) {
+                            result.busy.incrementAndGet();
+                            Thread.sleep(BUSY_BACKOFF_MILLIS);
+                        } else {
+                            result.errors.incrementAndGet();
+                        }
+                    } catch (java.io.IOException e) {
+                        result.errors.incrementAndGet();
+                    }
+                }
+                synchronized (result) {
+                    result.latencies.addAll(latencies);
+                }
+                return null;
+            }));
+        }
+        ready.countDown();
+        for (Future<?> future : futures) {
+            future.get(duration.toSeconds() + 120, TimeUnit.SECONDS);
+        }
+        clients.shutdown();
+        return result;
+    }
+
+    static class Result {
+        final AtomicInteger ok = new AtomicInteger();
+        final AtomicInteger busy = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final List<Long> latencies = new ArrayList<>();
+
+        long[] latencies() {
+            long[] sorted = latencies.isEmpty() ? new long[]{0} : latencies.stream().mapToLong(Long::longValue).toArray();
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package jpabook.jpashop.api;
+
+import jpabook.jpashop.api.support.ApiExecutionMode;
+import jpabook.jpashop.api.support.DbWorkExecutor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * jpashop.api.execution=ASYNC 일 때 전용 스레드풀에서 실행해도 응답이 같은지 확인한다.
+ * - 작업 스레드에는 OSIV 가 없으므로 지연로딩(v2)이 읽기 전용 트랜잭션 안에서 끝나야 한다.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "jpashop.api.execution=ASYNC")
+class AsyncApiTest {
+
+    @Autowired
+    TestRestTemplate rest;
+    @Autowired
+    DbWorkExecutor dbWork;
+
+    @Test
+    public void orders_lazy_loading_in_db_work_thread() throws Exception{
+        assertEquals(ApiExecutionMode.ASYNC, dbWork.getMode());
+
+        //when
+        ResponseEntity<List> v2 = rest.getForEntity("/api/v2/orders", List.class);
+        ResponseEntity<List> v5 = rest.getForEntity("/api/v5/orders", List.class);
+        ResponseEntity<List> simple = rest.getForEntity("/api/v2/simple-orders", List.class);
+
+        //then : InitDb 의 주문 2건
+        assertEquals(HttpStatus.OK, v2.getStatusCode());
+        assertEquals(2, v2.getBody().size());
+        Map<?, ?> first = (Map<?, ?>) v2.getBody().get(0);
+        assertEquals("userA", first.get("name"));
+        assertEquals(2, ((List<?>) first.get("orderItems")).size());
+        assertEquals(2, v5.getBody().size());
+        assertEquals(2, simple.getBody().size());
+    }
+
+    @Test
+    public void member_save_and_update() throws Exception{
+        //when
+        Map<?, ?> saved = rest.postForObject("/api/v2/members", Map.of("name", "async"), Map.class);
+        Number id = (Number) saved.get("id");
+        ResponseEntity<Map> updated = rest.exchange("/api/v2/members/" + id, HttpMethod.PUT,
+                new HttpEntity<>(Map.of("name", "async2")), Map.class);
+
+        //then
+        assertNotNull(id);
+        assertEquals(HttpStatus.OK, updated.getStatusCode());
+        assertEquals("async2", updated.getBody().get("name"));
+    }
+}
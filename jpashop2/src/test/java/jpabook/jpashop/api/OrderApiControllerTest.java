@@ -0,0 +1,124 @@
+package jpabook.jpashop.api;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.repository.ItemRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 주문 API 를 HTTP 로 호출해서 응답 상태를 확인한다.
+ * - 잘못된 요청은 400 으로 응답한다.
+ * - 대량 주문이 서로 충돌하도록 낙관적 락(OPTIMISTIC)으로 재고를 차감한다. 여러 스레드가 각자 커밋해야 하므로 @Transactional 을 붙이지 않는다.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"jpashop.stock.mode=OPTIMISTIC", "jpashop.stock.optimistic.max-attempts=100"})
+class OrderApiControllerTest {
+
+    static final int THREADS = 8;
+    static final int ORDERS_PER_THREAD = 5;
+
+    @Autowired
+    TestRestTemplate rest;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    ItemRepository itemRepository;
+
+    @Test
+    public void bulk_order_retries_version_conflict() throws Exception{
+        //given : 같은 상품을 주문하는 대량 주문들 (주문마다 2줄)
+        Long memberId = createMember();
+        Long itemId = createBook(1000);
+        List<Map<String, Object>> lines = List.of(
+                Map.of("memberId", memberId, "itemId", itemId, "count", 1),
+                Map.of("memberId", memberId, "itemId", itemId, "count", 2));
+
+        //when
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<List<HttpStatus>>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                ready.await();
+                List<HttpStatus> statuses = new ArrayList<>();
+                for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                    statuses.add(rest.postForEntity("/api/v1/orders/bulk", lines, Map.class).getStatusCode());
+                }
+                return statuses;
+            }));
+        }
+        ready.countDown();
+        List<HttpStatus> statuses = new ArrayList<>();
+        for (Future<List<HttpStatus>> future : futures) {
+            statuses.addAll(future.get(2, TimeUnit.MINUTES));
+        }
+        executor.shutdown();
+
+        //then : 충돌한 주문도 다시 실행되어 모두 성공한다.
+        assertEquals(THREADS * ORDERS_PER_THREAD, statuses.stream().filter(HttpStatus.OK::equals).count(), statuses.toString());
+        int stockQuantity = tx.execute(s -> itemRepository.findStockQuantity(itemId));
+        assertEquals(1000 - THREADS * ORDERS_PER_THREAD * 3, stockQuantity);
+    }
+
+    @Test
+    public void malformed_cursor_is_bad_request() throws Exception{
+        //given : base64 가 아닌 값, base64 지만 커서 형식이 아닌 값
+        String notBase64 = "!!!";
+        String tampered = Base64.getUrlEncoder().encodeToString("2024-01-01T00:00|abc".getBytes(StandardCharsets.UTF_8));
+
+        //when
+        ResponseEntity<Map> first = rest.getForEntity("/api/v3.1/orders/cursor?cursor={cursor}", Map.class, notBase64);
+        ResponseEntity<Map> second = rest.getForEntity("/api/v3.1/orders/cursor?cursor={cursor}", Map.class, tampered);
+        ResponseEntity<Map> valid = rest.getForEntity("/api/v3.1/orders/cursor?limit=1", Map.class);
+
+        //then
+        assertEquals(HttpStatus.BAD_REQUEST, first.getStatusCode());
+        assertTrue(((String) first.getBody().get("message")).startsWith("잘못된 커서입니다."));
+        assertEquals(HttpStatus.BAD_REQUEST, second.getStatusCode());
+        assertEquals(HttpStatus.OK, valid.getStatusCode());
+    }
+
+    private Long createMember() {
+        return tx.execute(s -> {
+            Member member = new Member();
+            member.setName("bulk");
+            member.setAddress(new Address("서울", "강가", "123456"));
+            em.persist(member);
+            return member.getId();
+        });
+    }
+
+    private Long createBook(int stockQuantity) {
+        return tx.execute(s -> {
+            Book book = new Book();
+            book.setName("대량 주문 상품");
+            book.setPrice(10000);
+            book.setStockQuantity(stockQuantity);
+            em.persist(book);
+            return book.getId();
+        });
+    }
+}
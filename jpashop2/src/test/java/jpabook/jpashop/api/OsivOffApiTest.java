@@ -0,0 +1,184 @@
+package jpabook.jpashop.api;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jpabook.jpashop.JpashopApplication;
+import jpabook.jpashop.fetch.DtoAssembler;
+import jpabook.jpashop.monitor.QueryMonitor;
+import jpabook.jpashop.monitor.QueryScope;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.service.query.OrderDto;
+import jpabook.jpashop.service.query.OrderQueryService;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OSIV 를 끄고(spring.jpa.open-in-view=false) 응답을 만들 수 있는지 확인한다.
+ * - DTO 는 트랜잭션 안에서 만들어지고 커넥션은 트랜잭션이 끝날 때 반납된다.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.jpa.open-in-view=false")
+class OsivOffApiTest {
+
+    @Autowired
+    TestRestTemplate rest;
+    @Autowired
+    OrderQueryService orderQueryService;
+    @Autowired
+    DtoAssembler dtoAssembler;
+    @Autowired
+    QueryMonitor queryMonitor;
+
+    @Test
+    public void apis_without_osiv() throws Exception{
+        //when
+        ResponseEntity<List> orders = rest.getForEntity("/api/v2/orders", List.class);
+        ResponseEntity<List> simpleOrders = rest.getForEntity("/api/v2/simple-orders", List.class);
+        ResponseEntity<List> v3 = rest.getForEntity("/api/v3/orders", List.class);
+        ResponseEntity<List> v1 = rest.getForEntity("/api/v1/orders", List.class);
+        ResponseEntity<List> simpleV1 = rest.getForEntity("/api/v1/simple-orders", List.class);
+        ResponseEntity<String> page = rest.getForEntity("/orders", String.class);
+
+        //then : InitDb 의 주문 2건
+        assertEquals(HttpStatus.OK, orders.getStatusCode());
+        Map<?, ?> first = (Map<?, ?>) orders.getBody().get(0);
+        assertEquals("userA", first.get("name"));
+        assertEquals(2, ((List<?>) first.get("orderItems")).size());
+        assertEquals(2, simpleOrders.getBody().size());
+        assertEquals(HttpStatus.OK, v3.getStatusCode());
+        assertEquals(HttpStatus.OK, v1.getStatusCode(), "엔티티를 그대로 반환하는 v1 도 트랜잭션 안에서 초기화한다.");
+        Map<?, ?> v1First = (Map<?, ?>) v1.getBody().get(0);
+        assertEquals("userA", ((Map<?, ?>) v1First.get("member")).get("name"));
+        assertEquals("JPA1 BOOK", ((Map<?, ?>) ((Map<?, ?>) ((List<?>) v1First.get("orderItems")).get(0)).get("item")).get("name"));
+        assertEquals(HttpStatus.OK, simpleV1.getStatusCode());
+        assertEquals(2, simpleV1.getBody().size());
+        assertEquals(HttpStatus.OK, page.getStatusCode());
+        assertTrue(page.getBody().contains("userA"), "주문 목록 화면");
+    }
+
+    @Test
+    public void assembler_reads_associations_by_path() throws Exception{
+        //given
+        OrderSearch search = new OrderSearch();
+        search.setMemberName("user%");
+
+        //when
+        List<OrderDto> dtos;
+        int statements;
+        try (QueryScope scope = queryMonitor.open("assemble")) {
+            dtos = orderQueryService.findOrderDtos(search);
+            statements = scope.getStatementCount();
+        }
+
+        //then : 주문 1 + 경로마다 많아야 1 (회원, 배송, 주문상품, 상품) - 주문 수와 상관없다.
+        assertEquals(2, dtos.size());
+        assertEquals("JPA1 BOOK", dtos.get(0).getOrderItems().get(0).getItemName());
+        assertTrue(statements <= 1 + OrderDto.FETCH_PATHS.size(), "statements=" + statements);
+    }
+
+    @Test
+    public void assembler_requires_transaction() throws Exception{
+        assertThrows(IllegalStateException.class, () -> dtoAssembler.assemble(List.of(), OrderDto.FETCH_PATHS, o -> o));
+    }
+
+    /**
+     * OSIV 켜고/끄고 커넥션 점유 시간, 커넥션 대기 (수동 실행)
+     * - 커넥션 풀을 작게(4) 잡고 클라이언트 32 개가 /api/v2/orders 를 계속 호출한다.
+     * - hikaricp.connections.usage : 커넥션을 빌려서 반납할 때까지, hikaricp.connections.acquire : 커넥션을 얻기까지 기다린 시간
+     */
+    @Disabled("서버를 여러번 띄우므로 필요할 때만 수동으로 실행")
+    @Test
+    public void connection_hold_time() throws Exception{
+        for (int round = 0; round < 2; round++) { // 첫 round 는 워밍업
+            report("osiv", "spring.jpa.open-in-view=true");
+            report("no-osiv", "spring.jpa.open-in-view=false");
+        }
+    }
+
+    private void report(String name, String... properties) throws Exception {
+        List<String> args = new ArrayList<>(List.of("--server.port=0",
+                "--spring.datasource.hikari.maximum-pool-size=4",
+                "--jpashop.query-monitor.mode=OFF",
+                "--logging.level.org.hibernate.SQL=off",
+                "--logging.level.org.hibernate.type=off",
+                "--logging.level.p6spy=off",
+                "--decorator.datasource.p6spy.enable-logging=false"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(JpashopApplication.class)
+                .run(args.toArray(new String[0]));
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            MeterRegistry registry = context.getBean(MeterRegistry.class);
+            URI uri = URI.create("http://localhost:" + port + "/api/v2/orders");
+            int clients = 32;
+            Duration duration = Duration.ofSeconds(10);
+
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+            AtomicInteger ok = new AtomicInteger();
+            AtomicLong maxPending = new AtomicLong();
+            ExecutorService executor = Executors.newFixedThreadPool(clients + 1);
+            long end = System.nanoTime() + duration.toNanos();
+            executor.submit(() -> { // 커넥션을 기다리는 스레드 수
+                Gauge pending = registry.find("hikaricp.connections.pending").gauge();
+                while (System.nanoTime() < end) {
+                    maxPending.accumulateAndGet((long) pending.value(), Math::max);
+                    Thread.sleep(5);
+                }
+                return null;
+            });
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < clients; c++) {
+                futures.add(executor.submit(() -> {
+                    while (System.nanoTime() < end) {
+                        if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                            ok.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(duration.toSeconds() + 60, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+
+            Timer usage = registry.find("hikaricp.connections.usage").timer();
+            Timer acquire = registry.find("hikaricp.connections.acquire").timer();
+            System.out.printf("%-8s ok/sec=%,.0f usage(mean=%.3fms max=%.3fms) acquire(mean=%.3fms max=%.3fms) maxPending=%d%n",
+                    name, ok.get() / (double) duration.toSeconds(),
+                    usage.mean(TimeUnit.MILLISECONDS), usage.max(TimeUnit.MILLISECONDS),
+                    acquire.mean(TimeUnit.MILLISECONDS), acquire.max(TimeUnit.MILLISECONDS), maxPending.get());
+        } finally {
+            context.close();
+        }
+    }
+}
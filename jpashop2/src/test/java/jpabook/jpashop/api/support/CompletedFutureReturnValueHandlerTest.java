@@ -0,0 +1,30 @@
+package jpabook.jpashop.api.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * SYNC 모드에서는 완료된 CompletableFuture 를 비동기 처리 없이 바로 응답으로 쓰는지 확인한다.
+ */
+@SpringBootTest(properties = "jpashop.api.execution=SYNC")
+@AutoConfigureMockMvc
+class CompletedFutureReturnValueHandlerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    public void sync_writes_response_without_async_dispatch() throws Exception{
+        mockMvc.perform(get("/api/v2/simple-orders"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].name").value("userA"));
+    }
+}
@@ -0,0 +1,107 @@
+package jpabook.jpashop.api.support;
+
+import jpabook.jpashop.exception.ServerBusyException;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DbWorkExecutorTest {
+
+    DbWorkExecutor dbWork;
+
+    @AfterEach
+    void tearDown() {
+        if (dbWork != null) {
+            dbWork.shutdown();
+        }
+    }
+
+    @Test
+    public void async_read_runs_on_db_work_thread_in_readOnly_transaction() throws Exception{
+        //given
+        dbWork = executor(ApiExecutionMode.ASYNC, 2, 10);
+
+        //when
+        String thread = dbWork.read(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+        boolean readOnly = dbWork.read(TransactionSynchronizationManager::isCurrentTransactionReadOnly).get(5, TimeUnit.SECONDS);
+        boolean writeInTx = dbWork.write(TransactionSynchronizationManager::isActualTransactionActive).get(5, TimeUnit.SECONDS);
+
+        //then
+        assertTrue(thread.startsWith("db-work-"), thread);
+        assertTrue(readOnly, "조회는 읽기 전용 트랜잭션 안에서 실행된다.");
+        assertFalse(writeInTx, "변경 작업의 트랜잭션은 서비스가 연다.");
+    }
+
+    @Test
+    public void sync_runs_on_caller_thread() throws Exception{
+        //given
+        dbWork = executor(ApiExecutionMode.SYNC, 2, 10);
+
+        //when
+        CompletableFuture<String> future = dbWork.read(() -> Thread.currentThread().getName());
+
+        //then
+        assertTrue(future.isDone());
+        assertEquals(Thread.currentThread().getName(), future.get());
+        assertTrue(dbWork.read(TransactionSynchronizationManager::isCurrentTransactionReadOnly).get(), "SYNC 도 읽기 전용 트랜잭션 안에서 실행된다.");
+    }
+
+    @Test
+    public void rejects_when_queue_is_full() throws Exception{
+        //given : 스레드 1개가 막혀 있고 대기열(1칸)도 찼다.
+        dbWork = executor(ApiExecutionMode.ASYNC, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        CompletableFuture<Integer> first = dbWork.write(() -> {
+            running.countDown();
+            await(release);
+            return 1;
+        });
+        running.await(5, TimeUnit.SECONDS);
+        CompletableFuture<Integer> queued = dbWork.write(() -> 2);
+
+        //when
+        CompletableFuture<Integer> rejected = dbWork.write(() -> 3);
+
+        //then
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof ServerBusyException);
+        assertEquals(1, dbWork.getRejectedCount());
+
+        release.countDown();
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        assertEquals(2, queued.get(5, TimeUnit.SECONDS), "대기열에 들어간 작업은 순서대로 실행된다.");
+    }
+
+    @Test
+    public void concurrency_leaves_connections_for_batch_loader() throws Exception{
+        assertEquals(10, DbWorkExecutor.concurrencyFor(10, 1), "작업당 커넥션 1개");
+        // BatchInLoader 스레드 4개가 커넥션 4개, 작업 3개가 각자 최대 2개 -> 10개
+        assertEquals(3, DbWorkExecutor.concurrencyFor(10, 4));
+        assertEquals(1, DbWorkExecutor.concurrencyFor(4, 4), "최소 1개는 실행한다.");
+    }
+
+    private static DbWorkExecutor executor(ApiExecutionMode mode, int maxConcurrency, int queueCapacity) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:db_work;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return new DbWorkExecutor(new DataSourceTransactionManager(dataSource), mode, maxConcurrency, queueCapacity);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
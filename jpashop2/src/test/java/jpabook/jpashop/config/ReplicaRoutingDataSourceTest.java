@@ -0,0 +1,73 @@
+package jpabook.jpashop.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaRoutingDataSourceTest {
+
+    @Test
+    public void readOnly_transaction_goes_to_replica() throws Exception{
+        //given
+        DataSource dataSource = ReplicaRoutingDataSource.of(h2("routing_primary"), h2("routing_replica"));
+        TransactionTemplate tx = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        //when
+        String write = tx.execute(s -> currentDatabase(jdbcTemplate));
+        tx.setReadOnly(true);
+        String read = tx.execute(s -> currentDatabase(jdbcTemplate));
+
+        //then
+        assertEquals("ROUTING_PRIMARY", write);
+        assertEquals("ROUTING_REPLICA", read, "readOnly 트랜잭션은 replica 에서 읽는다.");
+        assertEquals("ROUTING_PRIMARY", currentDatabase(jdbcTemplate), "트랜잭션 밖은 primary");
+    }
+
+    @Test
+    public void hikari_settings_apply_to_both_pools() throws Exception{
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class))
+                .withUserConfiguration(ReplicaDataSourceConfig.class)
+                .withPropertyValues(
+                        "spring.datasource.url=jdbc:h2:mem:config_primary",
+                        "spring.datasource.username=sa",
+                        "spring.datasource.hikari.maximum-pool-size=3",
+                        "spring.datasource.hikari.connection-timeout=1234",
+                        "jpashop.datasource.replica.url=jdbc:h2:mem:config_replica")
+                .run(context -> {
+                    HikariDataSource primary = context.getBean("primaryDataSource", HikariDataSource.class);
+                    HikariDataSource replica = context.getBean("replicaDataSource", HikariDataSource.class);
+                    assertEquals("jdbc:h2:mem:config_primary", primary.getJdbcUrl());
+                    assertEquals("jdbc:h2:mem:config_replica", replica.getJdbcUrl());
+                    assertEquals("sa", replica.getUsername(), "계정을 지정하지 않으면 primary 계정을 쓴다.");
+                    for (HikariDataSource pool : new HikariDataSource[]{primary, replica}) {
+                        assertEquals(3, pool.getMaximumPoolSize());
+                        assertEquals(1234, pool.getConnectionTimeout());
+                    }
+                    assertTrue(context.getBean(DataSource.class) instanceof LazyConnectionDataSourceProxy);
+                });
+    }
+
+    private static String currentDatabase(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("select database()", String.class);
+    }
+
+    private static DataSource h2(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return dataSource;
+    }
+}
@@ -0,0 +1,172 @@
+package jpabook.jpashop.fetch;
+
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.monitor.QueryMonitor;
+import jpabook.jpashop.monitor.QueryScope;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * InitDb 의 주문 2건 (userA, userB), 주문마다 상품 2개
+ */
+@SpringBootTest
+@Import(FetchPlannerTest.OrderScreens.class)
+class FetchPlannerTest {
+
+    static final String METHOD = "OrderRepository.findAllByString";
+
+    @Autowired
+    FetchPlanner fetchPlanner;
+    @Autowired
+    QueryMonitor queryMonitor;
+    @Autowired
+    OrderRepository orderRepository;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    OrderScreens orderScreens;
+
+    @AfterEach
+    void reset() {
+        fetchPlanner.reset();
+    }
+
+    @Test
+    public void learns_lazy_loaded_paths() throws Exception{
+        //when : 배송, 주문상품, 상품을 지연로딩
+        learn();
+
+        //then : 회원은 읽지 않았으므로 배우지 않는다.
+        FetchPlan plan = fetchPlanner.getPlan(METHOD);
+        assertEquals(List.of("delivery", "orderItems", "orderItems.item"), plan.getPaths());
+        assertEquals(1, plan.getObservationCount());
+        assertEquals(0, plan.getApplicationCount());
+        assertTrue(plan.getLazyLoads().get("orderItems.item") >= 4);
+    }
+
+    @Test
+    @SuppressWarnings("try") // scope 는 진입점 이름만 정한다.
+    public void no_lazy_loads_nothing_to_learn() throws Exception{
+        try (QueryScope ignored = queryMonitor.open("no-lazy")) {
+            tx.executeWithoutResult(s -> findOrders().forEach(Order::getStatus));
+        }
+        assertNull(fetchPlanner.getPlan(METHOD));
+    }
+
+    @Test
+    public void prefetch_learned_paths() throws Exception{
+        //given
+        learn();
+
+        //when
+        try (QueryScope scope = queryMonitor.open("prefetch")) {
+            tx.executeWithoutResult(s -> {
+                List<Order> orders = findOrders();
+                int afterCall = scope.getStatementCount();
+
+                //then : 반환할 때 이미 읽혀 있어서 지연로딩 SQL 이 나가지 않는다.
+                for (Order order : orders) {
+                    assertTrue(Hibernate.isInitialized(order.getDelivery()));
+                    assertTrue(Hibernate.isInitialized(order.getOrderItems()));
+                    assertFalse(Hibernate.isInitialized(order.getMember()), "배우지 않은 경로는 그대로");
+                }
+                touch(orders);
+                assertEquals(afterCall, scope.getStatementCount());
+            });
+        }
+        assertEquals(1, fetchPlanner.getPlan(METHOD).getApplicationCount());
+    }
+
+    @Test
+    public void no_prefetch_outside_persistence_context() throws Exception{
+        //given
+        learn();
+
+        //when : 트랜잭션 밖 - 결과가 준영속이라 미리 읽을 수 없다.
+        List<Order> orders = findOrders();
+
+        //then
+        assertFalse(Hibernate.isInitialized(orders.get(0).getDelivery()));
+        assertEquals(0, fetchPlanner.getPlan(METHOD).getApplicationCount());
+    }
+
+    @Test
+    @SuppressWarnings("try") // scope 는 진입점 이름만 정한다.
+    public void learns_per_entry_point() throws Exception{
+        //given : 상세 화면은 주문상품까지 읽는다.
+        try (QueryScope ignored = queryMonitor.open("detail")) {
+            tx.executeWithoutResult(s -> touch(orderScreens.detail()));
+        }
+
+        //when : 같은 repository 메서드를 쓰는 요약 화면
+        try (QueryScope ignored = queryMonitor.open("summary")) {
+            tx.executeWithoutResult(s -> {
+                List<Order> orders = orderScreens.summary();
+
+                //then : 상세 화면이 배운 경로를 요약 화면에 적용하지 않는다.
+                assertFalse(Hibernate.isInitialized(orders.get(0).getOrderItems()));
+            });
+        }
+        assertEquals(List.of("delivery", "orderItems", "orderItems.item"),
+                fetchPlanner.getPlan("OrderScreens.detail", METHOD).getPaths());
+        assertNull(fetchPlanner.getPlan("OrderScreens.summary", METHOD));
+        assertNull(fetchPlanner.getPlan(METHOD));
+    }
+
+    @SuppressWarnings("try") // scope 는 진입점 이름만 정한다.
+    private void learn() {
+        try (QueryScope ignored = queryMonitor.open("learn")) {
+            tx.executeWithoutResult(s -> touch(findOrders()));
+        }
+    }
+
+    private List<Order> findOrders() {
+        OrderSearch search = new OrderSearch();
+        search.setMemberName("user%");
+        return orderRepository.findAllByString(search);
+    }
+
+    private static void touch(List<Order> orders) {
+        for (Order order : orders) {
+            order.getDelivery().getAddress();
+            order.getOrderItems().forEach(orderItem -> orderItem.getItem().getName());
+        }
+    }
+
+    /**
+     * 같은 repository 메서드를 호출하는 두 화면
+     */
+    @Service
+    @RequiredArgsConstructor
+    static class OrderScreens {
+
+        private final OrderRepository orderRepository;
+
+        public List<Order> detail() {
+            return orderRepository.findAllByString(search());
+        }
+
+        public List<Order> summary() {
+            return orderRepository.findAllByString(search());
+        }
+
+        private static OrderSearch search() {
+            OrderSearch search = new OrderSearch();
+            search.setMemberName("user%");
+            return search;
+        }
+    }
+}
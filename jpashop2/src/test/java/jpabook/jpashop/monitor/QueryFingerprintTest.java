@@ -0,0 +1,30 @@
+package jpabook.jpashop.monitor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryFingerprintTest {
+
+    @Test
+    public void literals_and_whitespace() throws Exception{
+        assertEquals("select m.member_id from member m where m.name=? and m.member_id>?",
+                QueryFingerprint.of("select m.member_id\n   from member m\n where m.name='it''s'   and m.member_id>-10"));
+        assertEquals(QueryFingerprint.of("select * from orders where order_id = 1"),
+                QueryFingerprint.of("SELECT * FROM orders WHERE order_id = 2"));
+    }
+
+    @Test
+    public void keeps_identifiers_with_digits() throws Exception{
+        assertEquals("select order0_.order_id as order_id1_6_ from orders order0_ limit ?",
+                QueryFingerprint.of("select order0_.order_id as order_id1_6_ from orders order0_ limit ?"));
+    }
+
+    @Test
+    public void parameter_list_length_does_not_matter() throws Exception{
+        assertEquals("select * from item where item_id in (?)",
+                QueryFingerprint.of("select * from item where item_id in (?, ?, ?)"));
+        assertEquals(QueryFingerprint.of("select * from item where item_id in (1, 2)"),
+                QueryFingerprint.of("select * from item where item_id in (?)"));
+    }
+}
@@ -0,0 +1,133 @@
+package jpabook.jpashop.monitor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jpabook.jpashop.api.support.DbWorkExecutor;
+import jpabook.jpashop.exception.RepeatedQueryException;
+import jpabook.jpashop.repository.MemberRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 테스트 설정은 mode=FAIL, repeat-threshold=10
+ * - 요청 scope 가 작업 스레드로 넘어가는지 보려고 ASYNC 로 띄운다. (AsyncApiTest 와 같은 컨텍스트)
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "jpashop.api.execution=ASYNC")
+class QueryMonitorTest {
+
+    @Autowired
+    QueryMonitor queryMonitor;
+    @Autowired
+    MemberRepository memberRepository;
+    @Autowired
+    DbWorkExecutor dbWork;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    TestRestTemplate rest;
+
+    @Test
+    public void counts_statements_by_fingerprint() throws Exception{
+        //when
+        QueryScope scope;
+        try (QueryScope opened = queryMonitor.open("count")) {
+            scope = opened;
+            tx.executeWithoutResult(s -> {
+                memberRepository.findByName("a");
+                memberRepository.findByName("b");
+                memberRepository.findOne(-1L); // 없는 id 라 2차 캐시에도 없다.
+            });
+        }
+
+        //then
+        assertEquals(3, scope.getStatementCount());
+        Map<String, Integer> repeated = scope.getRepeated(2);
+        assertEquals(1, repeated.size(), "findByName 만 두번");
+        assertEquals(2, repeated.values().iterator().next());
+        assertNull(QueryScope.current(), "닫으면 스레드에서 떨어진다.");
+
+        DistributionSummary summary = meterRegistry.find(QueryMonitor.STATEMENTS_METRIC).tag("scope", "count").summary();
+        assertEquals(1, summary.count());
+        assertEquals(3, summary.totalAmount());
+    }
+
+    @Test
+    public void no_scope_no_count() throws Exception{
+        tx.executeWithoutResult(s -> {
+            for (int i = 0; i < 20; i++) {
+                memberRepository.findByName("no-scope-" + i); // scope 밖에서는 실패하지 않는다.
+            }
+        });
+    }
+
+    @Test
+    public void repeated_query_fails() throws Exception{
+        try (QueryScope scope = queryMonitor.open("n-plus-one")) {
+            //when : 같은 쿼리를 threshold(10) 번 이상
+            RepeatedQueryException e = assertThrows(RepeatedQueryException.class, () -> tx.executeWithoutResult(s -> {
+                for (int i = 0; i < 20; i++) {
+                    memberRepository.findByName("member" + i);
+                }
+            }));
+
+            //then
+            assertTrue(e.getMessage().contains("scope=n-plus-one"), e.getMessage());
+            assertEquals(queryMonitor.getRepeatThreshold(), scope.getStatementCount());
+        }
+        Counter repeated = meterRegistry.find(QueryMonitor.REPEATED_METRIC).tag("scope", "n-plus-one").counter();
+        assertEquals(1, repeated.count());
+    }
+
+    @Test
+    public void scope_follows_db_work_thread() throws Exception{
+        try (QueryScope scope = queryMonitor.open("db-work")) {
+            //when : ASYNC 이므로 db-work 스레드에서 실행
+            String thread = dbWork.read(() -> {
+                memberRepository.findByName("db-work");
+                return Thread.currentThread().getName();
+            }).get();
+
+            //then
+            assertTrue(thread.startsWith("db-work-"), thread);
+            assertEquals(1, scope.getStatementCount());
+        }
+    }
+
+    @Test
+    public void request_metrics() throws Exception{
+        //when
+        ResponseEntity<List> response = rest.getForEntity("/api/v2/simple-orders", List.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+
+        //then : 비동기 요청은 응답 뒤에 scope 가 닫힐 수 있다.
+        DistributionSummary summary = null;
+        for (int i = 0; i < 50 && summary == null; i++) {
+            summary = meterRegistry.find(QueryMonitor.STATEMENTS_METRIC).tag("scope", "GET /api/v2/simple-orders").summary();
+            if (summary == null) {
+                Thread.sleep(20);
+            }
+        }
+        assertNotNull(summary);
+        assertTrue(summary.max() >= 1, "작업 스레드에서 실행한 SQL 도 요청 scope 에 포함");
+
+        Timer timer = meterRegistry.find(RepositoryMetricsAspect.METRIC)
+                .tags("repository", "OrderRepository", "method", "findAllByString", "exception", "none").timer();
+        assertNotNull(timer);
+        assertTrue(timer.count() >= 1);
+    }
+}
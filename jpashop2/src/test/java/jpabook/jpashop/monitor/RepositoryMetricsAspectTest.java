@@ -0,0 +1,63 @@
+package jpabook.jpashop.monitor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jpabook.jpashop.fetch.FetchPlanAspect;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.annotation.OrderUtils;
+
+import java.lang.reflect.Method;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RepositoryMetricsAspectTest {
+
+    @Test
+    public void inherited_method_timer_per_repository() throws Throwable{
+        //given : 같은 Method 를 상속받은 두 repository
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RepositoryMetricsAspect aspect = new RepositoryMetricsAspect(registry);
+        Method method = BaseRepository.class.getMethod("findAll");
+
+        //when
+        aspect.time(joinPoint(new ARepository(), method));
+        aspect.time(joinPoint(new BRepository(), method));
+        aspect.time(joinPoint(new BRepository(), method));
+
+        //then
+        assertEquals(1, registry.find(RepositoryMetricsAspect.METRIC).tags("repository", "ARepository", "method", "findAll").timer().count());
+        assertEquals(2, registry.find(RepositoryMetricsAspect.METRIC).tags("repository", "BRepository", "method", "findAll").timer().count());
+    }
+
+    @Test
+    public void metrics_wraps_fetch_plan() throws Exception{
+        int metrics = OrderUtils.getOrder(RepositoryMetricsAspect.class, 0);
+        int fetchPlan = OrderUtils.getOrder(FetchPlanAspect.class, 0);
+        assertTrue(metrics < fetchPlan, "metrics 가 바깥에서 fetch plan 시간까지 잰다.");
+    }
+
+    private static ProceedingJoinPoint joinPoint(Object target, Method method) throws Throwable {
+        MethodSignature signature = mock(MethodSignature.class);
+        when(signature.getMethod()).thenReturn(method);
+        when(signature.getName()).thenReturn(method.getName());
+        ProceedingJoinPoint joinPoint = mock(ProceedingJoinPoint.class);
+        when(joinPoint.getTarget()).thenReturn(target);
+        when(joinPoint.getSignature()).thenReturn(signature);
+        when(joinPoint.proceed()).thenReturn(null);
+        return joinPoint;
+    }
+
+    public static class BaseRepository {
+        public Object findAll() {
+            return null;
+        }
+    }
+
+    static class ARepository extends BaseRepository {
+    }
+
+    static class BRepository extends BaseRepository {
+    }
+}
@@ -0,0 +1,202 @@
+package jpabook.jpashop.repository;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.QOrder;
+import jpabook.jpashop.repository.support.CompiledQueryCache;
+import jpabook.jpashop.repository.support.QueryShape;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+class OrderRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    OrderRepository orderRepository;
+    @Autowired
+    CompiledQueryCache compiledQueryCache;
+
+    @Test
+    public void keyset_paging() throws Exception{
+        //given : 같은 주문 시간이 섞여 있어도 order_id 로 순서가 정해져야 한다.
+        LocalDateTime base = LocalDateTime.of(2023, 1, 1, 0, 0);
+        createOrders(25, i -> base.plusMinutes(i / 2));
+        em.flush();
+        em.clear();
+        long total = em.createQuery("select count(o) from Order o", Long.class).getSingleResult();
+
+        //when : 커서로 끝까지 다음 페이지를 읽는다.
+        List<List<Order>> pages = new ArrayList<>();
+        OrderCursor cursor = null;
+        while (true) {
+            List<Order> page = orderRepository.findAllWithMemberDeliveryAfter(cursor, 10);
+            if (page.isEmpty()) {
+                break;
+            }
+            pages.add(page);
+            cursor = cursorOf(page.get(page.size() - 1));
+        }
+
+        //then
+        List<Long> visited = pages.stream().flatMap(p -> ids(p).stream()).collect(toList());
+        assertEquals(total, visited.size(), "모든 주문을 중복 없이 한번씩 조회해야 한다.");
+        assertEquals(total, visited.stream().distinct().count());
+
+        // 마지막 페이지의 첫 주문 기준으로 이전 페이지를 읽으면 바로 앞 페이지와 같아야 한다.
+        Order first = pages.get(pages.size() - 1).get(0);
+        List<Order> prevPage = orderRepository.findAllWithMemberDeliveryBefore(
+                OrderCursor.decode(cursorOf(first).encode()), 10);
+        assertEquals(ids(pages.get(pages.size() - 2)), ids(prevPage));
+    }
+
+    @Test
+    public void findAll_compiledQuery() throws Exception{
+        //given
+        createOrders(3, i -> LocalDateTime.of(2023, 1, 1, 0, 0));
+        orderRepository.findOne(orderRepository.findAll(new OrderSearch()).get(0).getId()).cancel();
+        em.flush();
+        em.clear();
+
+        //when //then : 조건 유무 4가지 조합 모두 JPQL 문자열로 만든 결과와 같아야 한다.
+        for (int round = 0; round < 2; round++) {
+            for (OrderStatus status : new OrderStatus[]{null, OrderStatus.ORDER, OrderStatus.CANCEL}) {
+                for (String name : new String[]{null, "", "member", "none"}) {
+                    OrderSearch search = new OrderSearch();
+                    search.setOrderStatus(status);
+                    search.setMemberName(name);
+                    assertEquals(new TreeSet<>(ids(orderRepository.findAllByString(search))),
+                            new TreeSet<>(ids(orderRepository.findAll(search))));
+                }
+            }
+        }
+        assertTrue(compiledQueryCache.getHitCount() >= 12, "두번째 round 는 모두 캐시된 JPQL 을 사용한다.");
+    }
+
+    @Test
+    public void compiledQuery_keeps_hints() throws Exception{
+        //given
+        createOrders(2, i -> LocalDateTime.of(2023, 1, 1, 0, 0));
+        em.flush();
+        em.clear();
+        Supplier<JPAQuery<Order>> readOnlyOrders = () -> new JPAQueryFactory(em)
+                .selectFrom(QOrder.order)
+                .setHint(QueryHints.READ_ONLY, true);
+
+        //when //then : 캐시된 JPQL 로 실행해도 처음 쿼리의 힌트(read only)가 적용되어야 한다.
+        long hits = compiledQueryCache.getHitCount();
+        for (int round = 0; round < 2; round++) {
+            List<Order> orders = compiledQueryCache.fetch(QueryShape.of("readOnlyOrders"), readOnlyOrders);
+            assertFalse(orders.isEmpty());
+            orders.forEach(o -> assertTrue(em.unwrap(Session.class).isReadOnly(o)));
+            em.clear();
+        }
+        assertEquals(hits + 1, compiledQueryCache.getHitCount());
+    }
+
+    @Test
+    public void invalid_cursor() throws Exception{
+        assertThrows(IllegalArgumentException.class, () -> OrderCursor.decode("not-a-cursor"));
+    }
+
+    /**
+     * offset vs keyset 깊은 페이지 조회 시간 비교 (수동 실행)
+     * - 10건씩 10,000 페이지 분량의 주문을 만든 뒤 페이지 깊이별 조회 시간을 출력한다.
+     * - offset 방식은 깊이에 비례해서 느려지고, keyset 방식은 일정해야 한다.
+     */
+    @Disabled("데이터 준비에 시간이 오래 걸리므로 필요할 때만 수동으로 실행")
+    @Test
+    public void benchmark_deep_page() throws Exception{
+        int limit = 10;
+        int pageCount = 10_000;
+        LocalDateTime base = LocalDateTime.of(2023, 1, 1, 0, 0);
+        createOrders(limit * pageCount, i -> base.plusSeconds(i));
+        em.flush();
+        em.clear();
+
+        List<Order> ordered = em.createQuery(
+                        "select o from Order o order by o.orderDate asc, o.id asc", Order.class)
+                .getResultList();
+        em.clear();
+
+        for (int page : new int[]{1, 10, 100, 1_000, 5_000, 9_999}) {
+            int offset = page * limit;
+            Order prev = ordered.get(offset - 1);
+            OrderCursor cursor = cursorOf(prev);
+
+            long offsetNanos = measure(() -> orderRepository.findAllWithMemberDelivery(offset, limit));
+            long keysetNanos = measure(() -> orderRepository.findAllWithMemberDeliveryAfter(cursor, limit));
+            System.out.printf("page=%,6d offset=%,8dus keyset=%,8dus%n",
+                    page, offsetNanos / 1_000, keysetNanos / 1_000);
+        }
+    }
+
+    private long measure(Runnable query) {
+        int rounds = 20;
+        query.run(); // warm up
+        em.clear();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            query.run();
+            em.clear();
+        }
+        return (System.nanoTime() - start) / rounds;
+    }
+
+    private void createOrders(int count, IntFunction<LocalDateTime> orderDate) {
+        Member member = new Member();
+        member.setName("member");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(count);
+        em.persist(book);
+
+        for (int i = 0; i < count; i++) {
+            Delivery delivery = new Delivery();
+            delivery.setAddress(member.getAddress());
+            Order order = Order.createOrder(member, delivery, OrderItem.createOrderItem(book, 10000, 1));
+            order.setOrderDate(orderDate.apply(i));
+            em.persist(order);
+            if (i % 1000 == 0) {
+                em.flush();
+            }
+        }
+    }
+
+    private static OrderCursor cursorOf(Order order) {
+        return new OrderCursor(order.getOrderDate(), order.getId());
+    }
+
+    private static List<Long> ids(List<Order> orders) {
+        return orders.stream().map(Order::getId).collect(toList());
+    }
+}
@@ -0,0 +1,204 @@
+package jpabook.jpashop.repository.order.query;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.support.BatchInLoader;
+import jpabook.jpashop.service.query.OrderDto;
+import jpabook.jpashop.service.query.OrderQueryService;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+class OrderQueryRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    OrderQueryRepository orderQueryRepository;
+    @Autowired
+    BatchInLoader batchInLoader;
+    @Autowired
+    OrderRepository orderRepository;
+    @Autowired
+    OrderQueryService orderQueryService;
+    @Autowired
+    TransactionTemplate tx;
+
+    @Test
+    public void v4_v5_same_result() throws Exception{
+        //given
+        createOrders(300, 2);
+        em.flush();
+        em.clear();
+
+        //when
+        List<OrderQueryDto> v4 = orderQueryRepository.findOrderQueryDtos();
+        List<OrderQueryDto> v5 = orderQueryRepository.findAllByDto_optimization();
+
+        //then
+        assertEquals(v4.size(), v5.size());
+        for (int i = 0; i < v4.size(); i++) {
+            assertEquals(v4.get(i).getOrderId(), v5.get(i).getOrderId());
+            assertEquals(v4.get(i).getOrderItems(), v5.get(i).getOrderItems());
+            assertFalse(v4.get(i).getOrderItems().isEmpty());
+        }
+    }
+
+    @Test
+    public void readOnly_uses_transaction_connection() throws Exception{
+        //given : flush 만 하고 커밋하지 않은 주문. 같은 커넥션(트랜잭션)에서 읽어야만 보인다.
+        createOrders(3, 2);
+        em.flush();
+        em.clear();
+        List<OrderQueryDto> v4 = orderQueryRepository.findOrderQueryDtos().stream()
+                .filter(o -> !o.getOrderItems().isEmpty()) // 주문상품이 없는 주문은 join 에서 빠진다.
+                .collect(toList());
+        em.clear();
+
+        //when
+        List<OrderQueryDto> readOnly = orderQueryRepository.findAllByDto_readOnly();
+
+        //then : 주문마다 한 건, 주문상품은 주문 안에 묶여서 v4 와 같은 모양이어야 한다.
+        assertEquals(v4.size(), readOnly.size());
+        for (int i = 0; i < v4.size(); i++) {
+            assertEquals(v4.get(i).getOrderId(), readOnly.get(i).getOrderId());
+            assertEquals(v4.get(i).getName(), readOnly.get(i).getName());
+            assertEquals(v4.get(i).getAddress().getCity(), readOnly.get(i).getAddress().getCity());
+            assertEquals(v4.get(i).getOrderItems(), readOnly.get(i).getOrderItems());
+        }
+        List<OrderQueryDto> created = readOnly.subList(readOnly.size() - 3, readOnly.size());
+        created.forEach(o -> assertEquals(2, o.getOrderItems().size()));
+    }
+
+    /**
+     * 현재 v3 (엔티티 조회 + 지연로딩 + 더티체킹 스냅샷) vs 읽기 전용 조회 (수동 실행)
+     * - 요청 한번당 힙 할당량과 p50/p99 응답 시간을 출력한다.
+     * - 커밋된 데이터가 필요하므로 테스트 트랜잭션은 끄고, 만든 데이터는 남는다.
+     */
+    @Disabled("시간이 오래 걸리므로 필요할 때만 수동으로 실행")
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void benchmark_readOnly() throws Exception{
+        tx.executeWithoutResult(s -> createOrders(100, 2)); // v3 는 최대 100건 조회
+
+        for (int round = 0; round < 2; round++) { // 첫 round 는 워밍업
+            // OSIV 에서 트랜잭션 없이 엔티티를 조회하는 v3 와 같은 상태를 만들기 위해 readOnly 가 아닌 트랜잭션 사용
+            report("v3", 500, () -> tx.execute(s -> orderRepository.findAllWithItem().stream()
+                    .map(OrderDto::new)
+                    .collect(toList())));
+            report("v3.3", 500, orderQueryService::findAllReadOnly);
+        }
+    }
+
+    private void report(String name, int requests, Supplier<List<?>> request) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long[] latencies = new long[requests];
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            assertFalse(request.get().isEmpty());
+            latencies[i] = System.nanoTime() - start;
+        }
+        long allocatedPerRequest = (threads.getThreadAllocatedBytes(threadId) - allocatedBefore) / requests;
+        Arrays.sort(latencies);
+        System.out.printf("%-5s heap/request=%,dKB p50=%,dus p99=%,dus%n", name, allocatedPerRequest / 1024,
+                latencies[requests / 2] / 1_000, latencies[requests * 99 / 100] / 1_000);
+    }
+
+    /**
+     * 주문상품 조회 전략 비교 (수동 실행)
+     * - 주문마다 한번씩 조회(N+1) / 크기 제한 없는 in 절 한번 / BatchInLoader
+     */
+    @Disabled("데이터 준비에 시간이 오래 걸리므로 필요할 때만 수동으로 실행")
+    @Test
+    public void benchmark_order_item_loading() throws Exception{
+        createOrders(5_000, 3);
+        em.flush();
+        em.clear();
+        List<Long> orderIds = orderQueryRepository.findOrders().stream()
+                .map(OrderQueryDto::getOrderId)
+                .collect(toList());
+
+        long perOrder = measure(() -> orderIds.stream()
+                .map(id -> em.createQuery(
+                                "select new jpabook.jpashop.repository.order.query.OrderItemQueryDto(oi.order.id, i.name, oi.orderPrice, oi.count)" +
+                                        " from OrderItem oi join oi.item i where oi.order.id = :orderId", OrderItemQueryDto.class)
+                        .setParameter("orderId", id)
+                        .getResultList())
+                .collect(toList()));
+        long singleIn = measure(() -> findOrderItemsIn(em, orderIds).stream()
+                .collect(groupingBy(OrderItemQueryDto::getOrderId)));
+        long batched = measure(() -> batchInLoader.load(orderIds, OrderQueryRepositoryTest::findOrderItemsIn, OrderItemQueryDto::getOrderId));
+
+        System.out.printf("orders=%,d perOrder=%,dms singleIn=%,dms batched=%,dms%n",
+                orderIds.size(), perOrder / 1_000_000, singleIn / 1_000_000, batched / 1_000_000);
+    }
+
+    private static List<OrderItemQueryDto> findOrderItemsIn(EntityManager em, List<Long> orderIds) {
+        return em.createQuery(
+                        "select new jpabook.jpashop.repository.order.query.OrderItemQueryDto(oi.order.id, i.name, oi.orderPrice, oi.count)" +
+                                " from OrderItem oi join oi.item i where oi.order.id in :orderIds", OrderItemQueryDto.class)
+                .setParameter("orderIds", orderIds)
+                .getResultList();
+    }
+
+    private long measure(Supplier<?> strategy) {
+        int rounds = 5;
+        strategy.get(); // warm up
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            Object result = strategy.get();
+            assertNotNull(result);
+            em.clear();
+        }
+        return (System.nanoTime() - start) / rounds;
+    }
+
+    private void createOrders(int count, int itemsPerOrder) {
+        Member member = new Member();
+        member.setName("member");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(count * itemsPerOrder);
+        em.persist(book);
+
+        for (int i = 0; i < count; i++) {
+            Delivery delivery = new Delivery();
+            delivery.setAddress(member.getAddress());
+            OrderItem[] orderItems = new OrderItem[itemsPerOrder];
+            for (int j = 0; j < itemsPerOrder; j++) {
+                orderItems[j] = OrderItem.createOrderItem(book, 10000, 1);
+            }
+            em.persist(Order.createOrder(member, delivery, orderItems));
+            if (i % 1000 == 0) {
+                em.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package jpabook.jpashop.repository.support;
+
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.LongStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BatchInLoaderTest {
+
+    @Test
+    public void chunk_padding() throws Exception{
+        List<Long> ids = LongStream.rangeClosed(1, 7).boxed().collect(toList());
+
+        List<List<Long>> chunks = BatchInLoader.chunk(ids, 4);
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), chunks.get(0));
+        assertEquals(List.of(5L, 6L, 7L, 7L), chunks.get(1), "나머지는 마지막 id로 채워 2의 거듭제곱 크기를 맞춘다.");
+    }
+
+    @Test
+    public void chunk_sizes_are_power_of_two() throws Exception{
+        // 어떤 개수가 들어와도 in 절 크기 종류는 1, 2, 4, ..., 256 중 하나여야 한다.
+        Set<Integer> sizes = ConcurrentHashMap.newKeySet();
+        for (int n = 1; n <= 1000; n++) {
+            List<Long> ids = LongStream.rangeClosed(1, n).boxed().collect(toList());
+            BatchInLoader.chunk(ids, 256).forEach(c -> sizes.add(c.size()));
+        }
+        sizes.forEach(size -> assertEquals(1, Integer.bitCount(size), "size=" + size));
+        assertTrue(sizes.size() <= 9);
+    }
+
+    @Test
+    public void load_parallel() throws Exception{
+        EntityManager shared = mock(EntityManager.class);
+        EntityManagerFactory emf = mock(EntityManagerFactory.class);
+        List<EntityManager> chunkEms = new ArrayList<>();
+        when(shared.getEntityManagerFactory()).thenReturn(emf);
+        when(emf.createEntityManager()).thenAnswer(invocation -> {
+            EntityManager chunkEm = mock(EntityManager.class);
+            synchronized (chunkEms) {
+                chunkEms.add(chunkEm);
+            }
+            return chunkEm;
+        });
+
+        BatchInLoader loader = new BatchInLoader(shared, 8, 4);
+        try {
+            List<Long> ids = LongStream.rangeClosed(1, 100).boxed().collect(toList());
+            List<Integer> chunkSizes = new ArrayList<>();
+            Set<EntityManager> usedEms = ConcurrentHashMap.newKeySet();
+
+            // id 마다 row 2개를 돌려주는 가짜 쿼리
+            LongKeyMap<List<Long>> result = loader.load(ids, (em, chunk) -> {
+                usedEms.add(em);
+                synchronized (chunkSizes) {
+                    chunkSizes.add(chunk.size());
+                }
+                return chunk.stream().distinct().flatMap(id -> List.of(id, id).stream()).collect(toList());
+            }, id -> id);
+
+            assertEquals(100, result.size());
+            ids.forEach(id -> assertEquals(2, result.get(id).size()));
+            assertEquals(13, chunkSizes.size(), "100개 -> 8개씩 12번 + 나머지 4개 1번");
+
+            // chunk 마다 자기 EntityManager 로 조회하고 다 쓰면 닫는다.
+            assertFalse(usedEms.contains(shared), "공유 EntityManager 를 다른 스레드에서 쓰면 안된다.");
+            assertEquals(13, usedEms.size());
+            chunkEms.forEach(em -> verify(em).close());
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void long_key_map_resize() throws Exception{
+        LongKeyMap<String> map = new LongKeyMap<>(2);
+        for (long key = -500; key < 500; key++) {
+            map.put(key, "v" + key);
+        }
+        assertEquals(1000, map.size());
+        assertEquals("v-500", map.get(-500));
+        assertEquals("v499", map.get(499));
+        assertNull(map.get(500));
+        assertEquals("v0", map.put(0, "zero"));
+        assertEquals(1000, map.size());
+    }
+}
@@ -0,0 +1,192 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Category;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.CategoryRepository;
+import jpabook.jpashop.repository.ItemRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DB 조회는 테스트 트랜잭션 안에서 확인하고 롤백한다.
+ * - 스냅샷은 커밋된 뒤에 바뀌므로 스냅샷 테스트만 트랜잭션 없이 실행하고, 만든 카테고리만 지운다.
+ */
+@SpringBootTest
+@Transactional
+class CategoryServiceTest {
+
+    @Autowired
+    CategoryService categoryService;
+    @Autowired
+    CategoryRepository categoryRepository;
+    @Autowired
+    ItemRepository itemRepository;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+
+    List<Long> committed = new ArrayList<>(); // 트랜잭션 없이 실행한 테스트가 만든 카테고리
+
+    @AfterEach
+    void cleanUp() {
+        if (committed.isEmpty()) {
+            return;
+        }
+        tx.executeWithoutResult(s -> {
+            em.createNativeQuery("delete from category_closure where descendant_id in (:ids)")
+                    .setParameter("ids", committed).executeUpdate();
+            em.createNativeQuery("update category set parent_id = null where category_id in (:ids)")
+                    .setParameter("ids", committed).executeUpdate();
+            em.createNativeQuery("delete from category where category_id in (:ids)")
+                    .setParameter("ids", committed).executeUpdate();
+        });
+        categoryService.reload();
+    }
+
+    @Test
+    public void items_under_category() throws Exception{
+        //given : 전자 > 컴퓨터 > 노트북, 전자 > TV / 도서
+        Long electronics = categoryService.create("전자", null);
+        Long computer = categoryService.create("컴퓨터", electronics);
+        Long laptop = categoryService.create("노트북", computer);
+        Long tv = categoryService.create("TV", electronics);
+        Long books = categoryService.create("도서", null);
+        Long laptopItem = addItem(laptop, "cat-laptop");
+        Long tvItem = addItem(tv, "cat-tv");
+        Long bookItem = addItem(books, "cat-book");
+
+        //then : 하위 카테고리까지 한번의 쿼리로
+        assertEquals(Set.of(laptopItem, tvItem), itemIds(categoryService.findItemsUnder(electronics)));
+        assertEquals(Set.of(laptopItem), itemIds(categoryService.findItemsUnder(computer)));
+        assertEquals(Set.of(bookItem), itemIds(categoryService.findItemsUnder(books)));
+
+        //when : 컴퓨터를 도서 아래로 옮긴다.
+        categoryService.move(computer, books);
+
+        //then
+        assertEquals(Set.of(tvItem), itemIds(categoryService.findItemsUnder(electronics)));
+        assertEquals(Set.of(laptopItem, bookItem), itemIds(categoryService.findItemsUnder(books)));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void snapshot_follows_changes() throws Exception{
+        //given
+        Long root = create("root", null);
+        Long a = create("a", root);
+        CategoryTree before = categoryService.tree(); // DB 에서 처음 읽는다.
+
+        //when : 이후 변경은 스냅샷에서 바로 반영
+        Long b = create("b", a);
+        Long other = create("other", null);
+        categoryService.move(a, other);
+        categoryService.rename(b, "b2");
+
+        //then
+        CategoryTree after = categoryService.tree();
+        assertNotSame(before, after);
+        assertFalse(before.contains(b));
+        assertTrue(after.isDescendant(other, b));
+        assertFalse(after.isDescendant(root, b));
+        assertEquals(2, after.depth(b));
+        assertEquals("b2", after.name(b));
+
+        // DB 에서 다시 읽은 것과 같다.
+        categoryService.reload();
+        CategoryTree reloaded = categoryService.tree();
+        for (long id : new long[]{root, a, b, other}) {
+            assertEquals(reloaded.parentId(id), after.parentId(id));
+            assertEquals(reloaded.depth(id), after.depth(id));
+            assertEquals(reloaded.name(id), after.name(id));
+        }
+    }
+
+    @Test
+    public void cannot_move_under_descendant() throws Exception{
+        Long root = categoryService.create("root", null);
+        Long child = categoryService.create("child", root);
+
+        assertThrows(IllegalArgumentException.class, () -> categoryService.move(root, child));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void rollback_does_not_change_snapshot() throws Exception{
+        //given
+        Long root = create("root", null);
+        CategoryTree before = categoryService.tree();
+
+        //when
+        tx.executeWithoutResult(s -> {
+            categoryService.create("rolledBack", root);
+            s.setRollbackOnly();
+        });
+
+        //then
+        assertSame(before, categoryService.tree());
+    }
+
+    @Test
+    public void backfill_closure_of_existing_categories() throws Exception{
+        //given : closure table 이 생기기 전에 저장된 카테고리 (전자 > 컴퓨터 > 노트북)
+        Category electronics = legacyCategory("전자", null);
+        Category computer = legacyCategory("컴퓨터", electronics);
+        Category laptop = legacyCategory("노트북", computer);
+        Long laptopItem = addItem(laptop.getId(), "cat-laptop");
+        Long created = categoryService.create("TV", electronics.getId()); // 부모 경로가 없어서 자기 자신만 생긴다.
+        assertTrue(categoryService.findItemsUnder(electronics.getId()).isEmpty());
+
+        //when
+        int added = categoryService.backfillClosure();
+
+        //then : 자기 자신 3 + 전자>컴퓨터, 컴퓨터>노트북, 전자>노트북 3 + 전자>TV 1
+        assertEquals(7, added);
+        assertEquals(Set.of(laptopItem), itemIds(categoryService.findItemsUnder(electronics.getId())));
+        assertTrue(categoryRepository.isDescendant(electronics.getId(), created));
+        assertEquals(0, categoryService.backfillClosure(), "이미 있는 경로는 다시 넣지 않는다.");
+    }
+
+    private Long create(String name, Long parentId) {
+        Long id = categoryService.create(name, parentId);
+        committed.add(0, id); // 자식부터 지운다.
+        return id;
+    }
+
+    // closure 없이 카테고리만 저장
+    private Category legacyCategory(String name, Category parent) {
+        Category category = new Category();
+        category.setName(name);
+        if (parent != null) {
+            parent.addChildCategory(category);
+        }
+        em.persist(category);
+        return category;
+    }
+
+    private Long addItem(Long categoryId, String name) {
+        Book book = new Book();
+        book.setName(name);
+        itemRepository.save(book);
+        categoryService.addItem(categoryId, book);
+        return book.getId();
+    }
+
+    private static Set<Long> itemIds(List<Item> items) {
+        return items.stream().map(Item::getId).collect(toSet());
+    }
+}
@@ -0,0 +1,86 @@
+package jpabook.jpashop.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CategoryTreeTest {
+
+    /**
+     * 1
+     * ├ 2
+     * │ └ 4
+     * └ 3
+     * 5
+     */
+    CategoryTree tree = CategoryTree.of(List.of(
+            node(4, 2L), node(1, null), node(3, 1L), node(2, 1L), node(5, null)));
+
+    @Test
+    public void preorder_and_lookups() throws Exception{
+        assertEquals(List.of(1L, 2L, 4L, 3L), subtree(tree, 1));
+        assertEquals(4, tree.subtreeSize(1));
+        assertEquals(2, tree.depth(4));
+        assertEquals(2L, tree.parentId(4));
+        assertEquals(CategoryTree.NO_PARENT, tree.parentId(5));
+        assertTrue(tree.isDescendant(1, 4));
+        assertTrue(tree.isDescendant(4, 4));
+        assertFalse(tree.isDescendant(2, 3));
+        assertFalse(tree.isDescendant(5, 1));
+        assertFalse(tree.isDescendant(99, 1));
+    }
+
+    @Test
+    public void withAdded() throws Exception{
+        CategoryTree added = tree.withAdded(6, 2, "c6").withAdded(7, CategoryTree.NO_PARENT, "c7");
+
+        assertEquals(List.of(1L, 2L, 4L, 6L, 3L), subtree(added, 1));
+        assertEquals(2, added.depth(6));
+        assertEquals(0, added.depth(7));
+        assertEquals("c6", added.name(6));
+        assertFalse(tree.contains(6), "이전 스냅샷은 그대로");
+    }
+
+    @Test
+    public void withMoved() throws Exception{
+        // 2 의 서브트리(2, 4)를 5 아래로
+        CategoryTree moved = tree.withMoved(2, 5);
+        assertEquals(List.of(1L, 3L), subtree(moved, 1));
+        assertEquals(List.of(5L, 2L, 4L), subtree(moved, 5));
+        assertEquals(2, moved.depth(4));
+        assertEquals(5L, moved.parentId(2));
+
+        // 뒤에 있는 서브트리를 앞 노드 아래로, 최상위로
+        CategoryTree back = moved.withMoved(5, 3);
+        assertEquals(List.of(1L, 3L, 5L, 2L, 4L), subtree(back, 1));
+        assertEquals(4, back.depth(4));
+        CategoryTree root = back.withMoved(2, CategoryTree.NO_PARENT);
+        assertEquals(List.of(2L, 4L), subtree(root, 2));
+        assertEquals(1, root.depth(4));
+    }
+
+    @Test
+    public void cannot_move_under_descendant() throws Exception{
+        assertThrows(IllegalArgumentException.class, () -> tree.withMoved(1, 4));
+        assertThrows(IllegalArgumentException.class, () -> tree.withMoved(1, 1));
+    }
+
+    @Test
+    public void withRenamed() throws Exception{
+        assertEquals("new", tree.withRenamed(3, "new").name(3));
+        assertEquals("c3", tree.name(3));
+    }
+
+    private static List<Long> subtree(CategoryTree tree, long id) {
+        List<Long> ids = new ArrayList<>();
+        tree.forEachInSubtree(id, ids::add);
+        return ids;
+    }
+
+    private static Object[] node(long id, Long parentId) {
+        return new Object[]{id, parentId, "c" + id};
+    }
+}
@@ -0,0 +1,102 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.ItemRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 2차 캐시는 트랜잭션(영속성 컨텍스트)이 끝나야 의미가 있으므로 테스트 전체를 @Transactional 로 묶지 않는다.
+ */
+@SpringBootTest
+class ItemCacheTest {
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    ItemRepository itemRepository;
+
+    Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    public void item_read_from_cache() throws Exception{
+        //given
+        Long itemId = tx.execute(s -> persist(createBook(100)).getId());
+        CacheRegionStatistics region = statistics.getCacheRegionStatistics("item");
+        long hitBefore = region.getHitCount();
+
+        //when : 다른 트랜잭션(영속성 컨텍스트)에서 두번 조회
+        tx.executeWithoutResult(s -> itemRepository.findOne(itemId));
+        tx.executeWithoutResult(s -> itemRepository.findOne(itemId));
+
+        //then
+        assertEquals(hitBefore + 2, region.getHitCount(), "persist 시점에 캐시에 올라가므로 두번 모두 캐시에서 읽는다.");
+    }
+
+    @Test
+    public void stock_change_updates_cache() throws Exception{
+        //given
+        Long memberId = tx.execute(s -> persist(createMember()).getId());
+        Long itemId = tx.execute(s -> persist(createBook(10)).getId());
+        tx.executeWithoutResult(s -> itemRepository.findOne(itemId)); // 캐시에 올려둔다.
+
+        //when
+        orderService.order(memberId, itemId, 3);
+
+        //then : 주문 후 캐시에서 읽어도 줄어든 재고가 보여야 한다.
+        Integer stock = tx.execute(s -> itemRepository.findOne(itemId).getStockQuantity());
+        assertEquals(7, stock);
+        assertTrue(emf.getCache().contains(Item.class, itemId));
+
+        //when : 명시적 무효화
+        tx.executeWithoutResult(s -> itemRepository.evict(itemId));
+
+        //then
+        assertFalse(emf.getCache().contains(Item.class, itemId));
+    }
+
+    private <T> T persist(T entity) {
+        em.persist(entity);
+        return entity;
+    }
+
+    private static Book createBook(int stockQuantity) {
+        Book book = new Book();
+        book.setName("시골 JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(stockQuantity);
+        return book;
+    }
+
+    private static Member createMember() {
+        Member member = new Member();
+        member.setName("cache-member");
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        return member;
+    }
+}
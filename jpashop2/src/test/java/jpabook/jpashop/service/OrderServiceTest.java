@@ -7,14 +7,21 @@ import jpabook.jpashop.domain.OrderStatus;
 import jpabook.jpashop.domain.item.Book;
 import jpabook.jpashop.exception.NotEnoughStockException;
 import jpabook.jpashop.repository.OrderRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -30,6 +37,9 @@ class OrderServiceTest {
     OrderService orderService;
     @Autowired
     OrderRepository orderRepository;
+    @Autowired
+    TransactionTemplate tx;
+
     @Test
     public void order_Item() throws Exception{
         //given
@@ -86,6 +96,109 @@ class OrderServiceTest {
         );
     }
 
+    @Test
+    public void order_bulk() throws Exception{
+        //given
+        Member member1 = createMember("규하", new Address("서울", "강가", "123-123"));
+        Member member2 = createMember("규진", new Address("부산", "해운대", "456-456"));
+        Book book1 = createBook("시골 JPA", 10000, 1000);
+        Book book2 = createBook("도시 JPA", 20000, 1000);
+
+        // flush/clear 주기(100)를 몇 번 넘기도록
+        List<OrderLine> lines = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            lines.add(new OrderLine(i % 2 == 0 ? member1.getId() : member2.getId(),
+                    i % 5 == 0 ? book2.getId() : book1.getId(), 2));
+        }
+        //when
+        List<Long> orderIds = orderService.orderAll(lines);
+
+        //then
+        em.flush();
+        em.clear();
+        assertEquals(250, orderIds.size(), "주문 건수만큼 주문이 생성된다.");
+        Order first = orderRepository.findOne(orderIds.get(0));
+        assertEquals(member1.getId(), first.getMember().getId());
+        assertEquals("서울", first.getDelivery().getAddress().getCity());
+        assertEquals(20000 * 2, first.getTotalPrice());
+        assertEquals(1000 - 200 * 2, em.find(Book.class, book1.getId()).getStockQuantity());
+        assertEquals(1000 - 50 * 2, em.find(Book.class, book2.getId()).getStockQuantity());
+    }
+
+    @Test
+    public void order_bulk_overOrder() throws Exception{
+        //given
+        Member member = createMember("규하", new Address("서울", "강가", "123-123"));
+        Book book = createBook("시골 JPA", 10000, 10);
+
+        List<OrderLine> lines = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            lines.add(new OrderLine(member.getId(), book.getId(), 2)); // 합계 12 > 재고 10
+        }
+        //then
+        assertThrows(NotEnoughStockException.class, () -> orderService.orderAll(lines));
+    }
+
+    @Test
+    public void order_bulk_invalidLine() throws Exception{
+        //given
+        Member member = createMember("규하", new Address("서울", "강가", "123-123"));
+        Book book = createBook("시골 JPA", 10000, 10);
+        em.flush();
+
+        //then : 재고를 늘리는 음수 수량, 없는 상품은 재고를 건드리기 전에 거절한다.
+        assertThrows(IllegalArgumentException.class, () -> orderService.orderAll(List.of(
+                new OrderLine(member.getId(), book.getId(), 2),
+                new OrderLine(member.getId(), book.getId(), -5))));
+        assertThrows(IllegalArgumentException.class, () -> orderService.orderAll(List.of(
+                new OrderLine(member.getId(), book.getId(), 0))));
+        assertThrows(IllegalArgumentException.class, () -> orderService.orderAll(List.of(
+                new OrderLine(member.getId(), book.getId(), 2),
+                new OrderLine(member.getId(), -1L, 1))));
+        assertThrows(IllegalArgumentException.class, () -> orderService.orderAll(List.of(
+                new OrderLine(-1L, book.getId(), 1))));
+        em.refresh(book);
+        assertEquals(10, book.getStockQuantity());
+    }
+
+    /**
+     * 단건 주문 반복 vs 대량 주문 (수동 실행)
+     * - 주문마다 트랜잭션이 따로 필요하므로 테스트 트랜잭션은 끈다.
+     */
+    @Disabled("시간이 오래 걸리므로 필요할 때만 수동으로 실행")
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void benchmark_bulk_vs_single() throws Exception{
+        int orders = 5_000;
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        Member member = tx.execute(s -> createMember("규하", new Address("서울", "강가", "123-123")));
+
+        for (int round = 0; round < 2; round++) { // 첫 round 는 워밍업
+            Book book = tx.execute(s -> createBook("시골 JPA", 10000, orders * 2));
+
+            statistics.clear();
+            long start = System.nanoTime();
+            for (int i = 0; i < orders; i++) {
+                orderService.order(member.getId(), book.getId(), 1);
+            }
+            report("single", orders, System.nanoTime() - start, statistics);
+
+            List<OrderLine> lines = new ArrayList<>();
+            for (int i = 0; i < orders; i++) {
+                lines.add(new OrderLine(member.getId(), book.getId(), 1));
+            }
+            statistics.clear();
+            start = System.nanoTime();
+            orderService.orderAll(lines);
+            report("bulk", orders, System.nanoTime() - start, statistics);
+        }
+    }
+
+    private void report(String name, int orders, long elapsedNanos, Statistics statistics) {
+        System.out.printf("%-7s orders=%d orders/sec=%,.0f statements=%,d%n",
+                name, orders, orders / (elapsedNanos / 1_000_000_000.0), statistics.getPrepareStatementCount());
+    }
+
     private Book createBook(String name, int price, int stockquantity) {
         Book book = new Book();
         book.setName(name);
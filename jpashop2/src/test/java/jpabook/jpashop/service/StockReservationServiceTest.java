@@ -0,0 +1,194 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.ItemRepository;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 여러 스레드가 같은 상품을 동시에 주문할 때 재고가 정확히 맞는지 확인한다.
+ * - 스레드마다 각자 트랜잭션을 사용해야 하므로 @Transactional 을 붙이지 않는다.
+ * - 한 상품에 8개 스레드가 몰리면 낙관적 락은 10번 안에 성공하지 못할 수 있어 재시도 횟수를 늘린다.
+ */
+@SpringBootTest(properties = "jpashop.stock.optimistic.max-attempts=100")
+class StockReservationServiceTest {
+
+    static final int THREADS = 8;
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate tx;
+    @Autowired
+    ItemRepository itemRepository;
+    @Autowired
+    StockReservationService stockReservationService;
+    @Autowired
+    OptimisticRetry optimisticRetry;
+
+    @Test
+    public void atomic_no_lost_update() throws Exception{
+        assertNoLostUpdate(stockReservationService::reserveAtomic);
+    }
+
+    @Test
+    public void optimistic_no_lost_update() throws Exception{
+        assertNoLostUpdate(stockReservationService::reserveOptimistic);
+    }
+
+    @Test
+    public void striped_no_lost_update() throws Exception{
+        assertNoLostUpdate(stockReservationService::reserveStriped);
+    }
+
+    @Test
+    public void striped_reads_current_stock() throws Exception{
+        // 조회해둔 상품(재고 10)은 그 사이 다른 주문으로 DB 재고가 3 으로 줄어든 것을 모른다.
+        Long itemId = createBook(10);
+        Item stale = tx.execute(s -> itemRepository.findOne(itemId));
+        tx.executeWithoutResult(s -> itemRepository.decreaseStock(itemId, 7));
+
+        assertThrows(NotEnoughStockException.class,
+                () -> tx.executeWithoutResult(s -> stockReservationService.reserveStriped(stale, 5)));
+        tx.executeWithoutResult(s -> stockReservationService.reserveStriped(stale, 3));
+        stockReservationService.reconcileStripedStock();
+
+        assertEquals(0, (int) tx.execute(s -> itemRepository.findStockQuantity(itemId)));
+    }
+
+    @Test
+    public void striped_reconcile_never_oversells() throws Exception{
+        Long itemId = createBook(2);
+        tx.executeWithoutResult(s -> stockReservationService.reserveStriped(itemRepository.findOne(itemId), 2));
+        // 메모리 카운터를 거치지 않고 DB 재고가 줄었다.
+        tx.executeWithoutResult(s -> itemRepository.decreaseStock(itemId, 1));
+
+        assertThrows(NotEnoughStockException.class, () -> stockReservationService.reconcileStripedStock());
+        assertEquals(1, (int) tx.execute(s -> itemRepository.findStockQuantity(itemId)), "재고가 음수가 되면 안된다.");
+
+        // 재고가 다시 채워지면 밀려있던 차감분이 반영된다.
+        tx.executeWithoutResult(s -> itemRepository.applyStockDelta(itemId, -1));
+        stockReservationService.reconcileStripedStock();
+        assertEquals(0, (int) tx.execute(s -> itemRepository.findStockQuantity(itemId)));
+    }
+
+    @Test
+    public void reserve_rejects_non_positive_count() throws Exception{
+        Long itemId = createBook(10);
+        for (int count : new int[]{0, -1}) {
+            assertThrows(IllegalArgumentException.class,
+                    () -> tx.executeWithoutResult(s -> stockReservationService.reserveAtomic(itemRepository.findOne(itemId), count)));
+            assertThrows(IllegalArgumentException.class,
+                    () -> tx.executeWithoutResult(s -> stockReservationService.reserveStriped(itemRepository.findOne(itemId), count)));
+        }
+        assertEquals(10, (int) tx.execute(s -> itemRepository.findStockQuantity(itemId)));
+    }
+
+    /**
+     * 재고 100개에 150번 주문 -> 정확히 100번 성공하고 재고는 0 이어야 한다.
+     */
+    private void assertNoLostUpdate(BiConsumer<Item, Integer> reserve) throws Exception {
+        Long itemId = createBook(100);
+
+        Result result = runConcurrently(itemId, 150, reserve);
+        stockReservationService.reconcileStripedStock(); // STRIPED 는 DB 반영이 늦다.
+
+        assertEquals(100, result.success.get());
+        assertEquals(50, result.notEnough.get());
+        int stockQuantity = tx.execute(s -> itemRepository.findOne(itemId).getStockQuantity());
+        assertEquals(0, stockQuantity);
+    }
+
+    /**
+     * 인기 상품 하나에 주문이 몰릴 때 방식별 초당 주문 수 (수동 실행)
+     */
+    @Disabled("시간이 오래 걸리므로 필요할 때만 수동으로 실행")
+    @Test
+    public void benchmark_contention() throws Exception{
+        int orders = 20_000;
+        for (int round = 0; round < 2; round++) { // 첫 round 는 워밍업
+            report("atomic", orders, stockReservationService::reserveAtomic);
+            report("optimistic", orders, stockReservationService::reserveOptimistic);
+            report("striped", orders, stockReservationService::reserveStriped);
+        }
+    }
+
+    private void report(String name, int orders, BiConsumer<Item, Integer> reserve) throws Exception {
+        Long itemId = createBook(orders);
+        long start = System.nanoTime();
+        Result result = runConcurrently(itemId, orders, reserve);
+        long elapsed = System.nanoTime() - start;
+        stockReservationService.reconcileStripedStock();
+        System.out.printf("%-10s threads=%d orders/sec=%,.0f retries=%,d%n",
+                name, THREADS, result.success.get() / (elapsed / 1_000_000_000.0), result.retries.get());
+    }
+
+    private Result runConcurrently(Long itemId, int orders, BiConsumer<Item, Integer> reserve) throws Exception {
+        Result result = new Result();
+        AtomicInteger remaining = new AtomicInteger(orders);
+        CountDownLatch ready = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                ready.await();
+                while (remaining.getAndDecrement() > 0) {
+                    try {
+                        AtomicInteger attempts = new AtomicInteger();
+                        optimisticRetry.run(() -> {
+                            if (attempts.incrementAndGet() > 1) {
+                                result.retries.incrementAndGet();
+                            }
+                            tx.executeWithoutResult(s -> reserve.accept(itemRepository.findOne(itemId), 1));
+                        });
+                        result.success.incrementAndGet();
+                    } catch (NotEnoughStockException e) {
+                        result.notEnough.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        ready.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+        return result;
+    }
+
+    private Long createBook(int stockQuantity) {
+        return tx.execute(s -> {
+            Book book = new Book();
+            book.setName("인기 상품");
+            book.setPrice(10000);
+            book.setStockQuantity(stockQuantity);
+            em.persist(book);
+            return book.getId();
+        });
+    }
+
+    static class Result {
+        final AtomicInteger success = new AtomicInteger();
+        final AtomicInteger notEnough = new AtomicInteger();
+        final AtomicInteger retries = new AtomicInteger();
+    }
+}
@@ -0,0 +1,90 @@
+package jpabook.jpashop.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 반영(drain) 도중에 카운터를 다시 읽어도(invalidate) 차감분을 두 번 세지 않는지 확인한다.
+ * - dbStock 은 DB 재고 대신 쓰는 값이다. 반영 트랜잭션이 커밋되어야 바뀐다.
+ */
+class StripedStockCounterTest {
+
+    static final Long ITEM_ID = 1L;
+
+    StripedStockCounter counter = new StripedStockCounter(4);
+    AtomicInteger dbStock = new AtomicInteger(10);
+
+    @Test
+    public void reload_before_drain_commits() throws Exception{
+        //given
+        assertTrue(counter.tryReserve(ITEM_ID, 4, dbStock::get));
+
+        //when : 꺼냈지만 아직 커밋 전에 다른 경로로 카운터를 다시 읽는다.
+        Map<Long, Integer> drained = counter.drainPending();
+        counter.invalidate(ITEM_ID);
+
+        //then : DB 는 아직 10 이지만 반영 중인 4 를 빼고 6 만 남아 있다.
+        assertEquals(Map.of(ITEM_ID, 4), drained);
+        assertEquals(0, counter.pendingOf(ITEM_ID));
+        assertEquals(4, counter.inFlightOf(ITEM_ID));
+        assertFalse(counter.tryReserve(ITEM_ID, 7, dbStock::get));
+        assertEquals(6, counter.availableOf(ITEM_ID));
+
+        //when : 반영이 커밋된다.
+        dbStock.addAndGet(-4);
+        counter.completeDrain(drained);
+        counter.invalidate(ITEM_ID);
+
+        //then
+        assertEquals(0, counter.inFlightOf(ITEM_ID));
+        assertFalse(counter.tryReserve(ITEM_ID, 7, dbStock::get));
+        assertTrue(counter.tryReserve(ITEM_ID, 6, dbStock::get));
+        assertEquals(0, counter.availableOf(ITEM_ID));
+    }
+
+    @Test
+    public void reload_after_drain_rolls_back() throws Exception{
+        //given
+        assertTrue(counter.tryReserve(ITEM_ID, 4, dbStock::get));
+        Map<Long, Integer> drained = counter.drainPending();
+
+        //when : 반영이 롤백되고 카운터를 다시 읽는다.
+        counter.restorePending(drained);
+        counter.invalidate(ITEM_ID);
+
+        //then : 차감분은 다시 pending 에 있고 한 번만 빠진다.
+        assertEquals(4, counter.pendingOf(ITEM_ID));
+        assertEquals(0, counter.inFlightOf(ITEM_ID));
+        assertFalse(counter.tryReserve(ITEM_ID, 7, dbStock::get));
+        assertTrue(counter.tryReserve(ITEM_ID, 6, dbStock::get));
+    }
+
+    @Test
+    public void reserve_during_drain_stays_pending() throws Exception{
+        //given
+        assertTrue(counter.tryReserve(ITEM_ID, 4, dbStock::get));
+        Map<Long, Integer> drained = counter.drainPending();
+
+        //when : 반영 중에 들어온 주문
+        assertTrue(counter.tryReserve(ITEM_ID, 3, dbStock::get));
+        counter.invalidate(ITEM_ID);
+
+        //then : 10 - 4(반영 중) - 3(다음 반영) = 3
+        assertEquals(3, counter.pendingOf(ITEM_ID));
+        assertFalse(counter.tryReserve(ITEM_ID, 4, dbStock::get));
+        assertEquals(3, counter.availableOf(ITEM_ID));
+
+        //when : 반영이 커밋된 뒤 다음 주기
+        dbStock.addAndGet(-drained.get(ITEM_ID));
+        counter.completeDrain(drained);
+        Map<Long, Integer> next = counter.drainPending();
+
+        //then
+        assertEquals(Map.of(ITEM_ID, 3), next);
+        assertEquals(3, counter.inFlightOf(ITEM_ID));
+    }
+}
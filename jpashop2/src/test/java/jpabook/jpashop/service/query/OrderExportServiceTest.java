@@ -0,0 +1,98 @@
+package jpabook.jpashop.service.query;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Delivery;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderItem;
+import jpabook.jpashop.domain.item.Book;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+class OrderExportServiceTest {
+
+    @Autowired
+    OrderExportService orderExportService;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    public void export_ndjson() throws Exception{
+        //given : 상품 2개짜리 주문과 1개짜리 주문
+        Member member = createMember("export");
+        Book jpa = createBook("export JPA", 10000);
+        Book spring = createBook("export SPRING", 20000);
+        Order twoItems = createOrder(member, OrderItem.createOrderItem(jpa, 10000, 1),
+                OrderItem.createOrderItem(spring, 20000, 2));
+        Order oneItem = createOrder(member, OrderItem.createOrderItem(spring, 20000, 3));
+        em.flush();
+        em.clear();
+        long orderCount = em.createQuery("select count(o) from Order o", Long.class).getSingleResult();
+
+        //when
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long written = orderExportService.exportNdjson(out);
+
+        //then : 한 줄에 주문 하나, 주문상품은 주문 안에 묶여 있어야 한다.
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(orderCount, written);
+        assertEquals(orderCount, lines.length);
+        Map<Long, JsonNode> byId = new HashMap<>();
+        for (String line : lines) {
+            JsonNode node = objectMapper.readTree(line);
+            assertNull(byId.put(node.get("orderId").asLong(), node), "주문은 한 번만 나와야 한다.");
+        }
+
+        JsonNode first = byId.get(twoItems.getId());
+        assertEquals("export", first.get("name").asText());
+        assertEquals(2, first.get("orderItems").size());
+        assertEquals("export JPA", first.get("orderItems").get(0).get("itemName").asText());
+        assertEquals("export SPRING", first.get("orderItems").get(1).get("itemName").asText());
+        assertEquals(2, first.get("orderItems").get(1).get("count").asInt());
+
+        JsonNode second = byId.get(oneItem.getId());
+        assertEquals(1, second.get("orderItems").size());
+        assertEquals(3, second.get("orderItems").get(0).get("count").asInt());
+    }
+
+    private Member createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "123-123"));
+        em.persist(member);
+        return member;
+    }
+
+    private Book createBook(String name, int price) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(price);
+        book.setStockQuantity(100);
+        em.persist(book);
+        return book;
+    }
+
+    private Order createOrder(Member member, OrderItem... orderItems) {
+        Delivery delivery = new Delivery();
+        delivery.setAddress(member.getAddress());
+        Order order = Order.createOrder(member, delivery, orderItems);
+        em.persist(order);
+        return order;
+    }
+}
@@ -0,0 +1,230 @@
+package jpabook.jpashop.shard;
+
+import jpabook.jpashop.domain.Address;
+import jpabook.jpashop.domain.Member;
+import jpabook.jpashop.domain.Order;
+import jpabook.jpashop.domain.OrderStatus;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.service.ItemService;
+import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OrderLine;
+import jpabook.jpashop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 메모리 H2 두 개를 shard 로 사용한다.
+ * - InitDb 가 userA 는 shard 0, userB 는 shard 1 에 넣는다. 상품은 두 shard 모두에 있다.
+ */
+@SpringBootTest(properties = {
+        "jpashop.datasource.shards=jdbc:h2:mem:shard_test0;DB_CLOSE_DELAY=-1,jdbc:h2:mem:shard_test1;DB_CLOSE_DELAY=-1",
+        "spring.jpa.open-in-view=false"})
+class ShardRoutingTest {
+
+    @Autowired
+    MemberService memberService;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    ItemService itemService;
+    @Autowired
+    ShardRouting shardRouting;
+    @Autowired
+    DataSource dataSource;
+    @Autowired
+    TransactionTemplate tx;
+
+    @Test
+    public void new_members_are_spread_and_id_has_shard() throws Exception{
+        //when
+        Long memberA = memberService.join(member("shard-member-A"));
+        Long memberB = memberService.join(member("shard-member-B"));
+
+        //then
+        assertEquals(2, shardRouting.count());
+        assertNotEquals(shardRouting.shardOf(memberA), shardRouting.shardOf(memberB), "돌아가며 배정한다.");
+        for (Long memberId : List.of(memberA, memberB)) {
+            int shard = shardRouting.shardOf(memberId);
+            assertEquals(1, count(shard, "select count(*) from member where member_id = ?", memberId));
+            assertEquals(0, count(1 - shard, "select count(*) from member where member_id = ?", memberId));
+            assertEquals(memberId, memberService.findOne(memberId).getId(), "id 로 shard 를 찾아서 읽는다.");
+        }
+    }
+
+    @Test
+    public void duplicate_name_is_checked_on_all_shards() throws Exception{
+        //given
+        Long memberId = memberService.join(member("shard-dup"));
+
+        //when : 다음 가입은 다른 shard 에 배정된다.
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> memberService.join(member("shard-dup")));
+
+        //then
+        assertEquals("이미 존재하는 회원입니다.", e.getMessage());
+        assertEquals(1, count(shardRouting.shardOf(memberId), "select count(*) from member where name = 'shard-dup' and ? > 0", 1L));
+        assertEquals(0, count(1 - shardRouting.shardOf(memberId), "select count(*) from member where name = 'shard-dup' and ? > 0", 1L));
+    }
+
+    @Test
+    public void item_is_replicated_with_stock_split() throws Exception{
+        //when : shard 를 정하지 않고 저장한다.
+        Book book = book("shard replicated book");
+        itemService.saveItem(book);
+
+        //then : 모든 shard 에 같은 id 로 있고, 재고는 shard 마다 나누어 가진다.
+        Long itemId = book.getId();
+        assertEquals(1, count(0, "select count(*) from item where item_id = ?", itemId));
+        assertEquals(1, count(1, "select count(*) from item where item_id = ?", itemId));
+        long stock0 = count(0, "select stock_quantity from item where item_id = ?", itemId);
+        long stock1 = count(1, "select stock_quantity from item where item_id = ?", itemId);
+        assertEquals(10, stock0 + stock1);
+        assertEquals(5, stock0);
+        assertEquals(10, itemService.findOne(itemId).getStockQuantity(), "조회하면 모든 shard 의 재고를 합친다.");
+    }
+
+    @Test
+    public void order_is_stored_on_member_shard() throws Exception{
+        //given : 상품은 ItemService 가 모든 shard 에 복제한다.
+        Long memberId = memberService.join(member("shard-orderer"));
+        int shard = shardRouting.shardOf(memberId);
+        Book book = book("shard book");
+        itemService.saveItem(book);
+
+        //when
+        Long orderId = orderService.order(memberId, book.getId(), 2);
+
+        //then : 주문, 주문상품, 배송이 모두 회원의 shard 에 있고 재고는 그 shard 의 몫에서 빠진다.
+        assertEquals(shard, shardRouting.shardOf(orderId));
+        assertEquals(3, count(shard, "select stock_quantity from item where item_id = ?", book.getId()));
+        assertEquals(5, count(1 - shard, "select stock_quantity from item where item_id = ?", book.getId()));
+        orderService.cancelOrder(orderId);
+        assertEquals(1, count(shard, "select count(*) from orders where order_id = ? and status = 'CANCEL'", orderId));
+        assertEquals(1, count(shard, "select count(*) from order_item where order_id = ?", orderId));
+        assertEquals(1, count(shard, "select count(*) from delivery d join orders o on o.delivery_id = d.delivery_id where o.order_id = ?", orderId));
+        assertEquals(0, count(1 - shard, "select count(*) from orders where order_id = ?", orderId));
+        assertEquals(0, count(1 - shard, "select count(*) from order_item where order_id = ?", orderId));
+        assertEquals(5, count(shard, "select stock_quantity from item where item_id = ?", book.getId()));
+    }
+
+    @Test
+    public void orderAll_runs_on_member_shard() throws Exception{
+        //given : shard 를 정하지 않은 스레드에서 호출한다.
+        Long memberId = memberService.join(member("shard-bulk-orderer"));
+        int shard = shardRouting.shardOf(memberId);
+        Book book = book("shard bulk book");
+        itemService.saveItem(book);
+
+        //when
+        List<Long> orderIds = orderService.orderAll(List.of(
+                new OrderLine(memberId, book.getId(), 1),
+                new OrderLine(memberId, book.getId(), 2)));
+
+        //then
+        assertEquals(2, orderIds.size());
+        for (Long orderId : orderIds) {
+            assertEquals(shard, shardRouting.shardOf(orderId));
+            assertEquals(1, count(shard, "select count(*) from orders where order_id = ?", orderId));
+        }
+        assertEquals(2, count(shard, "select stock_quantity from item where item_id = ?", book.getId()));
+    }
+
+    @Test
+    public void shard_is_propagated_to_other_thread() throws Exception{
+        //given
+        int shard = 1;
+
+        //when
+        Integer seen = shardRouting.on(shard, () ->
+                CompletableFuture.supplyAsync(ShardContext.propagate(ShardContext::current)).join());
+
+        //then
+        assertEquals(shard, seen);
+        assertEquals(ShardContext.DEFAULT_SHARD, CompletableFuture.supplyAsync(ShardContext.propagate(ShardContext::current)).join());
+    }
+
+    @Test
+    public void findOrders_merges_all_shards_by_order_date() throws Exception{
+        //when
+        List<Order> orders = orderService.findOrders(new OrderSearch());
+
+        //then : userA(shard 0), userB(shard 1) 주문이 모두 있고 최신순이다.
+        List<String> names = orders.stream().map(o -> o.getMember().getName()).collect(Collectors.toList());
+        assertTrue(names.containsAll(List.of("userA", "userB")), names.toString());
+        assertTrue(orders.stream().map(Order::getId).map(shardRouting::shardOf).distinct().count() == 2);
+        for (int i = 1; i < orders.size(); i++) {
+            assertFalse(orders.get(i).getOrderDate().isAfter(orders.get(i - 1).getOrderDate()), "주문일 최신순");
+        }
+        assertTrue(orders.stream().allMatch(o -> o.getStatus() == OrderStatus.ORDER || o.getStatus() == OrderStatus.CANCEL));
+    }
+
+    @Test
+    public void findMembers_merges_all_shards_by_id() throws Exception{
+        //when
+        List<Member> members = memberService.findMembers();
+
+        //then
+        List<String> names = members.stream().map(Member::getName).collect(Collectors.toList());
+        assertTrue(names.containsAll(List.of("userA", "userB")), names.toString());
+        assertEquals(members.stream().sorted(Comparator.comparing(Member::getId)).collect(Collectors.toList()), members);
+    }
+
+    @Test
+    public void cannot_change_shard_inside_transaction() throws Exception{
+        //given
+        Long memberId = memberService.join(member("shard-in-tx"));
+        int otherShard = 1 - shardRouting.shardOf(memberId);
+
+        //when : 다른 shard 에서 시작한 트랜잭션 안에서 조회
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> shardRouting.run(otherShard, () -> tx.executeWithoutResult(s -> memberService.findOne(memberId))));
+
+        //then
+        assertTrue(e.getMessage().contains("shard"));
+    }
+
+    @Test
+    public void mergeSorted_k_way() throws Exception{
+        //given
+        List<List<Integer>> sorted = List.of(List.of(9, 5, 1), List.of(8, 2), List.of(), List.of(7, 6, 3));
+
+        //when
+        List<Integer> merged = ShardRouting.mergeSorted(sorted, Comparator.reverseOrder(), Integer.MAX_VALUE);
+        List<Integer> limited = ShardRouting.mergeSorted(sorted, Comparator.reverseOrder(), 4);
+
+        //then
+        assertEquals(List.of(9, 8, 7, 6, 5, 3, 2, 1), merged);
+        assertEquals(List.of(9, 8, 7, 6), limited);
+    }
+
+    private long count(int shard, String sql, Long id) {
+        DataSource shardDataSource = ((ShardRoutingDataSource) dataSource).getShards().get(shard);
+        return new JdbcTemplate(shardDataSource).queryForObject(sql, Long.class, id);
+    }
+
+    private static Member member(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "shard", "12345"));
+        return member;
+    }
+
+    private static Book book(String name) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(10);
+        return book;
+    }
+}
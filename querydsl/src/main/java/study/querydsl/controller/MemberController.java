@@ -3,6 +3,7 @@ package study.querydsl.controller;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 import study.querydsl.dto.MemberSearchCond;
@@ -33,4 +34,15 @@ public class MemberController {
         return memberRepository.searchPageCountQuery(condition, pageable);
     }
 
+    @GetMapping("v4/members")
+    public Page<MemberTeamDto> searchMemberV4(MemberSearchCond condition, Pageable pageable){
+        return memberRepository.searchPageOptimized(condition, pageable);
+    }
+
+    // 전체 개수 없이 다음 페이지 여부만 (더보기, 무한 스크롤)
+    @GetMapping("v5/members")
+    public Slice<MemberTeamDto> searchMemberV5(MemberSearchCond condition, Pageable pageable){
+        return memberRepository.searchSlice(condition, pageable);
+    }
+
 }
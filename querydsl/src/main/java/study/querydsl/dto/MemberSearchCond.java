@@ -1,6 +1,7 @@
 package study.querydsl.dto;
 
 import lombok.Data;
+import org.springframework.util.StringUtils;
 
 @Data
 public class MemberSearchCond {
@@ -9,4 +10,17 @@ public class MemberSearchCond {
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
+
+    /**
+     * 같은 검색이면 같은 값이 되도록 정리한 복사본 (count 캐시의 key 로 사용)
+     * - 앞뒤 공백 제거, 빈 문자열은 조건 없음(null)으로 본다.
+     */
+    public MemberSearchCond normalized() {
+        MemberSearchCond cond = new MemberSearchCond();
+        cond.setUsername(StringUtils.hasText(username) ? username.trim() : null);
+        cond.setTeamName(StringUtils.hasText(teamName) ? teamName.trim() : null);
+        cond.setAgeGoe(ageGoe);
+        cond.setAgeLoe(ageLoe);
+        return cond;
+    }
 }
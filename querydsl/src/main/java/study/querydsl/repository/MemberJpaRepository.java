@@ -4,6 +4,7 @@ import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.Fetchable;
 import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.StringUtils;
@@ -11,6 +12,8 @@ import study.querydsl.dto.MemberSearchCond;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.repository.support.CompiledQueryCache;
+import study.querydsl.repository.support.QueryShape;
 
 import javax.persistence.EntityManager;
 import java.util.List;
@@ -24,10 +27,12 @@ public class MemberJpaRepository {
 
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final CompiledQueryCache compiledQueryCache;
 
-    public MemberJpaRepository(EntityManager em) {
+    public MemberJpaRepository(EntityManager em, CompiledQueryCache compiledQueryCache) {
         this.em = em;
         this.queryFactory = new JPAQueryFactory(em);
+        this.compiledQueryCache = compiledQueryCache;
     }
 //    public MemberJpaRepository(EntityManager em, JPAQueryFactory queryFactory) {
 //        this.em = em;
@@ -69,7 +74,22 @@ public class MemberJpaRepository {
     }
 
 
+    // 동적 쿼리의 모양(조건 유무 조합)이 같으면 처음 만든 JPQL 을 재사용하고 값만 바인딩한다.
+    // - param 순서는 where 조건 순서와 같아야 한다.
+    private static QueryShape searchShape(String name, MemberSearchCond condition) {
+        return QueryShape.of(name)
+                .param(condition.getUsername())
+                .param(condition.getTeamName())
+                .param(condition.getAgeGoe())
+                .param(condition.getAgeLoe());
+    }
+
     public List<MemberTeamDto> searchByBuilder(MemberSearchCond condition){
+        return compiledQueryCache.fetch(searchShape("searchByBuilder", condition),
+                () -> searchByBuilderQuery(condition));
+    }
+
+    private JPAQuery<MemberTeamDto> searchByBuilderQuery(MemberSearchCond condition){
         BooleanBuilder builder = new BooleanBuilder();
 //        import org.springframework.util.StringUtils;
         // StringUtils.hasText() -> null이 아니거나 빈칸이 아니어야만 true
@@ -97,11 +117,15 @@ public class MemberJpaRepository {
                         team.name))
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(builder)
-                .fetch();
+                .where(builder);
     }
 
     public List<MemberTeamDto> searchByWhere(MemberSearchCond condition){
+        return compiledQueryCache.fetch(searchShape("searchByWhere", condition),
+                () -> searchByWhereQuery(condition));
+    }
+
+    private JPAQuery<MemberTeamDto> searchByWhereQuery(MemberSearchCond condition){
         return queryFactory
                 .select(new QMemberTeamDto(
                         member.id,
@@ -114,8 +138,7 @@ public class MemberJpaRepository {
                         teamNameEq(condition.getTeamName()),
                         ageGoe(condition.getAgeGoe()),
                         ageLoe(condition.getAgeLoe())
-                )
-                .fetch();
+                );
     }
 
     private BooleanExpression ageLoe(Integer ageLoe) {
@@ -2,6 +2,7 @@ package study.querydsl.repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import study.querydsl.dto.MemberSearchCond;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
@@ -13,5 +14,7 @@ public interface MemberRepositoryCustom {
     Page<MemberTeamDto> searchPageSimple(MemberSearchCond condition, Pageable pageable);
     Page<MemberTeamDto> searchPageComplex(MemberSearchCond condition, Pageable pageable);
     Page<MemberTeamDto> searchPageCountQuery(MemberSearchCond condition, Pageable pageable);
+    Page<MemberTeamDto> searchPageOptimized(MemberSearchCond condition, Pageable pageable);
+    Slice<MemberTeamDto> searchSlice(MemberSearchCond condition, Pageable pageable);
 
 }
@@ -10,6 +10,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.support.QuerydslRepositorySupport;
 import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.util.StringUtils;
@@ -17,6 +18,8 @@ import study.querydsl.dto.MemberSearchCond;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.repository.support.CountElidingPaging;
+import study.querydsl.repository.support.PageCountCache;
 
 import javax.persistence.EntityManager;
 import java.util.List;
@@ -28,10 +31,12 @@ public class MemberRepositoryCustomImpl  implements MemberRepositoryCustom{
 
     private EntityManager em;
     private JPAQueryFactory queryFactory;
+    private PageCountCache pageCountCache;
 
-    public MemberRepositoryCustomImpl(EntityManager em) {
+    public MemberRepositoryCustomImpl(EntityManager em, PageCountCache pageCountCache) {
         this.em = em;
         this.queryFactory = new JPAQueryFactory(em);
+        this.pageCountCache = pageCountCache;
     }
 
 
@@ -148,6 +153,61 @@ public class MemberRepositoryCustomImpl  implements MemberRepositoryCustom{
         return PageableExecutionUtils.getPage(content, pageable, () -> countQuery.fetchCount());
     }
 
+    /**
+     * count 쿼리 최적화 페이징
+     * - 첫 페이지/마지막 페이지처럼 개수를 알 수 있으면 count 쿼리를 생략한다. (CountElidingPaging)
+     * - count 쿼리가 필요하면 같은 검색 조건의 결과를 잠시 캐시해서 다음 페이지 이동시 재사용한다.
+     * - 팀 조건이 없으면 count 쿼리에서 team 조인을 뺀다.
+     */
+    @Override
+    public Page<MemberTeamDto> searchPageOptimized(MemberSearchCond condition, Pageable pageable){
+        MemberSearchCond cond = condition.normalized();
+        return CountElidingPaging.getPage(contentQuery(cond), pageable,
+                () -> pageCountCache.get(cond, () -> countQuery(cond).fetchOne()));
+    }
+
+    /**
+     * 다음 페이지 여부만 필요한 경우 (count 쿼리 없음)
+     */
+    @Override
+    public Slice<MemberTeamDto> searchSlice(MemberSearchCond condition, Pageable pageable){
+        return CountElidingPaging.getSlice(contentQuery(condition.normalized()), pageable);
+    }
+
+    private JPAQuery<MemberTeamDto> contentQuery(MemberSearchCond condition) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id,
+                        member.username,
+                        member.age,
+                        team.id,
+                        team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(usernameEq(condition.getUsername()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                );
+    }
+
+    private JPAQuery<Long> countQuery(MemberSearchCond condition) {
+        JPAQuery<Long> query = queryFactory
+                .select(member.count())
+                .from(member);
+        // member -> team 은 ManyToOne 이라 left join 해도 행 수가 늘지 않는다.
+        // 팀 이름 조건이 있을 때만 조인하고, 그때는 team.name = ? 이 null 을 걸러내므로 inner join 으로 충분하다.
+        if (StringUtils.hasText(condition.getTeamName())) {
+            query.join(member.team, team);
+        }
+        return query
+                .where(usernameEq(condition.getUsername()),
+                        teamNameEq(condition.getTeamName()),
+                        ageGoe(condition.getAgeGoe()),
+                        ageLoe(condition.getAgeLoe())
+                );
+    }
+
     private BooleanExpression ageLoe(Integer ageLoe) {
         return ageLoe != null ? member.age.loe(ageLoe) : null;
     }
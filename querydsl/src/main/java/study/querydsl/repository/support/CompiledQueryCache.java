@@ -0,0 +1,144 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 동적 검색 쿼리의 shape 별 JPQL 캐시
+ * - Querydsl 은 요청마다 쿼리 AST 를 새로 만들고 JPQL 문자열로 직렬화한다.
+ * - 같은 shape 이면 JPQL 도 같으므로 처음 한번만 만들어두고, 이후에는 파라미터 값만 바인딩해서
+ *   DTO 프로젝션(@QueryProjection 생성자)으로 바로 만든다.
+ * - lock mode 와 힌트는 처음 만든 Querydsl 쿼리의 설정을 그대로 옮긴다.
+ * - 파라미터가 shape 의 값과 순서까지 같지 않거나, 페이징(limit/offset)이 있으면 캐시하지 않고 그냥 Querydsl 로 실행한다.
+ */
+@Component
+public class CompiledQueryCache {
+
+    private final EntityManager em;
+    private final Map<String, CompiledQuery> compiled = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder uncacheable = new LongAdder();
+
+    public CompiledQueryCache(EntityManager em) {
+        this.em = em;
+    }
+
+    /**
+     * @param queryBuilder 캐시에 없을 때만 호출된다. shape 의 값으로 만든 쿼리를 반환해야 한다.
+     */
+    public <T> List<T> fetch(QueryShape shape, Supplier<JPAQuery<T>> queryBuilder) {
+        CompiledQuery cached = compiled.get(shape.key());
+        if (cached != null) {
+            hits.increment();
+            return cached.execute(em, shape.values());
+        }
+
+        misses.increment();
+        JPAQuery<T> query = queryBuilder.get();
+        CompiledQuery compiledQuery = compile(query, shape.values());
+        if (compiledQuery == null) {
+            uncacheable.increment();
+            return query.fetch();
+        }
+        compiled.putIfAbsent(shape.key(), compiledQuery);
+        return compiledQuery.execute(em, shape.values());
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 캐시하지 못하고 Querydsl 로 실행한 횟수 (miss 에 포함)
+     */
+    public long getUncacheableCount() {
+        return uncacheable.sum();
+    }
+
+    public double getHitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public int size() {
+        return compiled.size();
+    }
+
+    private CompiledQuery compile(JPAQuery<?> query, List<Object> values) {
+        QueryMetadata metadata = query.getMetadata();
+        if (metadata.getModifiers().isRestricting()) {
+            return null;
+        }
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+        serializer.serialize(metadata, false, null);
+
+        // 값 i 번째가 ?(i+1) 로 직렬화 되었는지 확인 (constants 는 파라미터 번호 순서)
+        if (!serializer.getConstants().equals(values)) {
+            return null;
+        }
+        // Querydsl 이 실제로 만드는 Query 에서 lock mode 와 힌트를 읽어온다. (실행하지는 않는다.)
+        Query template = query.createQuery();
+        return new CompiledQuery(serializer.toString(), metadata.getProjection(),
+                template.getLockMode(), template.getHints());
+    }
+
+    private static final class CompiledQuery {
+        private final String jpql;
+        private final Class<?> resultType;
+        private final FactoryExpression<?> factory; // DTO 프로젝션이면 Object[] -> DTO 변환
+        private final LockModeType lockMode;
+        private final Map<String, Object> hints;
+
+        private CompiledQuery(String jpql, Expression<?> projection, LockModeType lockMode, Map<String, Object> hints) {
+            this.jpql = jpql;
+            this.resultType = projection.getType();
+            this.factory = projection instanceof FactoryExpression ? (FactoryExpression<?>) projection : null;
+            this.lockMode = lockMode;
+            this.hints = Map.copyOf(hints);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> List<T> execute(EntityManager em, List<Object> values) {
+            Query query = factory == null ? em.createQuery(jpql, resultType) : em.createQuery(jpql);
+            for (int i = 0; i < values.size(); i++) {
+                query.setParameter(i + 1, values.get(i));
+            }
+            if (lockMode != LockModeType.NONE) {
+                query.setLockMode(lockMode);
+            }
+            hints.forEach(query::setHint);
+
+            List<?> rows = query.getResultList();
+            if (factory == null) {
+                return (List<T>) rows;
+            }
+            List<T> results = new ArrayList<>(rows.size());
+            for (Object row : rows) {
+                Object[] args = row instanceof Object[] ? (Object[]) row : new Object[]{row};
+                results.add((T) factory.newInstance(args));
+            }
+            return results;
+        }
+    }
+}
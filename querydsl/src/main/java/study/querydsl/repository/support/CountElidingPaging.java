@@ -0,0 +1,58 @@
+package study.querydsl.repository.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * count 쿼리를 최대한 생략하는 페이징
+ * - 페이지 크기보다 1개 더 조회해서 다음 페이지가 있는지 먼저 알아낸다.
+ * - 다음 페이지가 없으면 전체 개수는 offset + 조회한 개수이므로 count 쿼리를 생략한다.
+ *   (PageableExecutionUtils 는 마지막 페이지가 딱 맞게 꽉 찬 경우에도 count 쿼리를 날린다.)
+ * - count 쿼리는 다음 페이지가 있거나, offset 이 전체 개수를 넘어 결과가 비었을 때만 실행한다.
+ */
+public final class CountElidingPaging {
+
+    private CountElidingPaging() {
+    }
+
+    public static <T> Page<T> getPage(JPAQuery<T> contentQuery, Pageable pageable, LongSupplier totalSupplier) {
+        List<T> content = fetchOneMore(contentQuery, pageable);
+        boolean hasNext = trim(content, pageable);
+
+        if (!hasNext && (!content.isEmpty() || pageable.getOffset() == 0)) {
+            return new PageImpl<>(content, pageable, pageable.getOffset() + content.size());
+        }
+        return new PageImpl<>(content, pageable, totalSupplier.getAsLong());
+    }
+
+    /**
+     * 전체 개수 없이 다음 페이지 여부만 필요할 때 (무한 스크롤, 더보기) - count 쿼리를 아예 실행하지 않는다.
+     */
+    public static <T> Slice<T> getSlice(JPAQuery<T> contentQuery, Pageable pageable) {
+        List<T> content = fetchOneMore(contentQuery, pageable);
+        boolean hasNext = trim(content, pageable);
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    private static <T> List<T> fetchOneMore(JPAQuery<T> contentQuery, Pageable pageable) {
+        return contentQuery
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize() + 1L)
+                .fetch();
+    }
+
+    private static <T> boolean trim(List<T> content, Pageable pageable) {
+        if (content.size() > pageable.getPageSize()) {
+            content.remove(content.size() - 1);
+            return true;
+        }
+        return false;
+    }
+}
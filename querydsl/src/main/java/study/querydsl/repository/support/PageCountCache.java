@@ -0,0 +1,65 @@
+package study.querydsl.repository.support;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * 검색 조건별 전체 개수(count) 캐시
+ * - 같은 검색 조건으로 페이지만 넘기는 동안에는 count 쿼리를 다시 실행하지 않는다.
+ * - 회원이 추가/삭제되어도 TTL 동안은 예전 개수가 보일 수 있다. (페이지 번호 표시용이므로 허용)
+ *   바로 반영해야 하면 invalidateAll 을 호출한다.
+ */
+@Component
+public class PageCountCache {
+
+    private static final int MAX_ENTRIES = 1_000;
+
+    private final long ttlNanos;
+    private final Map<Object, CachedTotal> totals = new ConcurrentHashMap<>();
+
+    public PageCountCache(@Value("${querydsl.paging.count-cache-ttl-ms:3000}") long ttlMillis) {
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    /**
+     * @param key 검색 조건 (equals/hashCode 가 있고, 이후에 바뀌지 않는 값)
+     */
+    public long get(Object key, LongSupplier countQuery) {
+        long now = System.nanoTime();
+        CachedTotal cached = totals.get(key);
+        if (cached != null && cached.expiresAt - now > 0) {
+            return cached.total;
+        }
+        long total = countQuery.getAsLong();
+        if (totals.size() >= MAX_ENTRIES) {
+            evictExpired(now);
+        }
+        totals.put(key, new CachedTotal(total, now + ttlNanos));
+        return total;
+    }
+
+    public void invalidateAll() {
+        totals.clear();
+    }
+
+    private void evictExpired(long now) {
+        totals.values().removeIf(cached -> cached.expiresAt - now <= 0);
+        if (totals.size() >= MAX_ENTRIES) { // 검색 조건이 너무 다양하면 그냥 비운다.
+            totals.clear();
+        }
+    }
+
+    private static final class CachedTotal {
+        private final long total;
+        private final long expiresAt;
+
+        private CachedTotal(long total, long expiresAt) {
+            this.total = total;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package study.querydsl.repository.support;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 동적 쿼리의 모양(shape)
+ * - 조건 n개짜리 동적 쿼리는 "어떤 조건이 있고 없는지"에 따라 최대 2^n 가지 JPQL 만 만들어진다.
+ * - 조건이 있으면 해당 bit 를 켜고 값을 순서대로 모아둔다. 값은 쿼리의 where 절에 나오는 순서와 같아야 한다.
+ * - null, 빈 문자열은 조건이 없는 것으로 본다. (where 절의 StringUtils.hasText 와 같은 기준)
+ */
+public final class QueryShape {
+
+    private final String name;
+    private final List<Object> values = new ArrayList<>();
+    private long mask;
+    private int index;
+
+    private QueryShape(String name) {
+        this.name = name;
+    }
+
+    public static QueryShape of(String name) {
+        return new QueryShape(name);
+    }
+
+    public QueryShape param(Object value) {
+        if (index >= Long.SIZE) {
+            throw new IllegalStateException("조건은 " + Long.SIZE + "개까지 가능합니다. name=" + name);
+        }
+        if (isPresent(value)) {
+            mask |= 1L << index;
+            values.add(value);
+        }
+        index++;
+        return this;
+    }
+
+    String key() {
+        return name + "#" + Long.toBinaryString(mask);
+    }
+
+    List<Object> values() {
+        return Collections.unmodifiableList(values);
+    }
+
+    private static boolean isPresent(Object value) {
+        if (value instanceof String) {
+            return StringUtils.hasText((String) value);
+        }
+        return value != null;
+    }
+}
@@ -1,22 +1,36 @@
 package study.querydsl.repository;
 
 
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.assertj.core.api.Assertions;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberSearchCond;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.repository.support.CompiledQueryCache;
+import study.querydsl.repository.support.QueryShape;
 
 import javax.persistence.EntityManager;
 
 import java.util.List;
+import java.util.function.Supplier;
 
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
 @SpringBootTest
 @Transactional
 class MemberJpaRepositoryTest {
@@ -25,6 +39,8 @@ class MemberJpaRepositoryTest {
 
     @Autowired
     MemberJpaRepository memberJpaRepository;
+    @Autowired
+    CompiledQueryCache compiledQueryCache;
 
     @Test
     public void basicTest() throws Exception{
@@ -119,4 +135,135 @@ class MemberJpaRepositoryTest {
         assertThat(result).extracting("username").containsExactly("member3", "member4");
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void searchByBuilder_compiledQuery() throws Exception{
+        //given
+        Team teamA = new Team("teamShape");
+        em.persist(teamA);
+        em.persist(new Member("shape1", 5010, teamA));
+        em.persist(new Member("shape2", 5020, teamA));
+        em.persist(new Member("shape3", 5030));
+
+        //when //then : 조건 유무 16가지 조합 모두 Querydsl 로 직접 만든 결과와 같아야 한다.
+        for (int round = 0; round < 2; round++) {
+            for (int shape = 0; shape < 16; shape++) {
+                MemberSearchCond condition = new MemberSearchCond();
+                condition.setUsername((shape & 1) != 0 ? "shape2" : null);
+                condition.setTeamName((shape & 2) != 0 ? "teamShape" : "  "); // 공백은 조건 없음
+                condition.setAgeGoe((shape & 4) != 0 ? 5015 : null);
+                condition.setAgeLoe((shape & 8) != 0 ? 5030 : null);
+
+                List<String> expected = memberJpaRepository.findMember(condition).stream()
+                        .map(Member::getUsername)
+                        .collect(toList());
+                assertThat(memberJpaRepository.searchByBuilder(condition))
+                        .extracting("username")
+                        .containsExactlyInAnyOrderElementsOf(expected);
+            }
+        }
+        long hits = compiledQueryCache.getHitCount();
+        memberJpaRepository.searchByBuilder(new MemberSearchCond());
+        assertThat(compiledQueryCache.getHitCount()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    public void searchByWhere_rebind() throws Exception{
+        //given
+        Team teamA = new Team("teamShape"); // searchByWhere 는 team 과 inner join 되므로 팀이 있어야 조회된다.
+        em.persist(teamA);
+        em.persist(new Member("shape1", 5100, teamA));
+        em.persist(new Member("shape2", 5200, teamA));
+        MemberSearchCond condition = new MemberSearchCond();
+        condition.setAgeGoe(5100);
+        condition.setAgeLoe(5100); // 같은 값이어도 ?1, ?2 로 따로 바인딩되어야 한다.
+
+        //when //then
+        assertThat(memberJpaRepository.searchByWhere(condition)).extracting("username").containsExactly("shape1");
+
+        // 같은 shape 에 다른 값이 들어오면 캐시된 JPQL 에 값만 바꿔서 바인딩
+        long hits = compiledQueryCache.getHitCount();
+        condition.setAgeLoe(5200);
+        assertThat(memberJpaRepository.searchByWhere(condition)).extracting("username")
+                .containsExactlyInAnyOrder("shape1", "shape2");
+        condition.setAgeGoe(5150);
+        assertThat(memberJpaRepository.searchByWhere(condition)).extracting("username").containsExactly("shape2");
+        assertThat(compiledQueryCache.getHitCount()).isEqualTo(hits + 2);
+        assertThat(compiledQueryCache.getUncacheableCount()).isZero();
+    }
+
+    @Test
+    public void compiledQuery_hints_and_paging() throws Exception{
+        //given
+        em.persist(new Member("hint1", 5300));
+        em.persist(new Member("hint2", 5300));
+        em.flush();
+        em.clear();
+        JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+
+        //when //then : 캐시된 JPQL 로 실행해도 처음 쿼리의 힌트(read only)가 적용되어야 한다.
+        long hits = compiledQueryCache.getHitCount();
+        for (int round = 0; round < 2; round++) {
+            List<Member> members = compiledQueryCache.fetch(QueryShape.of("readOnlyMembers").param(5300),
+                    () -> queryFactory.selectFrom(member).where(member.age.eq(5300)).setHint(QueryHints.READ_ONLY, true));
+            assertThat(members).hasSize(2);
+            members.forEach(m -> assertTrue(em.unwrap(Session.class).isReadOnly(m)));
+            em.clear();
+        }
+        assertThat(compiledQueryCache.getHitCount()).isEqualTo(hits + 1);
+
+        // 페이징 쿼리는 캐시하지 않는다.
+        long uncacheable = compiledQueryCache.getUncacheableCount();
+        List<Member> page = compiledQueryCache.fetch(QueryShape.of("pagedMembers").param(5300),
+                () -> queryFactory.selectFrom(member).where(member.age.eq(5300)).limit(1));
+        assertThat(page).hasSize(1);
+        assertThat(compiledQueryCache.getUncacheableCount()).isEqualTo(uncacheable + 1);
+    }
+
+    /**
+     * 매번 Querydsl 로 쿼리 생성/직렬화 vs shape 캐시 (수동 실행)
+     */
+    @Disabled("시간이 오래 걸리므로 필요할 때만 수동으로 실행")
+    @Test
+    public void benchmark_compiledQuery() throws Exception{
+        for (int i = 0; i < 100; i++) {
+            em.persist(new Member("member" + i, i));
+        }
+        em.flush();
+        em.clear();
+        MemberSearchCond condition = new MemberSearchCond();
+        condition.setUsername("member10");
+        condition.setAgeGoe(5);
+        JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+
+        for (int round = 0; round < 3; round++) { // 앞 round 는 워밍업
+            int calls = 20_000;
+            long serializeOnly = measure(calls, () -> {
+                JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+                serializer.serialize(searchQuery(queryFactory, condition).getMetadata(), false, null);
+                return serializer.toString();
+            });
+            long querydsl = measure(calls, () -> searchQuery(queryFactory, condition).fetch());
+            long compiled = measure(calls, () -> memberJpaRepository.searchByBuilder(condition));
+            System.out.printf("build+serialize=%,dns querydsl=%,dns compiled=%,dns (per call) hitRate=%.3f%n",
+                    serializeOnly, querydsl, compiled, compiledQueryCache.getHitRate());
+        }
+    }
+
+    private long measure(int calls, Supplier<?> call) {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            call.get();
+        }
+        return (System.nanoTime() - start) / calls;
+    }
+
+    private static JPAQuery<MemberTeamDto> searchQuery(JPAQueryFactory queryFactory, MemberSearchCond condition) {
+        return queryFactory
+                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.username.eq(condition.getUsername()),
+                        member.age.goe(condition.getAgeGoe()));
+    }
+}
@@ -1,16 +1,20 @@
 package study.querydsl.repository;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.dto.MemberSearchCond;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
 import study.querydsl.entity.Team;
+import study.querydsl.repository.support.PageCountCache;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -195,4 +199,113 @@ class MemberRepositoryTest {
             System.out.println(findMember);
         }
     }
-}
\ No newline at end of file
+
+    @Autowired
+    PageCountCache pageCountCache;
+
+    @Test
+    public void searchPageOptimized_elideCount() throws Exception{
+        //given
+        Team team = new Team("teamPaging");
+        em.persist(team);
+        for (int i = 1; i <= 5; i++) {
+            em.persist(new Member("paging" + i, 1000 + i, team));
+        }
+        MemberSearchCond condition = new MemberSearchCond();
+        condition.setAgeGoe(1001); // 다른 테스트가 커밋한 회원과 섞이지 않도록
+        Statistics statistics = statistics();
+
+        //when //then
+        // 첫 페이지가 덜 찬 경우 -> count 생략
+        assertPage(statistics, condition, PageRequest.of(0, 10), 5, 1);
+        // 마지막 페이지가 덜 찬 경우 -> count 생략
+        assertPage(statistics, condition, PageRequest.of(1, 3), 5, 1);
+        // 마지막 페이지가 딱 맞게 꽉 찬 경우 -> count 생략 (PageableExecutionUtils 는 count 를 실행한다.)
+        assertPage(statistics, condition, PageRequest.of(0, 5), 5, 1);
+        // 다음 페이지가 있는 경우 -> count 실행
+        assertPage(statistics, condition, PageRequest.of(0, 3), 5, 2);
+        // 같은 조건(공백만 다른 경우 포함) -> 캐시된 count 사용
+        condition.setUsername(" ");
+        assertPage(statistics, condition, PageRequest.of(0, 3), 5, 1);
+    }
+
+    @Test
+    public void searchPageOptimized_teamCondition() throws Exception{
+        //given
+        Team teamA = new Team("teamPagingA");
+        Team teamB = new Team("teamPagingB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 1; i <= 6; i++) {
+            em.persist(new Member("paging" + i, 2000 + i, i % 2 == 0 ? teamA : teamB));
+        }
+        em.persist(new Member("pagingNoTeam", 2007));
+        MemberSearchCond condition = new MemberSearchCond();
+        condition.setAgeGoe(2001);
+
+        //when
+        Page<MemberTeamDto> all = memberRepository.searchPageOptimized(condition, PageRequest.of(0, 2));
+        condition.setTeamName("teamPagingA");
+        Page<MemberTeamDto> teamA_only = memberRepository.searchPageOptimized(condition, PageRequest.of(0, 2));
+
+        //then
+        assertThat(all.getTotalElements()).isEqualTo(7); // 팀이 없는 회원도 포함 (count 쿼리에 조인 없음)
+        assertThat(teamA_only.getTotalElements()).isEqualTo(3);
+        assertThat(teamA_only.getContent()).extracting("teamName").containsOnly("teamPagingA");
+    }
+
+    @Test
+    public void searchPageOptimized_cachedTotal() throws Exception{
+        //given
+        for (int i = 1; i <= 4; i++) {
+            em.persist(new Member("paging" + i, 3000 + i));
+        }
+        MemberSearchCond condition = new MemberSearchCond();
+        condition.setAgeGoe(3001);
+        PageRequest pageRequest = PageRequest.of(0, 2);
+        assertThat(memberRepository.searchPageOptimized(condition, pageRequest).getTotalElements()).isEqualTo(4);
+
+        //when
+        em.persist(new Member("paging5", 3005));
+
+        //then
+        // TTL 동안은 캐시된 개수, 무효화하면 다시 count
+        assertThat(memberRepository.searchPageOptimized(condition, pageRequest).getTotalElements()).isEqualTo(4);
+        pageCountCache.invalidateAll();
+        assertThat(memberRepository.searchPageOptimized(condition, pageRequest).getTotalElements()).isEqualTo(5);
+    }
+
+    @Test
+    public void searchSlice() throws Exception{
+        //given
+        for (int i = 1; i <= 5; i++) {
+            em.persist(new Member("paging" + i, 4000 + i));
+        }
+        MemberSearchCond condition = new MemberSearchCond();
+        condition.setAgeGoe(4001);
+
+        //when
+        Slice<MemberTeamDto> first = memberRepository.searchSlice(condition, PageRequest.of(0, 3));
+        Slice<MemberTeamDto> last = memberRepository.searchSlice(condition, PageRequest.of(1, 3));
+
+        //then
+        assertThat(first.getContent()).extracting("username").containsExactly("paging1", "paging2", "paging3");
+        assertThat(first.hasNext()).isTrue();
+        assertThat(last.getContent()).extracting("username").containsExactly("paging4", "paging5");
+        assertThat(last.hasNext()).isFalse();
+    }
+
+    private void assertPage(Statistics statistics, MemberSearchCond condition, PageRequest pageRequest,
+                            long expectedTotal, long expectedQueries) {
+        long before = statistics.getQueryExecutionCount();
+        Page<MemberTeamDto> result = memberRepository.searchPageOptimized(condition, pageRequest);
+        assertThat(result.getTotalElements()).isEqualTo(expectedTotal);
+        assertThat(statistics.getQueryExecutionCount() - before).isEqualTo(expectedQueries);
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = em.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        return statistics;
+    }
+}